@@ -27,7 +27,7 @@ public interface Event {
     public void runEvent(Player player);
 
     /**
-     * Prints the result of the event to the player.
+     * @return The result of the event, as it is shown to the player
      */
-    public void logEvent();
+    public String describe();
 }
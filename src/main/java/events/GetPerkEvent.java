@@ -14,6 +14,13 @@ public class GetPerkEvent implements Event {
         this.perk = perk;
     }
 
+    /**
+     * @return The perk the player gains
+     */
+    public String perk() {
+        return perk;
+    }
+
     /**
      * This Event means the player gains a perk.
      */
@@ -21,7 +28,7 @@ public class GetPerkEvent implements Event {
         player.gainPerk(perk);
     }
 
-    public void logEvent() {
-        System.out.printf("\033[93mNew Perk: %s\n\n\033[0m", perk);
+    public String describe() {
+        return "New Perk: " + perk;
     }
 }
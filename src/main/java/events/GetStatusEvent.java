@@ -14,6 +14,13 @@ public class GetStatusEvent implements Event {
         this.status = status;
     }
 
+    /**
+     * @return The status the player gains
+     */
+    public String status() {
+        return status;
+    }
+
     /**
      * This event means the player gains a status.
      */
@@ -21,7 +28,7 @@ public class GetStatusEvent implements Event {
         player.gainStatus(status);
     }
 
-    public void logEvent() {
-        System.out.printf("\033[93mNew Status: %s\n\n\033[0m", status);
+    public String describe() {
+        return "New Status: " + status;
     }
 }
@@ -0,0 +1,76 @@
+package game;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * An AttributeTable interns the names of one kind of player attribute, such
+ * as perks, giving each name a dense integer id. Players store the ids they
+ * have as bits, so checking an attribute is a single bit test rather than a
+ * scan over names.
+ * </p>
+ *
+ * <p>
+ * A table is shared by every session playing a game, and ids are only ever
+ * added, so an id means the same name for as long as the process runs.
+ * Looking up a name that is already interned takes no lock.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class AttributeTable {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private int size;
+
+    /**
+     * Gets the id of a name, interning it if it has none yet.
+     *
+     * @param name The name of an attribute
+     * @return The id of the name
+     */
+    public int id(String name) {
+        Integer id = ids.get(name);
+        if (id != null)
+            return id;
+
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null)
+                return id;
+            if (size == names.length)
+                names = Arrays.copyOf(names, size * 2);
+            names[size] = name;
+            // Publishing the id after the name means anyone who sees the id sees the name
+            ids.put(name, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Gets the id of a name without interning it.
+     *
+     * @param name The name of an attribute
+     * @return The id of the name, or {@code -1} if it was never interned
+     */
+    public int find(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id The id of an attribute
+     * @return The name with this id
+     */
+    public String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return The number of names interned
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
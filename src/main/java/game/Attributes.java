@@ -0,0 +1,47 @@
+package game;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * The Attributes of a game hold one AttributeTable each for its perks, items
+ * and statuses. Every player in a game, and every requirement in its
+ * chapters, resolves attribute names through the same tables, so they agree
+ * on what each id means.
+ * </p>
+ *
+ * <p>
+ * Players that do not belong to a game directory, such as one parsed on its
+ * own, get a table of their own.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class Attributes {
+    private static final ConcurrentHashMap<String, Attributes> GAMES = new ConcurrentHashMap<>();
+
+    private final AttributeTable perks = new AttributeTable();
+    private final AttributeTable items = new AttributeTable();
+    private final AttributeTable statuses = new AttributeTable();
+
+    /**
+     * @param gameDir The directory of a game
+     * @return The attributes shared by every session playing that game
+     */
+    public static Attributes forGame(File gameDir) {
+        return GAMES.computeIfAbsent(gameDir.getAbsolutePath(), dir -> new Attributes());
+    }
+
+    public AttributeTable perks() {
+        return perks;
+    }
+
+    public AttributeTable items() {
+        return items;
+    }
+
+    public AttributeTable statuses() {
+        return statuses;
+    }
+}
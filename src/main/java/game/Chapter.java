@@ -0,0 +1,359 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import scenes.Branch;
+import scenes.LeafScene;
+import scenes.NodeScene;
+import scenes.Scene;
+
+/**
+ * <p>
+ * A Chapter is the parsed story graph of a single chapter file. It holds every
+ * scene in the chapter, the scene the chapter starts in, and the chapter that
+ * comes after it.
+ * </p>
+ *
+ * <p>
+ * A Chapter is never modified after it is built, so one Chapter can be shared
+ * by every session playing it. Anything a session changes, such as which
+ * branches it has already taken, is kept in the GameSession instead.
+ * </p>
+ *
+ * <p>
+ * Every branch in the chapter is given a dense id when the chapter is built.
+ * Ids are assigned in order of scene index, then in the order the branches
+ * appear in their scene, so the same chapter file always gives the same ids.
+ * </p>
+ *
+ * <p>
+ * Scenes are numbered the same way, in order of index, and held in an array by
+ * id. Every branch and leaf is linked to the id of the scene it leads to, so
+ * moving between scenes never looks up a scene by its index. Indexes are only
+ * used to find scenes when a save is loaded, and to write saves. A branch or
+ * leaf that leads to a scene the chapter does not have is listed by
+ * {@link #danglingReferences()} when the chapter is built, and is linked to
+ * {@link Scene#MISSING_SCENE}, so a player choosing it is refused and stays
+ * where they are.
+ * </p>
+ *
+ * <p>
+ * A chapter also remembers a hash of the file it was parsed from, so a save
+ * that only records what changed from the chapter can check that it is loaded
+ * against the same chapter it was made on.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class Chapter {
+    private final Map<String, Scene> scenes;
+    // Scenes and their indexes by id, or null if the scenes are mapped
+    private final Scene[] sceneTable;
+    private final String[] indexes;
+    private final HashMap<String, Integer> sceneIds;
+    private final MappedSceneStore store;
+    private final String firstScene;
+    private final int firstSceneId;
+    private final List<String> danglingReferences;
+    private final List<String> unknownTypes;
+    private final Optional<String> nextChapter;
+    private final int branchCount;
+    private final String hash;
+    private volatile DependencyIndex dependencies;
+
+    /**
+     * Builds a chapter from freshly parsed scenes, numbering their branches.
+     *
+     * @param scenes      Every scene in the chapter, keyed by index
+     * @param firstScene  The index of the scene the chapter starts in
+     * @param nextChapter Optionally, the chapter after this one
+     * @param hash        Hash of the file the chapter was parsed from, or
+     *                    {@code null} if it is not known
+     */
+    public Chapter(Map<String, Scene> scenes, String firstScene, Optional<String> nextChapter, String hash) {
+        this(scenes, firstScene, nextChapter, hash, List.of());
+    }
+
+    /**
+     * Builds a chapter from freshly parsed scenes, numbering their branches,
+     * and remembers what the parser could not make sense of.
+     *
+     * @param scenes       Every scene in the chapter, keyed by index
+     * @param firstScene   The index of the scene the chapter starts in
+     * @param nextChapter  Optionally, the chapter after this one
+     * @param hash         Hash of the file the chapter was parsed from, or
+     *                     {@code null} if it is not known
+     * @param unknownTypes A description of every scene, event or requirement
+     *                     of a type that is not known
+     */
+    public Chapter(Map<String, Scene> scenes, String firstScene, Optional<String> nextChapter, String hash,
+            List<String> unknownTypes) {
+        this.scenes = Collections.unmodifiableMap(scenes);
+        this.firstScene = firstScene;
+        this.nextChapter = nextChapter;
+        this.hash = hash;
+        this.store = null;
+        this.indexes = sortedIndexes(scenes);
+        this.sceneTable = new Scene[indexes.length];
+        this.sceneIds = new HashMap<>(indexes.length * 2);
+        for (int id = 0; id < indexes.length; id++) {
+            sceneTable[id] = scenes.get(indexes[id]);
+            sceneIds.put(indexes[id], id);
+        }
+
+        // Link every scene to the scenes it leads to, and number the branches of every node scene
+        int nextId = 0;
+        for (int id = 0; id < sceneTable.length; id++) {
+            sceneTable[id].link(id, this::sceneId);
+            if (sceneTable[id] instanceof NodeScene node)
+                nextId = node.numberBranches(nextId);
+        }
+        this.branchCount = nextId;
+        this.firstSceneId = sceneId(firstScene);
+        this.danglingReferences = findDanglingReferences();
+        this.unknownTypes = List.copyOf(unknownTypes);
+    }
+
+    /**
+     * Builds a chapter from scenes that are already linked and whose branches
+     * are already numbered, such as the scenes of a compiled chapter. A
+     * MappedSceneStore is not read, so its scenes stay lazy. The problems of
+     * the chapter are not looked for again, but taken from what was found
+     * when it was compiled.
+     *
+     * @param scenes             Every scene in the chapter, keyed by index
+     * @param firstScene         The index of the scene the chapter starts in
+     * @param nextChapter        Optionally, the chapter after this one
+     * @param branchCount        The number of branches in the chapter
+     * @param hash               Hash of the file the chapter was parsed from,
+     *                           or {@code null} if it is not known
+     * @param danglingReferences A description of every branch or leaf that
+     *                           leads to a scene the chapter does not have
+     * @param unknownTypes       A description of every scene, event or
+     *                           requirement of a type that is not known
+     */
+    public Chapter(Map<String, Scene> scenes, String firstScene, Optional<String> nextChapter, int branchCount,
+            String hash, List<String> danglingReferences, List<String> unknownTypes) {
+        this.scenes = Collections.unmodifiableMap(scenes);
+        this.firstScene = firstScene;
+        this.nextChapter = nextChapter;
+        this.branchCount = branchCount;
+        this.hash = hash;
+        this.danglingReferences = List.copyOf(danglingReferences);
+        this.unknownTypes = List.copyOf(unknownTypes);
+        if (scenes instanceof MappedSceneStore mapped) {
+            this.store = mapped;
+            this.indexes = null;
+            this.sceneTable = null;
+            this.sceneIds = null;
+            this.firstSceneId = mapped.sceneId(firstScene);
+            return;
+        }
+
+        this.store = null;
+        this.indexes = sortedIndexes(scenes);
+        this.sceneTable = new Scene[indexes.length];
+        this.sceneIds = new HashMap<>(indexes.length * 2);
+        for (int id = 0; id < indexes.length; id++) {
+            sceneTable[id] = scenes.get(indexes[id]);
+            sceneIds.put(indexes[id], id);
+        }
+        this.firstSceneId = sceneId(firstScene);
+    }
+
+    /**
+     * @param index The index of a scene in this chapter
+     * @return The scene with this index, or {@code null} if there is none
+     */
+    public Scene scene(String index) {
+        return scenes.get(index);
+    }
+
+    /**
+     * @param id The id of a scene in this chapter
+     * @return The scene with this id, or {@code null} if the id is
+     *         {@link Scene#NO_SCENE}
+     */
+    public Scene scene(int id) {
+        if (id < 0)
+            return null;
+        if (store != null)
+            return store.scene(id);
+        return sceneTable[id];
+    }
+
+    /**
+     * @param index The index of a scene
+     * @return The id of the scene with this index, or {@link Scene#NO_SCENE}
+     *         if this chapter has no such scene
+     */
+    public int sceneId(String index) {
+        if (store != null)
+            return store.sceneId(index);
+        Integer id = sceneIds.get(index);
+        return id == null ? Scene.NO_SCENE : id;
+    }
+
+    /**
+     * @param id The id of a scene in this chapter
+     * @return The index of the scene with this id, or an empty string if the id
+     *         is {@link Scene#NO_SCENE}
+     */
+    public String sceneIndex(int id) {
+        if (id < 0)
+            return "";
+        if (store != null)
+            return store.index(id);
+        return indexes[id];
+    }
+
+    /**
+     * @return The number of scenes in this chapter. Scene ids are always less
+     *         than this.
+     */
+    public int sceneCount() {
+        return store != null ? store.size() : sceneTable.length;
+    }
+
+    /**
+     * @return All scenes in this chapter, keyed by their index
+     */
+    public Map<String, Scene> scenes() {
+        return scenes;
+    }
+
+    /**
+     * @return The index of the scene this chapter starts in
+     */
+    public String firstScene() {
+        return firstScene;
+    }
+
+    /**
+     * @return The id of the scene this chapter starts in, or
+     *         {@link Scene#NO_SCENE} if the chapter has no such scene
+     */
+    public int firstSceneId() {
+        return firstSceneId;
+    }
+
+    public Optional<String> nextChapter() {
+        return nextChapter;
+    }
+
+    /**
+     * @return The number of branches in this chapter. Branch ids are always
+     *         less than this.
+     */
+    public int branchCount() {
+        return branchCount;
+    }
+
+    /**
+     * @return The SHA-256 of the JSON file this chapter was parsed from, in
+     *         hex, or {@code null} if it is not known
+     */
+    public String hash() {
+        return hash;
+    }
+
+    /**
+     * @return A description of every branch or leaf that leads to a scene this
+     *         chapter does not have, and of the first scene if it is missing.
+     *         A compiled chapter gives those found when it was compiled.
+     */
+    public List<String> danglingReferences() {
+        return danglingReferences;
+    }
+
+    /**
+     * @return A description of every scene, event or requirement of this
+     *         chapter of a type that is not known, and was left out. A
+     *         compiled chapter gives those found when it was compiled.
+     */
+    public List<String> unknownTypes() {
+        return unknownTypes;
+    }
+
+    /**
+     * Gets the index from each perk, item and status to the branches of this
+     * chapter whose requirements refer to it. It is built the first time it is
+     * asked for, so chapters nothing asks about never pay for it. Building it
+     * would decode every scene of a chapter served lazily by a
+     * MappedSceneStore, so those chapters refuse; index the JSON chapter
+     * instead.
+     *
+     * @return The dependency index of this chapter
+     * @throws IllegalStateException If this chapter is lazy
+     */
+    public DependencyIndex dependencies() {
+        if (isLazy())
+            throw new IllegalStateException("A lazy chapter is not indexed, as that would decode every scene");
+        DependencyIndex index = dependencies;
+        if (index == null) {
+            synchronized (this) {
+                index = dependencies;
+                if (index == null)
+                    dependencies = index = DependencyIndex.build(this);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Resolves every perk, item and status named by the requirements of this
+     * chapter to its id in a game's attributes, and compiles the requirements
+     * against those ids. Chapters served lazily by a MappedSceneStore are
+     * skipped, as this would decode every scene; their requirements are
+     * compiled the first time they are evaluated.
+     *
+     * @param attributes The attributes of the game the chapter is in
+     */
+    public void intern(Attributes attributes) {
+        if (isLazy())
+            return;
+        for (Scene scene : scenes.values())
+            if (scene instanceof NodeScene node)
+                for (Branch branch : node.branches())
+                    branch.compileRequirement(attributes);
+    }
+
+    /**
+     * @return {@code true} if the scenes of this chapter are decoded as they
+     *         are needed, rather than all held in memory
+     */
+    public boolean isLazy() {
+        return store != null;
+    }
+
+    private static String[] sortedIndexes(Map<String, Scene> scenes) {
+        ArrayList<String> indexes = new ArrayList<>(scenes.keySet());
+        Collections.sort(indexes);
+        return indexes.toArray(new String[0]);
+    }
+
+    private List<String> findDanglingReferences() {
+        ArrayList<String> dangling = new ArrayList<>();
+        if (firstSceneId < 0)
+            dangling.add("First scene " + firstScene + " is missing");
+        for (Scene scene : sceneTable) {
+            if (scene instanceof NodeScene node) {
+                // Branches are counted from 1 within their scene, as the player sees them
+                List<Branch> branches = node.branches();
+                for (int i = 0; i < branches.size(); i++)
+                    if (branches.get(i).nextSceneId() == Scene.MISSING_SCENE)
+                        dangling.add("Branch " + (i + 1) + " of scene " + scene.index()
+                                + " leads to missing scene " + branches.get(i).nextScene());
+            } else if (scene instanceof LeafScene leaf) {
+                if (leaf.nextSceneId() == Scene.MISSING_SCENE)
+                    dangling.add("Scene " + scene.index() + " leads to missing scene " + leaf.nextScene());
+            }
+        }
+        return Collections.unmodifiableList(dangling);
+    }
+}
@@ -0,0 +1,289 @@
+package game;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * The ChapterCache holds parsed chapters so that every session playing a game
+ * shares one Chapter per chapter file, and only the first session to reach a
+ * chapter pays for parsing it. Sessions asking for a chapter that is still
+ * being parsed wait for that parse rather than starting their own.
+ * </p>
+ *
+ * <p>
+ * Chapters are keyed by their game directory, chapter and the modification
+ * time of the chapter file, so an edited chapter is parsed again. The cache is
+ * bounded by the total size of the chapter files it holds, and drops the least
+ * recently used chapter when it is full.
+ * </p>
+ *
+ * <p>
+ * The perks, items and statuses a chapter's requirements name are interned
+ * into the attributes of its game as it is loaded, and its requirements are
+ * compiled against them. Any dangling references or unknown types the chapter
+ * has are reported once, as it is loaded, to standard error unless the cache
+ * is told to report them elsewhere.
+ * </p>
+ *
+ * <p>
+ * A chapter can also be prefetched, parsing it on a background thread while
+ * players are still in the chapter before it.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class ChapterCache {
+    static final long DEFAULT_MAX_BYTES = 256L << 20;
+    private static final ChapterCache SHARED = new ChapterCache(DEFAULT_MAX_BYTES);
+
+    private record Key(String gameDir, String chapter, long modified) {
+    }
+
+    private record Entry(CompletableFuture<Chapter> chapter, long bytes) {
+    }
+
+    private final ExecutorService prefetcher = Executors.newFixedThreadPool(2, task -> {
+        Thread thread = new Thread(task, "chapter-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long maxBytes;
+    private volatile Consumer<String> problems = System.err::println;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxBytes The most bytes of chapter files to hold at once
+     */
+    public ChapterCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Sets where the problems of each chapter are reported as it is loaded.
+     *
+     * @param problems Receives a description of each problem, naming the
+     *                 chapter file
+     */
+    public void reportProblemsTo(Consumer<String> problems) {
+        this.problems = problems;
+    }
+
+    /**
+     * @return The cache shared by every session in this process
+     */
+    public static ChapterCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Gets a chapter of a game, parsing it if no session has yet.
+     *
+     * @param gameDir The directory of the game
+     * @param chapter The chapter, such as {@code "1"} for {@code chapter1.json}
+     * @return The shared Chapter
+     * @throws IOException If the chapter could not be read
+     */
+    public Chapter get(File gameDir, String chapter) throws IOException {
+        File file = chapterFile(gameDir, chapter);
+        if (!file.isFile())
+            throw new FileNotFoundException(file + " (No such file or directory)");
+
+        Key key = new Key(gameDir.getAbsolutePath(), chapter, file.lastModified());
+        CompletableFuture<Chapter> future;
+        boolean load = false;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                future = entry.chapter();
+            } else {
+                misses++;
+                future = new CompletableFuture<>();
+                removeStale(key);
+                entries.put(key, new Entry(future, file.length()));
+                bytes += file.length();
+                evict();
+                load = true;
+            }
+        }
+
+        // Only the session that missed parses the chapter
+        if (load) {
+            try {
+                Chapter loaded = load(file);
+                loaded.intern(Attributes.forGame(gameDir));
+                report(file, loaded);
+                future.complete(loaded);
+            } catch (Throwable e) {
+                synchronized (this) {
+                    Entry entry = entries.get(key);
+                    if (entry != null && entry.chapter() == future) {
+                        entries.remove(key);
+                        bytes -= entry.bytes();
+                    }
+                }
+                future.completeExceptionally(e);
+            }
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException cause)
+                throw cause;
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            if (e.getCause() instanceof Error cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Starts getting a chapter on a background thread, so it is ready by the
+     * time a player reaches it.
+     *
+     * @param gameDir The directory of the game
+     * @param chapter The chapter, such as {@code "2"} for {@code chapter2.json}
+     * @return The chapter once it is loaded. Completes exceptionally if the
+     *         chapter could not be read.
+     */
+    public CompletableFuture<Chapter> prefetch(File gameDir, String chapter) {
+        CompletableFuture<Chapter> prefetched = new CompletableFuture<>();
+        prefetcher.execute(() -> {
+            try {
+                prefetched.complete(get(gameDir, chapter));
+            } catch (Throwable e) {
+                prefetched.completeExceptionally(e);
+            }
+        });
+        return prefetched;
+    }
+
+    /**
+     * @param gameDir The directory of a game
+     * @param chapter The chapter, such as {@code "1"}
+     * @return The JSON file of that chapter
+     */
+    public static File chapterFile(File gameDir, String chapter) {
+        return new File(gameDir, "chapter" + chapter + ".json");
+    }
+
+    /**
+     * Loads a chapter file without caching it. If the chapter has been compiled
+     * since it was last changed, the compiled chapter is loaded instead of
+     * parsing the JSON. Nothing is reported: any branch or leaf leading to a
+     * scene the chapter does not have, and any scene, event or requirement of
+     * a type that is not known, is listed by the Chapter for the caller.
+     * Chapters loaded through {@link #get(File, String)} are reported by the
+     * cache.
+     *
+     * @param chapter The JSON chapter file
+     * @return The Chapter
+     * @throws FileNotFoundException
+     */
+    public static Chapter load(File chapter) throws FileNotFoundException {
+        Chapter loaded = null;
+        if (ChapterCompiler.isUpToDate(chapter)) {
+            try {
+                loaded = CompiledChapter.load(ChapterCompiler.compiledFile(chapter));
+            } catch (IOException e) {
+                // Fall back to the JSON chapter
+            }
+        }
+        if (loaded == null)
+            loaded = new GameParser(chapter).parseChapter();
+        return loaded;
+    }
+
+    /**
+     * Reports everything a chapter's file got wrong, as it is loaded.
+     */
+    private void report(File file, Chapter chapter) {
+        Consumer<String> problems = this.problems;
+        for (String unknown : chapter.unknownTypes())
+            problems.accept(file + ": " + unknown);
+        for (String dangling : chapter.danglingReferences())
+            problems.accept(file + ": " + dangling);
+    }
+
+    /**
+     * Drops every cached version of this chapter from before its file changed.
+     */
+    private void removeStale(Key key) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            Key old = entry.getKey();
+            if (old.gameDir().equals(key.gameDir()) && old.chapter().equals(key.chapter())) {
+                bytes -= entry.getValue().bytes();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the least recently used chapters until the cache fits, always
+     * keeping the chapter added last.
+     */
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && entries.size() > 1) {
+            bytes -= it.next().bytes();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The number of chapters in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The total size of the chapter files in the cache
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Empties the cache and resets its counters.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+}
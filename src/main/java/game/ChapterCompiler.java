@@ -0,0 +1,356 @@
+package game;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Optional;
+
+import events.Event;
+import events.GetPerkEvent;
+import events.GetStatusEvent;
+import requirements.Requirement;
+import requirements.RequirementFactory;
+import scenes.Branch;
+import scenes.LeafScene;
+import scenes.NodeScene;
+import scenes.Scene;
+import scenes.TerminusScene;
+
+/**
+ * <p>
+ * The ChapterCompiler turns a {@code chapter*.json} file into a compact binary
+ * {@code chapter*.wgc} file, which CompiledChapter can load without building
+ * any JSON.
+ * </p>
+ *
+ * <p>
+ * A compiled chapter is laid out as follows (all numbers big-endian):
+ * </p>
+ *
+ * <pre>
+ * int    magic, short version
+ * int    string count, int[count + 1] string offsets, byte[] UTF-8 strings
+ * int    scene count, int first scene, int next chapter (-1 if none)
+ * int    branch count, int source hash (-1 if none)
+ * int    dangling count, int[dangling count] dangling references
+ * int    unknown count, int[unknown count] unknown types
+ * int[scene count] scene offsets, byte[] scenes
+ * </pre>
+ *
+ * <p>
+ * Every string in the chapter is stored once in the string table and referred
+ * to by its id. The scene indexes come first in the table, sorted, so a
+ * scene's id is also the id of its index string, and a branch target below
+ * the scene count is the id of the scene it leads to. Requirements are
+ * flattened in prefix order: an opcode, then either a string id or a child
+ * count followed by the children.
+ * </p>
+ *
+ * <p>
+ * What the parser found wrong with the chapter, its dangling references and
+ * the types it did not know, is stored as strings too, so a compiled chapter
+ * reports the same problems as the JSON it was compiled from.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class ChapterCompiler {
+    static final int MAGIC = 0x57474331; // "WGC1"
+    static final short VERSION = 3;
+    static final String EXTENSION = ".wgc";
+
+    // Scene types
+    static final byte NODE = 0;
+    static final byte LEAF = 1;
+    static final byte TERMINUS = 2;
+
+    // Event types
+    static final byte NO_EVENT = 0;
+    static final byte GET_PERK = 1;
+    static final byte GET_STATUS = 2;
+
+    // Requirement opcodes
+    static final byte NO_REQ = 0;
+    static final byte PERK = 1;
+    static final byte ITEM = 2;
+    static final byte STATUS = 3;
+    static final byte OR = 4;
+    static final byte AND = 5;
+    static final byte NOT = 6;
+
+    private final ArrayList<String> strings = new ArrayList<>();
+    private final HashMap<String, Integer> stringIds = new HashMap<>();
+
+    /**
+     * Compiles every chapter of the games given as arguments, or of every game
+     * in {@code data} if none are given.
+     *
+     * @param args Game directories to compile
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        ArrayList<File> games = new ArrayList<>();
+        if (args.length == 0) {
+            for (File gameDir : new File("data").listFiles())
+                if (gameDir.isDirectory())
+                    games.add(gameDir);
+        } else {
+            for (String arg : args)
+                games.add(new File(arg));
+        }
+
+        for (File gameDir : games) {
+            for (File file : gameDir.listFiles()) {
+                if (!file.getName().matches("chapter.*\\.json"))
+                    continue;
+                File compiled = compiledFile(file);
+                Chapter chapter = compile(file, compiled);
+                System.out.printf("%s -> %s (%d -> %d bytes)\n", file, compiled.getName(), file.length(),
+                        compiled.length());
+                for (String unknown : chapter.unknownTypes())
+                    System.out.println("    " + unknown);
+                for (String dangling : chapter.danglingReferences())
+                    System.out.println("    " + dangling);
+            }
+        }
+    }
+
+    /**
+     * @param chapter A {@code chapter*.json} file
+     * @return The {@code chapter*.wgc} file it compiles to
+     */
+    public static File compiledFile(File chapter) {
+        String name = chapter.getName().replaceFirst("\\.json$", "") + EXTENSION;
+        return new File(chapter.getParentFile(), name);
+    }
+
+    /**
+     * Compiles a JSON chapter file to a binary chapter file. The binary file is
+     * written next to its final location and renamed over it, so a reader never
+     * sees half a file.
+     *
+     * @param chapter  The JSON chapter file
+     * @param compiled The binary file to write
+     * @return The chapter as it was parsed, with the problems that were
+     *         compiled into it
+     * @throws IOException
+     */
+    public static Chapter compile(File chapter, File compiled) throws IOException {
+        Chapter parsed = new GameParser(chapter).parseChapter();
+        File temp = new File(compiled.getPath() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+            new ChapterCompiler().write(parsed, out);
+        }
+        Files.move(temp.toPath(), compiled.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return parsed;
+    }
+
+    /**
+     * Writes a Chapter in the compiled format.
+     *
+     * @param chapter The parsed chapter
+     * @param out     Stream to write the compiled chapter to
+     * @throws IOException
+     */
+    public void write(Chapter chapter, OutputStream out) throws IOException {
+        // Scene indexes take the first string ids, so they double as scene ids
+        ArrayList<String> indexes = new ArrayList<>(chapter.scenes().keySet());
+        Collections.sort(indexes);
+        indexes.forEach(this::string);
+
+        // Write each scene, remembering where it starts
+        ByteArrayOutputStream sceneBytes = new ByteArrayOutputStream();
+        DataOutputStream sceneData = new DataOutputStream(sceneBytes);
+        int[] sceneOffsets = new int[indexes.size()];
+        for (int i = 0; i < indexes.size(); i++) {
+            sceneOffsets[i] = sceneData.size();
+            writeScene(chapter.scene(indexes.get(i)), sceneData);
+        }
+        int firstScene = string(chapter.firstScene());
+        int nextChapter = chapter.nextChapter().map(this::string).orElse(-1);
+        int sourceHash = chapter.hash() == null ? -1 : string(chapter.hash());
+        int[] dangling = chapter.danglingReferences().stream().mapToInt(this::string).toArray();
+        int[] unknown = chapter.unknownTypes().stream().mapToInt(this::string).toArray();
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        writeStrings(data);
+        data.writeInt(indexes.size());
+        data.writeInt(firstScene);
+        data.writeInt(nextChapter);
+        data.writeInt(chapter.branchCount());
+        data.writeInt(sourceHash);
+        writeIds(data, dangling);
+        writeIds(data, unknown);
+        for (int offset : sceneOffsets)
+            data.writeInt(offset);
+        sceneBytes.writeTo(data);
+        data.flush();
+    }
+
+    private static void writeIds(DataOutputStream data, int[] ids) throws IOException {
+        data.writeInt(ids.length);
+        for (int id : ids)
+            data.writeInt(id);
+    }
+
+    private void writeStrings(DataOutputStream data) throws IOException {
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        data.writeInt(strings.size());
+        data.writeInt(0);
+        for (String string : strings) {
+            stringBytes.write(string.getBytes(StandardCharsets.UTF_8));
+            data.writeInt(stringBytes.size());
+        }
+        stringBytes.writeTo(data);
+    }
+
+    private void writeScene(Scene scene, DataOutputStream data) throws IOException {
+        if (scene instanceof NodeScene node) {
+            data.writeByte(NODE);
+            data.writeInt(string(scene.lines()));
+            writeEvent(scene.event(), data);
+            data.writeInt(node.branches().isEmpty() ? 0 : node.branches().get(0).id());
+            data.writeInt(node.branches().size());
+            for (Branch branch : node.branches()) {
+                data.writeInt(string(branch.nextScene()));
+                data.writeInt(string(branch.prompt()));
+                writeEvent(branch.event(), data);
+                writeRequirement(branch.requirement().orElse(null), data);
+            }
+        } else if (scene instanceof LeafScene leaf) {
+            data.writeByte(LEAF);
+            data.writeInt(string(scene.lines()));
+            writeEvent(scene.event(), data);
+            data.writeInt(string(leaf.nextScene()));
+        } else if (scene instanceof TerminusScene) {
+            data.writeByte(TERMINUS);
+            data.writeInt(string(scene.lines()));
+            writeEvent(scene.event(), data);
+        } else {
+            throw new IllegalArgumentException("Cannot compile scene " + scene);
+        }
+    }
+
+    private void writeEvent(Optional<Event> event, DataOutputStream data) throws IOException {
+        if (event.isPresent() && event.get() instanceof GetPerkEvent perkEvent) {
+            data.writeByte(GET_PERK);
+            data.writeInt(string(perkEvent.perk()));
+        } else if (event.isPresent() && event.get() instanceof GetStatusEvent statusEvent) {
+            data.writeByte(GET_STATUS);
+            data.writeInt(string(statusEvent.status()));
+        } else {
+            data.writeByte(NO_EVENT);
+        }
+    }
+
+    /**
+     * Writes a requirement in prefix order. The requirement classes only know
+     * how to write themselves as JSON, so we walk that representation.
+     */
+    private void writeRequirement(Requirement requirement, DataOutputStream data) throws IOException {
+        if (requirement == null) {
+            data.writeByte(NO_REQ);
+            return;
+        }
+        writeRequirement(RequirementFactory.toJSON(requirement), data);
+    }
+
+    private void writeRequirement(JSONObject jsonReq, DataOutputStream data) throws IOException {
+        switch (jsonReq.optString("type")) {
+            case "perk":
+                data.writeByte(PERK);
+                data.writeInt(string(jsonReq.getString("req")));
+                break;
+            case "item":
+                data.writeByte(ITEM);
+                data.writeInt(string(jsonReq.getString("req")));
+                break;
+            case "status":
+                data.writeByte(STATUS);
+                data.writeInt(string(jsonReq.getString("req")));
+                break;
+            case "or":
+            case "and":
+                data.writeByte(jsonReq.getString("type").equals("or") ? OR : AND);
+                JSONArray jRequirements = jsonReq.getJSONArray("req");
+                data.writeInt(jRequirements.length());
+                for (int i = 0; i < jRequirements.length(); i++)
+                    writeRequirement(jRequirements.getJSONObject(i), data);
+                break;
+            case "not":
+                data.writeByte(NOT);
+                writeRequirement(jsonReq.getJSONObject("req"), data);
+                break;
+            default:
+                data.writeByte(NO_REQ);
+        }
+    }
+
+    /**
+     * @return The id of this string in the string table, adding it if needed
+     */
+    private int string(String string) {
+        Integer id = stringIds.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.add(string);
+            stringIds.put(string, id);
+        }
+        return id;
+    }
+
+    /**
+     * Was the compiled file for this chapter compiled from the chapter as it
+     * is now? The hash of the chapter recorded in the compiled file is checked
+     * against the chapter, as modification times can be wrong either way: a
+     * chapter edited within the resolution of the file system's clock looks
+     * unchanged, and one restored from a backup or checked out again looks
+     * newer than it is. A compiled file that recorded no hash falls back to
+     * the modification times.
+     *
+     * @param chapter A {@code chapter*.json} file
+     * @return {@code true} if a compiled file exists and is up to date
+     */
+    public static boolean isUpToDate(File chapter) {
+        File compiled = compiledFile(chapter);
+        if (!compiled.isFile())
+            return false;
+        try {
+            String hash = sourceHash(compiled);
+            if (hash == null)
+                return compiled.lastModified() >= chapter.lastModified();
+            return hash.equals(GameParser.hash(chapter));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The hash of the chapter a compiled file was compiled from, or
+     *         {@code null} if it is not known
+     */
+    private static String sourceHash(File compiled) throws IOException {
+        try (FileChannel channel = FileChannel.open(compiled.toPath(), StandardOpenOption.READ)) {
+            // Only the header and the hash are read
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new CompiledChapter(buffer, false).sourceHash();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package game;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * <p>
+ * A CommandTable routes a line of player input to the command it names. Each
+ * menu of the game builds one table once, listing the words for each of its
+ * commands, such as {@code "q"} and {@code "quit"} for {@link Command#QUIT}.
+ * Matching a line is then a single lookup of the whole line, ignoring case,
+ * with no regular expression compiled or run.
+ * </p>
+ *
+ * <p>
+ * Most lines are the number of a choice, so {@link #number(String)} reads
+ * numbers straight from the line, without the exception
+ * {@code Integer.parseInt} throws for everything else.
+ * </p>
+ *
+ * <p>
+ * A table is not changed once built, so one is shared by every player.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class CommandTable {
+    /** Returned by {@link #number(String)} for a line that is not a number */
+    public static final int NOT_A_NUMBER = Integer.MIN_VALUE;
+
+    /**
+     * The commands a player can type in the menus and scenes.
+     */
+    public enum Command {
+        NEW_GAME, LOAD, QUIT, HELP, PLAYER, BACK,
+        /** The line is none of this table's words */
+        NONE
+    }
+
+    private final HashMap<String, Command> words = new HashMap<>();
+
+    /**
+     * Adds the words for a command. Words are matched against the whole line,
+     * ignoring case.
+     *
+     * @param command The command
+     * @param words   The words that name it
+     * @return This table
+     */
+    public CommandTable with(Command command, String... words) {
+        for (String word : words)
+            this.words.put(word.toLowerCase(Locale.ROOT), command);
+        return this;
+    }
+
+    /**
+     * @param input A line of player input
+     * @return The command the line names, or {@link Command#NONE}
+     */
+    public Command dispatch(String input) {
+        Command command = words.get(input);
+        if (command == null)
+            command = words.get(input.toLowerCase(Locale.ROOT));
+        return command == null ? Command.NONE : command;
+    }
+
+    /**
+     * Reads a whole line as a number, as {@code Integer.parseInt} would.
+     *
+     * @param input A line of player input
+     * @return The number, or {@link #NOT_A_NUMBER} if the line is not one
+     */
+    public static int number(String input) {
+        int length = input.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (input.charAt(0) == '-' || input.charAt(0) == '+')) {
+            negative = input.charAt(0) == '-';
+            i = 1;
+        }
+        if (i == length)
+            return NOT_A_NUMBER;
+
+        long value = 0;
+        for (; i < length; i++) {
+            int digit = input.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                return NOT_A_NUMBER;
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE)
+                return NOT_A_NUMBER;
+        }
+        return (int) (negative ? -value : value);
+    }
+}
@@ -0,0 +1,298 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+import events.Event;
+import events.GetPerkEvent;
+import events.GetStatusEvent;
+import requirements.AndRequirement;
+import requirements.ItemRequirement;
+import requirements.NotRequirement;
+import requirements.OrRequirement;
+import requirements.PerkRequirement;
+import requirements.Requirement;
+import requirements.StatusRequirement;
+import scenes.Branch;
+import scenes.LeafScene;
+import scenes.NodeScene;
+import scenes.Scene;
+import scenes.TerminusScene;
+
+/**
+ * <p>
+ * A CompiledChapter reads a chapter written by the ChapterCompiler. The format
+ * is documented there.
+ * </p>
+ *
+ * <p>
+ * Scenes and strings are read by id straight out of the underlying buffer, so
+ * any one scene can be decoded without reading the rest of the chapter. Large
+ * chapters are memory-mapped rather than read onto the heap, and their scenes
+ * are only decoded as the player reaches them, through a MappedSceneStore.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class CompiledChapter {
+    // Compiled chapters larger than this are mapped instead of read
+    static final long MAP_THRESHOLD = 16 << 20;
+
+    private final ByteBuffer buffer;
+    private final String[] strings;
+    private final int stringOffsets;
+    private final int stringData;
+    private final int sceneCount;
+    private final int firstScene;
+    private final int nextChapter;
+    private final int branchCount;
+    private final int sourceHash;
+    private final List<String> danglingReferences;
+    private final List<String> unknownTypes;
+    private final int sceneOffsets;
+    private final int sceneData;
+
+    /**
+     * Reads the header of a compiled chapter.
+     *
+     * @param buffer       Buffer holding the whole compiled chapter
+     * @param cacheStrings Whether to keep every string once it is decoded. This
+     *                     costs a reference per string in the chapter, so it
+     *                     is only worth it when the whole chapter is decoded.
+     * @throws IOException If the buffer is not a compiled chapter of this version
+     */
+    public CompiledChapter(ByteBuffer buffer, boolean cacheStrings) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != ChapterCompiler.MAGIC || buffer.getShort(4) != ChapterCompiler.VERSION)
+            throw new IOException("Not a compiled chapter, or compiled by another version");
+
+        int stringCount = buffer.getInt(6);
+        strings = cacheStrings ? new String[stringCount] : null;
+        stringOffsets = 10;
+        stringData = stringOffsets + (stringCount + 1) * 4;
+
+        int header = stringData + buffer.getInt(stringOffsets + stringCount * 4);
+        sceneCount = buffer.getInt(header);
+        firstScene = buffer.getInt(header + 4);
+        nextChapter = buffer.getInt(header + 8);
+        branchCount = buffer.getInt(header + 12);
+        sourceHash = buffer.getInt(header + 16);
+        int problems = header + 20;
+        danglingReferences = strings(problems);
+        problems += 4 + danglingReferences.size() * 4;
+        unknownTypes = strings(problems);
+        sceneOffsets = problems + 4 + unknownTypes.size() * 4;
+        sceneData = sceneOffsets + sceneCount * 4;
+    }
+
+    /**
+     * Loads a compiled chapter file into a Chapter. Small chapters are decoded
+     * in full, while large chapters are mapped and decoded lazily.
+     *
+     * @param compiled The compiled chapter file
+     * @return The Chapter
+     * @throws IOException
+     */
+    public static Chapter load(File compiled) throws IOException {
+        if (compiled.length() > MAP_THRESHOLD)
+            return MappedSceneStore.open(compiled).toChapter();
+        return new CompiledChapter(ByteBuffer.wrap(Files.readAllBytes(compiled.toPath())), true).toChapter();
+    }
+
+    /**
+     * Decodes every scene of this compiled chapter into a Chapter.
+     *
+     * @return The Chapter
+     */
+    public Chapter toChapter() {
+        HashMap<String, Scene> scenes = new HashMap<>();
+        for (int id = 0; id < sceneCount; id++)
+            scenes.put(string(id), scene(id));
+        return new Chapter(scenes, firstScene(), nextChapter(), branchCount, sourceHash(), danglingReferences,
+                unknownTypes);
+    }
+
+    public int sceneCount() {
+        return sceneCount;
+    }
+
+    public int branchCount() {
+        return branchCount;
+    }
+
+    public String firstScene() {
+        return string(firstScene);
+    }
+
+    public Optional<String> nextChapter() {
+        if (nextChapter < 0)
+            return Optional.empty();
+        return Optional.of(string(nextChapter));
+    }
+
+    /**
+     * @return The hash of the JSON file this chapter was compiled from, or
+     *         {@code null} if it is not known
+     */
+    public String sourceHash() {
+        if (sourceHash < 0)
+            return null;
+        return string(sourceHash);
+    }
+
+    /**
+     * @return A description of every branch or leaf of the chapter that leads
+     *         to a scene it does not have, as found when it was compiled
+     */
+    public List<String> danglingReferences() {
+        return danglingReferences;
+    }
+
+    /**
+     * @return A description of every scene, event or requirement of the
+     *         chapter of a type that is not known, as found when it was
+     *         compiled
+     */
+    public List<String> unknownTypes() {
+        return unknownTypes;
+    }
+
+    /**
+     * Reads a count followed by that many string ids.
+     */
+    private List<String> strings(int offset) {
+        String[] read = new String[buffer.getInt(offset)];
+        for (int i = 0; i < read.length; i++)
+            read[i] = string(buffer.getInt(offset + 4 + i * 4));
+        return List.of(read);
+    }
+
+    /**
+     * Finds the id of a scene from its index. Scene indexes are the first
+     * strings in the table, in sorted order, so this is a binary search over
+     * the buffer and needs no index on the heap.
+     *
+     * @param index The index of a scene
+     * @return The id of the scene, or {@code -1} if there is no such scene
+     */
+    public int sceneId(String index) {
+        int low = 0;
+        int high = sceneCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compare = string(mid).compareTo(index);
+            if (compare < 0)
+                low = mid + 1;
+            else if (compare > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * @param id A string id
+     * @return The string with this id in the string table
+     */
+    public String string(int id) {
+        if (strings != null && strings[id] != null)
+            return strings[id];
+
+        int start = buffer.getInt(stringOffsets + id * 4);
+        int end = buffer.getInt(stringOffsets + id * 4 + 4);
+        byte[] bytes = new byte[end - start];
+        buffer.get(stringData + start, bytes);
+        String string = new String(bytes, StandardCharsets.UTF_8);
+        if (strings != null)
+            strings[id] = string;
+        return string;
+    }
+
+    /**
+     * Decodes a single scene, along with its lines, event and branches, and
+     * links it to the scenes it leads to.
+     *
+     * @param id The id of the scene
+     * @return The decoded Scene
+     */
+    public Scene scene(int id) {
+        Scene scene = decodeScene(id);
+        scene.link(id, this::sceneId);
+        return scene;
+    }
+
+    private Scene decodeScene(int id) {
+        ByteBuffer data = buffer.duplicate();
+        data.position(sceneData + buffer.getInt(sceneOffsets + id * 4));
+
+        String index = string(id);
+        byte type = data.get();
+        String lines = string(data.getInt());
+        Optional<Event> event = readEvent(data);
+
+        switch (type) {
+            case ChapterCompiler.NODE:
+                int firstBranchId = data.getInt();
+                int count = data.getInt();
+                ArrayList<Branch> branches = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    String bScene = string(data.getInt());
+                    String prompt = string(data.getInt());
+                    Optional<Event> bEvent = readEvent(data);
+                    Optional<Requirement> requirement = Optional.ofNullable(readRequirement(data));
+                    branches.add(new Branch(bScene, prompt, bEvent, requirement));
+                }
+                NodeScene node = new NodeScene(index, lines, event, branches);
+                node.numberBranches(firstBranchId);
+                return node;
+            case ChapterCompiler.LEAF:
+                return new LeafScene(index, lines, event, string(data.getInt()));
+            case ChapterCompiler.TERMINUS:
+                return new TerminusScene(index, lines);
+            default:
+                throw new IllegalStateException("Unknown scene type " + type + " in compiled chapter");
+        }
+    }
+
+    private Optional<Event> readEvent(ByteBuffer data) {
+        switch (data.get()) {
+            case ChapterCompiler.GET_PERK:
+                return Optional.of(new GetPerkEvent(string(data.getInt())));
+            case ChapterCompiler.GET_STATUS:
+                return Optional.of(new GetStatusEvent(string(data.getInt())));
+            default:
+                return Optional.empty();
+        }
+    }
+
+    private Requirement readRequirement(ByteBuffer data) {
+        byte op = data.get();
+        switch (op) {
+            case ChapterCompiler.PERK:
+                return new PerkRequirement(string(data.getInt()));
+            case ChapterCompiler.ITEM:
+                return new ItemRequirement(string(data.getInt()));
+            case ChapterCompiler.STATUS:
+                return new StatusRequirement(string(data.getInt()));
+            case ChapterCompiler.OR:
+            case ChapterCompiler.AND:
+                int count = data.getInt();
+                ArrayList<Requirement> requirements = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    requirements.add(readRequirement(data));
+                return op == ChapterCompiler.OR ? new OrRequirement(requirements) : new AndRequirement(requirements);
+            case ChapterCompiler.NOT:
+                return new NotRequirement(readRequirement(data));
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import requirements.RequirementFactory;
+import scenes.Branch;
+import scenes.NodeScene;
+import scenes.Scene;
+
+/**
+ * <p>
+ * A DependencyIndex maps each perk, item and status to the branches of a
+ * chapter whose requirements refer to it, so it can answer "which branches
+ * might open or close if the player gains perk X?" with a single lookup,
+ * however large the chapter is.
+ * </p>
+ *
+ * <p>
+ * Attributes anywhere in a requirement count, including inside nested ANDs and
+ * ORs. Each dependent branch also records which way the attribute can move
+ * it: an attribute under an even number of NOTs can only help the player meet
+ * the requirement, and under an odd number can only hurt. An attribute that
+ * appears both ways can do either.
+ * </p>
+ *
+ * <p>
+ * The index is built once per chapter and never changes, like the chapter
+ * itself, so it is shared by every session. Chapters served lazily by a
+ * MappedSceneStore are not indexed. The engine itself does not use the index:
+ * EligibleBranchCache works out what a change affects from the compiled
+ * requirements. It is for tools that ask about a chapter, such as
+ * {@link #main(String[])}.
+ * </p>
+ *
+ * <pre>
+ * mvn compile exec:java -q -Dexec.mainClass=game.DependencyIndex -Dexec.args="data/Debug 1"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class DependencyIndex {
+
+    /**
+     * A branch whose requirement refers to an attribute.
+     *
+     * @param scene            The index of the scene the branch is in
+     * @param branch           The branch
+     * @param enabledByGaining Whether gaining the attribute can make the branch
+     *                         available
+     * @param disabledByGaining Whether gaining the attribute can make the
+     *                         branch unavailable. Losing the attribute does the
+     *                         opposite.
+     */
+    public record Dependent(String scene, Branch branch, boolean enabledByGaining, boolean disabledByGaining) {
+    }
+
+    private final Map<String, List<Dependent>> perks;
+    private final Map<String, List<Dependent>> items;
+    private final Map<String, List<Dependent>> statuses;
+
+    private DependencyIndex(Map<String, List<Dependent>> perks, Map<String, List<Dependent>> items,
+            Map<String, List<Dependent>> statuses) {
+        this.perks = perks;
+        this.items = items;
+        this.statuses = statuses;
+    }
+
+    /**
+     * Builds the index of a chapter by walking the requirement of every branch
+     * once.
+     *
+     * @param chapter The chapter to index
+     * @return The index
+     */
+    public static DependencyIndex build(Chapter chapter) {
+        HashMap<String, List<Dependent>> perks = new HashMap<>();
+        HashMap<String, List<Dependent>> items = new HashMap<>();
+        HashMap<String, List<Dependent>> statuses = new HashMap<>();
+
+        ArrayList<String> indexes = new ArrayList<>(chapter.scenes().keySet());
+        Collections.sort(indexes);
+        for (String index : indexes) {
+            if (!(chapter.scene(index) instanceof NodeScene node))
+                continue;
+            for (Branch branch : node.branches()) {
+                if (branch.requirement().isEmpty())
+                    continue;
+
+                // Which ways each attribute appears in this branch, as bit 0 for positive and bit 1 for negative
+                LinkedHashMap<String, Integer> branchPerks = new LinkedHashMap<>();
+                LinkedHashMap<String, Integer> branchItems = new LinkedHashMap<>();
+                LinkedHashMap<String, Integer> branchStatuses = new LinkedHashMap<>();
+                RequirementFactory.references(branch.requirement().get(), new RequirementFactory.References() {
+                    public void perk(String perk, boolean positive) {
+                        branchPerks.merge(perk, positive ? 1 : 2, (a, b) -> a | b);
+                    }
+
+                    public void item(String item, boolean positive) {
+                        branchItems.merge(item, positive ? 1 : 2, (a, b) -> a | b);
+                    }
+
+                    public void status(String status, boolean positive) {
+                        branchStatuses.merge(status, positive ? 1 : 2, (a, b) -> a | b);
+                    }
+                });
+                add(perks, branchPerks, index, branch);
+                add(items, branchItems, index, branch);
+                add(statuses, branchStatuses, index, branch);
+            }
+        }
+        return new DependencyIndex(freeze(perks), freeze(items), freeze(statuses));
+    }
+
+    /**
+     * @param perk The name of a perk
+     * @return The branches whose requirements refer to it, in order of scene
+     *         index. Empty if there are none.
+     */
+    public List<Dependent> perk(String perk) {
+        return perks.getOrDefault(perk, List.of());
+    }
+
+    /**
+     * @param item The name of an item
+     * @return The branches whose requirements refer to it, in order of scene
+     *         index. Empty if there are none.
+     */
+    public List<Dependent> item(String item) {
+        return items.getOrDefault(item, List.of());
+    }
+
+    /**
+     * @param status The name of a status
+     * @return The branches whose requirements refer to it, in order of scene
+     *         index. Empty if there are none.
+     */
+    public List<Dependent> status(String status) {
+        return statuses.getOrDefault(status, List.of());
+    }
+
+    /**
+     * @return Every perk some requirement in the chapter refers to, with the
+     *         branches that refer to it
+     */
+    public Map<String, List<Dependent>> perks() {
+        return perks;
+    }
+
+    /**
+     * @return Every item some requirement in the chapter refers to, with the
+     *         branches that refer to it
+     */
+    public Map<String, List<Dependent>> items() {
+        return items;
+    }
+
+    /**
+     * @return Every status some requirement in the chapter refers to, with the
+     *         branches that refer to it
+     */
+    public Map<String, List<Dependent>> statuses() {
+        return statuses;
+    }
+
+    private static void add(HashMap<String, List<Dependent>> index, Map<String, Integer> ways, String scene,
+            Branch branch) {
+        ways.forEach((name, way) -> index.computeIfAbsent(name, key -> new ArrayList<>())
+                .add(new Dependent(scene, branch, (way & 1) != 0, (way & 2) != 0)));
+    }
+
+    private static Map<String, List<Dependent>> freeze(HashMap<String, List<Dependent>> index) {
+        index.replaceAll((name, dependents) -> List.copyOf(dependents));
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Prints the index of a chapter of a game.
+     *
+     * @param args The game directory, then the chapter, such as
+     *             {@code data/Debug 1}
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        File gameDir = new File(args.length > 0 ? args[0] : "data/The_Curse_Of_Sigfried");
+        String chapter = args.length > 1 ? args[1] : "1";
+        Chapter loaded = ChapterCache.shared().get(gameDir, chapter);
+        // A mapped chapter is not indexed, so index the JSON it was compiled from
+        if (loaded.isLazy())
+            loaded = new GameParser(ChapterCache.chapterFile(gameDir, chapter)).parseChapter();
+        DependencyIndex index = loaded.dependencies();
+
+        print("Perk", index.perks());
+        print("Item", index.items());
+        print("Status", index.statuses());
+    }
+
+    private static void print(String kind, Map<String, List<Dependent>> index) {
+        ArrayList<String> names = new ArrayList<>(index.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            System.out.printf("%s %s%n", kind, name);
+            for (Dependent dependent : index.get(name))
+                System.out.printf("    scene %-12s branch %-5d %s%n", dependent.scene(), dependent.branch().id(),
+                        dependent.enabledByGaining() && dependent.disabledByGaining() ? "either way"
+                                : dependent.enabledByGaining() ? "opened by gaining" : "closed by gaining");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import requirements.CompiledRequirement;
+import scenes.Branch;
+import scenes.NodeScene;
+
+/**
+ * <p>
+ * The EligibleBranchCache remembers, for each node scene a session has
+ * visited, which of its branches the player met the requirements of, along
+ * with every perk, item and status those requirements depend on. When the
+ * player comes back to the scene the requirements are only evaluated again if
+ * one of those attributes has changed since, which the Player tracks by
+ * version.
+ * </p>
+ *
+ * <p>
+ * Taking a branch does not make the entry stale. Branches the player has
+ * taken are left out when the list is handed back, as that is a bit test per
+ * branch.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class EligibleBranchCache {
+
+    private static class Entry {
+        final NodeScene node;
+        final Player player;
+        final Branch[] met;
+        final CompiledRequirement[] requirements;
+        long checkedAt;
+
+        Entry(NodeScene node, Player player, Branch[] met, CompiledRequirement[] requirements) {
+            this.node = node;
+            this.player = player;
+            this.met = met;
+            this.requirements = requirements;
+            this.checkedAt = player.version();
+        }
+    }
+
+    // Entries by scene id
+    private Entry[] entries = new Entry[64];
+    private long hits;
+    private long misses;
+    private long stale;
+
+    /**
+     * Finds the branches of a node scene the player can take: those they have
+     * not taken before, and whose requirements they meet.
+     *
+     * @param node     The scene the player is in
+     * @param player   The player character
+     * @param consumed The ids of the branches the player has taken
+     * @return The eligible branches, in the order they appear in the scene
+     */
+    public ArrayList<Branch> eligible(NodeScene node, Player player, BitSet consumed) {
+        int id = node.id();
+        Entry entry = id >= 0 && id < entries.length ? entries[id] : null;
+        if (entry != null && entry.node == node && entry.player == player) {
+            if (entry.checkedAt == player.version() || unchanged(entry, player)) {
+                entry.checkedAt = player.version();
+                hits++;
+                return unconsumed(entry.met, consumed);
+            }
+            stale++;
+        } else {
+            misses++;
+        }
+
+        entry = evaluate(node, player);
+        if (id >= 0) {
+            if (id >= entries.length)
+                entries = Arrays.copyOf(entries, Math.max(id + 1, entries.length * 2));
+            entries[id] = entry;
+        }
+        return unconsumed(entry.met, consumed);
+    }
+
+    /**
+     * Forgets every scene, such as when the session starts a new chapter.
+     */
+    public void clear() {
+        Arrays.fill(entries, null);
+    }
+
+    /**
+     * @return The number of times a scene's branches were served without
+     *         evaluating any requirement
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of times a scene's branches were evaluated because
+     *         the scene had not been seen before
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of times a scene's branches were evaluated again
+     *         because an attribute they depend on changed
+     */
+    public long stale() {
+        return stale;
+    }
+
+    /**
+     * @return The fraction of lookups served without evaluating requirements
+     */
+    public double hitRate() {
+        long lookups = hits + misses + stale;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private static Entry evaluate(NodeScene node, Player player) {
+        ArrayList<Branch> met = new ArrayList<>();
+        ArrayList<CompiledRequirement> requirements = new ArrayList<>();
+        for (Branch branch : node.branches()) {
+            CompiledRequirement requirement = branch.compiledRequirement(player.attributes());
+            if (requirement != null)
+                requirements.add(requirement);
+            if (requirement == null || requirement.evaluate(player))
+                met.add(branch);
+        }
+        return new Entry(node, player, met.toArray(new Branch[0]),
+                requirements.toArray(new CompiledRequirement[0]));
+    }
+
+    /**
+     * @return {@code true} if none of the attributes the entry depends on
+     *         changed since it was last checked
+     */
+    private static boolean unchanged(Entry entry, Player player) {
+        for (CompiledRequirement requirement : entry.requirements)
+            if (requirement.changedSince(player, entry.checkedAt))
+                return false;
+        return true;
+    }
+
+    private static ArrayList<Branch> unconsumed(Branch[] branches, BitSet consumed) {
+        ArrayList<Branch> eligible = new ArrayList<>(branches.length);
+        for (Branch branch : branches)
+            if (!consumed.get(branch.id()))
+                eligible.add(branch);
+        return eligible;
+    }
+}
@@ -1,33 +1,38 @@
 package game;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Optional;
 import java.util.Scanner;
 
-import scenes.Scene;
+import game.CommandTable.Command;
 
 /**
  * <p>
- * The Game class represents the current game state.
+ * The Game class drives a single GameSession from the terminal. It is just one
+ * client of the session's step API: it shows each SceneView, reads the player's
+ * choice, and hands it to the session.
  * </p>
  * 
  * <p>
- * It holds the scenes loaded from a save, or from the default library for a
- * new game. These scenes can be modified as the player progresses through
- * the story, such as when a player goes through a branch of a scene,
- * that branch will not be available should they return to that scene.
+ * The session holds the scenes loaded from a save, or from the default
+ * library for a new game. These scenes can be modified as the player
+ * progresses through the story, such as when a player goes through a branch
+ * of a scene, that branch will not be available should they return to that
+ * scene.
  * </p>
  * 
  * <p>
- * It also holds the players state, with all the info stored in the Player
- * class.
+ * The session also holds the players state, with all the info stored in the
+ * Player class.
+ * </p>
+ * 
+ * <p>
+ * Nothing in here is static, and it only talks to the player through the
+ * Scanner and PrintStream it is given, so the GameServer runs one Game per
+ * connection.
  * </p>
  * 
  * <p>
@@ -39,51 +44,190 @@ import scenes.Scene;
  * @author Ahmed El-Sayed
  */
 public class Game {
-    private static Player player;
-    private static HashMap<String, Scene> scenes;
-    private static String currScene;
-    private static Optional<String> nextChapter;
-    private static String gameName;
+    private final Scanner sc;
+    private final GameMenu menu;
+    private final String prompt;
+    private final GameSession session = new GameSession();
+
+    // The commands of each menu, shared by every game
+    private static final CommandTable MAIN_MENU = new CommandTable()
+            .with(Command.NEW_GAME, "n", "new game", "1")
+            .with(Command.LOAD, "l", "load", "2")
+            .with(Command.QUIT, "q", "quit", "3")
+            .with(Command.HELP, "h", "help");
+    private static final CommandTable LIST_MENU = new CommandTable()
+            .with(Command.QUIT, "q", "quit")
+            .with(Command.BACK, "b", "back")
+            .with(Command.HELP, "h", "help");
+    private static final CommandTable SCENE = new CommandTable()
+            .with(Command.QUIT, "q", "quit")
+            .with(Command.PLAYER, "p", "player")
+            .with(Command.HELP, "h", "help");
+
+    /**
+     * Thrown to leave the game when the player quits, or their input ends.
+     */
+    private static class Quit extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Quit() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * @param sc  Scanner reading the player's input
+     * @param out Where to print the game to the player
+     */
+    public Game(Scanner sc, PrintStream out) {
+        this(sc, out, "");
+    }
+
+    /**
+     * @param sc     Scanner reading the player's input
+     * @param out    Where to print the game to the player
+     * @param prompt Printed whenever the game waits for input, so a client
+     *               can tell the game is waiting on it
+     */
+    public Game(Scanner sc, PrintStream out, String prompt) {
+        this.sc = sc;
+        this.menu = new GameMenu(out);
+        this.prompt = prompt;
+    }
 
     public static void main(String[] args) throws IOException {
         Scanner inputScanner = new Scanner(System.in);
+        new Game(inputScanner, System.out).play();
+        inputScanner.close();
+        System.exit(0);
+    }
 
-        // Initialise the game
-        mainMenu(inputScanner);
+    /**
+     * Plays the game from the main menu until the player quits, or their input
+     * ends.
+     * 
+     * @throws IOException
+     */
+    public void play() throws IOException {
+        try {
+            // Initialise the game
+            mainMenu();
+
+            // Loop until player quits
+            while (true) {
+
+                // Run the game, moving on to the next chapter as each one ends
+                SceneView view = session.view();
+                while (!view.isEnded()) {
+                    menu.clearTerminal();
+                    view = playScene(view);
+                }
 
-        // Loop until player quits
+                // The game is over, go to main menu
+                mainMenu();
+            }
+        } catch (Quit e) {
+            // The player has left
+        } finally {
+            menu.flush();
+        }
+    }
+
+    /**
+     * @return The session this game is playing
+     */
+    public GameSession session() {
+        return session;
+    }
+
+    /**
+     * Reads a line of input from the player. Everything printed so far and the
+     * prompt are written first, together, so the player sees them before we
+     * wait on them.
+     * 
+     * @return The line, without its line terminator
+     */
+    private String readLine() {
+        menu.flush(prompt);
+        if (!sc.hasNextLine())
+            throw new Quit();
+        return sc.nextLine();
+    }
+
+    /**
+     * Leaves the game.
+     */
+    private void quit() {
+        menu.clearTerminal();
+        throw new Quit();
+    }
+
+    /**
+     * Shows the player the scene they are in, and reads input until they make
+     * a choice the session accepts.
+     * 
+     * @param view The view of the scene the player is in
+     * @return The view of the scene the player moves on to
+     * @throws IOException If the next chapter could not be loaded
+     */
+    private SceneView playScene(SceneView view) throws IOException {
+        Player player = session.player();
+        boolean node = view.kind() == SceneView.Kind.NODE;
+        menu.printView(view, player);
+
+        // Loop until player makes a choice
         while (true) {
+            String input = readLine();
+            Command command = SCENE.dispatch(input);
 
-            // Run the game
-            while (!currScene.isBlank()) {
-                GameMenu.clearTerminal();
+            // Quit
+            if (command == Command.QUIT) {
+                quit();
+            }
 
-                // Run scene logic
-                Scene scene = scenes.get(currScene);
-                currScene = scene.run(inputScanner, scenes, player);
+            // Print player info
+            if (command == Command.PLAYER) {
+                menu.clearTerminal();
+                menu.printView(view, player);
+                menu.logPlayer(player);
+                continue;
+            }
 
-                // If player just ran a terminus scene, end the game.
-                System.out.println(scene.getClass().getName());
-                if (scene.getClass().equals(scenes.TerminusScene.class))
-                    nextChapter = Optional.empty();
+            // Print commands
+            if (command == Command.HELP) {
+                menu.clearTerminal();
+                menu.printView(view, player);
+                if (node)
+                    menu.logHelpScene();
+                else
+                    menu.logHelpCommon();
+                continue;
             }
 
-            // If we were given the next chapter, load it now
-            if (nextChapter.isPresent()) {
-                // Get path for next chapter file
-                String chapterName = "chapter" + nextChapter.get() + ".json";
-                System.out.println(gameName);
-                Path filePath = Paths.get(gameName, chapterName);
-                System.out.println(filePath);
-                File nextChapter = filePath.toFile();
-
-                // Load next chapter
-                loadGame(nextChapter);
+            // Leaf and terminus scenes continue on ENTER
+            if (!node) {
+                if (input.isBlank())
+                    return session.choose(0);
+                menu.clearTerminal();
+                menu.printView(view, player);
+                continue;
             }
-            // Otherwise, go to main menu
-            else {
-                mainMenu(inputScanner);
+
+            // Attempt to select branch from user input
+            int choice = CommandTable.number(input);
+            if (choice == CommandTable.NOT_A_NUMBER) {
+                menu.clearTerminal();
+                menu.printView(view, player);
+                menu.logError("Invalid option. Use [h]elp for a list of commands");
+                continue;
             }
+            SceneView next = session.choose(choice - 1);
+            if (next.error().isEmpty())
+                return next;
+
+            menu.clearTerminal();
+            menu.printView(view, player);
+            menu.logError(next.error().get());
         }
     }
 
@@ -93,52 +237,50 @@ public class Game {
      * 
      * @throws IOException
      */
-    private static void mainMenu(Scanner sc) throws IOException {
+    private void mainMenu() throws IOException {
         // Prompt player to select a game, or load a save.
-        GameMenu.clearTerminal();
-        GameMenu.printMainMenu();
+        menu.clearTerminal();
+        menu.printMainMenu();
 
         while (true) {
-            String input = sc.nextLine().toLowerCase();
+            Command command = MAIN_MENU.dispatch(readLine());
 
             // Start a new game
-            if (input.matches("[n](ew game)?|1")) {
-                GameMenu.clearTerminal();
-                if (newGame(sc)) {
+            if (command == Command.NEW_GAME) {
+                menu.clearTerminal();
+                if (newGame()) {
                     break;
                 }
-                GameMenu.printMainMenu();
+                menu.printMainMenu();
                 continue;
             }
 
             // Load save
-            if (input.matches("[l](oad)?|2")) {
-                GameMenu.clearTerminal();
-                if (loadSave(sc)) {
+            if (command == Command.LOAD) {
+                menu.clearTerminal();
+                if (loadSave()) {
                     break;
                 }
-                GameMenu.printMainMenu();
+                menu.printMainMenu();
                 continue;
             }
 
             // Quit
-            if (input.matches("[q](uit)?|3")) {
-                GameMenu.clearTerminal();
-                sc.close();
-                System.exit(0);
+            if (command == Command.QUIT) {
+                quit();
             }
 
             // Print commands
-            if (input.matches("[h](elp)?")) {
-                GameMenu.clearTerminal();
-                GameMenu.printMainMenu();
-                GameMenu.logHelpMainMenu();
+            if (command == Command.HELP) {
+                menu.clearTerminal();
+                menu.printMainMenu();
+                menu.logHelpMainMenu();
                 continue;
             }
 
-            GameMenu.clearTerminal();
-            GameMenu.printMainMenu();
-            GameMenu.logError("Invalid option, use [h]elp for a list of commands");
+            menu.clearTerminal();
+            menu.printMainMenu();
+            menu.logError("Invalid option, use [h]elp for a list of commands");
         }
     }
 
@@ -148,7 +290,7 @@ public class Game {
      * @return {@code true} if a new game was successfully created, {@code false} if
      *         we go back to the main menu
      */
-    private static boolean newGame(Scanner sc) {
+    private boolean newGame() {
         File gamesDir = new File("data");
 
         // Add each available game directory to array
@@ -161,60 +303,52 @@ public class Game {
         }
 
         // Loop until user selects a game to play.
-        GameMenu.printGames(games);
+        menu.printGames(games);
         while (true) {
-            String input = sc.nextLine().toLowerCase();
+            String input = readLine();
+            Command command = LIST_MENU.dispatch(input);
 
             // Quit
-            if (input.matches("[q](uit)?")) {
-                GameMenu.clearTerminal();
+            if (command == Command.QUIT) {
                 // Leave immediately
-                sc.close();
-                System.exit(0);
+                quit();
             }
 
             // Back to main menu
-            if (input.matches("[b](ack)?")) {
-                GameMenu.clearTerminal();
+            if (command == Command.BACK) {
+                menu.clearTerminal();
                 return false;
             }
 
             // Print commands
-            if (input.matches("[h](elp)?")) {
-                GameMenu.clearTerminal();
-                GameMenu.printGames(games);
-                GameMenu.logHelpNewGame();
+            if (command == Command.HELP) {
+                menu.clearTerminal();
+                menu.printGames(games);
+                menu.logHelpNewGame();
                 continue;
             }
 
             // Attempt to start a game from user input
+            int gameOption = CommandTable.number(input);
+            if (gameOption == CommandTable.NOT_A_NUMBER) {
+                menu.clearTerminal();
+                menu.printGames(games);
+                menu.logError("Invalid option, use [h]elp for a list of commands");
+                continue;
+            }
             try {
-                int gameOption = Integer.parseInt(input) - 1;
-                try {
-                    String game = games.get(gameOption);
-                    File playerDefault = new File(game + "\\playerDefault.json");
-                    File chapter = new File(game + "\\chapter1.json");
-
-                    // Load game data from default player file
-                    loadPlayer(playerDefault);
+                String game = games.get(gameOption - 1);
 
-                    // Load game data from chapter 1
-                    loadGame(chapter);
-                    gameName = game;
+                // Load game data from default player file and chapter 1
+                session.newGame(game);
 
-                    GameMenu.clearTerminal();
-                    break;
+                menu.clearTerminal();
+                break;
 
-                } catch (Exception e) {
-                    GameMenu.clearTerminal();
-                    GameMenu.printGames(games);
-                    GameMenu.logError(e.getMessage());
-                    continue;
-                }
-            } catch (NumberFormatException e) {
-                GameMenu.clearTerminal();
-                GameMenu.printGames(games);
-                GameMenu.logError("Invalid option, use [h]elp for a list of commands");
+            } catch (Exception e) {
+                menu.clearTerminal();
+                menu.printGames(games);
+                menu.logError(e.getMessage());
                 continue;
             }
         }
@@ -222,19 +356,6 @@ public class Game {
         return true;
     }
 
-    // TODO
-    private static void loadPlayer(File playerDefault) throws FileNotFoundException {
-        GameParser playerParser = new GameParser(playerDefault);
-        player = playerParser.parsePlayer();
-    }
-
-    private static void loadGame(File chapter) throws FileNotFoundException {
-        GameParser chapterParser = new GameParser(chapter);
-        scenes = chapterParser.parseScenes();
-        currScene = chapterParser.parseCurrScene();
-        nextChapter = chapterParser.parseNextChapter();
-    }
-
     /**
      * The Load game menu. Takes user input to load from a selection of savefiles.
      * 
@@ -242,7 +363,7 @@ public class Game {
      * @return {@code true} if save was successfully loaded, {@code false} if we go
      *         back to main menu
      */
-    private static boolean loadSave(Scanner sc) throws IOException {
+    private boolean loadSave() throws IOException {
         File savesDir = new File("saves");
 
         // Add each valid saves filepath to array
@@ -254,56 +375,52 @@ public class Game {
         // Sort saves by last modified time (Descending)
         saves.sort(Comparator.comparingLong(File::lastModified).reversed());
 
-        GameMenu.printSaves(saves);
+        menu.printSaves(saves);
         while (true) {
-            String input = sc.nextLine().toLowerCase();
+            String input = readLine();
+            Command command = LIST_MENU.dispatch(input);
 
             // Quit
-            if (input.matches("[q](uit)?")) {
-                GameMenu.clearTerminal();
+            if (command == Command.QUIT) {
                 // Leave immediately
-                sc.close();
-                System.exit(0);
+                quit();
             }
 
             // Back to main menu
-            if (input.matches("[b](ack)?")) {
-                GameMenu.clearTerminal();
+            if (command == Command.BACK) {
+                menu.clearTerminal();
                 return false;
             }
 
             // Print commands
-            if (input.matches("[h](elp)?")) {
-                GameMenu.clearTerminal();
-                GameMenu.printSaves(saves);
-                GameMenu.logHelpLoad();
+            if (command == Command.HELP) {
+                menu.clearTerminal();
+                menu.printSaves(saves);
+                menu.logHelpLoad();
                 continue;
             }
 
             // Attempt to load save from user input
+            int saveOption = CommandTable.number(input);
+            if (saveOption == CommandTable.NOT_A_NUMBER) {
+                menu.clearTerminal();
+                menu.printSaves(saves);
+                menu.logError("Invalid option. Use [h]elp for a list of commands");
+                continue;
+            }
             try {
-                int saveOption = Integer.parseInt(input) - 1;
-                try {
-                    File save = saves.get(saveOption);
+                File save = saves.get(saveOption - 1);
 
-                    // Load Game data from save file
-                    loadPlayer(save);
-                    loadGame(save);
-                    gameName = new GameParser(save).parseGameName();
+                // Load Game data from save file
+                session.loadSave(save);
 
-                    GameMenu.clearTerminal();
-                    break;
+                menu.clearTerminal();
+                break;
 
-                } catch (Exception e) {
-                    GameMenu.clearTerminal();
-                    GameMenu.printSaves(saves);
-                    GameMenu.logError(e.getMessage());
-                    continue;
-                }
-            } catch (NumberFormatException e) {
-                GameMenu.clearTerminal();
-                GameMenu.printSaves(saves);
-                GameMenu.logError("Invalid option. Use [h]elp for a list of commands");
+            } catch (Exception e) {
+                menu.clearTerminal();
+                menu.printSaves(saves);
+                menu.logError(e.getMessage());
                 continue;
             }
         }
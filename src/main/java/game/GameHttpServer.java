@@ -0,0 +1,412 @@
+package game;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import scenes.Branch;
+
+/**
+ * <p>
+ * The GameHttpServer serves the game as a JSON API over HTTP, using the
+ * HttpServer built into the JDK. Sessions are kept in a SessionStore and
+ * played through the same step API as the terminal, so every choice goes
+ * through the same scene and requirement logic.
+ * </p>
+ *
+ * <pre>
+ * GET    /games                      The games under data
+ * POST   /sessions                   Start a game: {"game": "Debug"}
+ * POST   /sessions/load              Load a save: {"save": "testSave"}
+ * GET    /sessions/{id}              The current scene and choices
+ * POST   /sessions/{id}/choice       Make a choice: {"choice": 0}
+ * POST   /sessions/{id}/save         Save the session in the background: {"save": "mySave"}
+ * DELETE /sessions/{id}              End the session
+ * GET    /stats                      Counts of sessions in memory and hibernated
+ * </pre>
+ *
+ * <p>
+ * Every session response is the scene the player is in, such as:
+ * </p>
+ *
+ * <pre>
+ * {"session": "9f2c...", "game": "Debug", "chapter": "1", "scene": "1", "kind": "node", "ended": false,
+ *  "lines": "...", "event": "New Perk: Debug_Perk",
+ *  "choices": [{"choice": 0, "prompt": "...", "requirement": false}],
+ *  "player": {"name": "...", "perks": [], "items": [], "statuses": []}}
+ * </pre>
+ *
+ * <p>
+ * Choices are numbered from {@code 0}, in the order they are listed. A choice
+ * the player does not have is answered with status 400 and the same scene,
+ * with an {@code error}. Errors are otherwise answered with a status and
+ * {@code {"error": "..."}}. The cause of an internal error (status 500) is
+ * logged by the server, and not sent to the client.
+ * </p>
+ *
+ * <p>
+ * Requests are handled on virtual threads where the runtime has them, and on
+ * platform threads otherwise. Sessions left idle are hibernated to disk by the
+ * SessionStore, and come back when their player next makes a request.
+ * </p>
+ *
+ * <p>
+ * Small responses wait on delayed acknowledgements unless the JDK server sets
+ * TCP_NODELAY, costing each request about 40 ms. The server reads
+ * {@code -Dsun.net.httpserver.nodelay=true} once, when the first HttpServer
+ * is created; {@link #main(String[])} sets it unless it is given, and anything
+ * else starting a GameHttpServer should pass it at launch.
+ * </p>
+ *
+ * <pre>
+ * mvn compile exec:java -q -Dexec.mainClass=game.GameHttpServer -Dexec.args="8080 10000 1800 1000 60"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class GameHttpServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8080;
+    public static final String HIBERNATE_DIR = "hibernated";
+
+    // Names of games and saves, which must not reach outside their directory
+    private static final String NAME = "[A-Za-z0-9_ -]+";
+
+    private final HttpServer server;
+    private final SessionStore sessions;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService evictor;
+    private final boolean virtualThreads;
+
+    /**
+     * An error answered with a status and a message.
+     */
+    private static class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message, null, false, false);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Starts a server listening on a port.
+     *
+     * @param port     The port to listen on, or {@code 0} for any free port
+     * @param sessions Where to keep the sessions of players
+     * @throws IOException If the port could not be bound
+     */
+    public GameHttpServer(int port, SessionStore sessions) throws IOException {
+        this.sessions = sessions;
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                handle(exchange);
+            }
+        });
+
+        ExecutorService virtual = GameServer.newVirtualThreadExecutor();
+        virtualThreads = virtual != null;
+        handlers = virtualThreads ? virtual : GameServer.newPlatformThreadExecutor("http");
+        server.setExecutor(handlers);
+
+        evictor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "session-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweep = Math.max(1000, Math.min(sessions.idleTimeout(), sessions.hibernateAfter()) / 4);
+        evictor.scheduleWithFixedDelay(sessions::evictIdle, sweep, sweep, TimeUnit.MILLISECONDS);
+
+        server.start();
+    }
+
+    /**
+     * Serves the API until the process is stopped.
+     *
+     * @param args The port, the most sessions to keep, how long a session may
+     *             go unused in seconds, the most sessions to keep in memory,
+     *             and how long a session may go unused before it is hibernated
+     *             in seconds
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int maxSessions = args.length > 1 ? Integer.parseInt(args[1]) : SessionStore.DEFAULT_MAX_SESSIONS;
+        long idleTimeout = args.length > 2 ? Long.parseLong(args[2]) * 1000 : SessionStore.DEFAULT_IDLE_TIMEOUT;
+        int maxResident = args.length > 3 ? Integer.parseInt(args[3]) : SessionStore.DEFAULT_MAX_RESIDENT;
+        long hibernateAfter = args.length > 4 ? Long.parseLong(args[4]) * 1000
+                : SessionStore.DEFAULT_HIBERNATE_AFTER;
+
+        SessionStore sessions = new SessionStore(maxSessions, idleTimeout,
+                new SessionHibernator(new File(HIBERNATE_DIR)), maxResident, hibernateAfter);
+        GameHttpServer server = new GameHttpServer(port, sessions);
+        System.out.printf("Serving HTTP on port %d, at most %d sessions with %d in memory, on %s threads%n",
+                server.port(), maxSessions, maxResident, server.usesVirtualThreads() ? "virtual" : "platform");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/+");
+        int status = 200;
+        JSONObject response;
+        try {
+            if (path.length == 1 && path[0].equals("games")) {
+                require(method, "GET");
+                response = games();
+            } else if (path.length == 1 && path[0].equals("stats")) {
+                require(method, "GET");
+                response = stats();
+            } else if (path.length == 1 && path[0].equals("sessions")) {
+                require(method, "POST");
+                response = newGame(body(exchange));
+                status = 201;
+            } else if (path.length == 2 && path[0].equals("sessions") && path[1].equals("load")) {
+                require(method, "POST");
+                response = loadSave(body(exchange));
+                status = 201;
+            } else if (path.length == 2 && path[0].equals("sessions")) {
+                if (method.equals("DELETE")) {
+                    // Answered with a body, as the JDK server drops the connection after an empty response
+                    if (!sessions.remove(path[1]))
+                        throw new HttpError(404, "No session " + path[1]);
+                    response = new JSONObject().put("session", path[1]).put("deleted", true);
+                } else {
+                    require(method, "GET");
+                    SessionStore.Entry entry = session(path[1]);
+                    synchronized (entry) {
+                        response = toJSON(entry, entry.session().view());
+                    }
+                }
+            } else if (path.length == 3 && path[0].equals("sessions") && path[2].equals("choice")) {
+                require(method, "POST");
+                int choice = body(exchange).getInt("choice");
+                SessionStore.Entry entry = session(path[1]);
+                synchronized (entry) {
+                    SceneView view = entry.session().choose(choice);
+                    response = toJSON(entry, view);
+                    if (view.error().isPresent())
+                        status = 400;
+                }
+            } else if (path.length == 3 && path[0].equals("sessions") && path[2].equals("save")) {
+                require(method, "POST");
+                File save = saveFile(body(exchange).getString("save"));
+                SessionStore.Entry entry = session(path[1]);
+                // Only the snapshot is taken under the session's lock; the writer serialises and writes it
+                synchronized (entry) {
+                    SaveWriter.shared().save(entry.session(), save);
+                }
+                response = new JSONObject().put("session", entry.id()).put("save", save.getName());
+            } else {
+                throw new HttpError(404, "No such endpoint");
+            }
+        } catch (HttpError e) {
+            status = e.status;
+            response = new JSONObject().put("error", e.getMessage());
+        } catch (JSONException e) {
+            status = 400;
+            response = new JSONObject().put("error", e.getMessage());
+        } catch (FileNotFoundException | NoSuchElementException e) {
+            status = 404;
+            response = new JSONObject().put("error", e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            // The cause names classes and files of the server, so it is only logged here
+            System.err.println(method + " " + exchange.getRequestURI() + " failed: " + e);
+            status = 500;
+            response = new JSONObject().put("error", "Internal server error");
+        }
+        send(exchange, status, response);
+    }
+
+    private JSONObject games() {
+        ArrayList<String> games = new ArrayList<>();
+        File[] gameDirs = new File("data").listFiles();
+        if (gameDirs != null)
+            for (File gameDir : gameDirs)
+                if (gameDir.isDirectory() && new File(gameDir, "chapter1.json").isFile())
+                    games.add(gameDir.getName());
+        Collections.sort(games);
+        return new JSONObject().put("games", new JSONArray(games));
+    }
+
+    private JSONObject stats() {
+        JSONObject jStats = new JSONObject()
+                .put("sessions", sessions.size())
+                .put("resident", sessions.resident())
+                .put("hibernated", sessions.hibernated())
+                .put("created", sessions.created())
+                .put("evicted", sessions.evicted());
+        SessionHibernator hibernator = sessions.hibernator();
+        if (hibernator != null)
+            jStats.put("hibernations", hibernator.hibernated())
+                    .put("rehydrations", hibernator.rehydrated())
+                    .put("meanBytes", hibernator.meanBytes())
+                    .put("meanRehydrateMicros", hibernator.meanRehydrateNanos() / 1000)
+                    .put("maxRehydrateMicros", hibernator.maxRehydrateNanos() / 1000);
+        return jStats;
+    }
+
+    private JSONObject newGame(JSONObject request) throws HttpError, IOException {
+        String game = request.getString("game");
+        File gameDir = new File("data", game);
+        if (!game.matches(NAME) || !gameDir.isDirectory())
+            throw new HttpError(404, "No game " + game);
+
+        GameSession session = new GameSession();
+        session.newGame(gameDir.getPath());
+        SessionStore.Entry entry = sessions.add(session);
+        synchronized (entry) {
+            return toJSON(entry, session.view());
+        }
+    }
+
+    private JSONObject loadSave(JSONObject request) throws HttpError, IOException {
+        File save = saveFile(request.getString("save"));
+        try {
+            // A save made through this server may still be waiting to be written
+            SaveWriter.shared().flush(save);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + save.getName() + " to be written");
+        }
+        if (!save.isFile())
+            throw new HttpError(404, "No save " + save.getName());
+
+        GameSession session = new GameSession();
+        session.loadSave(save);
+        SessionStore.Entry entry = sessions.add(session);
+        synchronized (entry) {
+            return toJSON(entry, session.view());
+        }
+    }
+
+    private SessionStore.Entry session(String id) throws HttpError {
+        SessionStore.Entry entry = sessions.get(id);
+        if (entry == null)
+            throw new HttpError(404, "No session " + id);
+        return entry;
+    }
+
+    private static File saveFile(String name) throws HttpError {
+        if (!name.matches(NAME))
+            throw new HttpError(400, "Invalid save name " + name);
+        return new File("saves", name + ".json");
+    }
+
+    private static void require(String method, String expected) throws HttpError {
+        if (!method.equals(expected))
+            throw new HttpError(405, "Use " + expected);
+    }
+
+    private static JSONObject body(HttpExchange exchange) throws IOException, HttpError {
+        try (InputStream in = exchange.getRequestBody()) {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            if (body.isBlank())
+                throw new HttpError(400, "Missing JSON body");
+            return new JSONObject(body);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, JSONObject response) throws IOException {
+        byte[] bytes = response.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Writes what the player sees of their scene as JSON.
+     *
+     * @param entry The player's session
+     * @param view  The view of the scene they are in
+     * @return The JSON response
+     */
+    static JSONObject toJSON(SessionStore.Entry entry, SceneView view) {
+        GameSession session = entry.session();
+        Player player = session.player();
+
+        JSONObject jView = new JSONObject();
+        jView.put("session", entry.id());
+        jView.put("game", session.gameName());
+        jView.put("chapter", session.chapterId() == null ? JSONObject.NULL : session.chapterId());
+        jView.put("scene", view.sceneIndex());
+        jView.put("kind", view.kind().name().toLowerCase());
+        jView.put("ended", view.isEnded());
+        jView.put("lines", view.lines());
+        view.event().ifPresent(event -> jView.put("event", event));
+        view.error().ifPresent(error -> jView.put("error", error));
+
+        JSONArray jChoices = new JSONArray();
+        int choice = 0;
+        for (Branch branch : view.choices())
+            jChoices.put(new JSONObject()
+                    .put("choice", choice++)
+                    .put("prompt", branch.prompt())
+                    .put("requirement", branch.hasRequirement()));
+        jView.put("choices", jChoices);
+
+        jView.put("player", new JSONObject()
+                .put("name", player.name())
+                .put("perks", new JSONArray(player.perks()))
+                .put("items", new JSONArray(player.items()))
+                .put("statuses", new JSONArray(player.statuses())));
+        return jView;
+    }
+
+    /**
+     * Stops the server, dropping every session.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        evictor.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    /**
+     * @return The port the server is listening on
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return {@code true} if requests are handled on virtual threads
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return The sessions of this server's players
+     */
+    public SessionStore sessions() {
+        return sessions;
+    }
+}
@@ -2,11 +2,26 @@ package game;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.List;
 
 import scenes.Branch;
 
+/**
+ * The GameMenu prints the menus and scenes of the game to a player. Each
+ * player has their own, printing to their own terminal or connection.
+ * 
+ * <p>
+ * Nothing is printed straight away. Each screen is drawn into a TerminalFrame
+ * and written in one go by {@link #flush()}, once the game is ready for the
+ * player's input. The last scene drawn is kept, so redrawing it after a
+ * command or a mistake costs a copy rather than formatting it again.
+ * </p>
+ * 
+ * @author Ahmed El-Sayed
+ */
 public class GameMenu {
     // ANSI characters
     private static final String RED = "\033[91m";
@@ -14,16 +29,47 @@ public class GameMenu {
     private static final String BLUE = "\033[94m";
     private static final String ESC = "\033[0m";
 
+    private static final byte[] NEW_LINE = { '\n' };
+
+    private final TerminalFrame out;
+    // The last view drawn, and what was drawn for it
+    private SceneView drawnView;
+    private byte[] drawnViewBytes;
+
+    /**
+     * @param out Where to print to
+     */
+    public GameMenu(PrintStream out) {
+        this.out = new TerminalFrame(out);
+    }
+
+    /**
+     * Writes everything printed since the last flush to the player, followed
+     * by a prompt for their input.
+     * 
+     * @param prompt Printed after the frame, such as {@code "> "}
+     */
+    public void flush(String prompt) {
+        out.append(prompt).flush();
+    }
+
+    /**
+     * Writes everything printed since the last flush to the player.
+     */
+    public void flush() {
+        out.flush();
+    }
+
     /**
      * Print Main Menu options to player.
      */
-    public static void printMainMenu() {
-        System.out.print(BLUE);
-        System.out.println("WELCOME TO THE WORDGAME PROJECT!");
-        System.out.println("1. New Game");
-        System.out.println("2. Load");
-        System.out.println("3. Quit");
-        System.out.println(ESC);
+    public void printMainMenu() {
+        out.append(BLUE)
+                .append("WELCOME TO THE WORDGAME PROJECT!\n")
+                .append("1. New Game\n")
+                .append("2. Load\n")
+                .append("3. Quit\n")
+                .append(ESC + "\n");
     }
 
     /**
@@ -31,20 +77,19 @@ public class GameMenu {
      * 
      * @param games List of valid directories in {@code data}
      */
-    public static void printGames(ArrayList<String> games) {
+    public void printGames(ArrayList<String> games) {
         if (games.size() == 0) {
             logError("There are no valid games :(");
             return;
         }
-        System.out.print(BLUE);
-        System.out.println("SELECT A GAME:");
+        out.append(BLUE).append("SELECT A GAME:\n");
         int i = 1;
         for (String game : games) {
             String gameName = game.replace("_", " ").replace("data\\", "");
-            System.out.printf("%d. %s\n", i, gameName);
+            out.append(i).append(". ").append(gameName).append(NEW_LINE);
             i++;
         }
-        System.out.println(ESC);
+        out.append(ESC + "\n");
     }
 
     /**
@@ -53,25 +98,47 @@ public class GameMenu {
      * @param saves List of valid save files in {@code saves}
      * @throws IOException
      */
-    public static void printSaves(ArrayList<File> saves) throws IOException {
+    public void printSaves(ArrayList<File> saves) throws IOException {
         if (saves.size() == 0) {
             logError("There are no valid saves :(");
             return;
         }
-        System.out.print(BLUE);
-        System.out.println("SAVES:");
+        out.append(BLUE).append("SAVES:\n");
         int i = 1;
+        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
         for (File save : saves) {
             String saveName = save.toString().replace(".json", "").replace("saves\\", "");
-            SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
-            System.out.printf("%d. %-12s - %s\n", i, saveName, sdf.format(save.lastModified()));
+            out.append(String.format("%d. %-12s - %s\n", i, saveName, sdf.format(save.lastModified())));
             i++;
         }
-        System.out.println(ESC);
+        out.append(ESC + "\n");
     }
 
-    public static void printScene(String lines, Player player) {
-        System.out.printf(lines + "\n", player.name());
+    /**
+     * Prints what the player sees of a scene: its lines, the result of its
+     * event, and their choices, or that they should press ENTER to continue.
+     * 
+     * @param view   The view of the scene
+     * @param player The player character
+     */
+    public void printView(SceneView view, Player player) {
+        if (view == drawnView) {
+            out.append(drawnViewBytes);
+            return;
+        }
+
+        int mark = out.mark();
+        if (view.scene() != null)
+            out.append(view.scene().text(), player);
+        out.append(NEW_LINE);
+        if (view.event().isPresent())
+            out.append(GOLD).append(view.event().get()).append("\n\n" + ESC);
+        if (view.kind() == SceneView.Kind.NODE)
+            printBranches(view.choices(), player);
+        else
+            out.append("Press ENTER to continue...\n\n");
+        drawnView = view;
+        drawnViewBytes = out.since(mark);
     }
 
     /**
@@ -81,66 +148,65 @@ public class GameMenu {
      * @param branches Elligble branches the player may select
      * @param player   The player character
      */
-    public static void printBranches(ArrayList<Branch> branches, Player player) {
+    public void printBranches(List<Branch> branches, Player player) {
         // Print branches
         int i = 0;
         for (Branch branch : branches) {
             i++;
             // Print options that have requirements blue
             if (branch.hasRequirement())
-                System.out.print(BLUE);
+                out.append(BLUE);
 
-            System.out.printf("%d. %s\n", i, branch.prompt());
-            System.out.print(ESC);
+            out.append(i).append(". ").append(branch.prompt()).append("\n" + ESC);
         }
-        System.out.println();
+        out.append(NEW_LINE);
     }
 
     /**
      * Prints commands for main menu
      */
-    public static void logHelpMainMenu() {
-        System.out.print(GOLD);
-        System.out.println("<[n]ew game>      - start a new game");
-        System.out.println("<[l]oad>          - load an existing save");
+    public void logHelpMainMenu() {
+        out.append(GOLD)
+                .append("<[n]ew game>      - start a new game\n")
+                .append("<[l]oad>          - load an existing save\n");
         logHelpCommon();
     }
 
     /**
      * Print commands for new game menu
      */
-    public static void logHelpNewGame() {
-        System.out.print(GOLD);
-        System.out.println("<game_number>     - start a new game");
-        System.out.println("<[b]ack>          - return to main menu");
+    public void logHelpNewGame() {
+        out.append(GOLD)
+                .append("<game_number>     - start a new game\n")
+                .append("<[b]ack>          - return to main menu\n");
         logHelpCommon();
     }
 
     /**
      * Prints commands for load menu
      */
-    public static void logHelpLoad() {
-        System.out.print(GOLD);
-        System.out.println("<save_number>     - load an existing save");
-        System.out.println("<[b]ack>          - return to main menu");
+    public void logHelpLoad() {
+        out.append(GOLD)
+                .append("<save_number>     - load an existing save\n")
+                .append("<[b]ack>          - return to main menu\n");
         logHelpCommon();
     }
 
-    public static void logHelpScene() {
-        System.out.print(GOLD);
-        System.out.println("<branch_number>   - select branch");
-        System.out.println("<[p]layer>        - print player info");
+    public void logHelpScene() {
+        out.append(GOLD)
+                .append("<branch_number>   - select branch\n")
+                .append("<[p]layer>        - print player info\n");
         logHelpCommon();
     }
 
     /**
      * Prints commands common to all menus
      */
-    public static void logHelpCommon() {
-        System.out.print(GOLD);
-        System.out.println("<[q]uit>          - quit the game");
-        System.out.println("<[h]elp>          - print this message");
-        System.out.println(ESC);
+    public void logHelpCommon() {
+        out.append(GOLD)
+                .append("<[q]uit>          - quit the game\n")
+                .append("<[h]elp>          - print this message\n")
+                .append(ESC + "\n");
     }
 
     /**
@@ -148,28 +214,27 @@ public class GameMenu {
      * 
      * @param error
      */
-    public static void logError(String error) {
-        System.out.print(RED);
-        System.out.println(error);
-        System.out.println(ESC);
+    public void logError(String error) {
+        out.append(RED).append(String.valueOf(error)).append("\n" + ESC + "\n");
     }
 
     /**
      * Prints information about the player to terminal
      */
-    public static void logPlayer(Player player) {
-        System.out.print(BLUE);
-        System.out.printf("%s\n", player.name());
-        System.out.printf("Perks:      %s\n", player.perks());
-        System.out.printf("Inventory:  %s\n", player.items());
-        System.out.printf("Statuses:   %s\n", player.statuses());
-        System.out.println(ESC);
+    public void logPlayer(Player player) {
+        out.append(BLUE)
+                .append(player.name() + "\n")
+                .append("Perks:      " + player.perks() + "\n")
+                .append("Inventory:  " + player.items() + "\n")
+                .append("Statuses:   " + player.statuses() + "\n")
+                .append(ESC + "\n");
     }
 
     /**
-     * Helper function, clears the terminal.
+     * Helper function, clears the terminal. Anything printed since the last
+     * flush would be cleared straight away, so it is never written.
      */
-    public static void clearTerminal() {
-        System.out.print("\033[H\033[2J");
+    public void clearTerminal() {
+        out.clear();
     }
 }
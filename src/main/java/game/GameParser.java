@@ -1,14 +1,25 @@
 package game;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
 
 import events.Event;
@@ -23,15 +34,45 @@ import scenes.Scene;
 import scenes.TerminusScene;
 
 /**
+ * <p>
  * This class is responsible for parsing the JSON file with the given filename,
  * and returning the appropriate Game Objects for the TextGame to use.
+ * </p>
+ * 
+ * <p>
+ * The file is read once, as a stream of tokens, when the parser is created.
+ * Scenes, branches, events and requirements are built as their tokens arrive,
+ * so the file is never held in memory as a JSONObject. The methods taking a
+ * JSONObject still parse from JSON that is already in memory. The bytes of the
+ * file are hashed as they are read, so a Chapter knows which version of its
+ * file it came from.
+ * </p>
+ * 
+ * <p>
+ * A scene, event or requirement of a type the parser does not know is left
+ * out, as it always has been, but is also noted so that
+ * {@link #unknownTypes()} can report it.
+ * </p>
  * 
  * @author Ahmed El-Sayed
  */
 public class GameParser {
 
-    // File parsed to JSON Object
-    private JSONObject jFile;
+    // Fields of the file, or null if the file did not have them
+    private Player player;
+    private HashMap<String, Scene> scenes;
+    private String currScene;
+    private String nextChapter;
+    private String gameName;
+    private BitSet consumedBranches;
+    private String chapter;
+    private String chapterHash;
+    private String hash;
+    private Integer journal;
+    // Everything of a type the parser does not know, which it left out
+    private final ArrayList<String> unknownTypes = new ArrayList<>();
+    private final ArrayList<String> unknownEvents = new ArrayList<>();
+    private final ArrayList<String> unknownRequirements = new ArrayList<>();
 
     /**
      * Given the filename of a JSON data file or JSON save file, creates a
@@ -41,27 +82,74 @@ public class GameParser {
      * @throws FileNotFoundException
      */
     public GameParser(File fileName) throws FileNotFoundException {
-        jFile = new JSONObject(new JSONTokener(new FileReader(fileName)));
+        MessageDigest digest = sha256();
+        DigestInputStream in = new DigestInputStream(new FileInputStream(fileName), digest);
+        try (JsonStreamReader reader = new JsonStreamReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "player":
+                        player = readPlayer(reader);
+                        break;
+                    case "scenes":
+                        scenes = readScenes(reader);
+                        break;
+                    case "currScene":
+                        currScene = reader.nextString();
+                        break;
+                    case "nextChapter":
+                        nextChapter = reader.nextString();
+                        break;
+                    case "gameName":
+                        gameName = reader.nextString();
+                        break;
+                    case "consumedBranches":
+                        consumedBranches = readConsumedBranches(reader);
+                        break;
+                    case "chapter":
+                        chapter = reader.nextString();
+                        break;
+                    case "chapterHash":
+                        chapterHash = reader.nextString();
+                        break;
+                    case "journal":
+                        journal = reader.nextInt();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            // Hash whatever the reader had not buffered yet
+            in.transferTo(OutputStream.nullOutputStream());
+            hash = HexFormat.of().formatHex(digest.digest());
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
     }
 
     /**
-     * Parses the JSON representation of the player into a Player object.
+     * Parses the JSON representation of the player into a Player object, with
+     * attribute tables of its own.
      * 
      * @return The Player object
      */
     public Player parsePlayer() {
+        return parsePlayer(new Attributes());
+    }
 
-        JSONObject jPlayer = jFile.getJSONObject("player");
-        String name = jPlayer.getString("name");
-        ArrayList<String> perks;
-        ArrayList<String> items;
-        ArrayList<String> statuses;
-
-        perks = parseListStr(jPlayer.optJSONArray("perks"));
-        items = parseListStr(jPlayer.optJSONArray("items"));
-        statuses = parseListStr(jPlayer.optJSONArray("statuses"));
-
-        return new Player(name, perks, items, statuses);
+    /**
+     * Parses the JSON representation of the player into a Player object.
+     * 
+     * @param attributes The attributes of the game the player is in
+     * @return The Player object
+     */
+    public Player parsePlayer(Attributes attributes) {
+        Player parsed = require(player, "player");
+        return new Player(parsed.name(), attributes, parsed.perks(), parsed.items(), parsed.statuses());
     }
 
     /**
@@ -71,17 +159,350 @@ public class GameParser {
      * @return A Hashmap of Scenes, keyed by their index from the JSON file
      */
     public HashMap<String, Scene> parseScenes() {
-        JSONObject jScenes = jFile.getJSONObject("scenes");
-        HashMap<String, Scene> scenes = new HashMap<>();
-        jScenes.keySet().forEach(key -> {
-            JSONObject jScene = jScenes.getJSONObject(key);
-            Scene scene = parseScene(key, jScene);
-            scenes.put(key, scene);
-        });
+        return require(scenes, "scenes");
+    }
+
+    /**
+     * Parses the scenes, first scene and next chapter of this file into a
+     * Chapter that can be shared between sessions.
+     * 
+     * @return The parsed Chapter
+     */
+    public Chapter parseChapter() {
+        return new Chapter(parseScenes(), parseCurrScene(), parseNextChapter(), hash, unknownTypes());
+    }
 
+    /**
+     * Parses the current scene from the JSON file.
+     * 
+     * @return The current scene index
+     */
+    public String parseCurrScene() {
+        return require(currScene, "currScene");
+    }
+
+    /**
+     * Parses the next chapter, if it exists, from the JSON file.
+     * 
+     * @return Optionally, the identity of the next chapter
+     */
+    public Optional<String> parseNextChapter() {
+        if (nextChapter != null && !nextChapter.isEmpty())
+            return Optional.of(nextChapter);
+        return Optional.empty();
+    }
+
+    /**
+     * Parses the ids of the branches the player has already taken. This field
+     * is only found in save files, and is empty if it is missing.
+     * 
+     * @return The ids of the branches the player has taken
+     */
+    public BitSet parseConsumedBranches() {
+        if (consumedBranches == null)
+            return new BitSet();
+        return (BitSet) consumedBranches.clone();
+    }
+
+    /**
+     * Does this file hold its own scenes? Chapter files and full saves do,
+     * while delta saves only refer to the chapter they were made on.
+     * 
+     * @return {@code true} if the file has a {@code scenes} field
+     */
+    public boolean hasScenes() {
+        return scenes != null;
+    }
+
+    /**
+     * Parses the chapter a delta save was made on.
+     * 
+     * @return The chapter, such as {@code "1"} for {@code chapter1.json}
+     */
+    public String parseChapterId() {
+        return require(chapter, "chapter");
+    }
+
+    /**
+     * Parses the hash of the chapter a delta save was made on.
+     * 
+     * @return The SHA-256 of the chapter file, in hex
+     */
+    public String parseChapterHash() {
+        return require(chapterHash, "chapterHash");
+    }
+
+    /**
+     * Parses the journal that follows a SessionJournal snapshot.
+     * 
+     * @return The generation of the journal
+     */
+    public int parseJournal() {
+        return require(journal, "journal");
+    }
+
+    /**
+     * @return A description of every scene, event and requirement in the file
+     *         whose type is not known, and which was left out
+     */
+    public List<String> unknownTypes() {
+        return Collections.unmodifiableList(unknownTypes);
+    }
+
+    /**
+     * @return The SHA-256 of the file this parser read, in hex
+     */
+    public String hash() {
+        return hash;
+    }
+
+    /**
+     * Parses the game name from JSON.
+     * 
+     * @return The name of the Game
+     */
+    public String parseGameName() {
+        return require(gameName, "gameName");
+    }
+
+    /**
+     * Hashes a file the same way a GameParser does as it reads it, without
+     * parsing it.
+     *
+     * @param file A JSON file
+     * @return The SHA-256 of the file, in hex
+     * @throws IOException
+     */
+    static String hash(File file) throws IOException {
+        MessageDigest digest = sha256();
+        try (DigestInputStream in = new DigestInputStream(new FileInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Throws the same exception a JSONObject would for a missing field.
+     */
+    private static <T> T require(T field, String name) {
+        if (field == null)
+            throw new JSONException("JSONObject[\"" + name + "\"] not found.");
+        return field;
+    }
+
+    private Player readPlayer(JsonStreamReader reader) {
+        String name = null;
+        ArrayList<String> perks = new ArrayList<>();
+        ArrayList<String> items = new ArrayList<>();
+        ArrayList<String> statuses = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "perks":
+                    perks = readListStr(reader);
+                    break;
+                case "items":
+                    items = readListStr(reader);
+                    break;
+                case "statuses":
+                    statuses = readListStr(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Player(require(name, "name"), perks, items, statuses);
+    }
+
+    private HashMap<String, Scene> readScenes(JsonStreamReader reader) {
+        HashMap<String, Scene> scenes = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String index = reader.nextName();
+            Scene scene = readScene(index, reader);
+            if (scene != null)
+                scenes.put(index, scene);
+        }
+        reader.endObject();
         return scenes;
     }
 
+    /**
+     * Reads a single scene. The fields of a scene may come in any order, so
+     * the scene is only built once all of them are read.
+     */
+    private Scene readScene(String index, JsonStreamReader reader) {
+        String sceneType = null;
+        String lines = null;
+        String nextScene = "";
+        Optional<Event> event = Optional.empty();
+        ArrayList<Branch> branches = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "sceneType":
+                    sceneType = reader.nextString();
+                    break;
+                case "lines":
+                    lines = reader.nextString();
+                    break;
+                case "nextScene":
+                    nextScene = reader.nextString();
+                    break;
+                case "event":
+                    event = readEvent(reader);
+                    for (String type : unknownEvents)
+                        unknownTypes.add("Scene " + index + " has unknown event type " + type);
+                    unknownEvents.clear();
+                    break;
+                case "branches":
+                    branches = readBranches(reader, index);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        require(sceneType, "sceneType");
+        require(lines, "lines");
+        switch (sceneType) {
+            case "leaf":
+                return new LeafScene(index, lines, event, nextScene);
+            case "node":
+                return new NodeScene(index, lines, event, require(branches, "branches"));
+            case "terminus":
+                return new TerminusScene(index, lines);
+            default:
+                unknownTypes.add("Scene " + index + " has unknown sceneType " + sceneType);
+                return null;
+        }
+    }
+
+    /**
+     * Reads an event, noting its type in {@code unknownEvents} if it is not
+     * known.
+     */
+    private Optional<Event> readEvent(JsonStreamReader reader) {
+        if (reader.peek() == JsonStreamReader.Token.NULL) {
+            reader.nextNull();
+            return Optional.empty();
+        }
+
+        String eventType = null;
+        String arg = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "type":
+                    eventType = reader.nextString();
+                    break;
+                case "arg":
+                    arg = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // Return appropriate Event type
+        switch (require(eventType, "type")) {
+            case "getPerk":
+                return Optional.of(new GetPerkEvent(require(arg, "arg")));
+            case "getStatus":
+                return Optional.of(new GetStatusEvent(require(arg, "arg")));
+            default:
+                unknownEvents.add(eventType);
+                return Optional.empty();
+        }
+    }
+
+    private ArrayList<Branch> readBranches(JsonStreamReader reader, String index) {
+        ArrayList<Branch> branches = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String bScene = null;
+            String prompt = null;
+            Optional<Event> event = Optional.empty();
+            Requirement requirement = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "bScene":
+                        bScene = reader.nextString();
+                        break;
+                    case "prompt":
+                        prompt = reader.nextString();
+                        break;
+                    case "event":
+                        event = readEvent(reader);
+                        break;
+                    case "requirement":
+                        requirement = RequirementFactory.buildRequirement(reader, unknownRequirements);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            // The scene a branch leads to may come after its event and requirement
+            for (String type : unknownEvents)
+                unknownTypes.add("Branch of scene " + index + " to scene " + bScene
+                        + " has unknown event type " + type);
+            for (String type : unknownRequirements)
+                unknownTypes.add("Branch of scene " + index + " to scene " + bScene
+                        + " has unknown requirement type " + type);
+            unknownEvents.clear();
+            unknownRequirements.clear();
+
+            branches.add(new Branch(require(bScene, "bScene"), require(prompt, "prompt"), event,
+                    Optional.ofNullable(requirement)));
+        }
+        reader.endArray();
+        return branches;
+    }
+
+    private BitSet readConsumedBranches(JsonStreamReader reader) {
+        BitSet consumed = new BitSet();
+        reader.beginArray();
+        while (reader.hasNext())
+            consumed.set(reader.nextInt());
+        reader.endArray();
+        return consumed;
+    }
+
+    private ArrayList<String> readListStr(JsonStreamReader reader) {
+        ArrayList<String> list = new ArrayList<>();
+        if (reader.peek() == JsonStreamReader.Token.NULL) {
+            reader.nextNull();
+            return list;
+        }
+        reader.beginArray();
+        while (reader.hasNext())
+            list.add(reader.nextString());
+        reader.endArray();
+        return list;
+    }
+
     /**
      * Parses a single JSONObject scene into a Scene java object. Called by
      * parseScenes for each JSON scene in the file it reads.
@@ -164,36 +585,6 @@ public class GameParser {
         return branches;
     }
 
-    /**
-     * Parses the current scene from the JSON file.
-     * 
-     * @return The current scene index
-     */
-    public String parseCurrScene() {
-        return jFile.getString("currScene");
-    }
-
-    /**
-     * Parses the next chapter, if it exists, from the JSON file.
-     * 
-     * @return Optionally, the identity of the next chapter
-     */
-    public Optional<String> parseNextChapter() {
-        String nextChapter = jFile.optString("nextChapter");
-        if (!nextChapter.isEmpty())
-            return Optional.of(nextChapter);
-        return Optional.empty();
-    }
-
-    /**
-     * Parses the game name from JSON.
-     * 
-     * @return The name of the Game
-     */
-    public String parseGameName() {
-        return jFile.getString("gameName");
-    }
-
     /**
      * Parses a JSONArray of strings into an ArrayList of strings.
      * 
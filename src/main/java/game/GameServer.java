@@ -0,0 +1,275 @@
+package game;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * The GameServer serves the game over a plain TCP line protocol, so many
+ * players can play at once from one process with {@code telnet} or
+ * {@code nc}. Each connection plays its own Game, with the same menus and
+ * scenes as the terminal, reading lines from the socket and writing back
+ * to it. Every time the game waits for input it sends a {@code "> "} prompt,
+ * so a client can tell when a response is complete.
+ * </p>
+ *
+ * <p>
+ * Each connection runs on its own thread. Where the runtime has virtual
+ * threads (Java 21 and later) those are used, so thousands of idle players
+ * cost little more than their sessions. Otherwise each connection gets a
+ * platform thread with a small stack.
+ * </p>
+ *
+ * <p>
+ * Connections beyond {@code maxConnections} are told the server is full and
+ * closed, and a player who sends nothing for {@code idleTimeout} milliseconds
+ * is disconnected.
+ * </p>
+ *
+ * <pre>
+ * mvn compile exec:java -q -Dexec.mainClass=game.GameServer -Dexec.args="4000 10000 300"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class GameServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 4000;
+    public static final int DEFAULT_MAX_CONNECTIONS = 10_000;
+    public static final int DEFAULT_IDLE_TIMEOUT = 300_000;
+    public static final String PROMPT = "> ";
+
+    // Stack size of platform connection threads, which is plenty for the game
+    private static final long STACK_SIZE = 256 << 10;
+    private static final int BACKLOG = 1024;
+
+    private final ServerSocket server;
+    private final int maxConnections;
+    private final int idleTimeout;
+    private final boolean virtualThreads;
+    private final ExecutorService connections;
+    private final Thread acceptor;
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Starts a server listening on a port.
+     *
+     * @param port           The port to listen on, or {@code 0} for any free
+     *                       port
+     * @param maxConnections The most players connected at once
+     * @param idleTimeout    How long a player may send nothing before they are
+     *                       disconnected, in milliseconds
+     * @throws IOException If the port could not be bound
+     */
+    public GameServer(int port, int maxConnections, int idleTimeout) throws IOException {
+        this.maxConnections = maxConnections;
+        this.idleTimeout = idleTimeout;
+        server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress(port), BACKLOG);
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        virtualThreads = virtual != null;
+        connections = virtualThreads ? virtual : newPlatformThreadExecutor("player");
+
+        acceptor = new Thread(this::accept, "game-server-accept");
+        acceptor.start();
+    }
+
+    /**
+     * Serves the game until the process is stopped.
+     *
+     * @param args The port, the most players connected at once, and how long a
+     *             player may be idle in seconds
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int maxConnections = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_CONNECTIONS;
+        int idleTimeout = args.length > 2 ? Integer.parseInt(args[2]) * 1000 : DEFAULT_IDLE_TIMEOUT;
+
+        GameServer server = new GameServer(port, maxConnections, idleTimeout);
+        System.out.printf("Serving on port %d, at most %d players, on %s threads%n", server.port(), maxConnections,
+                server.usesVirtualThreads() ? "virtual" : "platform");
+        server.acceptor.join();
+    }
+
+    /**
+     * @return An executor running each task on a new virtual thread, or
+     *         {@code null} if this runtime does not have them
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) executor.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param name The name of the threads, which are numbered after it
+     * @return An executor running each task on a daemon platform thread with
+     *         a small stack, reusing idle threads
+     */
+    static ExecutorService newPlatformThreadExecutor(String name) {
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(null, task, name + "-" + threads.incrementAndGet(), STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void accept() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                if (closed)
+                    return;
+                continue;
+            }
+
+            accepted.incrementAndGet();
+            if (active.incrementAndGet() > maxConnections) {
+                active.decrementAndGet();
+                rejected.incrementAndGet();
+                refuse(socket);
+                continue;
+            }
+            try {
+                connections.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                active.decrementAndGet();
+                refuse(socket);
+            }
+        }
+    }
+
+    /**
+     * Plays a game over a connection until the player quits, disconnects or
+     * goes idle.
+     */
+    private void serve(Socket socket) {
+        sockets.add(socket);
+        try (socket) {
+            socket.setSoTimeout(idleTimeout);
+            socket.setTcpNoDelay(true);
+            Scanner in = new Scanner(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false,
+                    StandardCharsets.UTF_8);
+
+            new Game(in, out, PROMPT).play();
+
+            // The Scanner reports a read that timed out as the end of input
+            if (in.ioException() instanceof SocketTimeoutException) {
+                timedOut.incrementAndGet();
+                out.printf("%nDisconnected after %d seconds idle%n", idleTimeout / 1000);
+                out.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                failed.incrementAndGet();
+                System.err.println("Connection from " + socket.getRemoteSocketAddress() + " failed: " + e);
+            }
+        } finally {
+            sockets.remove(socket);
+            active.decrementAndGet();
+        }
+    }
+
+    private static void refuse(Socket socket) {
+        try (socket) {
+            OutputStream out = socket.getOutputStream();
+            out.write("The server is full, please try again later\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            // They will find out when the connection closes
+        }
+    }
+
+    /**
+     * Stops accepting players and disconnects everyone still playing.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (Socket socket : sockets)
+            socket.close();
+        connections.shutdownNow();
+    }
+
+    /**
+     * @return The port the server is listening on
+     */
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return {@code true} if each connection runs on a virtual thread
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return The number of players connected now
+     */
+    public int active() {
+        return active.get();
+    }
+
+    /**
+     * @return The number of connections accepted, including those refused
+     */
+    public long accepted() {
+        return accepted.get();
+    }
+
+    /**
+     * @return The number of connections refused because the server was full
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return The number of players disconnected for being idle
+     */
+    public long timedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * @return The number of connections that ended with an error
+     */
+    public long failed() {
+        return failed.get();
+    }
+}
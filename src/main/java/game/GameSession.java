@@ -0,0 +1,546 @@
+package game;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import scenes.Branch;
+import scenes.NodeScene;
+import scenes.Scene;
+
+/**
+ * <p>
+ * A GameSession holds the state of a single playthrough. This is the player,
+ * the chapter they are in, the scene they are currently in, the chapter that
+ * comes after this one, and the game they are playing.
+ * </p>
+ *
+ * <p>
+ * The Chapter is shared and never modified, so the session keeps its own
+ * record of the branches the player has already taken, as a set of branch
+ * ids. This costs a bit per branch rather than a copy of the whole chapter.
+ * </p>
+ *
+ * <p>
+ * A session is played one step at a time: {@link #view()} enters the current
+ * scene and shows what the player sees, and {@link #choose(int)} makes their
+ * choice and moves them on to the next scene. Neither reads input nor prints
+ * anything. The Game class drives one session this way from the terminal, but
+ * nothing in here is static, so a single process may host as many sessions as
+ * it has memory for.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class GameSession {
+    private Player player;
+    private Chapter chapter;
+    private BitSet consumedBranches = new BitSet();
+    private int currScene = Scene.NO_SCENE;
+    private Optional<String> nextChapter = Optional.empty();
+    private String chapterId;
+    private String gameName;
+    private File gameDir;
+    private CompletableFuture<Chapter> prefetchedChapter;
+    private SessionJournal journal;
+    // What the player sees of the current scene, or null until it is entered
+    private SceneView view;
+    private final EligibleBranchCache eligibleBranches = new EligibleBranchCache();
+
+    /**
+     * A change to the session, to be written to its journal.
+     */
+    private interface JournalRecord {
+        void write(SessionJournal journal) throws IOException;
+    }
+
+    /**
+     * Starts a new game from the given game directory, loading the default
+     * player and the first chapter. The chapter comes from the shared
+     * ChapterCache, so it is only parsed by the first session to start it.
+     *
+     * @param game The game directory, usually under {@code data}
+     * @throws IOException
+     */
+    public void newGame(String game) throws IOException {
+        gameDir = new File(game);
+        gameName = gameDir.getName();
+
+        // Load game data from default player file
+        loadPlayer(new File(gameDir, "playerDefault.json"));
+
+        // Load game data from chapter 1
+        startChapter("1", ChapterCache.shared().get(gameDir, "1"));
+    }
+
+    /**
+     * Loads the player and game state from a save file. A delta save only
+     * names the chapter it was made on, so that chapter is loaded from the
+     * game directory and checked against the hash in the save. Older saves
+     * carry every scene of the chapter and are loaded from the save alone.
+     *
+     * @param save The JSON save file
+     * @throws IOException If the save could not be read, or its chapter has
+     *                     changed since it was saved
+     */
+    public void loadSave(File save) throws IOException {
+        loadSave(save, new File("data"));
+    }
+
+    /**
+     * Loads the player and game state from a save file, looking its game up
+     * in the given directory rather than in data.
+     *
+     * @param save     The JSON save file
+     * @param gamesDir The directory holding the game the save names
+     * @throws IOException If the save could not be read, or its chapter has
+     *                     changed since it was saved
+     */
+    public void loadSave(File save, File gamesDir) throws IOException {
+        // Everything is read before any of it is used, so a save that fails
+        // to load leaves the session as it was
+        GameParser saveParser = new GameParser(save);
+        String name = saveParser.parseGameName();
+        File dir = new File(gamesDir, name);
+        Player saved = saveParser.parsePlayer(Attributes.forGame(dir));
+
+        String id = null;
+        Chapter chapter;
+        int scene = 0;
+        Optional<String> next = Optional.empty();
+        if (saveParser.hasScenes()) {
+            chapter = saveParser.parseChapter();
+        } else {
+            id = saveParser.parseChapterId();
+            chapter = ChapterCache.shared().get(dir, id);
+            if (!saveParser.parseChapterHash().equals(chapter.hash()))
+                throw new IOException("Chapter " + id + " of " + name + " has changed since " + save.getName()
+                        + " was saved");
+            scene = chapter.sceneId(saveParser.parseCurrScene());
+            next = saveParser.parseNextChapter();
+        }
+        BitSet consumed = saveParser.parseConsumedBranches();
+
+        gameName = name;
+        gameDir = dir;
+        player = saved;
+        startChapter(id, chapter);
+        if (id != null) {
+            currScene = scene;
+            nextChapter = next;
+        }
+        consumedBranches = consumed;
+    }
+
+    /**
+     * Loads the player from a save or playerDefault file.
+     *
+     * @param file The JSON file containing a player
+     * @throws FileNotFoundException
+     */
+    public void loadPlayer(File file) throws FileNotFoundException {
+        GameParser playerParser = new GameParser(file);
+        player = playerParser.parsePlayer(attributes());
+    }
+
+    /**
+     * Loads the scenes, current scene and next chapter from a chapter file,
+     * without going through the shared ChapterCache.
+     *
+     * @param chapter The JSON chapter file
+     * @throws FileNotFoundException
+     */
+    public void loadGame(File chapter) throws FileNotFoundException {
+        startChapter(ChapterCache.load(chapter));
+    }
+
+    /**
+     * Starts playing a chapter that is not one of the numbered chapters of the
+     * game directory, so it can only be saved in full.
+     *
+     * @param chapter The chapter to play
+     */
+    public void startChapter(Chapter chapter) {
+        startChapter(null, chapter);
+    }
+
+    /**
+     * Starts playing a chapter from its first scene. No branches of the new
+     * chapter have been taken yet. If the chapter declares a next chapter, it
+     * starts loading in the background while this one is played.
+     *
+     * @param chapterId The chapter, such as {@code "1"} for
+     *                  {@code chapter1.json}, or {@code null} if it did not
+     *                  come from the game directory
+     * @param chapter   The chapter to play
+     */
+    public void startChapter(String chapterId, Chapter chapter) {
+        if (chapter != this.chapter)
+            eligibleBranches.clear();
+        this.chapterId = chapterId;
+        this.chapter = chapter;
+        view = null;
+        consumedBranches = new BitSet(chapter.branchCount());
+        currScene = chapter.firstSceneId();
+        nextChapter = chapter.nextChapter();
+
+        prefetchedChapter = null;
+        if (nextChapter.isPresent() && gameDir != null)
+            prefetchedChapter = ChapterCache.shared().prefetch(gameDir, nextChapter.get());
+        record(journal -> journal.chapterStarted(chapterId));
+    }
+
+    /**
+     * Loads the next chapter of the game, if this chapter declared one. If the
+     * chapter was prefetched it is swapped straight in, otherwise (or if the
+     * prefetch failed) it is loaded now.
+     *
+     * @return {@code true} if the next chapter was loaded, {@code false} if
+     *         this was the final chapter
+     * @throws IOException
+     */
+    public boolean loadNextChapter() throws IOException {
+        if (nextChapter.isEmpty())
+            return false;
+
+        String next = nextChapter.get();
+        CompletableFuture<Chapter> prefetched = prefetchedChapter;
+        if (prefetched != null && prefetched.isDone() && !prefetched.isCompletedExceptionally()) {
+            startChapter(next, prefetched.join());
+            return true;
+        }
+        startChapter(next, ChapterCache.shared().get(gameDir, next));
+        return true;
+    }
+
+    /**
+     * Ends the game after this chapter, such as when the player reaches a
+     * terminus scene.
+     */
+    public void endGame() {
+        nextChapter = Optional.empty();
+        record(SessionJournal::gameEnded);
+    }
+
+    /**
+     * @return {@code true} if the player is still in a scene of this chapter
+     */
+    public boolean inScene() {
+        return currScene != Scene.NO_SCENE;
+    }
+
+    /**
+     * @return The scene the player is currently in, or {@code null} if they
+     *         have left the chapter
+     */
+    public Scene currentScene() {
+        return chapter.scene(currScene);
+    }
+
+    /**
+     * Has the player already taken this branch in this chapter?
+     *
+     * @param branch A branch of the current chapter
+     * @return {@code true} if the player has taken this branch
+     */
+    public boolean isConsumed(Branch branch) {
+        return consumedBranches.get(branch.id());
+    }
+
+    /**
+     * Records that the player took this branch, so it will not be available
+     * should they return to its scene.
+     *
+     * @param branch A branch of the current chapter
+     */
+    public void consumeBranch(Branch branch) {
+        consumedBranches.set(branch.id());
+    }
+
+    /**
+     * Finds the branches of a node scene the player can take now. Requirements
+     * are only evaluated again if the player has changed in a way that could
+     * affect them since the scene was last visited.
+     *
+     * @param node A node scene of the current chapter
+     * @return The branches the player has not taken and meets the requirements
+     *         of, in the order they appear in the scene
+     */
+    public ArrayList<Branch> eligibleBranches(NodeScene node) {
+        return eligibleBranches.eligible(node, player, consumedBranches);
+    }
+
+    /**
+     * @return The cache of eligible branches, for its hit rates
+     */
+    public EligibleBranchCache eligibleBranchCache() {
+        return eligibleBranches;
+    }
+
+    /**
+     * Applies the event of a scene to the player, if it has one.
+     *
+     * @param scene The scene the player is in
+     */
+    public void runSceneEvent(Scene scene) {
+        if (scene.event().isEmpty())
+            return;
+        scene.event().get().runEvent(player);
+        record(journal -> journal.eventApplied(scene.index()));
+    }
+
+    /**
+     * Takes a branch of the current scene, applying its event and recording
+     * that it was taken. The caller moves the player on to the branch's scene.
+     *
+     * @param branch A branch of the current scene
+     */
+    public void takeBranch(Branch branch) {
+        branch.runEvent(player);
+        consumeBranch(branch);
+        if (journal != null) {
+            String scene = currScene();
+            record(journal -> journal.branchTaken(scene, branch.id()));
+        }
+    }
+
+    /**
+     * Moves the player to a scene of the current chapter.
+     *
+     * @param currScene The id of the scene, or {@link Scene#NO_SCENE} to leave
+     *                  the chapter
+     */
+    public void setCurrScene(int currScene) {
+        this.currScene = currScene;
+        view = null;
+        if (journal != null)
+            record(journal -> journal.sceneEntered(chapter.sceneIndex(currScene)));
+    }
+
+    /**
+     * Moves the player to a scene of the current chapter by its index, such as
+     * when replaying a journal. A blank index, or one the chapter does not
+     * have, leaves the chapter.
+     *
+     * @param currScene The index of the scene
+     */
+    public void setCurrScene(String currScene) {
+        setCurrScene(currScene.isBlank() ? Scene.NO_SCENE : chapter.sceneId(currScene));
+    }
+
+    /**
+     * Enters the current scene, if the player has not already, resolving its
+     * event, and shows what the player sees there.
+     *
+     * @return The view of the current scene, or the end of the game if the
+     *         player has left the last chapter
+     */
+    public SceneView view() {
+        if (view == null) {
+            Scene scene = currentScene();
+            if (scene == null)
+                return SceneView.end();
+            scene.enter(this);
+            view = SceneView.of(scene, player, scene.choices(this));
+        }
+        return view;
+    }
+
+    /**
+     * Makes the player's choice in the current scene. They move on to the next
+     * scene, which is entered, or to the next chapter if they left this one.
+     *
+     * @param choice The index of the player's choice in the current view's
+     *               choices. Scenes without choices accept any choice.
+     * @return The view of the scene the player is now in. If the choice is not
+     *         one the player has, or leads to a scene missing from the chapter,
+     *         this is the current view with an error, and nothing has changed.
+     * @throws IOException If the next chapter could not be loaded
+     */
+    public SceneView choose(int choice) throws IOException {
+        SceneView current = view();
+        if (current.isEnded())
+            return current;
+
+        List<Branch> choices = current.choices();
+        int next = current.scene().choose(this, choices, choice);
+        if (next == Scene.INVALID_CHOICE)
+            return current.withError("Invalid branch");
+        if (next == Scene.MISSING_SCENE)
+            return current.withError("That way leads to a scene missing from this chapter");
+
+        setCurrScene(next);
+        if (!inScene() && !loadNextChapter())
+            return SceneView.end();
+        return view();
+    }
+
+    /**
+     * Puts back a session that was hibernated, exactly as it was. If the
+     * player had already entered their scene, its event is not applied again.
+     *
+     * @param gameDir     The directory of the game being played
+     * @param chapterId   The chapter being played
+     * @param chapter     That chapter
+     * @param player      The player
+     * @param currScene   The id of the scene the player is in
+     * @param nextChapter The chapter after this one, if any
+     * @param consumed    The ids of the branches the player has taken
+     * @param entered     {@code true} if the player had entered their scene
+     */
+    void rehydrate(File gameDir, String chapterId, Chapter chapter, Player player, int currScene,
+            Optional<String> nextChapter, BitSet consumed, boolean entered) {
+        this.gameDir = gameDir;
+        gameName = gameDir.getName();
+        this.player = player;
+        startChapter(chapterId, chapter);
+        this.currScene = currScene;
+        this.nextChapter = nextChapter;
+        consumedBranches = consumed;
+
+        Scene scene = currentScene();
+        if (entered && scene != null)
+            view = SceneView.of(scene, player, scene.choices(this));
+    }
+
+    /**
+     * Puts the session in a state it was in before, so the StateExplorer can
+     * try every choice from the same state, and the PlaythroughSimulator can
+     * start every playthrough from the same state. Unlike {@link #rehydrate},
+     * the next chapter is not prefetched again every time.
+     *
+     * @param gameDir   The directory of the game being played
+     * @param chapterId The chapter being played
+     * @param chapter   That chapter
+     * @param player    The player, who is not shared with any other session
+     * @param currScene The id of the scene the player is in
+     * @param consumed  The ids of the branches the player has taken, which
+     *                  are not shared with any other session
+     * @param entered   {@code true} if the player had entered their scene
+     */
+    void restore(File gameDir, String chapterId, Chapter chapter, Player player, int currScene, BitSet consumed,
+            boolean entered) {
+        if (chapter != this.chapter)
+            eligibleBranches.clear();
+        this.gameDir = gameDir;
+        gameName = gameDir.getName();
+        this.chapterId = chapterId;
+        this.chapter = chapter;
+        this.player = player;
+        this.currScene = currScene;
+        nextChapter = chapter.nextChapter();
+        consumedBranches = consumed;
+        prefetchedChapter = null;
+
+        Scene scene = currentScene();
+        view = !entered || scene == null ? null : SceneView.of(scene, player, scene.choices(this));
+    }
+
+    /**
+     * @return {@code true} if the player has entered the scene they are in
+     */
+    boolean hasEntered() {
+        return view != null;
+    }
+
+    /**
+     * @return {@code true} if changes to this session are being journaled
+     */
+    boolean isJournaled() {
+        return journal != null;
+    }
+
+    /**
+     * Sets the journal every change to this session is written to. Called by
+     * the SessionJournal itself.
+     *
+     * @param journal The journal, or {@code null} to stop journaling
+     */
+    void attachJournal(SessionJournal journal) {
+        this.journal = journal;
+    }
+
+    private void record(JournalRecord record) {
+        if (journal == null)
+            return;
+        try {
+            record.write(journal);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to the journal", e);
+        }
+    }
+
+    public Player player() {
+        return player;
+    }
+
+    public Chapter chapter() {
+        return chapter;
+    }
+
+    /**
+     * @return The ids of the branches the player has taken in this chapter
+     */
+    public BitSet consumedBranches() {
+        return consumedBranches;
+    }
+
+    /**
+     * @return The index of the scene the player is in, or an empty string if
+     *         they have left the chapter
+     */
+    public String currScene() {
+        return chapter.sceneIndex(currScene);
+    }
+
+    /**
+     * @return The id of the scene the player is in, or {@link Scene#NO_SCENE}
+     *         if they have left the chapter
+     */
+    public int currSceneId() {
+        return currScene;
+    }
+
+    public Optional<String> nextChapter() {
+        return nextChapter;
+    }
+
+    /**
+     * @return The chapter being played, such as {@code "1"} for
+     *         {@code chapter1.json}, or {@code null} if it did not come from
+     *         the game directory
+     */
+    public String chapterId() {
+        return chapterId;
+    }
+
+    /**
+     * @return The attributes of the game being played, shared with every
+     *         other session playing it
+     */
+    public Attributes attributes() {
+        if (gameDir == null)
+            return player == null ? new Attributes() : player.attributes();
+        return Attributes.forGame(gameDir);
+    }
+
+    /**
+     * @return The directory of the game being played
+     */
+    public File gameDir() {
+        return gameDir;
+    }
+
+    /**
+     * @return The name of the game directory under {@code data}
+     */
+    public String gameName() {
+        return gameName;
+    }
+}
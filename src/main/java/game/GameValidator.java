@@ -0,0 +1,656 @@
+package game;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import events.Event;
+import events.GetPerkEvent;
+import events.GetStatusEvent;
+import requirements.Requirement;
+import requirements.RequirementFactory;
+import scenes.Branch;
+import scenes.LeafScene;
+import scenes.NodeScene;
+import scenes.Scene;
+
+/**
+ * <p>
+ * The GameValidator checks every chapter of a game without playing it, and
+ * reports what would otherwise only be found by a player: branches and leaves
+ * leading to scenes that do not exist, scenes that can never be reached, node
+ * scenes with no branch the player could ever take, scenes, events and
+ * requirements of unknown types, requirements that can never be met, and
+ * chapters that are missing, cannot be parsed or are never reached.
+ * </p>
+ *
+ * <p>
+ * The chapter files of the game are parsed on a fork/join pool, as many at
+ * once as the pool has threads. The chapters are followed from chapter 1, as a
+ * player would play them, each as soon as it is parsed, and dropped once it
+ * has been checked, so a game far larger than the heap can be checked a few
+ * chapters at a time. In each chapter the scenes are walked breadth first from
+ * its first scene, and each level of the walk is split between the threads of
+ * the pool.
+ * </p>
+ *
+ * <p>
+ * Events only ever give the player perks and statuses, so a player can only
+ * ever have what they start with and what is given by the events of scenes
+ * and branches they can reach. A branch is only followed once its requirement
+ * could be met by a player having some of those, and lacking any of them they
+ * did not start with. Following a branch may give more, which may open more
+ * branches, so the walk carries on until nothing more is given. Whatever is
+ * then left unreached can never be reached by any player, and a requirement
+ * that could still not be met never will be. Requirements are judged a part at
+ * a time, so a requirement that contradicts itself may be missed, but nothing
+ * is ever reported that a player could in fact do.
+ * </p>
+ *
+ * <pre>
+ * mvn compile exec:java -q -Dexec.mainClass=game.GameValidator -Dexec.args="data/Debug"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class GameValidator {
+    // Scenes handled by each task of the pool
+    private static final int SPLIT = 1024;
+    // Problems of each kind printed by main
+    private static final int PRINT_LIMIT = 20;
+    private static final Pattern CHAPTER_FILE = Pattern.compile("chapter(.+)\\.json");
+
+    /**
+     * The kinds of problem a game can have.
+     */
+    public enum Problem {
+        CHAPTER("Chapters missing, unreadable or never reached"),
+        UNKNOWN_TYPE("Unknown types"),
+        DANGLING("Dangling targets"),
+        UNREACHABLE("Unreachable scenes"),
+        DEAD_END("Dead ends"),
+        UNSATISFIABLE("Requirements that can never be met");
+
+        private final String title;
+
+        Problem(String title) {
+            this.title = title;
+        }
+
+        public String title() {
+            return title;
+        }
+    }
+
+    /**
+     * Everything found wrong with a game, by kind.
+     */
+    public static class Report {
+        private final EnumMap<Problem, List<String>> problems = new EnumMap<>(Problem.class);
+        private int chapters;
+        private long scenes;
+
+        private Report() {
+            for (Problem problem : Problem.values())
+                problems.put(problem, new ArrayList<>());
+        }
+
+        private void add(Problem problem, String description) {
+            problems.get(problem).add(description);
+        }
+
+        /**
+         * @param problem A kind of problem
+         * @return A description of every problem of that kind
+         */
+        public List<String> problems(Problem problem) {
+            return problems.get(problem);
+        }
+
+        /**
+         * @return The number of problems of every kind
+         */
+        public int count() {
+            int count = 0;
+            for (List<String> found : problems.values())
+                count += found.size();
+            return count;
+        }
+
+        /**
+         * @return The number of chapter files checked
+         */
+        public int chapters() {
+            return chapters;
+        }
+
+        /**
+         * @return The number of scenes in every chapter checked
+         */
+        public long scenes() {
+            return scenes;
+        }
+    }
+
+    /**
+     * A chapter file, as it was parsed.
+     */
+    private record Loaded(String id, File file, Chapter chapter) {
+    }
+
+    private final File gameDir;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param gameDir The game directory, usually under {@code data}
+     * @param pool    The pool to check the game on
+     */
+    public GameValidator(File gameDir, ForkJoinPool pool) {
+        this.gameDir = gameDir;
+        this.pool = pool;
+    }
+
+    /**
+     * Checks every game under {@code data}, or the game directories given.
+     * Exits with status 1 if any game has a problem.
+     *
+     * @param args The game directories to check, if not every game
+     */
+    public static void main(String[] args) throws IOException {
+        ArrayList<File> games = new ArrayList<>();
+        if (args.length == 0) {
+            for (File gameDir : new File("data").listFiles())
+                if (gameDir.isDirectory())
+                    games.add(gameDir);
+        } else {
+            for (String arg : args)
+                games.add(new File(arg));
+        }
+
+        boolean clean = true;
+        for (File gameDir : games) {
+            long start = System.nanoTime();
+            Report report = new GameValidator(gameDir, ForkJoinPool.commonPool()).validate();
+            System.out.printf("%s: %d chapters, %d scenes, %d problems in %.2f s%n", gameDir, report.chapters(),
+                    report.scenes(), report.count(), (System.nanoTime() - start) / 1e9);
+            for (Problem problem : Problem.values()) {
+                List<String> found = report.problems(problem);
+                if (found.isEmpty())
+                    continue;
+                System.out.printf("  %s (%d)%n", problem.title(), found.size());
+                for (String description : found.subList(0, Math.min(found.size(), PRINT_LIMIT)))
+                    System.out.println("    " + description);
+                if (found.size() > PRINT_LIMIT)
+                    System.out.printf("    ... and %d more%n", found.size() - PRINT_LIMIT);
+            }
+            clean &= report.count() == 0;
+        }
+        if (!clean)
+            System.exit(1);
+    }
+
+    /**
+     * Checks every chapter of the game.
+     *
+     * @return Everything found wrong with it
+     * @throws IOException If the game directory cannot be read
+     */
+    public Report validate() throws IOException {
+        Report report = new Report();
+        File[] files = gameDir.listFiles();
+        if (files == null)
+            throw new IOException(gameDir + " is not a game directory");
+        ArrayList<String> ids = new ArrayList<>();
+        for (File file : files) {
+            Matcher name = CHAPTER_FILE.matcher(file.getName());
+            if (name.matches())
+                ids.add(name.group(1));
+        }
+        ids.sort(GameValidator::compareChapters);
+        Player player = loadPlayer(report);
+
+        // Parse a few chapters ahead, in the order they are most likely played
+        ArrayDeque<ForkJoinTask<Loaded>> parsing = new ArrayDeque<>();
+        int parsed = 0;
+        HashMap<String, Loaded> waiting = new HashMap<>();
+        HashSet<String> failed = new HashSet<>();
+        HashSet<String> played = new HashSet<>();
+        Holdings holdings = new Holdings(player);
+        String id = "1";
+        String previous = null;
+
+        while (parsed < ids.size() || !parsing.isEmpty()) {
+            while (parsing.size() < pool.getParallelism() && parsed < ids.size()) {
+                String next = ids.get(parsed++);
+                parsing.add(pool.submit(() -> load(next, ChapterCache.chapterFile(gameDir, next))));
+            }
+
+            Loaded loaded;
+            try {
+                loaded = parsing.remove().join();
+            } catch (ParseException e) {
+                report.add(Problem.CHAPTER, e.getMessage());
+                failed.add(e.id);
+                continue;
+            }
+            report.chapters++;
+            report.scenes += loaded.chapter().sceneCount();
+            for (String unknown : loaded.chapter().unknownTypes())
+                report.add(Problem.UNKNOWN_TYPE, loaded.file().getName() + ": " + unknown);
+            for (String dangling : loaded.chapter().danglingReferences())
+                report.add(Problem.DANGLING, loaded.file().getName() + ": " + dangling);
+
+            // Play every chapter that is ready, carrying what the player may have into the next
+            if (id == null)
+                continue;
+            waiting.put(loaded.id(), loaded);
+            while (id != null && (loaded = waiting.remove(id)) != null) {
+                played.add(id);
+                boolean leaves = walk(loaded, holdings, report);
+                Optional<String> next = loaded.chapter().nextChapter();
+                if (next.isPresent() && !leaves)
+                    report.add(Problem.CHAPTER,
+                            loaded.file().getName() + ": No scene leads on to chapter " + next.get());
+                previous = id;
+                id = leaves ? next.orElse(null) : null;
+                if (id != null && played.contains(id))
+                    id = null;
+            }
+            if (id == null)
+                waiting.clear();
+        }
+
+        if (id != null && !failed.contains(id))
+            report.add(Problem.CHAPTER, previous == null ? "Chapter " + id + " is missing"
+                    : "Chapter " + id + ", next after chapter " + previous + ", is missing");
+        for (String never : ids)
+            if (!played.contains(never) && !failed.contains(never))
+                report.add(Problem.CHAPTER, "Chapter " + never + " is never reached");
+        return report;
+    }
+
+    /**
+     * Orders chapters by number where they have one, so chapter 2 comes before
+     * chapter 10.
+     */
+    private static int compareChapters(String a, String b) {
+        boolean numberA = a.matches("\\d{1,9}");
+        boolean numberB = b.matches("\\d{1,9}");
+        if (numberA && numberB)
+            return Integer.compare(Integer.parseInt(a), Integer.parseInt(b));
+        if (numberA != numberB)
+            return numberA ? -1 : 1;
+        return a.compareTo(b);
+    }
+
+    /**
+     * A chapter file that could not be read or parsed.
+     */
+    private static class ParseException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+
+        ParseException(String id, File file, Exception cause) {
+            super(file.getName() + " cannot be read: " + cause.getMessage(), cause);
+            this.id = id;
+        }
+    }
+
+    private static Loaded load(String id, File file) {
+        try {
+            return new Loaded(id, file, new GameParser(file).parseChapter());
+        } catch (IOException | JSONException e) {
+            throw new ParseException(id, file, e);
+        }
+    }
+
+    /**
+     * @return The player the game starts with, or a player with nothing if the
+     *         game has no playerDefault file
+     */
+    private Player loadPlayer(Report report) {
+        File file = new File(gameDir, "playerDefault.json");
+        try {
+            return new GameParser(file).parsePlayer();
+        } catch (IOException | JSONException e) {
+            report.add(Problem.CHAPTER, file.getName() + " cannot be read: " + e.getMessage());
+            return new Player("", new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        }
+    }
+
+    /**
+     * Walks a chapter from its first scene, following every branch the player
+     * could take, then reports the scenes never reached and the branches that
+     * could never be taken.
+     *
+     * @param loaded   The chapter
+     * @param holdings What the player may have on entering the chapter, which
+     *                 is added to as events are found
+     * @param report   The report of the game
+     * @return {@code true} if the player can leave the chapter for the next
+     */
+    private boolean walk(Loaded loaded, Holdings holdings, Report report) {
+        Chapter chapter = loaded.chapter();
+        Walk walk = new Walk(chapter, holdings);
+        // A chapter missing its first scene goes straight on to the next
+        walk.leaves = chapter.firstSceneId() < 0;
+        int[] frontier = walk.mark(chapter.firstSceneId()) ? new int[] { chapter.firstSceneId() } : new int[0];
+        Branch[] blocked = new Branch[0];
+
+        while (true) {
+            // Take every scene of one level at once, to find the next
+            while (frontier.length > 0) {
+                int[] scenes = frontier;
+                Step[] steps = split(scenes.length, Step[]::new, (from, to) -> walk.enter(scenes, from, to));
+                frontier = walk.merge(steps);
+                blocked = concat(blocked, steps);
+            }
+
+            // See if anything gained since opens a branch that was blocked
+            Branch[] waiting = blocked;
+            Step[] steps = split(waiting.length, Step[]::new, (from, to) -> walk.retry(waiting, from, to));
+            int followed = 0;
+            for (Step step : steps)
+                followed += step.followed;
+            if (followed == 0)
+                break;
+            frontier = walk.merge(steps);
+            blocked = concat(new Branch[0], steps);
+        }
+
+        String file = loaded.file().getName();
+        Report[] found = split(chapter.sceneCount(), Report[]::new, (from, to) -> walk.check(file, from, to));
+        for (Report chunk : found)
+            for (Problem problem : Problem.values())
+                report.problems(problem).addAll(chunk.problems(problem));
+        return walk.leaves;
+    }
+
+    private static Branch[] concat(Branch[] blocked, Step[] steps) {
+        int length = blocked.length;
+        for (Step step : steps)
+            length += step.blocked.size();
+        Branch[] all = Arrays.copyOf(blocked, length);
+        int at = blocked.length;
+        for (Step step : steps)
+            for (Branch branch : step.blocked)
+                all[at++] = branch;
+        return all;
+    }
+
+    /**
+     * Work on a range of a level of the walk.
+     */
+    private interface Chunk<T> {
+        T run(int from, int to);
+    }
+
+    /**
+     * Runs work over {@code [0, size)} on the pool, a range of {@link #SPLIT}
+     * at a time.
+     *
+     * @return The result of each range, in order
+     */
+    private <T> T[] split(int size, IntFunction<T[]> array, Chunk<T> chunk) {
+        T[] results = array.apply((size + SPLIT - 1) / SPLIT);
+        if (results.length == 1)
+            results[0] = chunk.run(0, size);
+        else if (results.length > 1)
+            pool.invoke(new Split<>(results, 0, results.length, size, chunk));
+        return results;
+    }
+
+    private static class Split<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final T[] results;
+        private final int first;
+        private final int last;
+        private final int size;
+        private final Chunk<T> chunk;
+
+        Split(T[] results, int first, int last, int size, Chunk<T> chunk) {
+            this.results = results;
+            this.first = first;
+            this.last = last;
+            this.size = size;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1) {
+                results[first] = chunk.run(first * SPLIT, Math.min(size, (first + 1) * SPLIT));
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            invokeAll(new Split<>(results, first, middle, size, chunk),
+                    new Split<>(results, middle, last, size, chunk));
+        }
+    }
+
+    /**
+     * What one range of a level found: the scenes it reached first, the
+     * events it passed, and the branches it could not yet take.
+     */
+    private static class Step {
+        private int[] next = new int[16];
+        private int nextCount;
+        private final ArrayList<Event> gains = new ArrayList<>();
+        private final ArrayList<Branch> blocked = new ArrayList<>();
+        private int followed;
+        private boolean leaves;
+
+        private void reached(int id) {
+            if (nextCount == next.length)
+                next = Arrays.copyOf(next, nextCount * 2);
+            next[nextCount++] = id;
+        }
+    }
+
+    /**
+     * The walk of one chapter. Scenes are marked as reached in a bitset any
+     * thread can set, and what the player may have is only added to between
+     * levels, so each level sees the same holdings whichever thread takes it.
+     */
+    private static class Walk {
+        private final Chapter chapter;
+        private final Holdings holdings;
+        private final AtomicLongArray reached;
+        private boolean leaves;
+
+        Walk(Chapter chapter, Holdings holdings) {
+            this.chapter = chapter;
+            this.holdings = holdings;
+            this.reached = new AtomicLongArray((chapter.sceneCount() + 63) >>> 6);
+        }
+
+        /**
+         * @return {@code true} if the scene was not reached before
+         */
+        boolean mark(int id) {
+            if (id < 0)
+                return false;
+            int word = id >>> 6;
+            long bit = 1L << id;
+            long old;
+            do {
+                old = reached.get(word);
+                if ((old & bit) != 0)
+                    return false;
+            } while (!reached.compareAndSet(word, old, old | bit));
+            return true;
+        }
+
+        boolean isReached(int id) {
+            return (reached.get(id >>> 6) & (1L << id)) != 0;
+        }
+
+        Step enter(int[] scenes, int from, int to) {
+            Step step = new Step();
+            for (int i = from; i < to; i++) {
+                Scene scene = chapter.scene(scenes[i]);
+                scene.event().ifPresent(step.gains::add);
+                if (scene instanceof NodeScene node) {
+                    for (Branch branch : node.branches())
+                        if (canTake(branch))
+                            follow(branch, step);
+                        else
+                            step.blocked.add(branch);
+                } else if (scene instanceof LeafScene leaf) {
+                    lead(leaf.nextSceneId(), step);
+                }
+            }
+            return step;
+        }
+
+        Step retry(Branch[] blocked, int from, int to) {
+            Step step = new Step();
+            for (int i = from; i < to; i++)
+                if (canTake(blocked[i]))
+                    follow(blocked[i], step);
+                else
+                    step.blocked.add(blocked[i]);
+            return step;
+        }
+
+        private boolean canTake(Branch branch) {
+            Optional<Requirement> requirement = branch.requirement();
+            return requirement.isEmpty() || RequirementFactory.canBe(requirement.get(), true, holdings);
+        }
+
+        private void follow(Branch branch, Step step) {
+            step.followed++;
+            branch.event().ifPresent(step.gains::add);
+            lead(branch.nextSceneId(), step);
+        }
+
+        /**
+         * No scene at all leaves the chapter. A scene that is missing leads
+         * nowhere, as the player cannot take a way to it.
+         */
+        private void lead(int id, Step step) {
+            if (id == Scene.NO_SCENE)
+                step.leaves = true;
+            else if (id >= 0 && mark(id))
+                step.reached(id);
+        }
+
+        /**
+         * Gives the player what the level passed, and gathers the scenes it
+         * reached first.
+         *
+         * @return The next level
+         */
+        int[] merge(Step[] steps) {
+            int length = 0;
+            for (Step step : steps) {
+                length += step.nextCount;
+                leaves |= step.leaves;
+                for (Event gain : step.gains)
+                    holdings.gain(gain);
+            }
+            int[] next = new int[length];
+            int at = 0;
+            for (Step step : steps) {
+                System.arraycopy(step.next, 0, next, at, step.nextCount);
+                at += step.nextCount;
+            }
+            return next;
+        }
+
+        /**
+         * Reports the problems of a range of scenes, once the walk is done.
+         *
+         * @return The problems found in the range
+         */
+        Report check(String file, int from, int to) {
+            Report found = new Report();
+            for (int id = from; id < to; id++) {
+                Scene scene = chapter.scene(id);
+                if (!isReached(id)) {
+                    found.add(Problem.UNREACHABLE, file + ": Scene " + scene.index() + " is never reached");
+                    continue;
+                }
+                if (!(scene instanceof NodeScene node))
+                    continue;
+
+                boolean open = false;
+                List<Branch> branches = node.branches();
+                for (int i = 0; i < branches.size(); i++) {
+                    if (canTake(branches.get(i)))
+                        open = true;
+                    else
+                        found.add(Problem.UNSATISFIABLE, file + ": Branch " + (i + 1) + " of scene "
+                                + scene.index() + " to scene " + branches.get(i).nextScene()
+                                + " has a requirement that can never be met");
+                }
+                if (!open)
+                    found.add(Problem.DEAD_END, file + ": Scene " + scene.index() + " has no branch that can be taken");
+            }
+            return found;
+        }
+    }
+
+    /**
+     * What a player may have at some point of the game: what they started
+     * with, which they always have, and whatever the events reached so far
+     * give them.
+     */
+    private static class Holdings implements RequirementFactory.Possible {
+        private final HashSet<String> startPerks;
+        private final HashSet<String> startItems;
+        private final HashSet<String> startStatuses;
+        private final HashSet<String> perks;
+        private final HashSet<String> items;
+        private final HashSet<String> statuses;
+
+        Holdings(Player start) {
+            this.startPerks = new HashSet<>(start.perks());
+            this.startItems = new HashSet<>(start.items());
+            this.startStatuses = new HashSet<>(start.statuses());
+            this.perks = new HashSet<>(start.perks());
+            this.items = new HashSet<>(start.items());
+            this.statuses = new HashSet<>(start.statuses());
+        }
+
+        void gain(Event event) {
+            if (event instanceof GetPerkEvent perk)
+                perks.add(perk.perk());
+            else if (event instanceof GetStatusEvent status)
+                statuses.add(status.status());
+        }
+
+        @Override
+        public boolean perk(String perk, boolean held) {
+            return held ? perks.contains(perk) : !startPerks.contains(perk);
+        }
+
+        @Override
+        public boolean item(String item, boolean held) {
+            return held ? items.contains(item) : !startItems.contains(item);
+        }
+
+        @Override
+        public boolean status(String status, boolean held) {
+            return held ? statuses.contains(status) : !startStatuses.contains(status);
+        }
+    }
+}
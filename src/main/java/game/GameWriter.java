@@ -0,0 +1,205 @@
+package game;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import events.Event;
+import events.GetPerkEvent;
+import events.GetStatusEvent;
+import requirements.RequirementFactory;
+import scenes.Branch;
+import scenes.LeafScene;
+import scenes.NodeScene;
+import scenes.Scene;
+import scenes.TerminusScene;
+
+/**
+ * This class is the inverse of the GameParser. It writes Game Objects back out
+ * to JSON, in the same format the GameParser reads them from.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class GameWriter {
+
+    /**
+     * Writes the state of a session to a save file, so that the file either
+     * holds the whole save or is left as it was.
+     *
+     * @param session The session to save
+     * @param save    The JSON save file to write
+     * @throws IOException
+     */
+    public static void save(GameSession session, File save) throws IOException {
+        SaveWriter.write(writeSave(session).toString(4), save);
+    }
+
+    /**
+     * Writes the state of a session to a JSON save. If the chapter came from
+     * the game directory, only what the player changed is written, as a delta
+     * save. Otherwise the whole chapter is written, as a full save.
+     *
+     * @param session The session to save
+     * @return The JSON representation of the save
+     */
+    public static JSONObject writeSave(GameSession session) {
+        if (session.chapterId() != null && session.chapter().hash() != null)
+            return writeDeltaSave(session);
+        return writeFullSave(session);
+    }
+
+    /**
+     * Writes a delta save. Rather than the scenes, this names the chapter the
+     * player is in, along with the hash of its file so a save made on an
+     * older version of the chapter is not loaded onto a newer one.
+     *
+     * @param session The session to save
+     * @return The JSON representation of the save
+     */
+    public static JSONObject writeDeltaSave(GameSession session) {
+        JSONObject jSave = new JSONObject();
+        jSave.put("gameName", session.gameName());
+        jSave.put("chapter", session.chapterId());
+        jSave.put("chapterHash", session.chapter().hash());
+        session.nextChapter().ifPresent(nextChapter -> jSave.put("nextChapter", nextChapter));
+        jSave.put("currScene", session.currScene());
+        jSave.put("consumedBranches", writeConsumedBranches(session.consumedBranches()));
+        jSave.put("player", writePlayer(session.player()));
+        return jSave;
+    }
+
+    /**
+     * Writes a full save. The scenes are written as they are in the shared
+     * chapter, and the branches the player has taken are written separately
+     * as {@code consumedBranches}.
+     *
+     * @param session The session to save
+     * @return The JSON representation of the save
+     */
+    public static JSONObject writeFullSave(GameSession session) {
+        JSONObject jSave = new JSONObject();
+        jSave.put("gameName", session.gameName());
+        session.nextChapter().ifPresent(nextChapter -> jSave.put("nextChapter", nextChapter));
+        jSave.put("currScene", session.currScene());
+        jSave.put("scenes", writeScenes(session.chapter().scenes()));
+        jSave.put("consumedBranches", writeConsumedBranches(session.consumedBranches()));
+        jSave.put("player", writePlayer(session.player()));
+        return jSave;
+    }
+
+    /**
+     * Writes a Player object to its JSON representation.
+     *
+     * @param player The player character
+     * @return The JSON player
+     */
+    public static JSONObject writePlayer(Player player) {
+        JSONObject jPlayer = new JSONObject();
+        jPlayer.put("name", player.name());
+        jPlayer.put("perks", new JSONArray(player.perks()));
+        jPlayer.put("items", new JSONArray(player.items()));
+        jPlayer.put("statuses", new JSONArray(player.statuses()));
+        return jPlayer;
+    }
+
+    /**
+     * Writes every scene in a chapter to a JSONObject keyed by scene index.
+     *
+     * @param scenes The scenes of a chapter
+     * @return The JSON scenes
+     */
+    public static JSONObject writeScenes(Map<String, Scene> scenes) {
+        JSONObject jScenes = new JSONObject();
+        scenes.forEach((index, scene) -> jScenes.put(index, writeScene(scene)));
+        return jScenes;
+    }
+
+    /**
+     * Writes a single Scene object to its JSON representation.
+     *
+     * @param scene The scene
+     * @return The JSON scene
+     */
+    public static JSONObject writeScene(Scene scene) {
+        JSONObject jScene = new JSONObject();
+        jScene.put("lines", scene.lines());
+        writeEvent(scene.event()).ifPresent(jEvent -> jScene.put("event", jEvent));
+
+        if (scene instanceof LeafScene leaf) {
+            jScene.put("sceneType", "leaf");
+            if (!leaf.nextScene().isEmpty())
+                jScene.put("nextScene", leaf.nextScene());
+        }
+
+        if (scene instanceof NodeScene node) {
+            jScene.put("sceneType", "node");
+            jScene.put("branches", writeBranches(node.branches()));
+        }
+
+        if (scene instanceof TerminusScene) {
+            jScene.put("sceneType", "terminus");
+        }
+        return jScene;
+    }
+
+    /**
+     * Writes an Event, if there is one, to its JSON representation.
+     *
+     * @param event Optionally, an Event object
+     * @return Optionally, the JSON event
+     */
+    public static Optional<JSONObject> writeEvent(Optional<Event> event) {
+        if (event.isEmpty())
+            return Optional.empty();
+
+        JSONObject jEvent = new JSONObject();
+        if (event.get() instanceof GetPerkEvent perkEvent) {
+            jEvent.put("type", "getPerk");
+            jEvent.put("arg", perkEvent.perk());
+        } else if (event.get() instanceof GetStatusEvent statusEvent) {
+            jEvent.put("type", "getStatus");
+            jEvent.put("arg", statusEvent.status());
+        } else {
+            return Optional.empty();
+        }
+        return Optional.of(jEvent);
+    }
+
+    /**
+     * Writes the branches of a node scene to a JSONArray.
+     *
+     * @param branches The branches of a node scene
+     * @return The JSON branches
+     */
+    public static JSONArray writeBranches(List<Branch> branches) {
+        JSONArray jBranches = new JSONArray();
+        for (Branch branch : branches) {
+            JSONObject jBranch = new JSONObject();
+            jBranch.put("bScene", branch.nextScene());
+            jBranch.put("prompt", branch.prompt());
+            writeEvent(branch.event()).ifPresent(jEvent -> jBranch.put("event", jEvent));
+            branch.requirement().ifPresent(
+                    requirement -> jBranch.put("requirement", RequirementFactory.toJSON(requirement)));
+            jBranches.put(jBranch);
+        }
+        return jBranches;
+    }
+
+    /**
+     * Writes the ids of the branches the player has taken to a JSONArray.
+     *
+     * @param consumed The ids of the branches the player has taken
+     * @return The JSON array of branch ids
+     */
+    public static JSONArray writeConsumedBranches(BitSet consumed) {
+        JSONArray jConsumed = new JSONArray();
+        consumed.stream().forEach(jConsumed::put);
+        return jConsumed;
+    }
+}
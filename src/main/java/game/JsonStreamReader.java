@@ -0,0 +1,385 @@
+package game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONException;
+
+/**
+ * <p>
+ * A JsonStreamReader reads a JSON document one token at a time, without
+ * building a JSONObject for it. The GameParser uses it to build Scenes,
+ * Branches, Events and Requirements as their tokens arrive, so a chapter is
+ * never held in memory twice.
+ * </p>
+ *
+ * <p>
+ * Objects and arrays are walked with {@code beginObject}/{@code endObject} and
+ * {@code beginArray}/{@code endArray}, checking {@code hasNext} for more
+ * members. Anything the caller does not need can be passed over with
+ * {@code skipValue}. Malformed JSON raises a JSONException, as org.json does.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class JsonStreamReader implements Closeable {
+
+    /**
+     * The kinds of token the reader can be positioned at.
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    // What the reader expects next, for each object or array it is inside of
+    private static final int EMPTY_OBJECT = 1;
+    private static final int NONEMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int EMPTY_ARRAY = 4;
+    private static final int NONEMPTY_ARRAY = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+    private long consumed = 0;
+
+    private int[] stack = new int[32];
+    private int depth = 0;
+    private Token peeked = null;
+    private final StringBuilder string = new StringBuilder();
+
+    public JsonStreamReader(Reader in) {
+        this.in = in;
+        stack[depth++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Finds the kind of the next token without consuming it.
+     *
+     * @return The kind of the next token
+     */
+    public Token peek() {
+        if (peeked != null)
+            return peeked;
+
+        int c;
+        switch (stack[depth - 1]) {
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']')
+                    return peeked = Token.END_ARRAY;
+                if (c == -1)
+                    throw syntaxError("Unterminated array");
+                pos--;
+                return peeked = readValue();
+
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']')
+                    return peeked = Token.END_ARRAY;
+                if (c != ',')
+                    throw syntaxError("Expected ',' or ']'");
+                return peeked = readValue();
+
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}')
+                    return peeked = Token.END_OBJECT;
+                if (stack[depth - 1] == NONEMPTY_OBJECT) {
+                    if (c != ',')
+                        throw syntaxError("Expected ',' or '}'");
+                    c = nextNonWhitespace();
+                }
+                if (c != '"')
+                    throw syntaxError("Expected a name");
+                stack[depth - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':')
+                    throw syntaxError("Expected ':'");
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                return peeked = readValue();
+
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                return peeked = readValue();
+
+            default:
+                if (nextNonWhitespace() != -1)
+                    throw syntaxError("Expected end of document");
+                return peeked = Token.END_DOCUMENT;
+        }
+    }
+
+    /**
+     * @return {@code true} if the current object or array has another member
+     */
+    public boolean hasNext() {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    public void beginArray() {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * @return The name of the next member of the current object
+     */
+    public String nextName() {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * Reads a string value. Numbers are also read as their text, as
+     * {@code JSONObject.optString} would.
+     *
+     * @return The string value
+     */
+    public String nextString() {
+        Token token = peek();
+        if (token == Token.STRING) {
+            peeked = null;
+            return readString();
+        }
+        if (token == Token.NUMBER) {
+            peeked = null;
+            return readNumber();
+        }
+        throw syntaxError("Expected a string but was " + token);
+    }
+
+    public int nextInt() {
+        String number = nextString();
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected an int but was " + number);
+        }
+    }
+
+    public boolean nextBoolean() {
+        expect(Token.BOOLEAN);
+        return readLiteral().equals("true");
+    }
+
+    public void nextNull() {
+        expect(Token.NULL);
+        readLiteral();
+    }
+
+    /**
+     * Skips the next value, including everything nested inside it.
+     */
+    public void skipValue() {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                while (hasNext())
+                    skipValue();
+                endArray();
+                break;
+            case BOOLEAN:
+                nextBoolean();
+                break;
+            case NULL:
+                nextNull();
+                break;
+            case NAME:
+                nextName();
+                break;
+            default:
+                nextString();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void expect(Token token) {
+        if (peek() != token)
+            throw syntaxError("Expected " + token + " but was " + peeked);
+        peeked = null;
+    }
+
+    private void push(int context) {
+        if (depth == stack.length) {
+            int[] grown = new int[depth * 2];
+            System.arraycopy(stack, 0, grown, 0, depth);
+            stack = grown;
+        }
+        stack[depth++] = context;
+    }
+
+    /**
+     * Works out the kind of value that starts at the next character. Only the
+     * opening character of objects, arrays and strings is consumed.
+     */
+    private Token readValue() {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                pos--;
+                return Token.BOOLEAN;
+            case 'n':
+                pos--;
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character " + (c == -1 ? "end of document" : "'" + (char) c + "'"));
+        }
+    }
+
+    /**
+     * Reads the rest of a string whose opening quote was already consumed.
+     */
+    private String readString() {
+        string.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == '"')
+                return string.toString();
+            if (c == -1)
+                throw syntaxError("Unterminated string");
+            if (c != '\\') {
+                string.append((char) c);
+                continue;
+            }
+            c = read();
+            switch (c) {
+                case 'b':
+                    string.append('\b');
+                    break;
+                case 'f':
+                    string.append('\f');
+                    break;
+                case 'n':
+                    string.append('\n');
+                    break;
+                case 'r':
+                    string.append('\r');
+                    break;
+                case 't':
+                    string.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0)
+                            throw syntaxError("Invalid unicode escape");
+                        code = code * 16 + digit;
+                    }
+                    string.append((char) code);
+                    break;
+                case -1:
+                    throw syntaxError("Unterminated string");
+                default:
+                    string.append((char) c);
+            }
+        }
+    }
+
+    private String readNumber() {
+        string.setLength(0);
+        int c = read();
+        while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+            string.append((char) c);
+            c = read();
+        }
+        if (c != -1)
+            pos--;
+        return string.toString();
+    }
+
+    private String readLiteral() {
+        string.setLength(0);
+        int c = read();
+        while (c >= 'a' && c <= 'z') {
+            string.append((char) c);
+            c = read();
+        }
+        if (c != -1)
+            pos--;
+        String literal = string.toString();
+        if (!literal.equals("true") && !literal.equals("false") && !literal.equals("null"))
+            throw syntaxError("Unexpected literal " + literal);
+        return literal;
+    }
+
+    private int nextNonWhitespace() {
+        int c = read();
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t')
+            c = read();
+        return c;
+    }
+
+    /**
+     * Reads the next character, refilling the buffer as needed. After any read
+     * that did not hit the end of the document, {@code pos--} un-reads it.
+     */
+    private int read() {
+        if (pos == limit) {
+            try {
+                consumed += limit;
+                limit = in.read(buffer, 0, buffer.length);
+            } catch (IOException e) {
+                throw new JSONException(e);
+            }
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[pos++];
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + (consumed + pos));
+    }
+}
@@ -0,0 +1,248 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import scenes.Scene;
+
+/**
+ * <p>
+ * A MappedSceneStore serves the scenes of a compiled chapter straight out of a
+ * memory-mapped file. Nothing is decoded when the store is opened; a scene is
+ * decoded, along with its lines and branches, the first time the game asks for
+ * it.
+ * </p>
+ *
+ * <p>
+ * Decoded scenes are kept in a bounded cache, shared by every session playing
+ * the chapter. This way the heap grows with the scenes players visit rather
+ * than with the size of the chapter, which may have hundreds of thousands of
+ * scenes.
+ * </p>
+ *
+ * <p>
+ * Finding a cached scene takes no lock, and a scene is decoded outside any
+ * lock, so sessions only wait for each other when a newly decoded scene is
+ * added. When the cache is full, scenes are dropped in the order they were
+ * added, except that a scene used since it was last passed over gets a second
+ * chance, which keeps the scenes players keep coming back to.
+ * </p>
+ *
+ * <p>
+ * The store is a read-only Map of scenes keyed by index, so a Chapter can hold
+ * it like any other map of scenes. Iterating it decodes every scene without
+ * caching them, which is only meant for offline tools.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class MappedSceneStore extends AbstractMap<String, Scene> {
+    static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private final CompiledChapter compiled;
+    private final int cacheSize;
+    // Decoded scenes by id
+    private final ConcurrentHashMap<Integer, Cached> cache = new ConcurrentHashMap<>();
+    // The ids in the cache, in the order they are next considered for dropping. Guarded by itself.
+    private final ArrayDeque<Integer> order = new ArrayDeque<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * A decoded scene, and whether it was used since the cache last passed
+     * over it.
+     */
+    private static class Cached {
+        final Scene scene;
+        volatile boolean used;
+
+        Cached(Scene scene) {
+            this.scene = scene;
+        }
+    }
+
+    /**
+     * @param compiled  The compiled chapter to serve scenes from
+     * @param cacheSize The most decoded scenes to keep at once
+     */
+    public MappedSceneStore(CompiledChapter compiled, int cacheSize) {
+        this.compiled = compiled;
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Maps a compiled chapter file into memory.
+     *
+     * @param file The compiled chapter file
+     * @return A store serving the scenes of the chapter
+     * @throws IOException
+     */
+    public static MappedSceneStore open(File file) throws IOException {
+        return open(file, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Maps a compiled chapter file into memory.
+     *
+     * @param file      The compiled chapter file
+     * @param cacheSize The most decoded scenes to keep at once
+     * @return A store serving the scenes of the chapter
+     * @throws IOException
+     */
+    public static MappedSceneStore open(File file, int cacheSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedSceneStore(new CompiledChapter(buffer, false), cacheSize);
+        }
+    }
+
+    /**
+     * @return A Chapter whose scenes are served lazily by this store
+     */
+    public Chapter toChapter() {
+        return new Chapter(this, compiled.firstScene(), compiled.nextChapter(), compiled.branchCount(),
+                compiled.sourceHash(), compiled.danglingReferences(), compiled.unknownTypes());
+    }
+
+    /**
+     * Gets a scene by index, decoding it if it is not in the cache.
+     *
+     * @param key The index of a scene
+     * @return The scene, or {@code null} if there is no such scene
+     */
+    @Override
+    public Scene get(Object key) {
+        if (!(key instanceof String index))
+            return null;
+        int id = compiled.sceneId(index);
+        return id < 0 ? null : scene(id);
+    }
+
+    /**
+     * Gets a scene by id, decoding it if it is not in the cache.
+     *
+     * @param id The id of a scene
+     * @return The scene
+     */
+    public Scene scene(int id) {
+        Cached cached = cache.get(id);
+        if (cached != null) {
+            hits.increment();
+            // Only written when it changes, so a popular scene is not written by every session
+            if (!cached.used)
+                cached.used = true;
+            return cached.scene;
+        }
+        misses.increment();
+        cached = new Cached(compiled.scene(id));
+
+        // If another session decoded the scene first, use theirs so every session shares one
+        Cached raced = cache.putIfAbsent(id, cached);
+        if (raced != null)
+            return raced.scene;
+        synchronized (order) {
+            order.addLast(id);
+            while (order.size() > cacheSize) {
+                Integer eldest = order.pollFirst();
+                Cached candidate = cache.get(eldest);
+                if (candidate.used) {
+                    candidate.used = false;
+                    order.addLast(eldest);
+                } else {
+                    cache.remove(eldest);
+                }
+            }
+        }
+        return cached.scene;
+    }
+
+    /**
+     * @param index The index of a scene
+     * @return The id of the scene, or {@code -1} if there is no such scene
+     */
+    public int sceneId(String index) {
+        return compiled.sceneId(index);
+    }
+
+    /**
+     * @param id The id of a scene
+     * @return The index of the scene
+     */
+    public String index(int id) {
+        return compiled.string(id);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String index && compiled.sceneId(index) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return compiled.sceneCount();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Scene>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return compiled.sceneCount();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, Scene>> iterator() {
+                return new Iterator<>() {
+                    private int id = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return id < compiled.sceneCount();
+                    }
+
+                    @Override
+                    public Map.Entry<String, Scene> next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        int sceneId = id++;
+                        return new SimpleImmutableEntry<>(compiled.string(sceneId), compiled.scene(sceneId));
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return The number of decoded scenes currently cached
+     */
+    public int cached() {
+        return cache.size();
+    }
+
+    /**
+     * @return The number of times a scene was found in the cache
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of times a scene had to be decoded
+     */
+    public long misses() {
+        return misses.sum();
+    }
+}
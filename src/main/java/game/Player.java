@@ -1,43 +1,93 @@
 package game;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * The Player class stores all data pertinent to the player character.
  * Their name is stored here, as well as any items they carry, perks they have
  * gained, and statuses they are affected by.
  * 
+ * <p>
+ * Perks, items and statuses are stored as sets of ids from the Attributes of
+ * the game, so checking for one is a bit test. The methods taking names look
+ * the name up in the game's tables first, and are there for events and
+ * anything else that works with names.
+ * </p>
+ * 
+ * <p>
+ * The player also counts its changes. Every perk, item or status remembers the
+ * version of the player it last changed in, so anything that depends on a few
+ * attributes, such as the branches a scene offers, can tell whether any of
+ * them changed since it last looked.
+ * </p>
+ * 
  * @author Ahmed El-Sayed
  */
 public class Player {
 
     private String name;
-    private ArrayList<String> perks;
-    private ArrayList<String> items;
-    private ArrayList<String> statuses;
+    private Attributes attributes;
+    private BitSet perks = new BitSet();
+    private BitSet items = new BitSet();
+    private BitSet statuses = new BitSet();
+    private long version;
+    private long[] perksChanged = new long[0];
+    private long[] itemsChanged = new long[0];
+    private long[] statusesChanged = new long[0];
 
     /**
      * This constructor instantiates a Player that exists from a file.
      * This should ONLY be called when loading a player state from a save or
      * from a playerDefault file.
      * 
+     * @param name       The players name
+     * @param attributes The attributes of the game the player is in
+     * @param perks      The players perks
+     * @param items      The players items
+     * @param statuses   The players statuses
+     */
+    public Player(String name, Attributes attributes, Collection<String> perks, Collection<String> items,
+            Collection<String> statuses) {
+        this.name = name;
+        this.attributes = attributes;
+        perks.forEach(this::gainPerk);
+        items.forEach(this::gainItem);
+        statuses.forEach(this::gainStatus);
+    }
+
+    /**
+     * Instantiates a Player that does not belong to any game, with attribute
+     * tables of its own.
+     * 
      * @param name     The players name
      * @param perks    The players perks
      * @param items    The players items
      * @param statuses The players statuses
      */
     public Player(String name, ArrayList<String> perks, ArrayList<String> items, ArrayList<String> statuses) {
-        this.name = name;
-        this.perks = perks;
-        this.items = items;
-        this.statuses = statuses;
+        this(name, new Attributes(), perks, items, statuses);
     }
 
     /**
-     * Prints information about the player to terminal
+     * Instantiates a Player with the perks, items and statuses of the given
+     * ids, such as a player the StateExplorer encoded. The sets are copied.
+     * 
+     * @param name       The players name
+     * @param attributes The attributes of the game the player is in
+     * @param perks      The ids of the players perks
+     * @param items      The ids of the players items
+     * @param statuses   The ids of the players statuses
      */
-    public void logPlayer() {
-        GameMenu.logPlayer(this);
+    Player(String name, Attributes attributes, BitSet perks, BitSet items, BitSet statuses) {
+        this.name = name;
+        this.attributes = attributes;
+        this.perks = (BitSet) perks.clone();
+        this.items = (BitSet) items.clone();
+        this.statuses = (BitSet) statuses.clone();
     }
 
     /**
@@ -47,16 +97,23 @@ public class Player {
         return name;
     }
 
-    public ArrayList<String> perks() {
-        return perks;
+    /**
+     * @return The attributes of the game the player is in
+     */
+    public Attributes attributes() {
+        return attributes;
     }
 
-    public ArrayList<String> items() {
-        return items;
+    public List<String> perks() {
+        return names(perks, attributes.perks());
     }
 
-    public ArrayList<String> statuses() {
-        return statuses;
+    public List<String> items() {
+        return names(items, attributes.items());
+    }
+
+    public List<String> statuses() {
+        return names(statuses, attributes.statuses());
     }
 
     /**
@@ -66,8 +123,10 @@ public class Player {
      * @param perk Perk we want to give to the player
      */
     public void gainPerk(String perk) {
-        if (!hasPerk(perk)) {
-            perks.add(perk);
+        int id = attributes.perks().id(perk);
+        if (!perks.get(id)) {
+            perks.set(id);
+            perksChanged = changed(perksChanged, id);
         }
     }
 
@@ -78,8 +137,10 @@ public class Player {
      * @param item Item we want to give to the player
      */
     public void gainItem(String item) {
-        if (!hasItem(item)) {
-            items.add(item);
+        int id = attributes.items().id(item);
+        if (!items.get(id)) {
+            items.set(id);
+            itemsChanged = changed(itemsChanged, id);
         }
     }
 
@@ -90,8 +151,10 @@ public class Player {
      * @param status Status we want to give to the player
      */
     public void gainStatus(String status) {
-        if (!hasStatus(status)) {
-            statuses.add(status);
+        int id = attributes.statuses().id(status);
+        if (!statuses.get(id)) {
+            statuses.set(id);
+            statusesChanged = changed(statusesChanged, id);
         }
     }
 
@@ -102,7 +165,7 @@ public class Player {
      * @return {@code true} if player has this perk
      */
     public boolean hasPerk(String perk) {
-        return perks.contains(perk);
+        return hasPerk(attributes.perks().find(perk));
     }
 
     /**
@@ -112,7 +175,7 @@ public class Player {
      * @return {@code true} if player has this item
      */
     public boolean hasItem(String item) {
-        return items.contains(item);
+        return hasItem(attributes.items().find(item));
     }
 
     /**
@@ -122,7 +185,31 @@ public class Player {
      * @return {@code true} if player has this status
      */
     public boolean hasStatus(String status) {
-        return statuses.contains(status);
+        return hasStatus(attributes.statuses().find(status));
+    }
+
+    /**
+     * @param perk The id of a perk in the game's attributes
+     * @return {@code true} if player has this perk
+     */
+    public boolean hasPerk(int perk) {
+        return perk >= 0 && perks.get(perk);
+    }
+
+    /**
+     * @param item The id of an item in the game's attributes
+     * @return {@code true} if player has this item
+     */
+    public boolean hasItem(int item) {
+        return item >= 0 && items.get(item);
+    }
+
+    /**
+     * @param status The id of a status in the game's attributes
+     * @return {@code true} if player has this status
+     */
+    public boolean hasStatus(int status) {
+        return status >= 0 && statuses.get(status);
     }
 
     /**
@@ -133,7 +220,9 @@ public class Player {
      */
     public void losePerk(String perk) {
         if (hasPerk(perk)) {
-            perks.remove(perk);
+            int id = attributes.perks().find(perk);
+            perks.clear(id);
+            perksChanged = changed(perksChanged, id);
         }
     }
 
@@ -145,7 +234,9 @@ public class Player {
      */
     public void loseItem(String item) {
         if (hasItem(item)) {
-            items.remove(item);
+            int id = attributes.items().find(item);
+            items.clear(id);
+            itemsChanged = changed(itemsChanged, id);
         }
     }
 
@@ -157,7 +248,85 @@ public class Player {
      */
     public void loseStatus(String status) {
         if (hasStatus(status)) {
-            statuses.remove(status);
+            int id = attributes.statuses().find(status);
+            statuses.clear(id);
+            statusesChanged = changed(statusesChanged, id);
         }
     }
+
+    /**
+     * @return The ids of the players perks, which must not be changed
+     */
+    BitSet perkIds() {
+        return perks;
+    }
+
+    /**
+     * @return The ids of the players items, which must not be changed
+     */
+    BitSet itemIds() {
+        return items;
+    }
+
+    /**
+     * @return The ids of the players statuses, which must not be changed
+     */
+    BitSet statusIds() {
+        return statuses;
+    }
+
+    /**
+     * @return The number of changes made to the player's perks, items and
+     *         statuses
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @param perk The id of a perk
+     * @return The version of the player in which it last gained or lost this
+     *         perk, or {@code 0} if it never has
+     */
+    public long perkChanged(int perk) {
+        return perk < perksChanged.length ? perksChanged[perk] : 0;
+    }
+
+    /**
+     * @param item The id of an item
+     * @return The version of the player in which it last gained or lost this
+     *         item, or {@code 0} if it never has
+     */
+    public long itemChanged(int item) {
+        return item < itemsChanged.length ? itemsChanged[item] : 0;
+    }
+
+    /**
+     * @param status The id of a status
+     * @return The version of the player in which it last gained or lost this
+     *         status, or {@code 0} if it never has
+     */
+    public long statusChanged(int status) {
+        return status < statusesChanged.length ? statusesChanged[status] : 0;
+    }
+
+    /**
+     * Counts a change to an attribute, recording the new version against it.
+     */
+    private long[] changed(long[] stamps, int id) {
+        if (id >= stamps.length)
+            stamps = Arrays.copyOf(stamps, Math.max(id + 1, stamps.length * 2));
+        stamps[id] = ++version;
+        return stamps;
+    }
+
+    /**
+     * Lists the names of a set of attribute ids, in the order they were first
+     * interned.
+     */
+    private static List<String> names(BitSet ids, AttributeTable table) {
+        ArrayList<String> names = new ArrayList<>(ids.cardinality());
+        ids.stream().forEach(id -> names.add(table.name(id)));
+        return names;
+    }
 }
@@ -0,0 +1,567 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import game.StateExplorer.Ending;
+import scenes.Branch;
+import scenes.NodeScene;
+import scenes.Scene;
+
+/**
+ * <p>
+ * The PlaythroughSimulator plays a game many times over without a terminal, to
+ * see how players spread over its endings, how long they play, which perks
+ * they end with, and which branches they take. Where the StateExplorer finds
+ * everything that can happen, the simulator finds how often it does.
+ * </p>
+ *
+ * <p>
+ * Each playthrough starts a new game with the default player and plays it
+ * through {@link GameSession#view()} and {@link GameSession#choose(int)},
+ * until it ends, reaches a node scene with no branch the player can take,
+ * chooses a branch or leaf to a scene missing from its chapter, or makes
+ * {@value #MAX_CHOICES} choices. Leaves and terminus scenes have only
+ * one way on, so a Policy only chooses between the branches of node scenes.
+ * </p>
+ *
+ * <p>
+ * Playthroughs are split into runs of {@value #SPLIT} between the threads of
+ * a fork/join pool, and each run tallies what it saw before the tallies are
+ * added up. The random numbers of each run are split off in the same order
+ * however many threads there are, so a seed always gives the same report.
+ * </p>
+ *
+ * <pre>
+ * mvn compile exec:java -q -Dexec.mainClass=game.PlaythroughSimulator -Dexec.args="data/The_Curse_Of_Sigfried 1000000 gated"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class PlaythroughSimulator {
+    // Playthroughs played by each task of the pool
+    private static final int SPLIT = 1024;
+    // Choices after which a playthrough is stopped, in case it goes in circles
+    private static final int MAX_CHOICES = 10_000;
+    // Branches printed by main
+    private static final int PRINT_LIMIT = 10;
+
+    /**
+     * Chooses between the branches of a node scene for a simulated player.
+     */
+    public interface Policy {
+        /**
+         * @param view   The node scene the player is in, with at least one
+         *               choice
+         * @param choice The number of branches the player has already chosen
+         *               in this playthrough
+         * @param random The random numbers of this playthrough
+         * @return The index of the choice to make in the view's choices
+         */
+        int choose(SceneView view, int choice, SplittableRandom random);
+
+        /**
+         * @return A policy choosing every branch the player can take as often
+         */
+        static Policy uniform() {
+            return (view, choice, random) -> random.nextInt(view.choices().size());
+        }
+
+        /**
+         * @param weight How likely each branch is to be chosen, relative to
+         *               the others the player can take
+         * @return A policy choosing branches in proportion to their weight
+         */
+        static Policy weighted(Weight weight) {
+            return (view, choice, random) -> {
+                List<Branch> choices = view.choices();
+                double[] cumulative = new double[choices.size()];
+                double total = 0;
+                for (int i = 0; i < cumulative.length; i++)
+                    cumulative[i] = total += Math.max(weight.of(choices.get(i), i), 0);
+                if (total <= 0)
+                    return random.nextInt(cumulative.length);
+                double pick = random.nextDouble() * total;
+                for (int i = 0; i < cumulative.length - 1; i++)
+                    if (pick < cumulative[i])
+                        return i;
+                return cumulative.length - 1;
+            };
+        }
+
+        /**
+         * @param factor How many times likelier a branch with a requirement is
+         *               than one without
+         * @return A policy favouring branches the player had to earn
+         */
+        static Policy preferGated(double factor) {
+            return weighted((branch, position) -> branch.hasRequirement() ? factor : 1);
+        }
+
+        /**
+         * @param script The index of the choice to make at each node scene, in
+         *               order
+         * @return A policy following the script while it can, then choosing
+         *         at random
+         */
+        static Policy scripted(int... script) {
+            return (view, choice, random) -> choice < script.length && script[choice] >= 0
+                    && script[choice] < view.choices().size() ? script[choice]
+                            : random.nextInt(view.choices().size());
+        }
+    }
+
+    /**
+     * The weight of a branch for a weighted Policy.
+     */
+    public interface Weight {
+        /**
+         * @param branch   A branch the player can take
+         * @param position Where the branch is among the player's choices
+         * @return The weight of the branch, where zero or less is never chosen
+         *         unless every branch is
+         */
+        double of(Branch branch, int position);
+    }
+
+    /**
+     * What happened over every simulated playthrough.
+     */
+    public static class Report {
+        private final long playthroughs;
+        private final Map<Ending, Long> endings;
+        private final long stuck;
+        private final long dangling;
+        private final long stopped;
+        private final long[] lengths;
+        private final long[] perkCounts;
+        private final Map<String, Long> perks;
+        private final Map<String, long[]> branches;
+
+        private Report(Tally tally, Attributes attributes) {
+            playthroughs = tally.playthroughs;
+            endings = Collections.unmodifiableMap(new TreeMap<>(tally.endings));
+            stuck = tally.stuck;
+            dangling = tally.dangling;
+            stopped = tally.stopped;
+            lengths = tally.lengths;
+            perkCounts = tally.perkCounts;
+            TreeMap<String, Long> perks = new TreeMap<>();
+            for (int perk = 0; perk < tally.perks.length; perk++)
+                if (tally.perks[perk] > 0)
+                    perks.put(attributes.perks().name(perk), tally.perks[perk]);
+            this.perks = Collections.unmodifiableMap(perks);
+            branches = Collections.unmodifiableMap(new TreeMap<>(tally.branches));
+        }
+
+        /**
+         * @return The number of playthroughs simulated
+         */
+        public long playthroughs() {
+            return playthroughs;
+        }
+
+        /**
+         * @return How many playthroughs reached each ending
+         */
+        public Map<Ending, Long> endings() {
+            return endings;
+        }
+
+        /**
+         * @return How many playthroughs reached a node scene with no branch
+         *         the player could take
+         */
+        public long stuck() {
+            return stuck;
+        }
+
+        /**
+         * @return How many playthroughs chose a branch or leaf to a scene
+         *         missing from its chapter, which the game refuses
+         */
+        public long dangling() {
+            return dangling;
+        }
+
+        /**
+         * @return How many playthroughs were stopped after
+         *         {@value PlaythroughSimulator#MAX_CHOICES} choices
+         */
+        public long stopped() {
+            return stopped;
+        }
+
+        /**
+         * @param choices A number of choices
+         * @return How many playthroughs made exactly that many choices
+         */
+        public long playthroughsOfLength(int choices) {
+            return choices < lengths.length ? lengths[choices] : 0;
+        }
+
+        /**
+         * @return The mean number of choices made in a playthrough
+         */
+        public double meanLength() {
+            double total = 0;
+            for (int choices = 0; choices < lengths.length; choices++)
+                total += (double) choices * lengths[choices];
+            return playthroughs == 0 ? 0 : total / playthroughs;
+        }
+
+        /**
+         * @param fraction Between 0 and 1, such as 0.9 for the 90th percentile
+         * @return The fewest choices at least that fraction of playthroughs
+         *         made no more than
+         */
+        public int lengthPercentile(double fraction) {
+            long wanted = (long) Math.ceil(fraction * playthroughs);
+            long seen = 0;
+            for (int choices = 0; choices < lengths.length; choices++)
+                if ((seen += lengths[choices]) >= wanted && seen > 0)
+                    return choices;
+            return 0;
+        }
+
+        /**
+         * @param count A number of perks
+         * @return How many playthroughs ended holding exactly that many perks
+         */
+        public long playthroughsWithPerks(int count) {
+            return count < perkCounts.length ? perkCounts[count] : 0;
+        }
+
+        /**
+         * @return The most perks any playthrough ended holding
+         */
+        public int mostPerks() {
+            for (int count = perkCounts.length - 1; count > 0; count--)
+                if (perkCounts[count] > 0)
+                    return count;
+            return 0;
+        }
+
+        /**
+         * @return How many playthroughs ended holding each perk
+         */
+        public Map<String, Long> perks() {
+            return perks;
+        }
+
+        /**
+         * @return How many times each branch was taken, by chapter and then by
+         *         branch id. Only chapters that were played are included.
+         */
+        public Map<String, long[]> branches() {
+            return branches;
+        }
+    }
+
+    private final File gameDir;
+    private final ForkJoinPool pool;
+    private final Policy policy;
+
+    /**
+     * @param gameDir The game directory, usually under {@code data}
+     * @param pool    The pool to play on
+     * @param policy  How the simulated players choose
+     */
+    public PlaythroughSimulator(File gameDir, ForkJoinPool pool, Policy policy) {
+        this.gameDir = gameDir;
+        this.pool = pool;
+        this.policy = policy;
+    }
+
+    /**
+     * Simulates playthroughs of the game given and prints what happened.
+     *
+     * @param args The game directory, then optionally the number of
+     *             playthroughs, the policy, and a seed. The policy is
+     *             {@code uniform}, {@code gated} to make branches with a
+     *             requirement four times likelier, {@code weighted:2,1} to
+     *             weigh the first, second and later choices offered, or
+     *             {@code script:0,1,0} to make those choices in order.
+     */
+    public static void main(String[] args) throws IOException {
+        File gameDir = new File(args.length > 0 ? args[0] : "data/Debug");
+        long playthroughs = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000;
+        String policyName = args.length > 2 ? args[2] : "uniform";
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+
+        long start = System.nanoTime();
+        PlaythroughSimulator simulator = new PlaythroughSimulator(gameDir, ForkJoinPool.commonPool(),
+                policy(policyName));
+        Report report = simulator.simulate(playthroughs, seed);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d playthroughs choosing %s, in %.2f s, %.0f playthroughs/s%n", gameDir,
+                report.playthroughs(), policyName, seconds, report.playthroughs() / seconds);
+
+        System.out.println("  Endings");
+        for (Map.Entry<Ending, Long> ending : report.endings().entrySet())
+            printShare(report, ending.getKey().toString(), ending.getValue());
+        printShare(report, "stuck with no branch to take", report.stuck());
+        printShare(report, "followed a dangling branch", report.dangling());
+        printShare(report, "stopped after " + MAX_CHOICES + " choices", report.stopped());
+
+        System.out.printf("  Choices per playthrough: mean %.2f, median %d, 90th percentile %d, most %d%n",
+                report.meanLength(), report.lengthPercentile(0.5), report.lengthPercentile(0.9),
+                report.lengthPercentile(1));
+
+        System.out.println("  Perks held at the end");
+        for (int count = 0; count <= report.mostPerks(); count++)
+            printShare(report, count + (count == 1 ? " perk" : " perks"), report.playthroughsWithPerks(count));
+        for (Map.Entry<String, Long> perk : report.perks().entrySet())
+            printShare(report, perk.getKey(), perk.getValue());
+
+        System.out.println("  Branches taken, as a share of playthroughs");
+        for (Map.Entry<String, long[]> chapter : report.branches().entrySet())
+            printBranches(gameDir, chapter.getKey(), chapter.getValue(), report);
+    }
+
+    private static Policy policy(String name) {
+        String[] parts = name.split(":", 2);
+        switch (parts[0]) {
+            case "uniform":
+                return Policy.uniform();
+            case "gated":
+                return Policy.preferGated(4);
+            case "weighted": {
+                double[] weights = Arrays.stream((parts.length > 1 ? parts[1] : "2,1").split(","))
+                        .mapToDouble(Double::parseDouble).toArray();
+                return Policy.weighted((branch, position) -> weights[Math.min(position, weights.length - 1)]);
+            }
+            case "script":
+                return Policy.scripted(Arrays.stream((parts.length > 1 ? parts[1] : "").split(","))
+                        .filter(choice -> !choice.isEmpty()).mapToInt(Integer::parseInt).toArray());
+            default:
+                throw new IllegalArgumentException("Unknown policy " + name);
+        }
+    }
+
+    private static void printShare(Report report, String name, long count) {
+        System.out.printf("    %-52s %10d %6.2f%%%n", name, count,
+                report.playthroughs() == 0 ? 0 : 100.0 * count / report.playthroughs());
+    }
+
+    private static void printBranches(File gameDir, String chapterId, long[] taken, Report report)
+            throws IOException {
+        Chapter chapter = ChapterCache.shared().get(gameDir, chapterId);
+        String[] names = new String[taken.length];
+        for (int id = 0; id < chapter.sceneCount(); id++)
+            if (chapter.scene(id) instanceof NodeScene node)
+                for (int i = 0; i < node.branches().size(); i++) {
+                    Branch branch = node.branches().get(i);
+                    if (branch.id() >= 0 && branch.id() < names.length)
+                        names[branch.id()] = "chapter " + chapterId + ", scene " + node.index() + ", branch "
+                                + (i + 1) + " to " + branch.nextScene();
+                }
+
+        Integer[] order = new Integer[taken.length];
+        int never = 0;
+        for (int id = 0; id < taken.length; id++) {
+            order[id] = id;
+            if (taken[id] == 0)
+                never++;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(taken[b], taken[a]));
+        for (int i = 0; i < Math.min(PRINT_LIMIT, taken.length - never); i++)
+            printShare(report, names[order[i]], taken[order[i]]);
+        if (taken.length - never > PRINT_LIMIT)
+            System.out.printf("    ... and %d more%n", taken.length - never - PRINT_LIMIT);
+        System.out.printf("    chapter %s: %d of %d branches never taken%n", chapterId, never, taken.length);
+    }
+
+    /**
+     * Simulates playthroughs of the game, each from the start of a new game.
+     *
+     * @param playthroughs The number of playthroughs
+     * @param seed         The seed of every random choice made
+     * @return What happened
+     * @throws IOException If a chapter of the game cannot be read
+     */
+    public Report simulate(long playthroughs, long seed) throws IOException {
+        GameSession template = new GameSession();
+        template.newGame(gameDir.getPath());
+        Tally tally;
+        try {
+            tally = pool.invoke(new Play(template, 0, playthroughs, new SplittableRandom(seed)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new Report(tally, template.attributes());
+    }
+
+    /**
+     * Plays a range of the playthroughs, {@link #SPLIT} at a time.
+     */
+    private class Play extends RecursiveTask<Tally> {
+        private static final long serialVersionUID = 1L;
+
+        private final GameSession template;
+        private final long first;
+        private final long last;
+        private final SplittableRandom random;
+
+        Play(GameSession template, long first, long last, SplittableRandom random) {
+            this.template = template;
+            this.first = first;
+            this.last = last;
+            this.random = random;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (last - first > SPLIT) {
+                long runs = (last - first + SPLIT - 1) / SPLIT;
+                long middle = first + runs / 2 * SPLIT;
+                Play right = new Play(template, middle, last, random.split());
+                right.fork();
+                Tally tally = new Play(template, first, middle, random).compute();
+                return tally.add(right.join());
+            }
+
+            Tally tally = new Tally();
+            GameSession session = new GameSession();
+            Player player = template.player();
+            try {
+                for (long i = first; i < last; i++) {
+                    session.restore(template.gameDir(), template.chapterId(), template.chapter(),
+                            new Player(player.name(), player.attributes(), player.perkIds(), player.itemIds(),
+                                    player.statusIds()),
+                            template.chapter().firstSceneId(), new BitSet(template.chapter().branchCount()), false);
+                    play(session, tally);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return tally;
+        }
+
+        /**
+         * Plays one game to its end, tallying what happened.
+         */
+        private void play(GameSession session, Tally tally) throws IOException {
+            SceneView view = session.view();
+            int choices = 0;
+            int branches = 0;
+            while (!view.isEnded()) {
+                if (choices == MAX_CHOICES) {
+                    tally.stopped++;
+                    break;
+                }
+                Scene scene = view.scene();
+                String chapterId = session.chapterId();
+                Chapter chapter = session.chapter();
+                int choice = 0;
+                Branch branch = null;
+                if (view.kind() == SceneView.Kind.NODE) {
+                    if (view.choices().isEmpty()) {
+                        tally.stuck++;
+                        break;
+                    }
+                    choice = policy.choose(view, branches++, random);
+                    branch = view.choices().get(choice);
+                }
+                boolean terminus = view.kind() == SceneView.Kind.TERMINUS;
+                view = session.choose(choice);
+                // The only choices refused are those leading to missing scenes
+                if (view.error().isPresent()) {
+                    tally.dangling++;
+                    break;
+                }
+                if (branch != null && branch.id() >= 0)
+                    tally.branchesOf(chapterId, chapter)[branch.id()]++;
+                choices++;
+                if (view.isEnded())
+                    tally.ended(new Ending(chapterId, scene.index(), terminus));
+            }
+            tally.played(choices, session.player());
+        }
+    }
+
+    /**
+     * What a run of playthroughs saw, added up with other runs once they are
+     * done.
+     */
+    private static class Tally {
+        private long playthroughs;
+        private final HashMap<Ending, Long> endings = new HashMap<>();
+        private long stuck;
+        private long dangling;
+        private long stopped;
+        private long[] lengths = new long[16];
+        private long[] perkCounts = new long[8];
+        private long[] perks = new long[8];
+        private final HashMap<String, long[]> branches = new HashMap<>();
+        // The branch tally of the chapter last played, which is nearly always the next one played
+        private String lastChapter;
+        private long[] lastBranches;
+
+        void ended(Ending ending) {
+            endings.merge(ending, 1L, Long::sum);
+        }
+
+        void played(int choices, Player player) {
+            playthroughs++;
+            lengths = count(lengths, choices, 1);
+            BitSet held = player.perkIds();
+            perkCounts = count(perkCounts, held.cardinality(), 1);
+            for (int perk = held.nextSetBit(0); perk >= 0; perk = held.nextSetBit(perk + 1))
+                perks = count(perks, perk, 1);
+        }
+
+        long[] branchesOf(String chapterId, Chapter chapter) {
+            if (!chapterId.equals(lastChapter)) {
+                lastChapter = chapterId;
+                lastBranches = branches.computeIfAbsent(chapterId, id -> new long[chapter.branchCount()]);
+            }
+            return lastBranches;
+        }
+
+        Tally add(Tally other) {
+            playthroughs += other.playthroughs;
+            other.endings.forEach((ending, count) -> endings.merge(ending, count, Long::sum));
+            stuck += other.stuck;
+            dangling += other.dangling;
+            stopped += other.stopped;
+            for (int i = 0; i < other.lengths.length; i++)
+                lengths = count(lengths, i, other.lengths[i]);
+            for (int i = 0; i < other.perkCounts.length; i++)
+                perkCounts = count(perkCounts, i, other.perkCounts[i]);
+            for (int i = 0; i < other.perks.length; i++)
+                perks = count(perks, i, other.perks[i]);
+            other.branches.forEach((chapterId, taken) -> branches.merge(chapterId, taken, (mine, theirs) -> {
+                for (int i = 0; i < mine.length; i++)
+                    mine[i] += theirs[i];
+                return mine;
+            }));
+            return this;
+        }
+
+        /**
+         * Adds to a count in an array of counts, growing it if needed.
+         *
+         * @return The array, or the grown array
+         */
+        private static long[] count(long[] counts, int index, long amount) {
+            if (amount == 0)
+                return counts;
+            if (index >= counts.length)
+                counts = Arrays.copyOf(counts, Math.max(counts.length * 2, index + 1));
+            counts[index] += amount;
+            return counts;
+        }
+    }
+}
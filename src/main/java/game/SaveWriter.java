@@ -0,0 +1,288 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * <p>
+ * The SaveWriter writes saves on a background thread, so saving (such as an
+ * autosave at every scene) never holds up the player. A snapshot of the
+ * session is taken on the calling thread, which is cheap, and the slow part of
+ * serialising and writing it is left to the writer.
+ * </p>
+ *
+ * <p>
+ * Each save file has at most one snapshot waiting to be written. Saving again
+ * before the writer gets to it replaces the waiting snapshot, so a session that
+ * saves faster than the disk can keep up only ever has its latest state
+ * written, and the queue never grows past one entry per session.
+ * </p>
+ *
+ * <p>
+ * Saves are written to a temporary file next to the save, forced to disk, and
+ * then moved over the save. A crash part way through a write leaves the
+ * previous save intact rather than a truncated one.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class SaveWriter implements AutoCloseable {
+    private static final SaveWriter SHARED = new SaveWriter();
+
+    // Snapshots waiting to be written, oldest first, keyed by save file
+    private final LinkedHashMap<File, JSONObject> pending = new LinkedHashMap<>();
+    private final Thread writer;
+    // The save being written, or null
+    private File writing;
+    private boolean closed;
+
+    private long requests;
+    private long writes;
+    private long coalesced;
+    private long failures;
+    private long totalNanos;
+    private long maxNanos;
+    private int maxQueueDepth;
+    private IOException lastFailure;
+
+    public SaveWriter() {
+        writer = new Thread(this::run, "save-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return The writer shared by every session in this process. Anything it
+     *         has not yet written is flushed when the process exits.
+     */
+    public static SaveWriter shared() {
+        return SHARED;
+    }
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(SHARED::close, "save-writer-shutdown"));
+    }
+
+    /**
+     * Snapshots a session and queues it to be written to a save file. If a
+     * snapshot for this file is still waiting, it is replaced by this one.
+     *
+     * @param session The session to save
+     * @param save    The JSON save file to write
+     */
+    public void save(GameSession session, File save) {
+        submit(GameWriter.writeSave(session), save);
+    }
+
+    /**
+     * Queues a JSON save to be written, replacing any save still waiting to be
+     * written to the same file.
+     *
+     * @param jSave The JSON save, which must not be modified afterwards
+     * @param save  The JSON save file to write
+     */
+    public synchronized void submit(JSONObject jSave, File save) {
+        if (closed)
+            throw new IllegalStateException("SaveWriter is closed");
+
+        requests++;
+        File key = save.getAbsoluteFile();
+        if (pending.put(key, jSave) != null)
+            coalesced++;
+        maxQueueDepth = Math.max(maxQueueDepth, pending.size());
+        notifyAll();
+    }
+
+    /**
+     * Waits until every save queued so far has been written.
+     *
+     * @throws InterruptedException
+     */
+    public synchronized void flush() throws InterruptedException {
+        while (!pending.isEmpty() || writing != null)
+            wait();
+    }
+
+    /**
+     * Waits until any save queued so far for one file has been written, so
+     * the file can be read back.
+     *
+     * @param save The JSON save file
+     * @throws InterruptedException
+     */
+    public synchronized void flush(File save) throws InterruptedException {
+        File key = save.getAbsoluteFile();
+        while (pending.containsKey(key) || key.equals(writing))
+            wait();
+    }
+
+    /**
+     * Writes everything still queued, then stops the writer. Saves submitted
+     * after this are refused.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            File save;
+            JSONObject jSave;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Keep going until closed, so no save is lost
+                    }
+                }
+                if (pending.isEmpty())
+                    return;
+
+                Iterator<Map.Entry<File, JSONObject>> it = pending.entrySet().iterator();
+                Map.Entry<File, JSONObject> next = it.next();
+                it.remove();
+                save = next.getKey();
+                jSave = next.getValue();
+                writing = save;
+            }
+
+            long start = System.nanoTime();
+            IOException failure = null;
+            try {
+                write(jSave.toString(4), save);
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                // Such as a path the file system refuses. The writer must outlive it, or every later save is lost.
+                failure = new IOException("Could not write " + save, e);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            synchronized (this) {
+                writing = null;
+                if (failure == null) {
+                    writes++;
+                    totalNanos += elapsed;
+                    maxNanos = Math.max(maxNanos, elapsed);
+                } else {
+                    failures++;
+                    lastFailure = failure;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes a file so that it either holds all of the new contents or is left
+     * as it was.
+     *
+     * @param contents The new contents of the file
+     * @param file     The file to replace
+     * @throws IOException
+     */
+    static void write(String contents, File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(contents.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining())
+                channel.write(bytes);
+            channel.force(true);
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return The number of saves submitted
+     */
+    public synchronized long requests() {
+        return requests;
+    }
+
+    /**
+     * @return The number of saves written to disk
+     */
+    public synchronized long writes() {
+        return writes;
+    }
+
+    /**
+     * @return The number of saves replaced by a newer save before they were
+     *         written
+     */
+    public synchronized long coalesced() {
+        return coalesced;
+    }
+
+    /**
+     * @return The number of saves that could not be written
+     */
+    public synchronized long failures() {
+        return failures;
+    }
+
+    /**
+     * @return Why the last failed save could not be written, or {@code null}
+     */
+    public synchronized IOException lastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * @return The number of save files with a snapshot waiting to be written
+     */
+    public synchronized int queueDepth() {
+        return pending.size();
+    }
+
+    /**
+     * @return The most save files that have been waiting at once
+     */
+    public synchronized int maxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return The mean time to serialise and write a save, in nanoseconds
+     */
+    public synchronized long meanWriteNanos() {
+        return writes == 0 ? 0 : totalNanos / writes;
+    }
+
+    /**
+     * @return The longest time to serialise and write a save, in nanoseconds
+     */
+    public synchronized long maxWriteNanos() {
+        return maxNanos;
+    }
+}
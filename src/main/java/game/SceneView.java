@@ -0,0 +1,158 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import scenes.Branch;
+import scenes.LeafScene;
+import scenes.NodeScene;
+import scenes.Scene;
+
+/**
+ * <p>
+ * A SceneView is what the player sees of the scene they are in: its lines, the
+ * result of its event, and the choices they have. It is plain data, so a
+ * terminal, a server or a bot can each show it however they like, or not at
+ * all.
+ * </p>
+ *
+ * <p>
+ * Text is only formatted when it is asked for, so a bot stepping through
+ * scenes without reading them pays nothing for it.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public final class SceneView {
+
+    /**
+     * The kind of scene the player is in, which decides what their choices
+     * mean.
+     */
+    public enum Kind {
+        /** The player chooses one of the branches */
+        NODE,
+        /** Any choice continues to the next scene */
+        LEAF,
+        /** Any choice ends the game */
+        TERMINUS,
+        /** The game is over, and there are no more scenes */
+        END
+    }
+
+    private static final SceneView END = new SceneView(Kind.END, null, null, List.of(), null);
+
+    private final Kind kind;
+    private final Scene scene;
+    private final Player player;
+    private final List<Branch> choices;
+    private final String error;
+
+    private SceneView(Kind kind, Scene scene, Player player, List<Branch> choices, String error) {
+        this.kind = kind;
+        this.scene = scene;
+        this.player = player;
+        this.choices = choices;
+        this.error = error;
+    }
+
+    /**
+     * @param scene   The scene the player is in
+     * @param player  The player character
+     * @param choices The branches the player may choose
+     * @return The view of the scene
+     */
+    static SceneView of(Scene scene, Player player, List<Branch> choices) {
+        Kind kind = scene instanceof NodeScene ? Kind.NODE : scene instanceof LeafScene ? Kind.LEAF : Kind.TERMINUS;
+        return new SceneView(kind, scene, player, choices, null);
+    }
+
+    /**
+     * @return The view once the game is over
+     */
+    static SceneView end() {
+        return END;
+    }
+
+    /**
+     * @param error Why the player's last choice was refused
+     * @return This view, with the error shown
+     */
+    SceneView withError(String error) {
+        return new SceneView(kind, scene, player, choices, error);
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * @return {@code true} if the game is over
+     */
+    public boolean isEnded() {
+        return kind == Kind.END;
+    }
+
+    /**
+     * @return The scene the player is in, or {@code null} if the game is over
+     */
+    public Scene scene() {
+        return scene;
+    }
+
+    /**
+     * @return The index of the scene the player is in, or an empty string if
+     *         the game is over
+     */
+    public String sceneIndex() {
+        return scene == null ? "" : scene.index();
+    }
+
+    /**
+     * @return The lines of the scene, with the player's details filled in
+     */
+    public String lines() {
+        return scene == null ? "" : scene.text().render(player);
+    }
+
+    /**
+     * @return The player the scene is shown to, or {@code null} if the game is
+     *         over
+     */
+    public Player player() {
+        return player;
+    }
+
+    /**
+     * @return What the scene's event did to the player, if it has one
+     */
+    public Optional<String> event() {
+        return scene == null ? Optional.empty() : scene.event().map(event -> event.describe());
+    }
+
+    /**
+     * @return The branches the player may choose, in the order they are shown.
+     *         Choices are numbered from {@code 0} in this order.
+     */
+    public List<Branch> choices() {
+        return choices;
+    }
+
+    /**
+     * @return The prompt of every branch the player may choose
+     */
+    public List<String> prompts() {
+        ArrayList<String> prompts = new ArrayList<>(choices.size());
+        for (Branch branch : choices)
+            prompts.add(branch.prompt());
+        return prompts;
+    }
+
+    /**
+     * @return Why the player's last choice was refused, if it was
+     */
+    public Optional<String> error() {
+        return Optional.ofNullable(error);
+    }
+}
@@ -0,0 +1,233 @@
+package game;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>
+ * A SessionHibernator writes idle sessions to disk, so they take no heap
+ * while their players are away, and reads them back when they return.
+ * </p>
+ *
+ * <p>
+ * A hibernated session is only what the player changed: the chapter and scene
+ * they are in, the branches they have taken and the player themselves. The
+ * chapter comes back from the shared ChapterCache, and is checked against its
+ * hash so a session is never put back onto a chapter that has changed. Each
+ * session is a few hundred bytes in {@code dir/<id>.session}.
+ * </p>
+ *
+ * <p>
+ * Hibernated sessions are only meant for the process that wrote them, so any
+ * left in the directory by an earlier process are deleted when a hibernator
+ * opens it. Sessions playing a chapter from outside the game directory, or
+ * being journaled, cannot be hibernated and stay in memory.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class SessionHibernator {
+    // "WGH1"
+    private static final int MAGIC = 0x57474831;
+    private static final String EXTENSION = ".session";
+
+    private final File dir;
+    private long hibernated;
+    private long rehydrated;
+    private long bytesWritten;
+    private long rehydrateNanos;
+    private long maxRehydrateNanos;
+
+    /**
+     * @param dir The directory to write sessions to, which is created if it
+     *            does not exist
+     * @throws IOException If the directory could not be created
+     */
+    public SessionHibernator(File dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir.toPath());
+        File[] stale = dir.listFiles((parent, name) -> name.endsWith(EXTENSION));
+        if (stale != null)
+            for (File file : stale)
+                Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * @param session A session
+     * @return {@code true} if the session can be hibernated
+     */
+    public static boolean canHibernate(GameSession session) {
+        return session.chapterId() != null && session.chapter().hash() != null && session.gameDir() != null
+                && !session.isJournaled();
+    }
+
+    /**
+     * Writes a session to disk. The caller drops it once this returns.
+     *
+     * @param id      The id of the session
+     * @param session The session, which {@link #canHibernate} must allow
+     * @throws IOException If the session could not be written
+     */
+    public void hibernate(String id, GameSession session) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeUTF(session.gameDir().getPath());
+            out.writeUTF(session.chapterId());
+            out.writeUTF(session.chapter().hash());
+            out.writeInt(session.currSceneId());
+            out.writeBoolean(session.hasEntered());
+            out.writeUTF(session.nextChapter().orElse(""));
+            out.writeBoolean(session.nextChapter().isPresent());
+
+            // A chapter with over 4 million branches has more than a short's worth of words
+            long[] consumed = session.consumedBranches().toLongArray();
+            out.writeInt(consumed.length);
+            for (long word : consumed)
+                out.writeLong(word);
+
+            Player player = session.player();
+            out.writeUTF(player.name());
+            writeNames(out, player.perks());
+            writeNames(out, player.items());
+            writeNames(out, player.statuses());
+        }
+        Files.write(file(id).toPath(), bytes.toByteArray());
+
+        synchronized (this) {
+            hibernated++;
+            bytesWritten += bytes.size();
+        }
+    }
+
+    /**
+     * Reads a hibernated session back, and deletes it from disk.
+     *
+     * @param id The id of the session
+     * @return The session, as it was when it was hibernated
+     * @throws IOException If the session could not be read, or its chapter
+     *                     has changed since
+     */
+    public GameSession rehydrate(String id) throws IOException {
+        long start = System.nanoTime();
+        File file = file(id);
+        GameSession session = new GameSession();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                Files.readAllBytes(file.toPath())))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(file + " is not a hibernated session");
+            File gameDir = new File(in.readUTF());
+            String chapterId = in.readUTF();
+            String hash = in.readUTF();
+            int currScene = in.readInt();
+            boolean entered = in.readBoolean();
+            String next = in.readUTF();
+            Optional<String> nextChapter = in.readBoolean() ? Optional.of(next) : Optional.empty();
+
+            long[] consumed = new long[in.readInt()];
+            for (int i = 0; i < consumed.length; i++)
+                consumed[i] = in.readLong();
+
+            Attributes attributes = Attributes.forGame(gameDir);
+            Player player = new Player(in.readUTF(), attributes, readNames(in), readNames(in), readNames(in));
+
+            Chapter chapter = ChapterCache.shared().get(gameDir, chapterId);
+            if (!hash.equals(chapter.hash()))
+                throw new IOException("Chapter " + chapterId + " of " + gameDir.getName()
+                        + " has changed since session " + id + " was hibernated");
+            session.rehydrate(gameDir, chapterId, chapter, player, currScene, nextChapter,
+                    BitSet.valueOf(consumed), entered);
+        }
+        Files.deleteIfExists(file.toPath());
+
+        long elapsed = System.nanoTime() - start;
+        synchronized (this) {
+            rehydrated++;
+            rehydrateNanos += elapsed;
+            maxRehydrateNanos = Math.max(maxRehydrateNanos, elapsed);
+        }
+        return session;
+    }
+
+    /**
+     * Deletes a hibernated session that will not be rehydrated.
+     *
+     * @param id The id of the session
+     */
+    public void delete(String id) {
+        try {
+            Files.deleteIfExists(file(id).toPath());
+        } catch (IOException e) {
+            System.err.println("Could not delete hibernated session " + id + ": " + e);
+        }
+    }
+
+    private File file(String id) {
+        return new File(dir, id + EXTENSION);
+    }
+
+    private static void writeNames(DataOutputStream out, List<String> names) throws IOException {
+        out.writeShort(names.size());
+        for (String name : names)
+            out.writeUTF(name);
+    }
+
+    private static List<String> readNames(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        ArrayList<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            names.add(in.readUTF());
+        return names;
+    }
+
+    /**
+     * @return The directory sessions are written to
+     */
+    public File dir() {
+        return dir;
+    }
+
+    /**
+     * @return The number of sessions hibernated
+     */
+    public synchronized long hibernated() {
+        return hibernated;
+    }
+
+    /**
+     * @return The number of sessions rehydrated
+     */
+    public synchronized long rehydrated() {
+        return rehydrated;
+    }
+
+    /**
+     * @return The mean size of a hibernated session, in bytes
+     */
+    public synchronized long meanBytes() {
+        return hibernated == 0 ? 0 : bytesWritten / hibernated;
+    }
+
+    /**
+     * @return The mean time taken to rehydrate a session, in nanoseconds
+     */
+    public synchronized long meanRehydrateNanos() {
+        return rehydrated == 0 ? 0 : rehydrateNanos / rehydrated;
+    }
+
+    /**
+     * @return The longest time taken to rehydrate a session, in nanoseconds
+     */
+    public synchronized long maxRehydrateNanos() {
+        return maxRehydrateNanos;
+    }
+}
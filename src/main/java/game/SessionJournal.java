@@ -0,0 +1,385 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import scenes.Branch;
+import scenes.NodeScene;
+import scenes.Scene;
+
+/**
+ * <p>
+ * A SessionJournal saves a session by appending a small record for each change
+ * the player makes, rather than rewriting the whole save. The records are:
+ * </p>
+ * <ul>
+ * <li>{@code SCENE}, the player moved to a scene</li>
+ * <li>{@code EVENT}, the event of the current scene was applied</li>
+ * <li>{@code BRANCH}, the player took a branch of the current scene</li>
+ * <li>{@code CHAPTER}, the player started a chapter</li>
+ * <li>{@code END}, the game will end after this chapter</li>
+ * </ul>
+ *
+ * <p>
+ * Every {@code snapshotEvery} records the whole session is written to a
+ * snapshot, which is an ordinary save with a {@code journal} field naming the
+ * journal that follows it. Each snapshot starts a new journal, and the old one
+ * is only deleted once the snapshot is safely written, so a crash at any point
+ * leaves a snapshot and the journal of changes made since.
+ * </p>
+ *
+ * <p>
+ * Restoring loads the snapshot and replays the journal through the same
+ * session methods the scenes use, so events and branches behave exactly as
+ * they did when played. Each record carries its length and a checksum, and a
+ * record torn by a crash is dropped along with anything after it.
+ * </p>
+ *
+ * <p>
+ * Records are buffered, and written to the journal in one go at the end of
+ * each move, when the player reaches a scene or chapter or the game ends. A journal for {@code saves/foo} is kept in
+ * {@code saves/foo.snapshot.json} and {@code saves/foo.N.journal}.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class SessionJournal implements AutoCloseable {
+    static final byte SCENE = 1;
+    static final byte EVENT = 2;
+    static final byte BRANCH = 3;
+    static final byte CHAPTER = 4;
+    static final byte END = 5;
+
+    public static final int DEFAULT_SNAPSHOT_EVERY = 256;
+
+    // Length and checksum before every record
+    private static final int HEADER = 8;
+
+    private final GameSession session;
+    private final File base;
+    private final int snapshotEvery;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(16 << 10);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private int generation;
+    private int recordStart;
+    private int sinceSnapshot;
+    private long records;
+    private long snapshots;
+
+    private SessionJournal(GameSession session, File base, int snapshotEvery) {
+        this.session = session;
+        this.base = base;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    /**
+     * Starts journaling a session, writing its current state as the first
+     * snapshot.
+     *
+     * @param session       The session to journal
+     * @param base          The save, without an extension, such as
+     *                      {@code saves/foo}
+     * @param snapshotEvery How many records to write between snapshots
+     * @return The journal, which is now attached to the session
+     * @throws IOException
+     */
+    public static SessionJournal create(GameSession session, File base, int snapshotEvery) throws IOException {
+        SessionJournal journal = new SessionJournal(session, base, snapshotEvery);
+        journal.snapshot();
+        session.attachJournal(journal);
+        return journal;
+    }
+
+    /**
+     * Restores a session from its latest snapshot and the journal written
+     * after it, then carries on journaling it.
+     *
+     * @param base          The save, without an extension, such as
+     *                      {@code saves/foo}
+     * @param snapshotEvery How many records to write between snapshots
+     * @return The restored session
+     * @throws IOException If the snapshot could not be loaded, or the journal
+     *                     does not fit its chapter
+     */
+    public static GameSession restore(File base, int snapshotEvery) throws IOException {
+        return restore(base, snapshotEvery, new File("data"));
+    }
+
+    /**
+     * Restores a session as {@link #restore(File, int)} does, looking its game
+     * up in the given directory rather than in data.
+     *
+     * @param base          The save, without an extension
+     * @param snapshotEvery How many records to write between snapshots
+     * @param gamesDir      The directory holding the game the save names
+     * @return The restored session
+     * @throws IOException If the snapshot could not be loaded, or the journal
+     *                     does not fit its chapter
+     */
+    public static GameSession restore(File base, int snapshotEvery, File gamesDir) throws IOException {
+        File snapshot = snapshotFile(base);
+        GameSession session = new GameSession();
+        session.loadSave(snapshot, gamesDir);
+
+        SessionJournal journal = new SessionJournal(session, base, snapshotEvery);
+        journal.generation = new GameParser(snapshot).parseJournal();
+        File file = journal.journalFile(journal.generation);
+        journal.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        long valid = journal.replay();
+        // Drop a torn record left by a crash, so new records follow the last whole one
+        journal.channel.truncate(valid);
+        journal.channel.position(valid);
+        session.attachJournal(journal);
+        return session;
+    }
+
+    /**
+     * @param base The save, without an extension
+     * @return The snapshot file of that save
+     */
+    public static File snapshotFile(File base) {
+        return new File(base.getPath() + ".snapshot.json");
+    }
+
+    private File journalFile(int generation) {
+        return new File(base.getPath() + "." + generation + ".journal");
+    }
+
+    void sceneEntered(String index) throws IOException {
+        begin(SCENE);
+        putString(index);
+        finish();
+        flush();
+    }
+
+    void eventApplied(String index) throws IOException {
+        begin(EVENT);
+        putString(index);
+        finish();
+    }
+
+    void branchTaken(String index, int id) throws IOException {
+        begin(BRANCH);
+        putString(index);
+        buffer.putInt(id);
+        finish();
+    }
+
+    void chapterStarted(String chapterId) throws IOException {
+        // A chapter from outside the game directory cannot be replayed
+        if (chapterId == null) {
+            snapshot();
+            return;
+        }
+        begin(CHAPTER);
+        putString(chapterId);
+        finish();
+        flush();
+    }
+
+    void gameEnded() throws IOException {
+        begin(END);
+        finish();
+        flush();
+    }
+
+    /**
+     * Writes the buffered records to the journal.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes the whole session to a new snapshot, and starts a new journal
+     * after it.
+     *
+     * @throws IOException
+     */
+    public void snapshot() throws IOException {
+        int next = generation + 1;
+        FileChannel nextChannel = FileChannel.open(journalFile(next).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        // Until this is written, the old snapshot and journal still restore the session
+        try {
+            SaveWriter.write(GameWriter.writeSave(session).put("journal", next).toString(4), snapshotFile(base));
+        } catch (IOException | RuntimeException e) {
+            // Carry on with the old journal, leaving nothing of the new one behind
+            try {
+                nextChannel.close();
+                Files.deleteIfExists(journalFile(next).toPath());
+            } catch (IOException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+
+        if (channel != null) {
+            buffer.clear();
+            channel.close();
+            Files.deleteIfExists(journalFile(generation).toPath());
+        }
+        channel = nextChannel;
+        generation = next;
+        sinceSnapshot = 0;
+        snapshots++;
+    }
+
+    /**
+     * Writes any buffered records and closes the journal. The session is no
+     * longer journaled.
+     */
+    @Override
+    public void close() throws IOException {
+        session.attachJournal(null);
+        flush();
+        channel.force(false);
+        channel.close();
+    }
+
+    /**
+     * @return The number of records written since the journal was opened
+     */
+    public long records() {
+        return records;
+    }
+
+    /**
+     * @return The number of snapshots written since the journal was opened
+     */
+    public long snapshots() {
+        return snapshots;
+    }
+
+    private void begin(byte type) throws IOException {
+        // Every record but one with a very long scene index fits in what is left
+        if (buffer.remaining() < 1024)
+            flush();
+        recordStart = buffer.position();
+        buffer.position(recordStart + HEADER);
+        buffer.put(type);
+    }
+
+    /**
+     * Fills in the length and checksum of the record just written, and takes
+     * a snapshot if one is due.
+     */
+    private void finish() throws IOException {
+        int end = buffer.position();
+        crc.reset();
+        crc.update(buffer.duplicate().position(recordStart + HEADER).limit(end));
+        buffer.putInt(recordStart, end - recordStart - HEADER);
+        buffer.putInt(recordStart + 4, (int) crc.getValue());
+        records++;
+
+        if (++sinceSnapshot >= snapshotEvery)
+            snapshot();
+    }
+
+    private void putString(String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Replays every whole move in the journal onto the session. A move is the
+     * records up to and including a {@code SCENE}, {@code CHAPTER} or
+     * {@code END} record, so a crash part way through a move restores the
+     * session to before it.
+     *
+     * @return The length of the journal up to the end of the last whole move
+     */
+    private long replay() throws IOException {
+        ByteBuffer journal = ByteBuffer.allocate((int) channel.size());
+        while (journal.hasRemaining() && channel.read(journal) >= 0)
+            ;
+        journal.flip();
+
+        ArrayList<ByteBuffer> move = new ArrayList<>();
+        long valid = 0;
+        while (journal.remaining() >= HEADER) {
+            int length = journal.getInt();
+            int checksum = journal.getInt();
+            if (length <= 0 || length > journal.remaining())
+                break;
+
+            ByteBuffer record = journal.slice(journal.position(), length);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum)
+                break;
+            journal.position(journal.position() + length);
+
+            move.add(record);
+            byte type = record.get(0);
+            if (type == SCENE || type == CHAPTER || type == END) {
+                for (ByteBuffer whole : move)
+                    apply(whole);
+                move.clear();
+                valid = journal.position();
+            }
+        }
+        return valid;
+    }
+
+    private void apply(ByteBuffer record) throws IOException {
+        byte type = record.get();
+        switch (type) {
+            case SCENE:
+                session.setCurrScene(getString(record));
+                break;
+            case EVENT:
+                session.runSceneEvent(replayScene(getString(record)));
+                break;
+            case BRANCH:
+                Scene scene = replayScene(getString(record));
+                int id = record.getInt();
+                if (scene instanceof NodeScene node)
+                    for (Branch branch : node.branches())
+                        if (branch.id() == id) {
+                            session.takeBranch(branch);
+                            return;
+                        }
+                throw new IOException("Journal takes branch " + id + ", which is not in scene " + scene.index());
+            case CHAPTER:
+                String chapterId = getString(record);
+                session.startChapter(chapterId, ChapterCache.shared().get(session.gameDir(), chapterId));
+                break;
+            case END:
+                session.endGame();
+                break;
+            default:
+                throw new IOException("Unknown journal record " + type);
+        }
+    }
+
+    private Scene replayScene(String index) throws IOException {
+        Scene scene = session.chapter().scene(index);
+        if (scene == null)
+            throw new IOException("Journal refers to scene " + index + ", which is not in the chapter");
+        return scene;
+    }
+
+    private static String getString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getShort() & 0xFFFF];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,419 @@
+package game;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * A SessionStore keeps the sessions of players who are not tied to a terminal
+ * or connection, such as players of the HTTP API, by id.
+ * </p>
+ *
+ * <p>
+ * Sessions are evicted when they have not been used for {@code idleTimeout}
+ * milliseconds, and the least recently used session is evicted whenever the
+ * store holds more than {@code maxSessions}, so abandoned sessions never pile
+ * up. Ids are random and long enough that one player cannot guess another's.
+ * </p>
+ *
+ * <p>
+ * Given a SessionHibernator, the store also keeps its heap small. Sessions
+ * that go unused for {@code hibernateAfter} milliseconds are written to disk
+ * and dropped from memory, as are the least recently used sessions whenever
+ * more than {@code maxResident} are in memory. A hibernated session is read
+ * back the next time it is used, so its player never knows it was gone. A
+ * session that cannot be read back, such as one whose chapter has changed
+ * since, is dropped and its file deleted, and is treated as expired.
+ * </p>
+ *
+ * <p>
+ * A session may only be used by one thread at a time, so callers lock the
+ * Entry while they use its session. The store may lock other entries to
+ * hibernate them, so callers must not hold an Entry's lock while they add or
+ * get a session.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class SessionStore {
+    public static final int DEFAULT_MAX_SESSIONS = 10_000;
+    public static final long DEFAULT_IDLE_TIMEOUT = 30 * 60 * 1000;
+    public static final int DEFAULT_MAX_RESIDENT = 1_000;
+    public static final long DEFAULT_HIBERNATE_AFTER = 60 * 1000;
+
+    /**
+     * A stored session, and when it was last used. The session may be
+     * hibernated, in which case it is read back when it is next asked for.
+     */
+    public class Entry {
+        private final String id;
+        // Null while hibernated, or once evicted
+        private GameSession session;
+        private volatile long lastUsed;
+        private boolean evicted;
+        // Cannot be hibernated, so it stays in memory
+        private volatile boolean pinned;
+
+        private Entry(String id, GameSession session) {
+            this.id = id;
+            this.session = session;
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        public String id() {
+            return id;
+        }
+
+        /**
+         * Gets the session, rehydrating it if it was hibernated.
+         *
+         * @return The session
+         * @throws NoSuchElementException If the session was evicted since this
+         *                                entry was got, or could not be
+         *                                rehydrated
+         */
+        public synchronized GameSession session() {
+            if (session == null) {
+                if (evicted)
+                    throw new NoSuchElementException("Session " + id + " has expired");
+                try {
+                    session = hibernator.rehydrate(id);
+                } catch (IOException | RuntimeException e) {
+                    // It would fail the same way every time, so it is dropped rather than kept until it times out
+                    System.err.println("Could not rehydrate session " + id + ": " + e);
+                    evicted = true;
+                    hibernator.delete(id);
+                    expired(this);
+                    throw new NoSuchElementException("Session " + id + " has expired");
+                }
+                resident(this);
+            }
+            return session;
+        }
+
+        /**
+         * @return {@code true} if the session is on disk rather than in memory
+         */
+        public synchronized boolean isHibernated() {
+            return session == null && !evicted;
+        }
+
+        /**
+         * @return When the session was last used, in milliseconds since the
+         *         epoch
+         */
+        public long lastUsed() {
+            return lastUsed;
+        }
+    }
+
+    private final SecureRandom random = new SecureRandom();
+    private final int maxSessions;
+    private final long idleTimeout;
+    private final SessionHibernator hibernator;
+    private final int maxResident;
+    private final long hibernateAfter;
+    // Sessions by id, least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // The sessions in memory, least recently used first
+    private final LinkedHashMap<String, Entry> residents = new LinkedHashMap<>(16, 0.75f, true);
+    private long created;
+    private long evicted;
+
+    public SessionStore() {
+        this(DEFAULT_MAX_SESSIONS, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Creates a store that keeps every session in memory.
+     *
+     * @param maxSessions The most sessions to keep at once
+     * @param idleTimeout How long a session may go unused before it is
+     *                    evicted, in milliseconds
+     */
+    public SessionStore(int maxSessions, long idleTimeout) {
+        this(maxSessions, idleTimeout, null, Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a store that hibernates sessions its players are not using.
+     *
+     * @param maxSessions    The most sessions to keep at once, in memory or
+     *                       hibernated
+     * @param idleTimeout    How long a session may go unused before it is
+     *                       evicted, in milliseconds
+     * @param hibernator     Where to hibernate sessions to, or {@code null} to
+     *                       keep them all in memory
+     * @param maxResident    The most sessions to keep in memory at once
+     * @param hibernateAfter How long a session may go unused before it is
+     *                       hibernated, in milliseconds
+     */
+    public SessionStore(int maxSessions, long idleTimeout, SessionHibernator hibernator, int maxResident,
+            long hibernateAfter) {
+        this.maxSessions = maxSessions;
+        this.idleTimeout = idleTimeout;
+        this.hibernator = hibernator;
+        this.maxResident = maxResident;
+        this.hibernateAfter = hibernateAfter;
+    }
+
+    /**
+     * Stores a session under a new id, evicting the least recently used
+     * session if the store is full, and hibernating others if too many are in
+     * memory.
+     *
+     * @param session The session to store
+     * @return The stored entry
+     */
+    public Entry add(GameSession session) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        Entry entry = new Entry(HexFormat.of().formatHex(bytes), session);
+
+        ArrayList<Entry> dropped = new ArrayList<>();
+        synchronized (this) {
+            entries.put(entry.id, entry);
+            residents.put(entry.id, entry);
+            created++;
+
+            Iterator<Entry> it = entries.values().iterator();
+            while (entries.size() > maxSessions) {
+                Entry oldest = it.next();
+                it.remove();
+                residents.remove(oldest.id);
+                dropped.add(oldest);
+            }
+            evicted += dropped.size();
+        }
+        drop(dropped);
+        trim();
+        return entry;
+    }
+
+    /**
+     * Gets a session, marking it as used. A hibernated session is rehydrated
+     * before it is returned.
+     *
+     * @param id The id of the session
+     * @return The entry, or {@code null} if there is no such session, it has
+     *         been evicted, or it could not be rehydrated
+     */
+    public Entry get(String id) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(id);
+            if (entry == null)
+                return null;
+            entry.lastUsed = System.currentTimeMillis();
+            residents.get(id);
+        }
+        try {
+            entry.session();
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+        trim();
+        return entry;
+    }
+
+    /**
+     * @param id The id of a session
+     * @return {@code true} if the session was stored
+     */
+    public boolean remove(String id) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.remove(id);
+            if (entry == null)
+                return false;
+            residents.remove(id);
+        }
+        drop(List.of(entry));
+        return true;
+    }
+
+    /**
+     * Evicts every session that has not been used within the idle timeout,
+     * and hibernates those not used within {@code hibernateAfter}.
+     *
+     * @return The number of sessions evicted
+     */
+    public int evictIdle() {
+        long now = System.currentTimeMillis();
+        ArrayList<Entry> dropped = new ArrayList<>();
+        ArrayList<Entry> idle = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Entry> it = entries.values().iterator();
+            // Least recently used first, so stop at the first session still in use
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.lastUsed >= now - idleTimeout)
+                    break;
+                it.remove();
+                residents.remove(entry.id);
+                dropped.add(entry);
+            }
+            evicted += dropped.size();
+
+            if (hibernator != null)
+                for (Entry entry : residents.values()) {
+                    if (entry.lastUsed >= now - hibernateAfter)
+                        break;
+                    idle.add(entry);
+                }
+        }
+        drop(dropped);
+        for (Entry entry : idle)
+            hibernate(entry, now - hibernateAfter);
+        trim();
+        return dropped.size();
+    }
+
+    /**
+     * Hibernates the least recently used sessions until no more than
+     * {@code maxResident} are in memory.
+     */
+    private void trim() {
+        if (hibernator == null)
+            return;
+        ArrayList<Entry> oldest = new ArrayList<>();
+        long[] lastUsed;
+        synchronized (this) {
+            int over = residents.size() - maxResident;
+            if (over <= 0)
+                return;
+            lastUsed = new long[over];
+            for (Iterator<Entry> it = residents.values().iterator(); oldest.size() < over && it.hasNext();) {
+                Entry entry = it.next();
+                if (!entry.pinned) {
+                    lastUsed[oldest.size()] = entry.lastUsed;
+                    oldest.add(entry);
+                }
+            }
+        }
+        // Any of these used since they were picked are left in memory
+        for (int i = 0; i < oldest.size(); i++)
+            hibernate(oldest.get(i), lastUsed[i]);
+    }
+
+    /**
+     * Hibernates a session, unless it was used after a time or is in use now.
+     */
+    private void hibernate(Entry entry, long unusedSince) {
+        synchronized (entry) {
+            if (entry.session == null || entry.pinned || entry.lastUsed > unusedSince)
+                return;
+            if (!SessionHibernator.canHibernate(entry.session)) {
+                entry.pinned = true;
+                return;
+            }
+            try {
+                hibernator.hibernate(entry.id, entry.session);
+            } catch (IOException e) {
+                System.err.println("Could not hibernate session " + entry.id + ": " + e);
+                return;
+            }
+            entry.session = null;
+            synchronized (this) {
+                residents.remove(entry.id);
+            }
+        }
+    }
+
+    /**
+     * Records that a session was rehydrated. Called with the entry locked.
+     */
+    private synchronized void resident(Entry entry) {
+        if (entries.get(entry.id) == entry)
+            residents.put(entry.id, entry);
+    }
+
+    /**
+     * Forgets a session that could not be rehydrated. Called with the entry
+     * locked.
+     */
+    private synchronized void expired(Entry entry) {
+        if (entries.get(entry.id) == entry) {
+            entries.remove(entry.id);
+            residents.remove(entry.id);
+            evicted++;
+        }
+    }
+
+    /**
+     * Marks evicted sessions, deleting any that were hibernated.
+     */
+    private void drop(Iterable<Entry> dropped) {
+        for (Entry entry : dropped)
+            synchronized (entry) {
+                entry.evicted = true;
+                if (entry.session == null && hibernator != null)
+                    hibernator.delete(entry.id);
+                entry.session = null;
+            }
+    }
+
+    /**
+     * @return How long a session may go unused, in milliseconds
+     */
+    public long idleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @return How long a session may go unused before it is hibernated, in
+     *         milliseconds
+     */
+    public long hibernateAfter() {
+        return hibernateAfter;
+    }
+
+    /**
+     * @return The hibernator of this store, or {@code null} if every session
+     *         is kept in memory
+     */
+    public SessionHibernator hibernator() {
+        return hibernator;
+    }
+
+    /**
+     * @return The number of sessions stored now, in memory or hibernated
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of sessions in memory now
+     */
+    public synchronized int resident() {
+        return residents.size();
+    }
+
+    /**
+     * @return The number of sessions hibernated now
+     */
+    public synchronized int hibernated() {
+        return entries.size() - residents.size();
+    }
+
+    /**
+     * @return The number of sessions ever stored
+     */
+    public synchronized long created() {
+        return created;
+    }
+
+    /**
+     * @return The number of sessions evicted, for being idle or to make room
+     */
+    public synchronized long evicted() {
+        return evicted;
+    }
+}
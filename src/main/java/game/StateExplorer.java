@@ -0,0 +1,671 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import scenes.LeafScene;
+import scenes.Scene;
+
+/**
+ * <p>
+ * The StateExplorer plays every possible playthrough of a game at once, to
+ * answer questions that depend on more than the story graph, such as which
+ * endings can be reached, with which perks, items and statuses, and whether a
+ * player can ever stand in some scene with some perk.
+ * </p>
+ *
+ * <p>
+ * A state is everything a GameSession remembers between two choices: the
+ * chapter and scene the player is in, the branches they have taken in the
+ * chapter, and their perks, items and statuses. States are moved between with
+ * the same {@link GameSession#view()} and {@link GameSession#choose(int)} a
+ * player uses, so the explorer follows exactly the rules of the game.
+ * </p>
+ *
+ * <p>
+ * States are explored breadth first, so each is found at the fewest choices
+ * it can be reached in. Each level is split between the threads of a fork/join
+ * pool, which steal ranges of the level from one another as they run out. A
+ * state is kept as a few words of bits, and is only explored the first time
+ * its 64-bit fingerprint is seen. Only fingerprints are remembered, so two
+ * different states could in principle be taken for one; with a million
+ * states the odds are about one in thirty million.
+ * </p>
+ *
+ * <p>
+ * Exploring stops at a given number of choices, or once the fingerprints and
+ * the states waiting to be explored would take more than a given amount of
+ * memory. The result says whether it stopped early, in which case anything
+ * not found may still be possible.
+ * </p>
+ *
+ * <pre>
+ * mvn compile exec:java -q -Dexec.mainClass=game.StateExplorer -Dexec.args="data/Debug 100 256 1:4:Debug_Perk"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class StateExplorer {
+    // States explored by each task of the pool
+    private static final int SPLIT = 256;
+    // Attribute sets kept for each ending, beyond which they are only counted
+    private static final int MAX_ATTRIBUTE_SETS = 1000;
+    // Attribute sets of each ending printed by main
+    private static final int PRINT_LIMIT = 10;
+
+    /**
+     * A question about the states of a game, such as whether the player can
+     * be in some scene with some perk.
+     */
+    public interface Goal {
+        /**
+         * @param chapterId The chapter the player is in
+         * @param view      What the player sees, having entered their scene
+         * @return {@code true} if this state answers the question
+         */
+        boolean test(String chapterId, SceneView view);
+    }
+
+    /**
+     * A way the game ends: a terminus scene, or a scene that leaves the last
+     * chapter.
+     */
+    public record Ending(String chapterId, String scene, boolean terminus) implements Comparable<Ending> {
+        @Override
+        public int compareTo(Ending other) {
+            int chapter = chapterId.compareTo(other.chapterId);
+            return chapter != 0 ? chapter : scene.compareTo(other.scene);
+        }
+
+        @Override
+        public String toString() {
+            return "chapter " + chapterId + ", scene " + scene + (terminus ? "" : " (leaves the last chapter)");
+        }
+    }
+
+    /**
+     * A branch or leaf leading to a scene its chapter does not have. Players
+     * cannot follow it, so it is not an ending, but it is where the story was
+     * meant to go on.
+     */
+    public record Dangling(String chapterId, String scene, String target) implements Comparable<Dangling> {
+        @Override
+        public int compareTo(Dangling other) {
+            int chapter = chapterId.compareTo(other.chapterId);
+            if (chapter != 0)
+                return chapter;
+            int from = scene.compareTo(other.scene);
+            return from != 0 ? from : target.compareTo(other.target);
+        }
+
+        @Override
+        public String toString() {
+            return "chapter " + chapterId + ", scene " + scene + " to missing scene " + target;
+        }
+    }
+
+    /**
+     * The perks, items and statuses a player ends the game with.
+     */
+    public static final class AttributeSet {
+        private final long[] perks;
+        private final long[] items;
+        private final long[] statuses;
+        private final List<String> perkNames;
+        private final List<String> itemNames;
+        private final List<String> statusNames;
+
+        private AttributeSet(Player player) {
+            perks = player.perkIds().toLongArray();
+            items = player.itemIds().toLongArray();
+            statuses = player.statusIds().toLongArray();
+            perkNames = player.perks();
+            itemNames = player.items();
+            statusNames = player.statuses();
+        }
+
+        public List<String> perks() {
+            return perkNames;
+        }
+
+        public List<String> items() {
+            return itemNames;
+        }
+
+        public List<String> statuses() {
+            return statusNames;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof AttributeSet set && Arrays.equals(perks, set.perks)
+                    && Arrays.equals(items, set.items) && Arrays.equals(statuses, set.statuses);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Arrays.hashCode(perks) + Arrays.hashCode(items)) + Arrays.hashCode(statuses);
+        }
+
+        @Override
+        public String toString() {
+            return "perks " + perkNames + ", items " + itemNames + ", statuses " + statusNames;
+        }
+    }
+
+    /**
+     * What exploring a game found.
+     */
+    public static class Result {
+        private final Map<Ending, Set<AttributeSet>> endings;
+        private final Map<Dangling, Long> dangling;
+        private final long states;
+        private final int depth;
+        private final boolean depthLimited;
+        private final boolean memoryLimited;
+        private final long deadEnds;
+        private final long goalStates;
+        private final int goalDepth;
+
+        private Result(Map<Ending, Set<AttributeSet>> endings, Map<Dangling, Long> dangling, long states, int depth,
+                boolean depthLimited, boolean memoryLimited, long deadEnds, long goalStates, int goalDepth) {
+            this.endings = endings;
+            this.dangling = dangling;
+            this.states = states;
+            this.depth = depth;
+            this.depthLimited = depthLimited;
+            this.memoryLimited = memoryLimited;
+            this.deadEnds = deadEnds;
+            this.goalStates = goalStates;
+            this.goalDepth = goalDepth;
+        }
+
+        /**
+         * @return Every ending reached, with the distinct perks, items and
+         *         statuses the player may have there. At most
+         *         {@value StateExplorer#MAX_ATTRIBUTE_SETS} sets are kept for
+         *         an ending.
+         */
+        public Map<Ending, Set<AttributeSet>> endings() {
+            return endings;
+        }
+
+        /**
+         * @return Every branch or leaf to a missing scene a player tried to
+         *         follow, with the number of states they tried it from
+         */
+        public Map<Dangling, Long> dangling() {
+            return dangling;
+        }
+
+        /**
+         * @return The number of distinct states found
+         */
+        public long states() {
+            return states;
+        }
+
+        /**
+         * @return The most choices any state found took to reach
+         */
+        public int depth() {
+            return depth;
+        }
+
+        /**
+         * @return {@code true} if there were states left to explore past the
+         *         limit on choices
+         */
+        public boolean isDepthLimited() {
+            return depthLimited;
+        }
+
+        /**
+         * @return {@code true} if exploring stopped because it ran out of
+         *         memory
+         */
+        public boolean isMemoryLimited() {
+            return memoryLimited;
+        }
+
+        /**
+         * @return The number of states in a node scene with no branch the
+         *         player can take
+         */
+        public long deadEnds() {
+            return deadEnds;
+        }
+
+        /**
+         * @return The number of states found that answer the goal
+         */
+        public long goalStates() {
+            return goalStates;
+        }
+
+        /**
+         * @return The fewest choices a state answering the goal takes to
+         *         reach, or {@code -1} if none was found
+         */
+        public int goalDepth() {
+            return goalDepth;
+        }
+    }
+
+    private final File gameDir;
+    private final ForkJoinPool pool;
+    private final int maxDepth;
+    private final long maxBytes;
+
+    // Chapters by the number they are given in encoded states
+    private volatile String[] chapterIds = new String[0];
+    private volatile Chapter[] chapters = new Chapter[0];
+
+    /**
+     * @param gameDir  The game directory, usually under {@code data}
+     * @param pool     The pool to explore on
+     * @param maxDepth The most choices to follow from the start of the game
+     * @param maxBytes The most memory to spend on states
+     */
+    public StateExplorer(File gameDir, ForkJoinPool pool, int maxDepth, long maxBytes) {
+        this.gameDir = gameDir;
+        this.pool = pool;
+        this.maxDepth = maxDepth;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Explores the game given, printing its endings and, if a goal is given,
+     * whether it can be reached. A goal of {@code chapter:scene} asks whether
+     * the player can reach a scene, and {@code chapter:scene:perk} whether
+     * they can reach it with a perk.
+     *
+     * @param args The game directory, then optionally the most choices to
+     *             follow, the most memory to use in MiB, and a goal
+     */
+    public static void main(String[] args) throws IOException {
+        File gameDir = new File(args.length > 0 ? args[0] : "data/Debug");
+        int maxDepth = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long maxBytes = (args.length > 2 ? Long.parseLong(args[2]) : 256) << 20;
+        Goal goal = null;
+        if (args.length > 3) {
+            String[] parts = args[3].split(":");
+            String perk = parts.length > 2 ? parts[2] : null;
+            goal = (chapterId, view) -> chapterId.equals(parts[0]) && view.sceneIndex().equals(parts[1])
+                    && (perk == null || view.player().hasPerk(perk));
+        }
+
+        long start = System.nanoTime();
+        Result result = new StateExplorer(gameDir, ForkJoinPool.commonPool(), maxDepth, maxBytes).explore(goal);
+        System.out.printf("%s: %d states, %d choices deep%s%s, in %.2f s%n", gameDir, result.states(),
+                result.depth(), result.isDepthLimited() ? ", stopped at the limit on choices" : "",
+                result.isMemoryLimited() ? ", stopped at the limit on memory" : "",
+                (System.nanoTime() - start) / 1e9);
+
+        System.out.printf("  %d endings%n", result.endings().size());
+        for (Map.Entry<Ending, Set<AttributeSet>> ending : result.endings().entrySet()) {
+            Set<AttributeSet> sets = ending.getValue();
+            System.out.printf("    %s, with %s%d sets of attributes%n", ending.getKey(),
+                    sets.size() >= MAX_ATTRIBUTE_SETS ? "at least " : "", sets.size());
+            int printed = 0;
+            for (AttributeSet set : sets)
+                if (printed++ < PRINT_LIMIT)
+                    System.out.println("      " + set);
+            if (sets.size() > PRINT_LIMIT)
+                System.out.printf("      ... and %d more%n", sets.size() - PRINT_LIMIT);
+        }
+        System.out.printf("  %d states with no branch that can be taken%n", result.deadEnds());
+        System.out.printf("  %d ways to missing scenes%n", result.dangling().size());
+        for (Map.Entry<Dangling, Long> dangling : result.dangling().entrySet())
+            System.out.printf("    %s, tried from %d states%n", dangling.getKey(), dangling.getValue());
+        if (goal != null)
+            System.out.println(result.goalDepth() < 0 ? "  " + args[3] + " is never reached"
+                    : String.format("  %s is reached in %d choices, in %d states", args[3], result.goalDepth(),
+                            result.goalStates()));
+    }
+
+    /**
+     * Explores every state of the game that can be reached from a new game.
+     *
+     * @param goal A question to answer about the states, or {@code null}
+     * @return What was found
+     * @throws IOException If a chapter of the game cannot be read
+     */
+    public Result explore(Goal goal) throws IOException {
+        GameSession session = new GameSession();
+        session.newGame(gameDir.getPath());
+        SceneView first = session.view();
+
+        Exploration exploration = new Exploration(goal);
+        Fingerprints seen = new Fingerprints(Long.highestOneBit(Math.max(maxBytes / 4 / Long.BYTES, 1024)));
+        ArrayList<long[]> frontier = new ArrayList<>();
+        if (!first.isEnded()) {
+            long[] state = encode(session);
+            seen.add(fingerprint(state));
+            exploration.found(session, first, 0);
+            frontier.add(state);
+        }
+
+        int depth = 0;
+        boolean depthLimited = false;
+        boolean memoryLimited = false;
+        while (!frontier.isEmpty()) {
+            if (depth == maxDepth) {
+                depthLimited = true;
+                break;
+            }
+            long[][] level = frontier.toArray(new long[0][]);
+            frontier = new ArrayList<>();
+            // Each range sets only its own slot, and the pool joins them all before they are read
+            int chunks = (level.length + SPLIT - 1) / SPLIT;
+            List<ArrayList<long[]>> next = new ArrayList<>(Collections.nCopies(chunks, null));
+            pool.invoke(new Expand(level, next, 0, chunks, depth + 1, seen, exploration));
+
+            long bytes = seen.bytes();
+            for (ArrayList<long[]> chunk : next) {
+                frontier.addAll(chunk);
+                for (long[] state : chunk)
+                    bytes += 16 + 8L * state.length;
+            }
+            if (!frontier.isEmpty())
+                depth++;
+            if (seen.isFull() || bytes > maxBytes) {
+                memoryLimited = true;
+                break;
+            }
+        }
+
+        TreeMap<Ending, Set<AttributeSet>> endings = new TreeMap<>();
+        for (Map.Entry<Ending, Set<AttributeSet>> ending : exploration.endings.entrySet())
+            endings.put(ending.getKey(), Collections.unmodifiableSet(ending.getValue()));
+        long goalDepth = exploration.goalDepth.get();
+        return new Result(Collections.unmodifiableMap(endings),
+                Collections.unmodifiableMap(new TreeMap<>(exploration.dangling)), seen.size(), depth, depthLimited,
+                memoryLimited,
+                exploration.deadEnds.get(), exploration.goalStates.get(),
+                goalDepth == Long.MAX_VALUE ? -1 : (int) goalDepth);
+    }
+
+    /**
+     * Explores a range of a level of states, a range of {@link #SPLIT} at a
+     * time.
+     */
+    private class Expand extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[][] level;
+        private final List<ArrayList<long[]>> next;
+        private final int first;
+        private final int last;
+        private final int depth;
+        private final Fingerprints seen;
+        private final Exploration exploration;
+
+        Expand(long[][] level, List<ArrayList<long[]>> next, int first, int last, int depth, Fingerprints seen,
+                Exploration exploration) {
+            this.level = level;
+            this.next = next;
+            this.first = first;
+            this.last = last;
+            this.depth = depth;
+            this.seen = seen;
+            this.exploration = exploration;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first > 1) {
+                int middle = (first + last) >>> 1;
+                invokeAll(new Expand(level, next, first, middle, depth, seen, exploration),
+                        new Expand(level, next, middle, last, depth, seen, exploration));
+                return;
+            }
+
+            ArrayList<long[]> found = new ArrayList<>();
+            GameSession session = new GameSession();
+            try {
+                for (int i = first * SPLIT; i < Math.min(level.length, (first + 1) * SPLIT); i++)
+                    expand(level[i], session, found);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            next.set(first, found);
+        }
+
+        /**
+         * Makes every choice the player has in a state, keeping the states
+         * they lead to that have not been seen before.
+         */
+        private void expand(long[] state, GameSession session, ArrayList<long[]> found) throws IOException {
+            SceneView view = decode(state, session);
+            Scene scene = view.scene();
+            String chapterId = session.chapterId();
+            switch (view.kind()) {
+                case TERMINUS:
+                    exploration.ended(new Ending(chapterId, scene.index(), true), session.player());
+                    return;
+                case NODE:
+                    if (view.choices().isEmpty()) {
+                        exploration.deadEnds.incrementAndGet();
+                        return;
+                    }
+                    break;
+                default:
+            }
+
+            int choices = Math.max(view.choices().size(), 1);
+            for (int choice = 0; choice < choices; choice++) {
+                if (choice > 0)
+                    decode(state, session);
+                SceneView next = session.choose(choice);
+                if (next.error().isPresent()) {
+                    // The only choices refused are those leading to missing scenes
+                    String target = view.kind() == SceneView.Kind.NODE ? view.choices().get(choice).nextScene()
+                            : ((LeafScene) scene).nextScene();
+                    exploration.dangling.merge(new Dangling(chapterId, scene.index(), target), 1L, Long::sum);
+                    continue;
+                }
+                if (next.isEnded()) {
+                    exploration.ended(new Ending(chapterId, scene.index(), false), session.player());
+                    continue;
+                }
+                long[] reached = encode(session);
+                switch (seen.add(fingerprint(reached))) {
+                    case Fingerprints.ADDED:
+                        exploration.found(session, next, depth);
+                        found.add(reached);
+                        break;
+                    case Fingerprints.FULL:
+                        return;
+                    default:
+                }
+            }
+        }
+    }
+
+    /**
+     * What the threads exploring a game have found so far.
+     */
+    private static class Exploration {
+        private final Goal goal;
+        private final ConcurrentHashMap<Ending, Set<AttributeSet>> endings = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Dangling, Long> dangling = new ConcurrentHashMap<>();
+        private final AtomicLong deadEnds = new AtomicLong();
+        private final AtomicLong goalStates = new AtomicLong();
+        private final AtomicLong goalDepth = new AtomicLong(Long.MAX_VALUE);
+
+        Exploration(Goal goal) {
+            this.goal = goal;
+        }
+
+        void found(GameSession session, SceneView view, int depth) {
+            if (goal == null || !goal.test(session.chapterId(), view))
+                return;
+            goalStates.incrementAndGet();
+            goalDepth.accumulateAndGet(depth, Math::min);
+        }
+
+        void ended(Ending ending, Player player) {
+            Set<AttributeSet> sets = endings.computeIfAbsent(ending, key -> ConcurrentHashMap.newKeySet());
+            if (sets.size() < MAX_ATTRIBUTE_SETS)
+                sets.add(new AttributeSet(player));
+        }
+    }
+
+    /**
+     * Encodes the state of a session that has entered its scene. The first
+     * word holds the chapter and scene, the second the number of words of
+     * each set that follows: the branches taken, then the perks, items and
+     * statuses of the player.
+     */
+    private long[] encode(GameSession session) {
+        long[] consumed = session.consumedBranches().toLongArray();
+        Player player = session.player();
+        long[] perks = player.perkIds().toLongArray();
+        long[] items = player.itemIds().toLongArray();
+        long[] statuses = player.statusIds().toLongArray();
+
+        long[] state = new long[2 + consumed.length + perks.length + items.length + statuses.length];
+        state[0] = (long) chapterNumber(session.chapterId(), session.chapter()) << 32 | session.currSceneId();
+        state[1] = (long) consumed.length << 48 | (long) perks.length << 32 | (long) items.length << 16
+                | statuses.length;
+        int at = 2;
+        for (long[] words : new long[][] { consumed, perks, items, statuses }) {
+            System.arraycopy(words, 0, state, at, words.length);
+            at += words.length;
+        }
+        return state;
+    }
+
+    /**
+     * Puts a session in an encoded state.
+     *
+     * @return What the player sees there
+     */
+    private SceneView decode(long[] state, GameSession session) {
+        int chapter = (int) (state[0] >>> 32);
+        int at = 2;
+        BitSet[] sets = new BitSet[4];
+        for (int set = 0; set < sets.length; set++) {
+            int words = (int) (state[1] >>> (48 - 16 * set)) & 0xFFFF;
+            sets[set] = BitSet.valueOf(Arrays.copyOfRange(state, at, at + words));
+            at += words;
+        }
+        Player player = new Player("", Attributes.forGame(gameDir), sets[1], sets[2], sets[3]);
+        session.restore(gameDir, chapterIds[chapter], chapters[chapter], player, (int) state[0], sets[0], true);
+        return session.view();
+    }
+
+    /**
+     * @return The number a chapter is given in encoded states
+     */
+    private int chapterNumber(String chapterId, Chapter chapter) {
+        Chapter[] known = chapters;
+        for (int i = 0; i < known.length; i++)
+            if (known[i] == chapter)
+                return i;
+        synchronized (this) {
+            for (int i = 0; i < chapters.length; i++)
+                if (chapters[i] == chapter)
+                    return i;
+            int number = chapters.length;
+            String[] ids = Arrays.copyOf(chapterIds, number + 1);
+            ids[number] = chapterId;
+            Chapter[] grown = Arrays.copyOf(chapters, number + 1);
+            grown[number] = chapter;
+            chapterIds = ids;
+            chapters = grown;
+            return number;
+        }
+    }
+
+    /**
+     * A strong 64-bit hash of an encoded state.
+     */
+    static long fingerprint(long[] state) {
+        long hash = state.length * 0x9E3779B97F4A7C15L;
+        for (long word : state) {
+            hash ^= word;
+            hash *= 0xBF58476D1CE4E5B9L;
+            hash ^= hash >>> 31;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * A set of fingerprints any thread can add to without locking, in a table
+     * of fixed size that is full once three quarters of it are used.
+     */
+    private static class Fingerprints {
+        static final int ADDED = 0;
+        static final int SEEN = 1;
+        static final int FULL = 2;
+
+        private final AtomicLongArray table;
+        private final int mask;
+        private final long capacity;
+        private final AtomicLong size = new AtomicLong();
+
+        Fingerprints(long slots) {
+            int length = (int) Math.min(slots, 1 << 30);
+            table = new AtomicLongArray(length);
+            mask = length - 1;
+            capacity = length / 4 * 3;
+        }
+
+        /**
+         * @return {@link #ADDED}, {@link #SEEN}, or {@link #FULL} if it was
+         *         not seen but there is no room for it
+         */
+        int add(long fingerprint) {
+            // Zero marks an empty slot
+            if (fingerprint == 0)
+                fingerprint = 1;
+            int slot = (int) (fingerprint ^ fingerprint >>> 32) & mask;
+            while (true) {
+                long held = table.get(slot);
+                if (held == fingerprint)
+                    return SEEN;
+                if (held == 0) {
+                    if (size.get() >= capacity)
+                        return FULL;
+                    if (table.compareAndSet(slot, 0, fingerprint)) {
+                        size.incrementAndGet();
+                        return ADDED;
+                    }
+                    continue;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        long size() {
+            return size.get();
+        }
+
+        boolean isFull() {
+            return size.get() >= capacity;
+        }
+
+        long bytes() {
+            return (long) table.length() * Long.BYTES;
+        }
+    }
+}
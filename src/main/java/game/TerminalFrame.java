@@ -0,0 +1,122 @@
+package game;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import scenes.SceneText;
+
+/**
+ * <p>
+ * A TerminalFrame collects everything shown to the player between two reads
+ * of their input, and writes it to the terminal in one go. Writing a line at a
+ * time costs a write to the terminal for every line, which is slow over SSH,
+ * serial consoles and the GameServer's sockets.
+ * </p>
+ *
+ * <p>
+ * Clearing the terminal throws away anything not yet written, since the
+ * player would never see it. Parts of a frame that are shown again unchanged,
+ * such as a scene redrawn after a mistyped command, can be kept as bytes and
+ * appended again without formatting them a second time.
+ * </p>
+ *
+ * <p>
+ * The buffer is kept between frames, so once it has grown to fit the largest
+ * frame, drawing one allocates nothing but the text appended to it.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class TerminalFrame {
+    private static final byte[] CLEAR = "\033[H\033[2J".getBytes(StandardCharsets.UTF_8);
+
+    private final PrintStream out;
+    private byte[] buffer = new byte[4096];
+    private int length;
+
+    /**
+     * @param out The terminal the frames are written to
+     */
+    public TerminalFrame(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Starts a new frame on a cleared terminal, dropping anything not yet
+     * written.
+     */
+    public void clear() {
+        length = 0;
+        append(CLEAR);
+    }
+
+    /**
+     * @param text Text to add to the frame
+     * @return This frame
+     */
+    public TerminalFrame append(String text) {
+        return append(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param number A number to add to the frame
+     * @return This frame
+     */
+    public TerminalFrame append(int number) {
+        return append(Integer.toString(number));
+    }
+
+    /**
+     * @param bytes Text to add to the frame, already encoded as UTF-8
+     * @return This frame
+     */
+    public TerminalFrame append(byte[] bytes) {
+        if (length + bytes.length > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(length + bytes.length, buffer.length * 2));
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+        return this;
+    }
+
+    /**
+     * Adds the text of a scene, copying its literals as they are and filling
+     * in the player's details between them.
+     *
+     * @param text   The text of a scene
+     * @param player The player character
+     * @return This frame
+     */
+    public TerminalFrame append(SceneText text, Player player) {
+        for (int i = 0; i < text.slots(); i++)
+            append(text.literalBytes(i)).append(String.valueOf(text.slot(i).value(player)));
+        return append(text.literalBytes(text.slots()));
+    }
+
+    /**
+     * @return The position in the frame that the next text will be added at
+     */
+    public int mark() {
+        return length;
+    }
+
+    /**
+     * @param mark A position from {@link #mark()} in this frame
+     * @return The bytes added to the frame since then, to be appended again
+     *         in a later frame
+     */
+    public byte[] since(int mark) {
+        return Arrays.copyOfRange(buffer, mark, length);
+    }
+
+    /**
+     * Writes the frame to the terminal in a single write, and starts the next
+     * one where it left off.
+     */
+    public void flush() {
+        if (length > 0)
+            out.write(buffer, 0, length);
+        out.flush();
+        length = 0;
+    }
+}
@@ -2,6 +2,7 @@ package requirements;
 
 import java.util.ArrayList;
 
+import game.Attributes;
 import game.Player;
 
 /**
@@ -17,6 +18,11 @@ public class AndRequirement implements Requirement {
         this.requirements = requirements;
     }
 
+    @Override
+    public void intern(Attributes attributes) {
+        requirements.forEach(requirement -> requirement.intern(attributes));
+    }
+
     public boolean evaluate(Player player) {
         return requirements
                 .stream()
@@ -0,0 +1,185 @@
+package requirements;
+
+import java.util.Arrays;
+
+import game.Attributes;
+import game.Player;
+
+/**
+ * <p>
+ * A CompiledRequirement is a requirement tree flattened into a short program
+ * by the RequirementFactory. Evaluating it walks an int array once, with a
+ * single boolean for the result so far, so it allocates nothing and makes no
+ * virtual calls into the tree.
+ * </p>
+ *
+ * <p>
+ * Each instruction holds an op in its low bits and an argument above them:
+ * </p>
+ * <ul>
+ * <li>{@code PERK}, {@code ITEM}, {@code STATUS} set the result to whether the
+ * player has the attribute with the argument as its id</li>
+ * <li>{@code NOT} negates the result</li>
+ * <li>{@code JUMP_IF_FALSE}, {@code JUMP_IF_TRUE} jump to the argument if the
+ * result is false or true, which is how AND and OR short-circuit</li>
+ * <li>{@code CONST} sets the result to the argument, for an empty AND or
+ * OR</li>
+ * <li>{@code UNKNOWN} stands for a requirement of a type that is not known,
+ * and fails if it is reached, as evaluating the tree would. An AND or OR that
+ * is decided before reaching it gives the same result as the tree.</li>
+ * </ul>
+ *
+ * <p>
+ * Attribute ids belong to the Attributes of one game. A player from another
+ * game is evaluated against the original tree instead.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class CompiledRequirement implements Requirement {
+    static final int PERK = 0;
+    static final int ITEM = 1;
+    static final int STATUS = 2;
+    static final int NOT = 3;
+    static final int JUMP_IF_FALSE = 4;
+    static final int JUMP_IF_TRUE = 5;
+    static final int CONST = 6;
+    static final int UNKNOWN = 7;
+
+    static final int OP_BITS = 3;
+    static final int OP_MASK = (1 << OP_BITS) - 1;
+
+    private final int[] code;
+    private final Attributes attributes;
+    private final Requirement source;
+    private final int[] perks;
+    private final int[] items;
+    private final int[] statuses;
+
+    CompiledRequirement(int[] code, Attributes attributes, Requirement source) {
+        this.code = code;
+        this.attributes = attributes;
+        this.source = source;
+        this.perks = reads(code, PERK);
+        this.items = reads(code, ITEM);
+        this.statuses = reads(code, STATUS);
+    }
+
+    /**
+     * @return The distinct ids tested by instructions with this op
+     */
+    private static int[] reads(int[] code, int op) {
+        return Arrays.stream(code).filter(instruction -> (instruction & OP_MASK) == op)
+                .map(instruction -> instruction >>> OP_BITS).distinct().toArray();
+    }
+
+    @Override
+    public boolean evaluate(Player player) {
+        if (player.attributes() != attributes)
+            return source.evaluate(player);
+
+        int[] code = this.code;
+        boolean result = false;
+        for (int pc = 0; pc < code.length; pc++) {
+            int instruction = code[pc];
+            int arg = instruction >>> OP_BITS;
+            switch (instruction & OP_MASK) {
+                case PERK:
+                    result = player.hasPerk(arg);
+                    break;
+                case ITEM:
+                    result = player.hasItem(arg);
+                    break;
+                case STATUS:
+                    result = player.hasStatus(arg);
+                    break;
+                case NOT:
+                    result = !result;
+                    break;
+                case JUMP_IF_FALSE:
+                    if (!result)
+                        pc = arg - 1;
+                    break;
+                case JUMP_IF_TRUE:
+                    if (result)
+                        pc = arg - 1;
+                    break;
+                case CONST:
+                    result = arg != 0;
+                    break;
+                default:
+                    throw new IllegalStateException("Cannot evaluate a requirement of a type that is not known");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The attributes the ids in this requirement belong to
+     */
+    public Attributes attributes() {
+        return attributes;
+    }
+
+    /**
+     * @return The requirement tree this was compiled from
+     */
+    public Requirement source() {
+        return source;
+    }
+
+    /**
+     * Has the player gained or lost any perk, item or status this requirement
+     * depends on since the given version? If not, the requirement evaluates
+     * the same as it did then.
+     *
+     * @param player  The player character
+     * @param version A version of the player
+     * @return {@code true} if an attribute this depends on has changed since
+     */
+    public boolean changedSince(Player player, long version) {
+        for (int perk : perks)
+            if (player.perkChanged(perk) > version)
+                return true;
+        for (int item : items)
+            if (player.itemChanged(item) > version)
+                return true;
+        for (int status : statuses)
+            if (player.statusChanged(status) > version)
+                return true;
+        return false;
+    }
+
+    /**
+     * @return The number of instructions in the program
+     */
+    public int size() {
+        return code.length;
+    }
+
+    /**
+     * Collects instructions as a requirement tree is compiled.
+     */
+    static class Builder {
+        private int[] code = new int[16];
+        private int size;
+
+        int emit(int op, int arg) {
+            if (size == code.length)
+                code = Arrays.copyOf(code, size * 2);
+            code[size] = arg << OP_BITS | op;
+            return size++;
+        }
+
+        /**
+         * Points a jump emitted earlier at the next instruction.
+         */
+        void patch(int jump) {
+            code[jump] = size << OP_BITS | (code[jump] & OP_MASK);
+        }
+
+        int[] build() {
+            return Arrays.copyOf(code, size);
+        }
+    }
+}
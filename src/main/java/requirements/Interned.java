@@ -0,0 +1,28 @@
+package requirements;
+
+import game.AttributeTable;
+
+/**
+ * The id a perk, item or status requirement resolved its name to, and the
+ * table it was resolved in. A requirement keeps the last one it used, so
+ * evaluating it for players of the same game is a bit test with no lookup.
+ * Being immutable, it can be shared between threads without locking; at worst
+ * two threads resolve the same id.
+ *
+ * @author Ahmed El-Sayed
+ */
+record Interned(AttributeTable table, int id) {
+
+    /**
+     * @param last  The id last resolved, or {@code null}
+     * @param table The table to resolve the name in
+     * @param name  The name of the attribute
+     * @return {@code last} if it was resolved in this table, otherwise the id
+     *         of the name in this table
+     */
+    static Interned in(Interned last, AttributeTable table, String name) {
+        if (last != null && last.table() == table)
+            return last;
+        return new Interned(table, table.id(name));
+    }
+}
@@ -1,5 +1,6 @@
 package requirements;
 
+import game.Attributes;
 import game.Player;
 
 /**
@@ -10,12 +11,29 @@ import game.Player;
  */
 public class ItemRequirement implements Requirement {
     String item;
+    private Interned interned;
 
     public ItemRequirement(String item) {
         this.item = item;
     }
 
     public boolean evaluate(Player player) {
-        return player.hasItem(item);
+        return player.hasItem(id(player.attributes()));
+    }
+
+    @Override
+    public void intern(Attributes attributes) {
+        id(attributes);
+    }
+
+    /**
+     * @param attributes The attributes of a game
+     * @return The id of the required item in that game
+     */
+    int id(Attributes attributes) {
+        Interned interned = Interned.in(this.interned, attributes.items(), item);
+        if (interned != this.interned)
+            this.interned = interned;
+        return interned.id();
     }
 }
@@ -1,5 +1,6 @@
 package requirements;
 
+import game.Attributes;
 import game.Player;
 
 /**
@@ -15,6 +16,11 @@ public class NotRequirement implements Requirement {
         this.requirement = requirement;
     }
 
+    @Override
+    public void intern(Attributes attributes) {
+        requirement.intern(attributes);
+    }
+
     @Override
     public boolean evaluate(Player player) {
         return !requirement.evaluate(player);
@@ -1,5 +1,6 @@
 package requirements;
 
+import game.Attributes;
 import game.Player;
 
 /**
@@ -10,12 +11,29 @@ import game.Player;
  */
 public class PerkRequirement implements Requirement {
     String perk;
+    private Interned interned;
 
     public PerkRequirement(String perk) {
         this.perk = perk;
     }
 
     public boolean evaluate(Player player) {
-        return player.hasPerk(perk);
+        return player.hasPerk(id(player.attributes()));
+    }
+
+    @Override
+    public void intern(Attributes attributes) {
+        id(attributes);
+    }
+
+    /**
+     * @param attributes The attributes of a game
+     * @return The id of the required perk in that game
+     */
+    int id(Attributes attributes) {
+        Interned interned = Interned.in(this.interned, attributes.perks(), perk);
+        if (interned != this.interned)
+            this.interned = interned;
+        return interned.id();
     }
 }
@@ -1,5 +1,6 @@
 package requirements;
 
+import game.Attributes;
 import game.Player;
 
 /**
@@ -40,4 +41,13 @@ public interface Requirement {
      * @return {@code true} if the player meets the requirements
      */
     public boolean evaluate(Player player);
+
+    /**
+     * Resolves the perks, items and statuses this requirement names to their
+     * ids in a game's attributes, so the first evaluation does not have to.
+     * 
+     * @param attributes The attributes of the game the requirement is in
+     */
+    public default void intern(Attributes attributes) {
+    }
 }
@@ -1,14 +1,20 @@
 package requirements;
 
 import java.util.ArrayList;
+import java.util.List;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import game.Attributes;
+import game.JsonStreamReader;
+
 /**
  * The Requirement Factory is a Factory pattern class that assists the
  * GameParser class to instantiate a Requirement from a JSONObject. If other
  * Requirement classes are defined they will need to be instantiated here for
- * them to be added to a branch.
+ * them to be added to a branch, written back out here for them to be saved,
+ * and compiled here for them to be evaluated quickly.
  * 
  * @author Ahmed El-Sayed
  */
@@ -47,4 +53,300 @@ public class RequirementFactory {
 
         return null;
     }
+
+    /**
+     * Builds a Requirement from a stream of JSON tokens, positioned at the
+     * start of a requirement object. The {@code req} field may come before the
+     * {@code type} field, so its shape decides how it is read: a string is the
+     * perk, item or status, an object is the requirement of a {@code not}, and
+     * an array holds the requirements of an {@code or} or {@code and}.
+     * 
+     * @param reader The reader, positioned at a requirement or {@code null}
+     * @return The Requirement, or {@code null} if there is none
+     */
+    public static Requirement buildRequirement(JsonStreamReader reader) {
+        return buildRequirement(reader, null);
+    }
+
+    /**
+     * Builds a Requirement from a stream of JSON tokens, noting the type of
+     * every requirement in it that is not known. Those requirements are built
+     * as {@code null}, as they always have been.
+     * 
+     * @param reader       The reader, positioned at a requirement or
+     *                     {@code null}
+     * @param unknownTypes Receives the type of every requirement that is not
+     *                     known, or {@code null} to ignore them
+     * @return The Requirement, or {@code null} if there is none
+     */
+    public static Requirement buildRequirement(JsonStreamReader reader, List<String> unknownTypes) {
+        if (reader.peek() == JsonStreamReader.Token.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        String type = "";
+        String requirementStr = "";
+        Requirement requirement = null;
+        ArrayList<Requirement> requirements = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("type")) {
+                type = reader.nextString();
+                continue;
+            }
+            if (!name.equals("req")) {
+                reader.skipValue();
+                continue;
+            }
+
+            switch (reader.peek()) {
+                case BEGIN_ARRAY:
+                    requirements = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext())
+                        requirements.add(buildRequirement(reader, unknownTypes));
+                    reader.endArray();
+                    break;
+                case BEGIN_OBJECT:
+                    requirement = buildRequirement(reader, unknownTypes);
+                    break;
+                default:
+                    requirementStr = reader.nextString();
+            }
+        }
+        reader.endObject();
+
+        switch (type) {
+            case "perk":
+                return new PerkRequirement(requirementStr);
+
+            case "item":
+                return new ItemRequirement(requirementStr);
+
+            case "status":
+                return new StatusRequirement(requirementStr);
+
+            case "or":
+                return new OrRequirement(requireList(requirements, type));
+
+            case "and":
+                return new AndRequirement(requireList(requirements, type));
+
+            case "not":
+                return new NotRequirement(requirement);
+        }
+
+        if (unknownTypes != null)
+            unknownTypes.add(type);
+        return null;
+    }
+
+    private static ArrayList<Requirement> requireList(ArrayList<Requirement> requirements, String type) {
+        if (requirements == null)
+            throw new JSONException("Requirement of type " + type + " needs a list of requirements");
+        return requirements;
+    }
+
+    /**
+     * Writes a Requirement back out to the JSONObject it would be built from.
+     * 
+     * @param requirement The requirement to write
+     * @return The JSON representation of the requirement
+     */
+    public static JSONObject toJSON(Requirement requirement) {
+        JSONObject jsonReq = new JSONObject();
+
+        if (requirement instanceof PerkRequirement perk) {
+            jsonReq.put("type", "perk");
+            jsonReq.put("req", perk.perk);
+        } else if (requirement instanceof ItemRequirement item) {
+            jsonReq.put("type", "item");
+            jsonReq.put("req", item.item);
+        } else if (requirement instanceof StatusRequirement status) {
+            jsonReq.put("type", "status");
+            jsonReq.put("req", status.status);
+        } else if (requirement instanceof OrRequirement or) {
+            jsonReq.put("type", "or");
+            jsonReq.put("req", toJSON(or.requirements));
+        } else if (requirement instanceof AndRequirement and) {
+            jsonReq.put("type", "and");
+            jsonReq.put("req", toJSON(and.requirements));
+        } else if (requirement instanceof NotRequirement not) {
+            jsonReq.put("type", "not");
+            jsonReq.put("req", toJSON(not.requirement));
+        }
+
+        return jsonReq;
+    }
+
+    private static JSONArray toJSON(ArrayList<Requirement> requirements) {
+        JSONArray jRequirements = new JSONArray();
+        requirements.forEach(requirement -> jRequirements.put(toJSON(requirement)));
+        return jRequirements;
+    }
+
+    /**
+     * Compiles a requirement tree into a flat program over the attribute ids
+     * of a game. The compiled requirement gives the same result as the tree,
+     * short-circuiting AND and OR the same way, but evaluates without
+     * allocating or calling into the tree. A requirement of a type that is not
+     * known, which is parsed as {@code null}, compiles to an instruction that
+     * fails only if it is reached, so its chapter still loads.
+     * 
+     * @param requirement The requirement tree to compile
+     * @param attributes  The attributes of the game the requirement is in
+     * @return The compiled requirement
+     */
+    public static CompiledRequirement compile(Requirement requirement, Attributes attributes) {
+        if (requirement instanceof CompiledRequirement compiled)
+            requirement = compiled.source();
+        CompiledRequirement.Builder code = new CompiledRequirement.Builder();
+        compile(requirement, attributes, code);
+        return new CompiledRequirement(code.build(), attributes, requirement);
+    }
+
+    private static void compile(Requirement requirement, Attributes attributes, CompiledRequirement.Builder code) {
+        if (requirement == null) {
+            code.emit(CompiledRequirement.UNKNOWN, 0);
+        } else if (requirement instanceof PerkRequirement perk) {
+            code.emit(CompiledRequirement.PERK, attributes.perks().id(perk.perk));
+        } else if (requirement instanceof ItemRequirement item) {
+            code.emit(CompiledRequirement.ITEM, attributes.items().id(item.item));
+        } else if (requirement instanceof StatusRequirement status) {
+            code.emit(CompiledRequirement.STATUS, attributes.statuses().id(status.status));
+        } else if (requirement instanceof NotRequirement not) {
+            compile(not.requirement, attributes, code);
+            code.emit(CompiledRequirement.NOT, 0);
+        } else if (requirement instanceof AndRequirement and) {
+            compileAll(and.requirements, CompiledRequirement.JUMP_IF_FALSE, true, attributes, code);
+        } else if (requirement instanceof OrRequirement or) {
+            compileAll(or.requirements, CompiledRequirement.JUMP_IF_TRUE, false, attributes, code);
+        } else {
+            throw new IllegalArgumentException("Cannot compile requirement " + requirement.getClass().getName());
+        }
+    }
+
+    /**
+     * Compiles the children of an AND or OR, jumping past the rest as soon as
+     * one child decides the result.
+     */
+    private static void compileAll(ArrayList<Requirement> requirements, int jump, boolean empty,
+            Attributes attributes, CompiledRequirement.Builder code) {
+        if (requirements.isEmpty()) {
+            code.emit(CompiledRequirement.CONST, empty ? 1 : 0);
+            return;
+        }
+
+        int[] jumps = new int[requirements.size() - 1];
+        for (int i = 0; i < requirements.size(); i++) {
+            compile(requirements.get(i), attributes, code);
+            if (i < jumps.length)
+                jumps[i] = code.emit(jump, 0);
+        }
+        for (int at : jumps)
+            code.patch(at);
+    }
+
+    /**
+     * Receives the perks, items and statuses a requirement refers to.
+     * {@code positive} is {@code true} where the attribute sits under an even
+     * number of NOTs, so gaining it can only help meet the requirement, and
+     * {@code false} where gaining it can only hurt.
+     */
+    public interface References {
+        void perk(String perk, boolean positive);
+
+        void item(String item, boolean positive);
+
+        void status(String status, boolean positive);
+    }
+
+    /**
+     * Walks a requirement tree, reporting every attribute it refers to along
+     * with whether it appears negated.
+     * 
+     * @param requirement The requirement tree to walk
+     * @param references  Receives every attribute the tree refers to
+     */
+    public static void references(Requirement requirement, References references) {
+        references(requirement, true, references);
+    }
+
+    /**
+     * Tells which perks, items and statuses a player might have, and which
+     * they might lack, at some point of a game.
+     */
+    public interface Possible {
+        boolean perk(String perk, boolean held);
+
+        boolean item(String item, boolean held);
+
+        boolean status(String status, boolean held);
+    }
+
+    /**
+     * Decides whether a requirement could ever give the result, for some
+     * player allowed by {@code possible}. Each child of an AND or OR is
+     * decided on its own, so an answer of {@code true} may be wrong, such as
+     * for {@code perk AND NOT perk}, but an answer of {@code false} never is.
+     * A requirement of a type that is not known can give neither result, as
+     * evaluating it fails.
+     * 
+     * @param requirement The requirement tree to decide
+     * @param result      The result to decide for
+     * @param possible    Which attributes a player may have or lack
+     * @return {@code false} if no such player meets (or, for a result of
+     *         {@code false}, fails) the requirement
+     */
+    public static boolean canBe(Requirement requirement, boolean result, Possible possible) {
+        if (requirement instanceof PerkRequirement perk) {
+            return possible.perk(perk.perk, result);
+        } else if (requirement instanceof ItemRequirement item) {
+            return possible.item(item.item, result);
+        } else if (requirement instanceof StatusRequirement status) {
+            return possible.status(status.status, result);
+        } else if (requirement instanceof NotRequirement not) {
+            return canBe(not.requirement, !result, possible);
+        } else if (requirement instanceof AndRequirement and) {
+            return canBeAll(and.requirements, result, !result, possible);
+        } else if (requirement instanceof OrRequirement or) {
+            return canBeAll(or.requirements, result, result, possible);
+        } else if (requirement instanceof CompiledRequirement compiled) {
+            return canBe(compiled.source(), result, possible);
+        }
+        return false;
+    }
+
+    /**
+     * An AND is true, and an OR false, only if every child is. Otherwise one
+     * child giving the result is enough.
+     */
+    private static boolean canBeAll(ArrayList<Requirement> requirements, boolean result, boolean any,
+            Possible possible) {
+        for (Requirement child : requirements)
+            if (canBe(child, result, possible) == any)
+                return any;
+        return !any;
+    }
+
+    private static void references(Requirement requirement, boolean positive, References references) {
+        if (requirement instanceof PerkRequirement perk) {
+            references.perk(perk.perk, positive);
+        } else if (requirement instanceof ItemRequirement item) {
+            references.item(item.item, positive);
+        } else if (requirement instanceof StatusRequirement status) {
+            references.status(status.status, positive);
+        } else if (requirement instanceof NotRequirement not) {
+            references(not.requirement, !positive, references);
+        } else if (requirement instanceof AndRequirement and) {
+            and.requirements.forEach(child -> references(child, positive, references));
+        } else if (requirement instanceof OrRequirement or) {
+            or.requirements.forEach(child -> references(child, positive, references));
+        } else if (requirement instanceof CompiledRequirement compiled) {
+            references(compiled.source(), positive, references);
+        }
+    }
 }
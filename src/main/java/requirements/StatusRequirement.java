@@ -1,5 +1,6 @@
 package requirements;
 
+import game.Attributes;
 import game.Player;
 
 /**
@@ -10,12 +11,29 @@ import game.Player;
  */
 public class StatusRequirement implements Requirement {
     String status;
+    private Interned interned;
 
     public StatusRequirement(String status) {
         this.status = status;
     }
 
     public boolean evaluate(Player player) {
-        return player.hasStatus(status);
+        return player.hasStatus(id(player.attributes()));
+    }
+
+    @Override
+    public void intern(Attributes attributes) {
+        id(attributes);
+    }
+
+    /**
+     * @param attributes The attributes of a game
+     * @return The id of the required status in that game
+     */
+    int id(Attributes attributes) {
+        Interned interned = Interned.in(this.interned, attributes.statuses(), status);
+        if (interned != this.interned)
+            this.interned = interned;
+        return interned.id();
     }
 }
@@ -3,21 +3,32 @@ package scenes;
 import java.util.Optional;
 
 import events.Event;
+import game.Attributes;
 import game.Player;
+import requirements.CompiledRequirement;
 import requirements.Requirement;
+import requirements.RequirementFactory;
 
 /**
  * The Branch class represents a possible branch from a scene. The branch
  * should have a prompt, as well as a scene it leads to, an index, and
  * optionally an event.
  * 
+ * Each branch has an id that is unique within its chapter. Sessions use this
+ * id to remember which branches they have already taken, since the branch
+ * itself is shared by every session playing the chapter. The scene it leads
+ * to is likewise resolved to an id when the chapter is built.
+ * 
  * @author Ahmed El-Sayed
  */
 public class Branch {
+    private int id = -1;
     private String nextScene;
+    private int nextSceneId = Scene.NO_SCENE;
     private String prompt;
     private Optional<Event> event;
     private Optional<Requirement> requirement;
+    private CompiledRequirement compiled;
 
     public Branch(String nextScene, String prompt, Optional<Event> event, Optional<Requirement> requirement) {
         this.nextScene = nextScene;
@@ -26,29 +37,106 @@ public class Branch {
         this.requirement = requirement;
     }
 
+    /**
+     * @return The id of this branch within its chapter
+     */
+    public int id() {
+        return id;
+    }
+
+    /**
+     * Sets the id of this branch. Called once by NodeScene when the chapter
+     * is built.
+     * 
+     * @param id The id of this branch within its chapter
+     */
+    void setId(int id) {
+        this.id = id;
+    }
+
     public String nextScene() {
         return nextScene;
     }
 
+    /**
+     * @return The id of the scene this branch leads to, {@link Scene#NO_SCENE}
+     *         if it leaves the chapter, or {@link Scene#MISSING_SCENE} if its
+     *         chapter has no such scene
+     */
+    public int nextSceneId() {
+        return nextSceneId;
+    }
+
+    /**
+     * Sets the id of the scene this branch leads to. Called once by NodeScene
+     * when the chapter is built.
+     * 
+     * @param nextSceneId The id of the scene this branch leads to
+     */
+    void setNextSceneId(int nextSceneId) {
+        this.nextSceneId = nextSceneId;
+    }
+
     public String prompt() {
         return prompt;
     }
 
+    public Optional<Event> event() {
+        return event;
+    }
+
+    public Optional<Requirement> requirement() {
+        return requirement;
+    }
+
     public boolean hasRequirement() {
         return requirement.isPresent();
     }
 
     /**
      * Run the requirement for this branch, if it has one. If it does not then
-     * it is always true.
+     * it is always true. The requirement is compiled for the player's game the
+     * first time it is run.
      * 
      * @param player The player character
      * @return If the player meets the requirements to select this branch
      */
     public boolean evaluateRequirement(Player player) {
-        if (requirement.isPresent())
-            return requirement.get().evaluate(player);
-        return true;
+        if (requirement.isEmpty())
+            return true;
+
+        return compiledRequirement(player.attributes()).evaluate(player);
+    }
+
+    /**
+     * Gets the requirement of this branch compiled against the attributes of
+     * a game, compiling it if it has not been yet.
+     * 
+     * @param attributes The attributes of the game the branch is in
+     * @return The compiled requirement, or {@code null} if there is none
+     */
+    public CompiledRequirement compiledRequirement(Attributes attributes) {
+        CompiledRequirement compiled = this.compiled;
+        if (compiled != null && compiled.attributes() == attributes)
+            return compiled;
+        return compileRequirement(attributes);
+    }
+
+    /**
+     * Compiles the requirement of this branch, if it has one, against the
+     * attributes of a game. The branch is shared by every session playing its
+     * chapter, but a compiled requirement never changes once built, so racing
+     * sessions at worst compile it twice.
+     * 
+     * @param attributes The attributes of the game the branch is in
+     * @return The compiled requirement, or {@code null} if there is none
+     */
+    public CompiledRequirement compileRequirement(Attributes attributes) {
+        if (requirement.isEmpty())
+            return null;
+        CompiledRequirement compiled = RequirementFactory.compile(requirement.get(), attributes);
+        this.compiled = compiled;
+        return compiled;
     }
 
     /**
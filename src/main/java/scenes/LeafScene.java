@@ -1,12 +1,11 @@
 package scenes;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
-import java.util.Scanner;
+import java.util.function.ToIntFunction;
 
 import events.Event;
-import game.GameMenu;
-import game.Player;
+import game.GameSession;
 
 /**
  * A leaf scene is one that does not lead to any other branches. It is the final
@@ -16,6 +15,7 @@ import game.Player;
  */
 public class LeafScene extends Scene {
     private String nextScene;
+    private int nextSceneId = NO_SCENE;
 
     public LeafScene(String index, String lines, Optional<Event> event,
             String nextScene) {
@@ -27,48 +27,29 @@ public class LeafScene extends Scene {
         return this.nextScene;
     }
 
-    public String run(Scanner sc, HashMap<String, Scene> scenes, Player player) {
-        GameMenu.printScene(lines(), player);
-        runEvent(player);
-        System.out.println("Press ENTER to continue...\n");
-
-        while (true) {
-            String input = sc.nextLine();
-
-            // Quit
-            if (input.matches("[qQ](uit)?")) {
-                GameMenu.clearTerminal();
-                sc.close();
-                System.exit(0);
-            }
-
-            // Print player info
-            if (input.matches("[pP](layer)?")) {
-                GameMenu.clearTerminal();
-                GameMenu.printScene(lines(), player);
-                logEvent();
-                System.out.println("Press ENTER to continue...\n");
-                player.logPlayer();
-                continue;
-            }
+    /**
+     * @return The id of the scene this leads to, {@link #NO_SCENE} if it ends
+     *         the chapter, or {@link #MISSING_SCENE} if the chapter has no
+     *         such scene
+     */
+    public int nextSceneId() {
+        return this.nextSceneId;
+    }
 
-            // Print commands
-            if (input.matches("[h](elp)?")) {
-                GameMenu.clearTerminal();
-                GameMenu.printScene(lines(), player);
-                logEvent();
-                System.out.println("Press ENTER to continue...\n");
-                GameMenu.logHelpCommon();
-                continue;
-            }
+    @Override
+    public void link(int id, ToIntFunction<String> sceneIds) {
+        super.link(id, sceneIds);
+        nextSceneId = target(nextScene, sceneIds);
+    }
 
-            if (input.isBlank())
-                return nextScene;
+    public List<Branch> choices(GameSession session) {
+        return List.of();
+    }
 
-            GameMenu.clearTerminal();
-            GameMenu.printScene(lines(), player);
-            logEvent();
-            System.out.println("Press ENTER to continue...\n");
-        }
+    /**
+     * Any choice continues to the next scene.
+     */
+    public int choose(GameSession session, List<Branch> choices, int choice) {
+        return nextSceneId;
     }
 }
@@ -1,13 +1,13 @@
 package scenes;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
-import java.util.Scanner;
+import java.util.function.ToIntFunction;
 
 import events.Event;
-import game.GameMenu;
-import game.Player;
+import game.GameSession;
 
 /**
  * <p>
@@ -18,7 +18,9 @@ import game.Player;
  * <p>
  * It should list all available choices for the player to make,
  * and if the player ever returns to this scene from a branch, that branch
- * should not be available to select again.
+ * should not be available to select again. The scene itself is shared by
+ * every session playing its chapter, so it never removes a branch; instead the
+ * session remembers the ids of the branches it has taken.
  * </p>
  * 
  * <p>
@@ -35,91 +37,48 @@ public class NodeScene extends Scene {
         this.branches = branches;
     }
 
-    public void pruneBranch(String sceneIndex) {
-        branches
-                .stream()
-                .filter(branch -> branch.nextScene().equals(sceneIndex));
+    /**
+     * Gives each branch of this scene an id, counting up from {@code firstId}.
+     * Called once when the chapter is built.
+     * 
+     * @param firstId The id of the first branch of this scene
+     * @return The id after the last branch of this scene
+     */
+    public int numberBranches(int firstId) {
+        int id = firstId;
+        for (Branch branch : branches)
+            branch.setId(id++);
+        return id;
     }
 
-    public ArrayList<Branch> branches() {
-        return branches;
+    @Override
+    public void link(int id, ToIntFunction<String> sceneIds) {
+        super.link(id, sceneIds);
+        for (Branch branch : branches)
+            branch.setNextSceneId(target(branch.nextScene(), sceneIds));
     }
 
-    public String run(Scanner sc, HashMap<String, Scene> scenes, Player player) {
-        // Print lines for this scene (Optionally has player name)
-        GameMenu.printScene(lines(), player);
-
-        // Run event if it exists
-        runEvent(player);
-
-        // Find elligble branches
-        ArrayList<Branch> elligbleBranches = new ArrayList<>();
-        for (Branch branch : branches) {
-            if (branch.evaluateRequirement(player))
-                elligbleBranches.add(branch);
-        }
-
-        // Print elligble branches
-        GameMenu.printBranches(elligbleBranches, player);
-
-        // Loop until player selects an elligble branch
-        while (true) {
-            String input = sc.nextLine().toLowerCase();
-
-            // Quit
-            if (input.matches("[q](uit)?")) {
-                GameMenu.clearTerminal();
-                sc.close();
-                System.exit(0);
-            }
-
-            // Print player info
-            if (input.matches("[p](layer)?")) {
-                GameMenu.clearTerminal();
-                GameMenu.printScene(lines(), player);
-                logEvent();
-                GameMenu.printBranches(elligbleBranches, player);
-                player.logPlayer();
-                continue;
-            }
-
-            // Print commands
-            if (input.matches("[h](elp)?")) {
-                GameMenu.clearTerminal();
-                GameMenu.printScene(lines(), player);
-                logEvent();
-                GameMenu.printBranches(elligbleBranches, player);
-                GameMenu.logHelpScene();
-                continue;
-            }
-
-            // Attempt to select branch from user input
-            try {
-                int bOption = Integer.parseInt(input) - 1;
-                try {
-                    Branch branch = elligbleBranches.get(bOption);
+    public List<Branch> branches() {
+        return Collections.unmodifiableList(branches);
+    }
 
-                    // Run event if it exists in this branch
-                    branch.runEvent(player);
-                    branches.remove(branch);
-                    return branch.nextScene();
+    public List<Branch> choices(GameSession session) {
+        // Find elligble branches the player has not taken before
+        return session.eligibleBranches(this);
+    }
 
-                } catch (IndexOutOfBoundsException e) {
-                    GameMenu.clearTerminal();
-                    GameMenu.printScene(lines(), player);
-                    logEvent();
-                    GameMenu.printBranches(elligbleBranches, player);
-                    GameMenu.logError("Invalid branch");
-                    continue;
-                }
-            } catch (NumberFormatException e) {
-                GameMenu.clearTerminal();
-                GameMenu.printScene(lines(), player);
-                logEvent();
-                GameMenu.printBranches(elligbleBranches, player);
-                GameMenu.logError("Invalid option. Use [h]elp for a list of commands");
-                continue;
-            }
-        }
+    /**
+     * Takes the chosen branch, resolving its event if it has one. A branch to
+     * a scene the chapter does not have is not taken.
+     */
+    public int choose(GameSession session, List<Branch> choices, int choice) {
+        if (choice < 0 || choice >= choices.size())
+            return INVALID_CHOICE;
+
+        Branch branch = choices.get(choice);
+        if (branch.nextSceneId() == MISSING_SCENE)
+            return MISSING_SCENE;
+        session.takeBranch(branch);
+        return branch.nextSceneId();
     }
 }
@@ -1,11 +1,11 @@
 package scenes;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
-import java.util.Scanner;
+import java.util.function.ToIntFunction;
 
 import events.Event;
-import game.Player;
+import game.GameSession;
 
 /**
  * <p>
@@ -23,19 +23,75 @@ import game.Player;
  * behaviour it should follow. See other scene classes for details on how this
  * can differ.
  * 
+ * When its chapter is built, every scene is given an id, and the scenes it
+ * leads to are resolved to their ids, so moving between scenes is an array
+ * lookup rather than a search by index.
+ * 
+ * A scene does no input or output of its own. The session enters it, asks it
+ * for the choices the player has, and hands it the one they make, so the same
+ * scene can be played from the terminal, a server or a bot.
+ * 
  * @author Ahmed El-Sayed
  */
 public abstract class Scene {
+    /** The id of the scene a move goes to when it leaves the chapter */
+    public static final int NO_SCENE = -1;
+
+    /** Returned by {@link #choose} when the player's choice is not one they have */
+    public static final int INVALID_CHOICE = -2;
+
+    /** The id of a scene a branch or leaf leads to that its chapter does not have */
+    public static final int MISSING_SCENE = -3;
+
+    private int id = NO_SCENE;
     private String index;
     private String lines;
+    private SceneText text;
     private Optional<Event> event;
 
     public Scene(String index, String lines, Optional<Event> event) {
         this.index = index;
         this.lines = lines;
+        this.text = SceneText.compile(lines);
         this.event = event;
     }
 
+    /**
+     * @return The id of this scene within its chapter
+     */
+    public int id() {
+        return this.id;
+    }
+
+    /**
+     * Gives this scene its id, and resolves the scenes it leads to. Called
+     * once when the chapter is built.
+     * 
+     * @param id       The id of this scene within its chapter
+     * @param sceneIds Finds the id of a scene from its index, or
+     *                 {@link #NO_SCENE} if the chapter has no such scene
+     */
+    public void link(int id, ToIntFunction<String> sceneIds) {
+        this.id = id;
+    }
+
+    /**
+     * Resolves the scene a branch or leaf leads to.
+     * 
+     * @param index    The index of the scene, or a blank one to leave the
+     *                 chapter
+     * @param sceneIds Finds the id of a scene from its index, or
+     *                 {@link #NO_SCENE} if the chapter has no such scene
+     * @return The id of the scene, {@link #NO_SCENE} if the index is blank, or
+     *         {@link #MISSING_SCENE} if the chapter has no such scene
+     */
+    protected static int target(String index, ToIntFunction<String> sceneIds) {
+        if (index == null || index.isBlank())
+            return NO_SCENE;
+        int id = sceneIds.applyAsInt(index);
+        return id < 0 ? MISSING_SCENE : id;
+    }
+
     public String index() {
         return this.index;
     }
@@ -44,29 +100,48 @@ public abstract class Scene {
         return this.lines;
     }
 
-    public void logEvent() {
-        if (event.isPresent()) {
-            event.get().logEvent();
-        }
+    /**
+     * @return The lines, compiled to be shown to a player
+     */
+    public SceneText text() {
+        return this.text;
+    }
+
+    public Optional<Event> event() {
+        return this.event;
     }
 
     /**
-     * The run behaviour of the scene. Outputs the index of the next scene.
+     * Enters the scene, resolving its event, if one exists, against the
+     * session's player.
      * 
-     * @return The index of the next scene
+     * @param session The session entering this scene
      */
-    public abstract String run(Scanner sc, HashMap<String, Scene> scenes, Player player);
+    public void enter(GameSession session) {
+        if (event.isPresent())
+            session.runSceneEvent(this);
+    }
 
     /**
-     * Modify the players state by resolving the event in this scene, if one
-     * exists.
+     * The branches the player may choose between in this scene. Scenes without
+     * branches have none, and any choice simply continues.
      * 
-     * @param player The player character
+     * @param session The session playing this scene
+     * @return The branches the player may choose, in the order they are shown
      */
-    public void runEvent(Player player) {
-        if (event.isPresent()) {
-            event.get().runEvent(player);
-            event.get().logEvent();
-        }
-    }
+    public abstract List<Branch> choices(GameSession session);
+
+    /**
+     * Makes the player's choice in this scene, and outputs the id of the next
+     * scene.
+     * 
+     * @param session The session playing this scene
+     * @param choices The choices the player was given, from {@link #choices}
+     * @param choice  The index of the player's choice in {@code choices}
+     * @return The id of the next scene, {@link #NO_SCENE} to leave the chapter,
+     *         {@link #INVALID_CHOICE} if the choice is not one the player has,
+     *         or {@link #MISSING_SCENE} if it leads to a scene the chapter
+     *         does not have. In the last two cases nothing has changed.
+     */
+    public abstract int choose(GameSession session, List<Branch> choices, int choice);
 }
@@ -0,0 +1,150 @@
+package scenes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import game.Player;
+
+/**
+ * <p>
+ * The SceneText of a scene is its lines, split once into the literal text and
+ * the slots where the player's details are filled in. Showing a scene then
+ * copies the literals and the player's values in turn, rather than parsing the
+ * lines as a format string every time.
+ * </p>
+ *
+ * <p>
+ * Lines are written as they always have been for {@code printf}: {@code %s}
+ * is the player's name, {@code %%} is a {@code %} and {@code %n} is a new
+ * line. Any other {@code %}, such as in {@code "a 50% chance"}, is kept as it
+ * is, where {@code printf} would have thrown.
+ * </p>
+ *
+ * <p>
+ * The first time a terminal asks for them, the literals are also kept as
+ * UTF-8, so they can be copied straight into what it writes.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public final class SceneText {
+
+    /**
+     * A detail of the player that lines can show.
+     */
+    public enum Slot {
+        /** {@code %s} */
+        PLAYER_NAME;
+
+        /**
+         * @param player The player character
+         * @return The value of this slot for the player
+         */
+        public String value(Player player) {
+            return player.name();
+        }
+    }
+
+    private final String[] literals;
+    private final Slot[] slots;
+    private final int length;
+    // Encoded when first asked for, as only terminals need them
+    private volatile byte[][] literalBytes;
+
+    private SceneText(String[] literals, Slot[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+        int length = 0;
+        for (String literal : literals)
+            length += literal.length();
+        this.length = length;
+    }
+
+    /**
+     * Splits lines into literals and slots.
+     *
+     * @param lines The lines of a scene
+     * @return The compiled text
+     */
+    public static SceneText compile(String lines) {
+        ArrayList<String> literals = new ArrayList<>();
+        ArrayList<Slot> slots = new ArrayList<>();
+        StringBuilder literal = new StringBuilder(lines.length());
+        for (int i = 0; i < lines.length(); i++) {
+            char c = lines.charAt(i);
+            char next = i + 1 < lines.length() ? lines.charAt(i + 1) : 0;
+            if (c != '%' || (next != 's' && next != '%' && next != 'n')) {
+                literal.append(c);
+                continue;
+            }
+            i++;
+            if (next == '%') {
+                literal.append('%');
+            } else if (next == 'n') {
+                literal.append('\n');
+            } else {
+                literals.add(literal.toString());
+                literal.setLength(0);
+                slots.add(Slot.PLAYER_NAME);
+            }
+        }
+        // Most lines have nothing to fill in, and can be shared as they are
+        literals.add(slots.isEmpty() && literal.length() == lines.length() ? lines : literal.toString());
+        return new SceneText(literals.toArray(new String[0]), slots.toArray(new Slot[0]));
+    }
+
+    /**
+     * @param player The player character
+     * @return The text, with the player's details filled in
+     */
+    public String render(Player player) {
+        if (slots.length == 0)
+            return literals[0];
+        StringBuilder out = new StringBuilder(length + 16 * slots.length);
+        render(out, player);
+        return out.toString();
+    }
+
+    /**
+     * Adds the text, with the player's details filled in, to a buffer.
+     *
+     * @param out    The buffer
+     * @param player The player character
+     */
+    public void render(StringBuilder out, Player player) {
+        for (int i = 0; i < slots.length; i++)
+            out.append(literals[i]).append(slots[i].value(player));
+        out.append(literals[slots.length]);
+    }
+
+    /**
+     * @return The number of slots in the text. Literals come before, between
+     *         and after them, so there is one more literal than slots.
+     */
+    public int slots() {
+        return slots.length;
+    }
+
+    /**
+     * @param i The number of a slot
+     * @return The slot
+     */
+    public Slot slot(int i) {
+        return slots[i];
+    }
+
+    /**
+     * @param i The number of a literal
+     * @return The literal, as UTF-8
+     */
+    public byte[] literalBytes(int i) {
+        byte[][] bytes = literalBytes;
+        if (bytes == null) {
+            bytes = new byte[literals.length][];
+            for (int l = 0; l < literals.length; l++)
+                bytes[l] = literals[l].getBytes(StandardCharsets.UTF_8);
+            literalBytes = bytes;
+        }
+        return bytes[i];
+    }
+}
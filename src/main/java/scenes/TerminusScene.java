@@ -1,11 +1,9 @@
 package scenes;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
-import java.util.Scanner;
 
-import game.GameMenu;
-import game.Player;
+import game.GameSession;
 
 public class TerminusScene extends Scene {
 
@@ -13,16 +11,16 @@ public class TerminusScene extends Scene {
         super(index, lines, Optional.empty());
     }
 
-    public String run(Scanner sc, HashMap<String, Scene> scenes, Player player) {
-        GameMenu.printScene(lines(), player);
-        System.out.println("Press ENTER to continue...\n");
-
-        while (true) {
-            String input = sc.nextLine();
+    public List<Branch> choices(GameSession session) {
+        return List.of();
+    }
 
-            if (input.length() == 0)
-                return "";
-        }
+    /**
+     * Any choice ends the game once the player leaves this scene.
+     */
+    public int choose(GameSession session, List<Branch> choices, int choice) {
+        session.endGame();
+        return NO_SCENE;
     }
 
 }
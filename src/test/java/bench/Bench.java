@@ -0,0 +1,71 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Measurements shared by the benchmarks.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class Bench {
+
+    /**
+     * @return Heap in use after asking the JVM to collect garbage
+     */
+    public static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return Bytes allocated by the current thread so far, or {@code -1} if
+     *         this JVM cannot tell us
+     */
+    public static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+            return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+
+    /**
+     * Collects garbage and resets the peak usage of every heap pool, so that
+     * {@link #peakHeap()} measures from here.
+     */
+    public static void resetPeakHeap() {
+        usedHeap();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+    }
+
+    /**
+     * @return The sum of the peak usage of every heap pool since the last
+     *         {@link #resetPeakHeap()}. Pools may peak at different times, so
+     *         this is an upper bound.
+     */
+    public static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        return peak;
+    }
+
+    /**
+     * @param nanos A duration in nanoseconds
+     * @return The duration in milliseconds
+     */
+    public static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import game.ChapterCompiler;
+import game.CompiledChapter;
+import game.GameParser;
+
+/**
+ * Compares loading a chapter from its JSON file through the GameParser against
+ * loading the same chapter compiled by the ChapterCompiler, on generated
+ * chapters of increasing size.
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.ChapterLoadBenchmark -Dexec.args="1000 10000 100000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class ChapterLoadBenchmark {
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = { 1_000, 10_000, 100_000 };
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.printf("%10s %12s %12s %12s %12s %12s %12s%n", "scenes", "json bytes", "wgc bytes",
+                "json ms", "wgc ms", "json alloc", "wgc alloc");
+        for (int size : sizes) {
+            File json = File.createTempFile("chapter", ".json");
+            File compiled = ChapterCompiler.compiledFile(json);
+            SyntheticChapter.write(json, size, 42);
+            ChapterCompiler.compile(json, compiled);
+
+            long[] jsonCost = measure(() -> new GameParser(json).parseChapter());
+            long[] compiledCost = measure(() -> CompiledChapter.load(compiled));
+
+            System.out.printf("%10d %12d %12d %12.1f %12.1f %11dK %11dK%n", size, json.length(), compiled.length(),
+                    Bench.millis(jsonCost[0]), Bench.millis(compiledCost[0]), jsonCost[1] >> 10,
+                    compiledCost[1] >> 10);
+            json.delete();
+            compiled.delete();
+        }
+    }
+
+    private interface Load {
+        Object load() throws IOException;
+    }
+
+    /**
+     * Loads a chapter a few times to warm up, then reports the best time and
+     * the bytes allocated by a single load.
+     */
+    private static long[] measure(Load load) throws IOException {
+        long best = Long.MAX_VALUE;
+        long allocated = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long allocBefore = Bench.allocatedBytes();
+            long start = System.nanoTime();
+            load.load();
+            best = Math.min(best, System.nanoTime() - start);
+            allocated = Bench.allocatedBytes() - allocBefore;
+        }
+        return new long[] { best, allocated };
+    }
+}
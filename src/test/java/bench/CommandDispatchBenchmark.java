@@ -0,0 +1,112 @@
+package bench;
+
+import java.util.SplittableRandom;
+
+import game.CommandTable;
+import game.CommandTable.Command;
+
+/**
+ * Dispatches lines of player input in a scene, the way the input loops used
+ * to with {@code toLowerCase} and a {@code String.matches} per command, and
+ * with a CommandTable. Reports the time and the bytes allocated per line.
+ *
+ * <p>
+ * The lines are mostly choices, with the commands and mistakes players type
+ * in between, in upper and lower case.
+ * </p>
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.CommandDispatchBenchmark -Dexec.args="2000000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class CommandDispatchBenchmark {
+    private static final String[] LINES = { "1", "2", "3", "1", "2", "4", "12", "q", "quit", "h", "Help", "p",
+            "player", "P", "x", "", "hello", "-1" };
+
+    private static final CommandTable SCENE = new CommandTable()
+            .with(Command.QUIT, "q", "quit")
+            .with(Command.PLAYER, "p", "player")
+            .with(Command.HELP, "h", "help");
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        SplittableRandom random = new SplittableRandom(31);
+        String[] lines = new String[1 << 12];
+        for (int i = 0; i < lines.length; i++)
+            lines[i] = LINES[random.nextInt(LINES.length)];
+
+        // Warm up both, then measure
+        for (int round = 0; round < 3; round++) {
+            regex(lines, count / 4);
+            table(lines, count / 4);
+        }
+        measure("String.matches", lines, count, true);
+        measure("CommandTable", lines, count, false);
+    }
+
+    private static void measure(String name, String[] lines, int count, boolean regex) {
+        long allocated = Bench.allocatedBytes();
+        long start = System.nanoTime();
+        long sink = regex ? regex(lines, count) : table(lines, count);
+        long elapsed = System.nanoTime() - start;
+        allocated = Bench.allocatedBytes() - allocated;
+        System.out.printf("%-15s %7.1f ns/line, %6.1f bytes/line (%d)%n", name, (double) elapsed / count,
+                (double) allocated / count, sink);
+    }
+
+    /**
+     * Dispatches as the input loops did before the CommandTable.
+     *
+     * @return A sum of the results, so none of the work can be skipped
+     */
+    private static long regex(String[] lines, int count) {
+        long sink = 0;
+        for (int i = 0; i < count; i++) {
+            String input = lines[i & (lines.length - 1)];
+            String command = input.toLowerCase();
+            if (command.matches("[q](uit)?"))
+                sink += 1;
+            else if (command.matches("[p](layer)?"))
+                sink += 2;
+            else if (command.matches("[h](elp)?"))
+                sink += 3;
+            else
+                try {
+                    sink += Integer.parseInt(input);
+                } catch (NumberFormatException e) {
+                    sink += 4;
+                }
+        }
+        return sink;
+    }
+
+    /**
+     * Dispatches with a CommandTable.
+     *
+     * @return A sum of the results, so none of the work can be skipped
+     */
+    private static long table(String[] lines, int count) {
+        long sink = 0;
+        for (int i = 0; i < count; i++) {
+            String input = lines[i & (lines.length - 1)];
+            switch (SCENE.dispatch(input)) {
+                case QUIT:
+                    sink += 1;
+                    break;
+                case PLAYER:
+                    sink += 2;
+                    break;
+                case HELP:
+                    sink += 3;
+                    break;
+                default:
+                    int number = CommandTable.number(input);
+                    sink += number == CommandTable.NOT_A_NUMBER ? 4 : number;
+            }
+        }
+        return sink;
+    }
+}
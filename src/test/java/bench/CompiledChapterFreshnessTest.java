@@ -0,0 +1,64 @@
+package bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import game.ChapterCache;
+import game.ChapterCompiler;
+
+/**
+ * Checks that a compiled chapter is only used in place of its JSON chapter if
+ * it was compiled from the chapter as it is now, whatever the modification
+ * times of the two files say.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class CompiledChapterFreshnessTest {
+    private static final String CHAPTER = """
+            {
+                "currScene": "1",
+                "scenes": {"1": {"lines": "%s", "sceneType": "terminus"}}
+            }
+            """;
+
+    @TempDir
+    Path gameDir;
+
+    private File chapter;
+    private File compiled;
+
+    @BeforeEach
+    public void compileChapter() throws Exception {
+        chapter = gameDir.resolve("chapter1.json").toFile();
+        compiled = ChapterCompiler.compiledFile(chapter);
+        Files.writeString(chapter.toPath(), CHAPTER.formatted("Before"), StandardCharsets.UTF_8);
+        ChapterCompiler.compile(chapter, compiled);
+    }
+
+    @Test
+    public void editNotNewerThanTheCompiledFileIsSeen() throws Exception {
+        Files.writeString(chapter.toPath(), CHAPTER.formatted("After"), StandardCharsets.UTF_8);
+        chapter.setLastModified(compiled.lastModified() - 1_000);
+
+        assertFalse(ChapterCompiler.isUpToDate(chapter));
+        assertEquals("After", ChapterCache.load(chapter).scene("1").lines());
+    }
+
+    @Test
+    public void unchangedChapterNewerThanTheCompiledFileIsUpToDate() throws Exception {
+        chapter.setLastModified(compiled.lastModified() + 1_000);
+
+        assertTrue(ChapterCompiler.isUpToDate(chapter));
+        assertEquals("Before", ChapterCache.load(chapter).scene("1").lines());
+    }
+}
@@ -0,0 +1,60 @@
+package bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import game.Chapter;
+import game.ChapterCompiler;
+import game.CompiledChapter;
+import game.MappedSceneStore;
+
+/**
+ * Checks that a compiled chapter, whether decoded in full or mapped, reports
+ * the same dangling references and unknown types as the JSON chapter it was
+ * compiled from.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class CompiledChapterProblemsTest {
+
+    @Test
+    public void compiledChaptersKeepTheirProblems(@TempDir Path gameDir) throws Exception {
+        File chapter = gameDir.resolve("chapter1.json").toFile();
+        Files.writeString(chapter.toPath(), """
+                {
+                    "currScene": "1",
+                    "scenes": {
+                        "1": {
+                            "lines": "A fork in the road",
+                            "sceneType": "node",
+                            "branches": [
+                                {"bScene": "9", "prompt": "Take the washed out road"},
+                                {"bScene": "2", "prompt": "Take the bridge",
+                                 "requirement": {"type": "level", "req": "3"}}
+                            ]
+                        },
+                        "2": {"lines": "The bridge", "sceneType": "leaf", "nextScene": "8"}
+                    }
+                }
+                """, StandardCharsets.UTF_8);
+        File compiled = ChapterCompiler.compiledFile(chapter);
+        Chapter parsed = ChapterCompiler.compile(chapter, compiled);
+        assertFalse(parsed.danglingReferences().isEmpty());
+        assertFalse(parsed.unknownTypes().isEmpty());
+
+        List<Chapter> loaded = List.of(CompiledChapter.load(compiled), MappedSceneStore.open(compiled).toChapter());
+        for (Chapter each : loaded) {
+            assertEquals(parsed.danglingReferences(), each.danglingReferences());
+            assertEquals(parsed.unknownTypes(), each.unknownTypes());
+        }
+    }
+}
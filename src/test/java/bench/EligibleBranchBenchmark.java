@@ -0,0 +1,87 @@
+package bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+import game.EligibleBranchCache;
+import game.GameSession;
+import scenes.Branch;
+import scenes.NodeScene;
+
+/**
+ * Plays random moves through real stories and a generated one, finding the
+ * eligible branches of each node scene both through the session's
+ * EligibleBranchCache and by evaluating every requirement as NodeScene used
+ * to. Checks the two agree at every step, and reports the cache's hit rate
+ * and the time each way takes.
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.EligibleBranchBenchmark -Dexec.args="data/The_Curse_Of_Sigfried data/Debug"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class EligibleBranchBenchmark {
+    private static final int MOVES = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        ArrayList<String> games = new ArrayList<>();
+        for (String arg : args)
+            games.add(arg);
+        if (games.isEmpty()) {
+            games.add("data/The_Curse_Of_Sigfried");
+            games.add("data/Debug");
+        }
+        File synthetic = SyntheticChapter.writeGame(5_000);
+        games.add(synthetic.getPath());
+
+        System.out.printf("%-28s %10s %10s %10s %9s %12s %12s%n", "game", "hits", "misses", "stale", "hit rate",
+                "cached ns", "uncached ns");
+        for (String game : games) {
+            GameSession session = new GameSession();
+            session.newGame(game);
+            Random random = new Random(5);
+            long[] nanos = new long[2];
+
+            for (int i = 0; i < MOVES; i++) {
+                RandomMoves.move(session, random, node -> {
+                    long start = System.nanoTime();
+                    ArrayList<Branch> uncached = evaluateAll(session, node);
+                    long middle = System.nanoTime();
+                    ArrayList<Branch> cached = session.eligibleBranches(node);
+                    long end = System.nanoTime();
+
+                    if (!cached.equals(uncached))
+                        throw new IllegalStateException("Cache disagrees in scene " + node.index() + " of " + game);
+                    nanos[0] += end - middle;
+                    nanos[1] += middle - start;
+                    return cached;
+                });
+            }
+
+            EligibleBranchCache cache = session.eligibleBranchCache();
+            long lookups = cache.hits() + cache.misses() + cache.stale();
+            String name = new File(game).getName();
+            System.out.printf("%-28s %10d %10d %10d %8.1f%% %12.1f %12.1f%n",
+                    name.length() > 28 ? name.substring(0, 28) : name, cache.hits(), cache.misses(), cache.stale(),
+                    cache.hitRate() * 100, (double) nanos[0] / lookups, (double) nanos[1] / lookups);
+        }
+
+        for (File file : synthetic.listFiles())
+            file.delete();
+        synthetic.delete();
+    }
+
+    /**
+     * Finds the eligible branches by evaluating every requirement, as
+     * NodeScene did before the cache.
+     */
+    private static ArrayList<Branch> evaluateAll(GameSession session, NodeScene node) {
+        ArrayList<Branch> eligible = new ArrayList<>();
+        for (Branch branch : node.branches())
+            if (!session.isConsumed(branch) && branch.evaluateRequirement(session.player()))
+                eligible.add(branch);
+        return eligible;
+    }
+}
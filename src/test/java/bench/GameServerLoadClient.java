@@ -0,0 +1,218 @@
+package bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import game.GameServer;
+
+/**
+ * Opens thousands of connections to a GameServer and has each play a story
+ * with random choices, like a player on {@code telnet} would. Every line sent
+ * is timed until the server's next prompt comes back, and the latency of these
+ * moves is reported at the 50th, 90th and 99th percentiles.
+ *
+ * <p>
+ * All connections are driven from one thread with a Selector, so the client
+ * itself needs no thread per socket. With no host given, a server is started
+ * in this process on a free port.
+ * </p>
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.GameServerLoadClient -Dexec.args="2000 50"
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.GameServerLoadClient -Dexec.args="2000 50 localhost 4000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class GameServerLoadClient {
+    private static final String GAME = "The Curse Of Sigfried";
+    private static final Pattern ANSI = Pattern.compile("\033\\[[0-9;]*[A-Za-z]");
+    private static final Pattern OPTION = Pattern.compile("(?m)^(\\d+)\\. (.*)$");
+
+    /**
+     * One player's connection, and where they are in the conversation.
+     */
+    private static class Player {
+        final SocketChannel channel;
+        final StringBuilder received = new StringBuilder();
+        long sentAt;
+        int moves;
+        boolean quitting;
+
+        Player(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final int moves;
+    private final SplittableRandom random = new SplittableRandom(17);
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 << 10);
+    private long[] latencies = new long[1 << 16];
+    private int latencyCount;
+    private int finished;
+    private int failed;
+
+    private GameServerLoadClient(int moves) {
+        this.moves = moves;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int moves = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        GameServer server = null;
+        InetSocketAddress address;
+        if (args.length > 3) {
+            address = new InetSocketAddress(args[2], Integer.parseInt(args[3]));
+        } else {
+            server = new GameServer(0, connections, GameServer.DEFAULT_IDLE_TIMEOUT);
+            address = new InetSocketAddress("localhost", server.port());
+            System.out.printf("started a server on port %d, on %s threads%n", server.port(),
+                    server.usesVirtualThreads() ? "virtual" : "platform");
+        }
+
+        GameServerLoadClient client = new GameServerLoadClient(moves);
+        long start = System.nanoTime();
+        client.run(address, connections);
+        long elapsed = System.nanoTime() - start;
+        client.report(connections, elapsed);
+
+        if (server != null) {
+            System.out.printf("server: accepted %d, rejected %d, timed out %d, failed %d%n", server.accepted(),
+                    server.rejected(), server.timedOut(), server.failed());
+            server.close();
+        }
+    }
+
+    private void run(InetSocketAddress address, int connections) throws IOException {
+        try (Selector selector = Selector.open()) {
+            for (int i = 0; i < connections; i++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.connect(address);
+                channel.register(selector, SelectionKey.OP_CONNECT, new Player(channel));
+            }
+
+            while (finished + failed < connections) {
+                selector.select(1000);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Player player = (Player) key.attachment();
+                    try {
+                        if (key.isConnectable()) {
+                            player.channel.finishConnect();
+                            key.interestOps(SelectionKey.OP_READ);
+                        } else if (key.isReadable()) {
+                            read(key, player);
+                        }
+                    } catch (IOException e) {
+                        key.cancel();
+                        player.channel.close();
+                        failed++;
+                    }
+                }
+            }
+        }
+    }
+
+    private void read(SelectionKey key, Player player) throws IOException {
+        buffer.clear();
+        int read = player.channel.read(buffer);
+        if (read < 0) {
+            key.cancel();
+            player.channel.close();
+            if (player.quitting)
+                finished++;
+            else
+                failed++;
+            return;
+        }
+        // The game only sends ASCII apart from the stories, which we do not read closely
+        player.received.append(new String(buffer.array(), 0, read, StandardCharsets.ISO_8859_1));
+        if (!endsWithPrompt(player.received))
+            return;
+
+        long now = System.nanoTime();
+        if (player.sentAt != 0)
+            record(now - player.sentAt);
+
+        String line = player.moves >= moves ? "q" : respond(ANSI.matcher(player.received).replaceAll(""));
+        if (line.equals("q"))
+            player.quitting = true;
+        player.moves++;
+        player.received.setLength(0);
+        player.sentAt = System.nanoTime();
+        ByteBuffer bytes = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining())
+            player.channel.write(bytes);
+    }
+
+    /**
+     * Decides what a player sends in response to what the server showed them.
+     */
+    private String respond(String screen) {
+        if (screen.contains("WELCOME TO THE WORDGAME PROJECT"))
+            return "1";
+        if (screen.contains("SELECT A GAME")) {
+            Matcher option = OPTION.matcher(screen);
+            while (option.find())
+                if (option.group(2).contains(GAME))
+                    return option.group(1);
+            return "q";
+        }
+        if (screen.contains("Press ENTER"))
+            return "";
+
+        int options = 0;
+        Matcher option = OPTION.matcher(screen);
+        while (option.find())
+            options++;
+        // A scene with nothing left to choose
+        if (options == 0)
+            return "q";
+        return Integer.toString(1 + random.nextInt(options));
+    }
+
+    private static boolean endsWithPrompt(StringBuilder received) {
+        int length = received.length();
+        return length >= GameServer.PROMPT.length()
+                && received.substring(length - GameServer.PROMPT.length()).equals(GameServer.PROMPT);
+    }
+
+    private void record(long nanos) {
+        if (latencyCount == latencies.length)
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        latencies[latencyCount++] = nanos;
+    }
+
+    private void report(int connections, long elapsed) {
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        System.out.printf("connections: %d finished, %d failed%n", finished, failed);
+        System.out.printf("moves: %d in %.1f s, %.0f moves/s%n", latencyCount, elapsed / 1e9,
+                latencyCount / (elapsed / 1e9));
+        if (sorted.length == 0)
+            return;
+        System.out.printf("latency per move: p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                Bench.millis(percentile(sorted, 50)), Bench.millis(percentile(sorted, 90)),
+                Bench.millis(percentile(sorted, 99)), Bench.millis(sorted[sorted.length - 1]));
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, (int) ((long) sorted.length * percent / 100))];
+    }
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import game.GameValidator;
+import game.GameValidator.Problem;
+import game.GameValidator.Report;
+
+/**
+ * Validates a generated game of several large chapters, on a pool of one
+ * thread and, if there is more than one processor, on a pool with a thread for
+ * every processor. Reports how long each took and what was found.
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.GameValidatorBenchmark -Dexec.args="8 250000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class GameValidatorBenchmark {
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int chapters = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int scenes = args.length > 1 ? Integer.parseInt(args[1]) : 250_000;
+
+        File gameDir = Files.createTempDirectory("Synthetic_Game").toFile();
+        try {
+            SyntheticChapter.writeGame(gameDir, chapters, scenes);
+            long bytes = 0;
+            for (File file : gameDir.listFiles())
+                bytes += file.length();
+            System.out.printf("%d chapters of %d scenes, %d MiB of JSON%n", chapters, scenes, bytes >> 20);
+
+            int processors = Runtime.getRuntime().availableProcessors();
+            measure("1 thread", gameDir, new ForkJoinPool(1));
+            if (processors > 1)
+                measure(processors + " threads", gameDir, new ForkJoinPool(processors));
+        } finally {
+            for (File file : gameDir.listFiles())
+                file.delete();
+            gameDir.delete();
+        }
+    }
+
+    private static void measure(String name, File gameDir, ForkJoinPool pool) throws Exception {
+        long best = Long.MAX_VALUE;
+        Report report = null;
+        for (int run = 0; run < RUNS; run++) {
+            report = null;
+            Bench.usedHeap();
+            long start = System.nanoTime();
+            report = new GameValidator(gameDir, pool).validate();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        pool.shutdown();
+
+        System.out.printf("%-12s %8.2f s, %6.0f K scenes/s%n", name, best / 1e9, report.scenes() / (best / 1e6));
+        for (Problem problem : Problem.values())
+            System.out.printf("    %-46s %d%n", problem.title(), report.problems(problem).size());
+    }
+}
@@ -0,0 +1,75 @@
+package bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import game.GameValidator;
+import game.GameValidator.Problem;
+import game.GameValidator.Report;
+
+/**
+ * Checks the GameValidator against a small chapter with exactly one problem
+ * of each kind a chapter can have: a branch to a scene that does not exist, a
+ * scene that is never reached, a node scene with no branch to take, an event
+ * of an unknown type and a requirement that can never be met.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class GameValidatorTest {
+
+    @Test
+    public void reportsOneOfEachProblem(@TempDir Path gameDir) throws Exception {
+        Files.writeString(gameDir.resolve("playerDefault.json"), "{\"player\": {\"name\": \"Tester\"}}",
+                StandardCharsets.UTF_8);
+        Files.writeString(gameDir.resolve("chapter1.json"), """
+                {
+                    "currScene": "1",
+                    "scenes": {
+                        "1": {
+                            "lines": "A crossroads",
+                            "sceneType": "node",
+                            "event": {"type": "teleport", "arg": "Away"},
+                            "branches": [
+                                {"bScene": "2", "prompt": "Go on"},
+                                {"bScene": "9", "prompt": "Into the fog"},
+                                {"bScene": "3", "prompt": "Through the gate",
+                                 "requirement": {"type": "perk", "req": "Never"}}
+                            ]
+                        },
+                        "2": {"lines": "A wall", "sceneType": "node", "branches": []},
+                        "3": {"lines": "Behind the gate", "sceneType": "terminus"}
+                    }
+                }
+                """, StandardCharsets.UTF_8);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        Report report;
+        try {
+            report = new GameValidator(gameDir.toFile(), pool).validate();
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(1, report.chapters());
+        assertEquals(3, report.scenes());
+        assertEquals(List.of(), report.problems(Problem.CHAPTER));
+        assertEquals(List.of("chapter1.json: Scene 1 has unknown event type teleport"),
+                report.problems(Problem.UNKNOWN_TYPE));
+        assertEquals(List.of("chapter1.json: Branch 2 of scene 1 leads to missing scene 9"),
+                report.problems(Problem.DANGLING));
+        assertEquals(List.of("chapter1.json: Scene 3 is never reached"), report.problems(Problem.UNREACHABLE));
+        assertEquals(List.of("chapter1.json: Scene 2 has no branch that can be taken"),
+                report.problems(Problem.DEAD_END));
+        assertEquals(List.of("chapter1.json: Branch 3 of scene 1 to scene 3 has a requirement that can never be met"),
+                report.problems(Problem.UNSATISFIABLE));
+        assertEquals(5, report.count());
+    }
+}
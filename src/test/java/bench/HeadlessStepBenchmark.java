@@ -0,0 +1,80 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+import game.GameSession;
+import game.SceneView;
+
+/**
+ * Plays real stories and a generated one with a bot that makes random choices
+ * through the session's step API, with no terminal, and reports how many steps
+ * a second it makes. When the game ends or the bot reaches a scene with no
+ * choices left, it starts the chapter over from a random scene, so a locked
+ * first scene does not end the run.
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.HeadlessStepBenchmark -Dexec.args="data/The_Curse_Of_Sigfried data/Debug"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class HeadlessStepBenchmark {
+    private static final int STEPS = 2_000_000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        ArrayList<String> games = new ArrayList<>();
+        for (String arg : args)
+            games.add(arg);
+        if (games.isEmpty()) {
+            games.add("data/The_Curse_Of_Sigfried");
+            games.add("data/Debug");
+        }
+        File synthetic = SyntheticChapter.writeGame(50_000);
+        games.add(synthetic.getPath());
+
+        System.out.printf("%-28s %14s %10s %10s%n", "game", "steps/s", "ns/step", "restarts");
+        for (String game : games) {
+            GameSession session = new GameSession();
+            session.newGame(game);
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                long restarts = play(session, new SplittableRandom(round), STEPS);
+                long elapsed = System.nanoTime() - start;
+
+                if (round == ROUNDS - 1) {
+                    String name = new File(game).getName();
+                    System.out.printf("%-28s %14.0f %10.1f %10d%n", name.length() > 28 ? name.substring(0, 28) : name,
+                            STEPS / (elapsed / 1e9), (double) elapsed / STEPS, restarts);
+                }
+            }
+        }
+
+        for (File file : synthetic.listFiles())
+            file.delete();
+        synthetic.delete();
+    }
+
+    /**
+     * @return The number of times the bot started the chapter over
+     */
+    private static long play(GameSession session, SplittableRandom random, int steps) throws IOException {
+        long restarts = 0;
+        SceneView view = session.view();
+        for (int i = 0; i < steps; i++) {
+            if (view.isEnded() || (view.kind() == SceneView.Kind.NODE && view.choices().isEmpty())) {
+                session.startChapter(session.chapterId(), session.chapter());
+                session.setCurrScene(random.nextInt(session.chapter().sceneCount()));
+                view = session.view();
+                restarts++;
+                continue;
+            }
+            int choices = view.choices().size();
+            view = session.choose(choices == 0 ? 0 : random.nextInt(choices));
+        }
+        return restarts;
+    }
+}
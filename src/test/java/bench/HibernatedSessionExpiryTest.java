@@ -0,0 +1,53 @@
+package bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import game.GameSession;
+import game.SessionHibernator;
+import game.SessionStore;
+
+/**
+ * Checks that a hibernated session that cannot be read back is dropped, with
+ * its file, and treated as expired, rather than failing every request for it
+ * until it times out.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class HibernatedSessionExpiryTest {
+    private static final String GAME = "data/The_Curse_Of_Sigfried";
+
+    @Test
+    public void unreadableSessionExpires(@TempDir Path dir) throws Exception {
+        SessionStore store = new SessionStore(100, 60_000, new SessionHibernator(dir.toFile()), 1, 60_000);
+        SessionStore.Entry broken = store.add(newSession());
+        SessionStore.Entry other = store.add(newSession());
+        assertTrue(broken.isHibernated(), "the older session is hibernated");
+
+        File file = new File(dir.toFile(), broken.id() + ".session");
+        Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+
+        assertNull(store.get(broken.id()), "unreadable session is expired");
+        assertFalse(file.exists(), "its file is deleted");
+        assertNull(store.get(broken.id()), "and stays expired");
+        assertEquals(1, store.size());
+        assertEquals(1, store.evicted());
+        assertNotNull(store.get(other.id()), "other sessions are untouched");
+    }
+
+    private static GameSession newSession() throws Exception {
+        GameSession session = new GameSession();
+        session.newGame(GAME);
+        return session;
+    }
+}
@@ -0,0 +1,168 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import game.GameSession;
+import game.GameWriter;
+import game.SceneView;
+import game.SessionHibernator;
+import game.SessionStore;
+
+/**
+ * Fills a SessionStore with sessions part way through a game, keeping only a
+ * few in memory and hibernating the rest, and compares the heap it takes with
+ * a store keeping them all in memory. Players then return at random, and the
+ * time to get their session back is reported separately for sessions still in
+ * memory and those rehydrated from disk.
+ *
+ * <p>
+ * Every returning session is checked against a save of it taken before it was
+ * hibernated, so a session that does not come back exactly as it was fails
+ * the run.
+ * </p>
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.HibernationBenchmark -Dexec.args="data/The_Curse_Of_Sigfried 20000 1000 20000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class HibernationBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String game = args.length > 0 ? args[0] : "data/The_Curse_Of_Sigfried";
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int maxResident = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        int returns = args.length > 3 ? Integer.parseInt(args[3]) : 20_000;
+
+        File dir = Files.createTempDirectory("hibernated").toFile();
+        try {
+            // Warm up class loading and the chapter cache before measuring
+            new GameSession().newGame(game);
+
+            long inMemory = fill(new SessionStore(count, Long.MAX_VALUE), game, count, null, null);
+            System.gc();
+
+            SessionStore store = new SessionStore(count, Long.MAX_VALUE, new SessionHibernator(dir), maxResident,
+                    Long.MAX_VALUE);
+            SessionStore.Entry[] entries = new SessionStore.Entry[count];
+            String[] saves = new String[count];
+            long hibernating = fill(store, game, count, entries, saves);
+            SessionHibernator hibernator = store.hibernator();
+
+            System.out.printf("sessions:           %d, at most %d in memory%n", count, maxResident);
+            System.out.printf("heap, all resident: %.1f MiB%n", inMemory / 1048576.0);
+            System.out.printf("heap, hibernating:  %.1f MiB (%d resident, %d hibernated)%n", hibernating / 1048576.0,
+                    store.resident(), store.hibernated());
+            System.out.printf("on disk:            %d bytes per session%n", hibernator.meanBytes());
+
+            returnAtRandom(store, entries, saves, returns);
+            System.out.printf("sessions now:       %d resident, %d hibernated; %d hibernations, %d rehydrations%n",
+                    store.resident(), store.hibernated(), hibernator.hibernated(), hibernator.rehydrated());
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null)
+                for (File file : files)
+                    file.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * Adds sessions to a store, each a few random moves into the game.
+     *
+     * @param entries Where to keep the entry of each session, or {@code null}
+     * @param saves   Where to keep a save of each session as it was added, or
+     *                {@code null}
+     * @return The heap the store takes once filled
+     */
+    private static long fill(SessionStore store, String game, int count, SessionStore.Entry[] entries,
+            String[] saves) throws IOException {
+        SplittableRandom random = new SplittableRandom(19);
+        long before = Bench.usedHeap();
+        for (int i = 0; i < count; i++) {
+            GameSession session = new GameSession();
+            session.newGame(game);
+            int moves = random.nextInt(6);
+            SceneView view = session.view();
+            for (int m = 0; m < moves && !view.isEnded(); m++)
+                view = session.choose(view.choices().isEmpty() ? 0 : random.nextInt(view.choices().size()));
+
+            if (saves != null)
+                saves[i] = describe(session);
+            SessionStore.Entry entry = store.add(session);
+            if (entries != null)
+                entries[i] = entry;
+        }
+        return Bench.usedHeap() - before;
+    }
+
+    /**
+     * Has players return to random sessions, timing how long it takes to get
+     * each back and checking it against its save.
+     */
+    private static void returnAtRandom(SessionStore store, SessionStore.Entry[] entries, String[] saves,
+            int returns) throws IOException {
+        SplittableRandom random = new SplittableRandom(23);
+        long[] resident = new long[returns];
+        long[] rehydrated = new long[returns];
+        int residentCount = 0;
+        int rehydratedCount = 0;
+
+        for (int r = 0; r < returns; r++) {
+            int i = random.nextInt(saves.length);
+            String id = entries[i].id();
+            boolean wasHibernated = entries[i].isHibernated();
+            long start = System.nanoTime();
+            SessionStore.Entry entry = store.get(id);
+            long elapsed = System.nanoTime() - start;
+            if (entry == null)
+                throw new IllegalStateException("Session " + id + " was lost");
+
+            synchronized (entry) {
+                GameSession session = entry.session();
+                String now = describe(session);
+                if (!now.equals(saves[i]))
+                    throw new IllegalStateException("Session " + id + " came back different:\n" + saves[i] + "\n"
+                            + now);
+                SceneView view = session.view();
+                if (!view.isEnded()) {
+                    session.choose(view.choices().isEmpty() ? 0 : random.nextInt(view.choices().size()));
+                    saves[i] = describe(session);
+                }
+            }
+            if (wasHibernated)
+                rehydrated[rehydratedCount++] = elapsed;
+            else
+                resident[residentCount++] = elapsed;
+        }
+        report("resident", Arrays.copyOf(resident, residentCount));
+        report("rehydrated", Arrays.copyOf(rehydrated, rehydratedCount));
+    }
+
+    /**
+     * @return The session's save, and what its player sees, as text
+     */
+    private static String describe(GameSession session) {
+        SceneView view = session.view();
+        StringBuilder description = new StringBuilder(GameWriter.writeSave(session).toString());
+        description.append('|').append(view.kind()).append('|').append(view.lines());
+        view.choices().forEach(branch -> description.append('|').append(branch.prompt()));
+        return description.toString();
+    }
+
+    private static void report(String name, long[] nanos) {
+        if (nanos.length == 0) {
+            System.out.printf("get, %-10s  none%n", name + ":");
+            return;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("get, %-10s  %d, p50 %.1f us, p99 %.1f us, max %.1f us%n", name + ":", nanos.length,
+                nanos[nanos.length / 2] / 1000.0, nanos[(int) (nanos.length * 0.99)] / 1000.0,
+                nanos[nanos.length - 1] / 1000.0);
+    }
+}
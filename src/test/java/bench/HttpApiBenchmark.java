@@ -0,0 +1,131 @@
+package bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import game.GameHttpServer;
+import game.SessionStore;
+
+/**
+ * Starts a GameHttpServer on a free port and has a number of client threads
+ * play through it, each making random choices in its own session and starting
+ * a new one whenever its game ends or it runs out of choices. Reports the
+ * requests a second and the latency of each choice at the 50th and 99th
+ * percentiles.
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.HttpApiBenchmark -Dexec.args="16 2000 The_Curse_Of_Sigfried"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class HttpApiBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int choices = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        String game = args.length > 2 ? args[2] : "The_Curse_Of_Sigfried";
+        // As GameHttpServer.main does, before the first HttpServer reads it
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        try (GameHttpServer server = new GameHttpServer(0, new SessionStore())) {
+            String base = "http://localhost:" + server.port();
+            HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10)).build();
+
+            // Warm up, then measure
+            run(http, base, game, clients, choices / 4);
+            long[][] latencies = new long[clients][];
+            AtomicLong requests = new AtomicLong();
+            long start = System.nanoTime();
+            Thread[] threads = new Thread[clients];
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                threads[c] = new Thread(() -> latencies[client] = play(http, base, game, choices, client, requests));
+                threads[c].start();
+            }
+            for (Thread thread : threads)
+                thread.join();
+            long elapsed = System.nanoTime() - start;
+
+            long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+            System.out.printf("%d clients, %s threads: %d requests in %.1f s, %.0f requests/s%n", clients,
+                    server.usesVirtualThreads() ? "virtual" : "platform", requests.get(), elapsed / 1e9,
+                    requests.get() / (elapsed / 1e9));
+            System.out.printf("latency per choice: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    Bench.millis(all[all.length / 2]), Bench.millis(all[(int) (all.length * 0.99)]),
+                    Bench.millis(all[all.length - 1]));
+            System.out.printf("sessions: %d stored, %d created, %d evicted%n", server.sessions().size(),
+                    server.sessions().created(), server.sessions().evicted());
+        }
+    }
+
+    private static void run(HttpClient http, String base, String game, int clients, int choices)
+            throws InterruptedException {
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            threads[c] = new Thread(() -> play(http, base, game, choices, client, new AtomicLong()));
+            threads[c].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+    }
+
+    /**
+     * Plays random choices through the API.
+     *
+     * @return The latency of every choice, in nanoseconds
+     */
+    private static long[] play(HttpClient http, String base, String game, int choices, int seed,
+            AtomicLong requests) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] latencies = new long[choices];
+        try {
+            JSONObject view = null;
+            for (int i = 0; i < choices; i++) {
+                if (view == null || view.getBoolean("ended")
+                        || (view.getString("kind").equals("node") && view.getJSONArray("choices").isEmpty())) {
+                    if (view != null)
+                        send(http, HttpRequest.newBuilder(URI.create(base + "/sessions/" + view.getString("session")))
+                                .DELETE());
+                    view = post(http, base + "/sessions", new JSONObject().put("game", game));
+                    requests.addAndGet(view == null ? 1 : 2);
+                }
+
+                int options = view.getJSONArray("choices").length();
+                int choice = options == 0 ? 0 : random.nextInt(options);
+                long start = System.nanoTime();
+                view = post(http, base + "/sessions/" + view.getString("session") + "/choice",
+                        new JSONObject().put("choice", choice));
+                latencies[i] = System.nanoTime() - start;
+                requests.incrementAndGet();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return latencies;
+    }
+
+    private static JSONObject post(HttpClient http, String uri, JSONObject body) throws Exception {
+        return new JSONObject(send(http, HttpRequest.newBuilder(URI.create(uri))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))));
+    }
+
+    private static String send(HttpClient http, HttpRequest.Builder request) throws Exception {
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 300 && response.statusCode() != 400)
+            throw new IllegalStateException(response.statusCode() + " " + response.body());
+        return response.body();
+    }
+}
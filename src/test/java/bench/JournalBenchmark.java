@@ -0,0 +1,88 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import game.GameSession;
+import game.GameWriter;
+import game.SessionJournal;
+
+/**
+ * Compares the cost of saving after every move by appending to a
+ * SessionJournal against rewriting the whole (delta) save each time, as an
+ * autosave without a journal would. Moves are played with no saving at all first, so
+ * the cost of the moves themselves can be taken out.
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.JournalBenchmark -Dexec.args="10000 20000 256"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class JournalBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int scenes = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int moves = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int snapshotEvery = args.length > 2 ? Integer.parseInt(args[2]) : SessionJournal.DEFAULT_SNAPSHOT_EVERY;
+
+        File gameDir = new File("data", "Synthetic_Journal_Bench");
+        gameDir.mkdirs();
+        SyntheticChapter.writeGame(gameDir, scenes);
+        File saves = Files.createTempDirectory("journal").toFile();
+
+        try {
+            // Warm up, then measure each way of saving
+            play(gameDir, saves, moves, "none", snapshotEvery);
+            long none = play(gameDir, saves, moves, "none", snapshotEvery);
+            long journal = play(gameDir, saves, moves, "journal", snapshotEvery);
+            long delta = play(gameDir, saves, moves, "delta", snapshotEvery);
+
+            System.out.printf("scenes: %d, moves: %d, snapshot every %d records%n", scenes, moves, snapshotEvery);
+            System.out.printf("%-24s %12s %14s%n", "saving", "us/move", "moves/s");
+            report("none", none, none, moves);
+            report("journal", journal, none, moves);
+            report("rewrite delta save", delta, none, moves);
+        } finally {
+            for (File file : saves.listFiles())
+                file.delete();
+            saves.delete();
+            for (File file : gameDir.listFiles())
+                file.delete();
+            gameDir.delete();
+        }
+    }
+
+    /**
+     * Plays a fresh session, saving after every move the given way.
+     *
+     * @return The time taken, in nanoseconds
+     */
+    private static long play(File gameDir, File saves, int moves, String saving, int snapshotEvery)
+            throws IOException {
+        GameSession session = new GameSession();
+        session.newGame(gameDir.getPath());
+        File save = new File(saves, saving + ".json");
+        Random random = new Random(11);
+
+        long start = System.nanoTime();
+        SessionJournal journal = null;
+        if (saving.equals("journal"))
+            journal = SessionJournal.create(session, new File(saves, "session"), snapshotEvery);
+        for (int i = 0; i < moves; i++) {
+            RandomMoves.move(session, random);
+            if (saving.equals("delta"))
+                Files.writeString(save.toPath(), GameWriter.writeDeltaSave(session).toString(4));
+        }
+        if (journal != null)
+            journal.close();
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String saving, long nanos, long baseline, int moves) {
+        double perMove = Math.max(0, nanos - baseline) / 1000.0 / moves;
+        System.out.printf("%-24s %12.2f %14.0f%n", saving, perMove, moves * 1e9 / nanos);
+    }
+}
@@ -0,0 +1,132 @@
+package bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import game.GameSession;
+import game.GameWriter;
+import game.SessionJournal;
+
+/**
+ * Checks that a session restored from its SessionJournal matches the session
+ * that wrote it. A session plays random moves with a journal attached,
+ * snapshotting every few records, and is restored three ways:
+ *
+ * <ul>
+ * <li>after a clean close, where it must match the final state exactly</li>
+ * <li>after a crash that tore the last record, where it must match the state
+ * after one of the moves it played, and carry on journaling from there</li>
+ * <li>after restoring the restored session, to check the journal it carried
+ * on writing</li>
+ * </ul>
+ *
+ * A snapshot that fails to write must leave the session on its old journal,
+ * with nothing of the new journal left behind.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class JournalRecoveryTest {
+    private static final int SCENES = 2_000;
+    private static final int MOVES = 1_000;
+    private static final int SNAPSHOT_EVERY = 16;
+
+    @TempDir
+    Path saves;
+
+    // Saves name their game, which is looked up here when they are restored
+    @TempDir
+    Path games;
+
+    private File gameDir;
+
+    @BeforeEach
+    public void writeGame() throws Exception {
+        gameDir = games.resolve("Synthetic_Journal_Test").toFile();
+        gameDir.mkdirs();
+        SyntheticChapter.writeGame(gameDir, SCENES);
+    }
+
+    @Test
+    public void restoredSessionsMatchTheSessionThatWroteThem() throws Exception {
+        File base = saves.resolve("session").toFile();
+        GameSession session = new GameSession();
+        session.newGame(gameDir.getPath());
+        SessionJournal journal = SessionJournal.create(session, base, SNAPSHOT_EVERY);
+
+        // Every state the session passes through, as a save
+        HashSet<String> states = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < MOVES; i++) {
+            RandomMoves.move(session, random);
+            states.add(state(session));
+        }
+        journal.close();
+
+        GameSession restored = SessionJournal.restore(base, SNAPSHOT_EVERY, games.toFile());
+        assertEquals(state(session), state(restored), "clean restore");
+
+        // Tear the last record in half, as a crash part way through a write would
+        try (RandomAccessFile file = new RandomAccessFile(currentJournal(saves.toFile()), "rw")) {
+            file.setLength(Math.max(0, file.length() - 3));
+        }
+        GameSession crashed = SessionJournal.restore(base, SNAPSHOT_EVERY, games.toFile());
+        assertTrue(states.contains(state(crashed)), "torn restore matches a past state");
+
+        for (int i = 0; i < 50; i++)
+            RandomMoves.move(crashed, random);
+        String afterCrash = state(crashed);
+        GameSession again = SessionJournal.restore(base, SNAPSHOT_EVERY, games.toFile());
+        assertEquals(afterCrash, state(again), "journal continues after a torn record");
+    }
+
+    @Test
+    public void failedSnapshotLeavesNoJournalBehind() throws Exception {
+        File base = saves.resolve("session").toFile();
+        GameSession session = new GameSession();
+        session.newGame(gameDir.getPath());
+        SessionJournal journal = SessionJournal.create(session, base, Integer.MAX_VALUE);
+
+        // A non-empty directory where the snapshot goes cannot be replaced
+        File snapshot = SessionJournal.snapshotFile(base);
+        assertTrue(snapshot.delete());
+        assertTrue(new File(snapshot, "blocker").mkdirs());
+        assertThrows(IOException.class, journal::snapshot);
+        assertFalse(new File(base.getPath() + ".2.journal").exists(), "next journal is deleted");
+
+        // The session is still journaled to the old journal
+        RandomMoves.move(session, new Random(7));
+        journal.close();
+        assertTrue(new File(base.getPath() + ".1.journal").length() > 0);
+    }
+
+    /**
+     * @return The state of a session, as it would be saved
+     */
+    private static String state(GameSession session) {
+        return GameWriter.writeSave(session).toString();
+    }
+
+    /**
+     * @return The journal after the latest snapshot. Older journals are
+     *         deleted once their snapshot is written.
+     */
+    private static File currentJournal(File saves) {
+        for (File file : saves.listFiles())
+            if (file.getName().endsWith(".journal"))
+                return file;
+        throw new IllegalStateException("No journal in " + saves);
+    }
+}
@@ -0,0 +1,34 @@
+package bench;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import game.Chapter;
+import game.ChapterCompiler;
+import game.MappedSceneStore;
+
+/**
+ * Checks that a mapped chapter refuses to build its dependency index, which
+ * would decode every scene, while the chapter it was compiled from is indexed.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class LazyDependencyIndexTest {
+
+    @Test
+    public void mappedChaptersAreNotIndexed(@TempDir Path gameDir) throws Exception {
+        File chapter = gameDir.resolve("chapter1.json").toFile();
+        SyntheticChapter.write(chapter, 200, 7);
+        Chapter parsed = ChapterCompiler.compile(chapter, ChapterCompiler.compiledFile(chapter));
+        assertFalse(parsed.dependencies().perks().isEmpty());
+
+        Chapter mapped = MappedSceneStore.open(ChapterCompiler.compiledFile(chapter)).toChapter();
+        assertThrows(IllegalStateException.class, mapped::dependencies);
+    }
+}
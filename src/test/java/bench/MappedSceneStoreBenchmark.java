@@ -0,0 +1,65 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import game.Chapter;
+import game.ChapterCompiler;
+import game.CompiledChapter;
+import game.MappedSceneStore;
+
+/**
+ * Compares the heap used by a large chapter loaded in full against the same
+ * chapter served lazily by a MappedSceneStore, as a player visits more and more
+ * of its scenes.
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.MappedSceneStoreBenchmark -Dexec.args="300000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class MappedSceneStoreBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+
+        File json = File.createTempFile("chapter", ".json");
+        File compiled = ChapterCompiler.compiledFile(json);
+        SyntheticChapter.write(json, size, 42);
+        ChapterCompiler.compile(json, compiled);
+        json.delete();
+        System.out.printf("scenes: %d, compiled size: %d MiB%n", size, compiled.length() >> 20);
+
+        long base = Bench.usedHeap();
+        long start = System.nanoTime();
+        Chapter eager = new CompiledChapter(ByteBuffer.wrap(
+                Files.readAllBytes(compiled.toPath())), true).toChapter();
+        System.out.printf("eager load:  %8.1f ms, heap %6d KiB%n", Bench.millis(System.nanoTime() - start),
+                (Bench.usedHeap() - base) >> 10);
+        eager = null;
+
+        base = Bench.usedHeap();
+        start = System.nanoTime();
+        MappedSceneStore store = MappedSceneStore.open(compiled);
+        Chapter mapped = store.toChapter();
+        System.out.printf("mapped open: %8.1f ms, heap %6d KiB%n", Bench.millis(System.nanoTime() - start),
+                (Bench.usedHeap() - base) >> 10);
+
+        // Visit random scenes, as a player wandering the chapter would
+        Random random = new Random(7);
+        int visited = 0;
+        for (int target : new int[] { 100, 1_000, 4_000 }) {
+            start = System.nanoTime();
+            for (; visited < target; visited++)
+                mapped.scene(Integer.toString(random.nextInt(size)));
+            System.out.printf("visited %5d: %8.1f us/scene, heap %6d KiB, cached %d%n", visited,
+                    (System.nanoTime() - start) / 1000.0 / visited, (Bench.usedHeap() - base) >> 10,
+                    store.cached());
+        }
+        compiled.delete();
+    }
+}
@@ -0,0 +1,105 @@
+package bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import game.ChapterCache;
+import game.GameSession;
+import game.SceneView;
+
+/**
+ * Checks that a branch or leaf leading to a scene its chapter does not have
+ * is refused with an error, leaving the player where they were, rather than
+ * ending the chapter as if the player had finished it, and that such
+ * references are reported once, as the chapter is loaded.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class MissingSceneTest {
+    @TempDir
+    Path gameDir;
+
+    @BeforeEach
+    public void writeGame() throws Exception {
+        Files.writeString(gameDir.resolve("playerDefault.json"), "{\"player\": {\"name\": \"Tester\"}}",
+                StandardCharsets.UTF_8);
+        Files.writeString(gameDir.resolve("chapter1.json"), """
+                {
+                    "currScene": "1",
+                    "scenes": {
+                        "1": {
+                            "lines": "A fork in the road",
+                            "sceneType": "node",
+                            "branches": [
+                                {"bScene": "9", "prompt": "Take the washed out road",
+                                 "event": {"type": "getPerk", "arg": "Wet"}},
+                                {"bScene": "2", "prompt": "Take the bridge"}
+                            ]
+                        },
+                        "2": {"lines": "The bridge", "sceneType": "leaf", "nextScene": "8"}
+                    },
+                    "nextChapter": "2"
+                }
+                """, StandardCharsets.UTF_8);
+        Files.writeString(gameDir.resolve("chapter2.json"), """
+                {
+                    "currScene": "1",
+                    "scenes": {"1": {"lines": "Chapter two", "sceneType": "terminus"}}
+                }
+                """, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void branchToMissingSceneIsRefused() throws Exception {
+        GameSession session = new GameSession();
+        session.newGame(gameDir.toString());
+        SceneView before = session.view();
+
+        SceneView after = session.choose(0);
+        assertTrue(after.error().isPresent(), "choice is refused");
+        assertEquals("1", session.chapterId());
+        assertEquals("1", after.sceneIndex());
+        assertEquals(before.choices(), after.choices());
+        assertTrue(session.consumedBranches().isEmpty(), "branch is not taken");
+        assertFalse(session.player().hasPerk("Wet"), "branch event is not run");
+    }
+
+    @Test
+    public void danglingReferencesAreReportedAtLoad() throws Exception {
+        ChapterCache cache = new ChapterCache(1 << 20);
+        ArrayList<String> reported = new ArrayList<>();
+        cache.reportProblemsTo(reported::add);
+        cache.get(gameDir.toFile(), "1");
+        cache.get(gameDir.toFile(), "1");
+
+        File chapter = ChapterCache.chapterFile(gameDir.toFile(), "1");
+        assertEquals(List.of(chapter + ": Branch 1 of scene 1 leads to missing scene 9",
+                chapter + ": Scene 2 leads to missing scene 8"), reported);
+    }
+
+    @Test
+    public void leafToMissingSceneIsRefused() throws Exception {
+        GameSession session = new GameSession();
+        session.newGame(gameDir.toString());
+        session.view();
+
+        SceneView leaf = session.choose(1);
+        assertEquals("2", leaf.sceneIndex());
+        SceneView after = session.choose(0);
+        assertTrue(after.error().isPresent(), "leaf is refused");
+        assertEquals("1", session.chapterId());
+        assertEquals("2", after.sceneIndex());
+    }
+}
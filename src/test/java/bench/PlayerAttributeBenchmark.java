@@ -0,0 +1,130 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import game.Attributes;
+import game.Player;
+import requirements.Requirement;
+
+/**
+ * Compares evaluating requirements against a Player backed by bitsets of
+ * interned attribute ids with a player that keeps its attributes in lists of
+ * names, as Player used to. Both players hold the same attributes, half of
+ * the attributes the requirements name, and the requirement trees are the
+ * same, so the difference is the cost of checking an attribute.
+ *
+ * <p>
+ * JMH is not among the project's dependencies, so this is a plain harness: it
+ * evaluates every tree many times to warm up, then reports the best of a few
+ * timed rounds.
+ * </p>
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.PlayerAttributeBenchmark -Dexec.args="100 300 1000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class PlayerAttributeBenchmark {
+    private static final int TREES = 2_000;
+    private static final int ROUNDS = 7;
+    private static final int EVALUATIONS = 200;
+
+    // Keeps the JIT from discarding evaluations whose result is unused
+    private static int sink;
+
+    /**
+     * A player that checks its attributes by scanning lists of names, as
+     * Player did before it was backed by bitsets.
+     */
+    private static class ListPlayer extends Player {
+        private final List<String> perkList;
+        private final List<String> itemList;
+        private final List<String> statusList;
+
+        ListPlayer(Player player) {
+            super(player.name(), player.attributes(), List.of(), List.of(), List.of());
+            perkList = player.perks();
+            itemList = player.items();
+            statusList = player.statuses();
+        }
+
+        @Override
+        public boolean hasPerk(int perk) {
+            return perkList.contains(attributes().perks().name(perk));
+        }
+
+        @Override
+        public boolean hasItem(int item) {
+            return itemList.contains(attributes().items().name(item));
+        }
+
+        @Override
+        public boolean hasStatus(int status) {
+            return statusList.contains(attributes().statuses().name(status));
+        }
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = { 100, 300, 1_000 };
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.printf("%12s %14s %14s %10s%n", "attributes", "lists ns/eval", "bitset ns/eval", "speedup");
+        for (int size : sizes) {
+            Random random = new Random(size);
+            Attributes attributes = new Attributes();
+
+            ArrayList<String> perks = new ArrayList<>();
+            ArrayList<String> items = new ArrayList<>();
+            ArrayList<String> statuses = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (random.nextBoolean())
+                    perks.add(RequirementTrees.name("perk", i));
+                if (random.nextBoolean())
+                    items.add(RequirementTrees.name("item", i));
+                if (random.nextBoolean())
+                    statuses.add(RequirementTrees.name("status", i));
+            }
+            Player bitsets = new Player("Bench", attributes, perks, items, statuses);
+            Player lists = new ListPlayer(bitsets);
+
+            Requirement[] trees = new Requirement[TREES];
+            for (int i = 0; i < TREES; i++) {
+                trees[i] = RequirementTrees.random(random, size, 3, 4);
+                trees[i].intern(attributes);
+            }
+
+            // The results must agree before the timings mean anything
+            for (Requirement tree : trees)
+                if (tree.evaluate(lists) != tree.evaluate(bitsets))
+                    throw new IllegalStateException("Players disagree on a requirement");
+
+            double listNanos = measure(trees, lists);
+            double bitsetNanos = measure(trees, bitsets);
+            System.out.printf("%12d %14.1f %14.1f %9.1fx%n", size, listNanos, bitsetNanos, listNanos / bitsetNanos);
+        }
+    }
+
+    /**
+     * @return The best time over a few rounds to evaluate one tree, in
+     *         nanoseconds
+     */
+    private static double measure(Requirement[] trees, Player player) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < EVALUATIONS; i++)
+                for (Requirement tree : trees)
+                    if (tree.evaluate(player))
+                        sink++;
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / EVALUATIONS / trees.length;
+    }
+}
@@ -0,0 +1,70 @@
+package bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import game.PlaythroughSimulator;
+import game.PlaythroughSimulator.Policy;
+import game.PlaythroughSimulator.Report;
+
+/**
+ * Simulates playthroughs of real stories and of a generated game of two
+ * chapters, choosing uniformly and preferring branches with requirements, on a
+ * pool of one thread and, if there is more than one processor, on a pool with
+ * a thread for every processor. Reports how many playthroughs a second each
+ * simulated.
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.PlaythroughSimulatorBenchmark -Dexec.args="1000000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class PlaythroughSimulatorBenchmark {
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws Exception {
+        long playthroughs = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+
+        File synthetic = Files.createTempDirectory("Synthetic_Game").toFile();
+        try {
+            SyntheticChapter.writeGame(synthetic, 2, 2_000);
+            File[] games = { new File("data/The_Curse_Of_Sigfried"), new File("data/Debug"), synthetic };
+
+            int processors = Runtime.getRuntime().availableProcessors();
+            System.out.printf("%-24s %-8s %-12s %8s %14s %14s%n", "game", "policy", "pool", "s", "playthroughs/s",
+                    "choices/run");
+            for (File game : games) {
+                String name = game == synthetic ? "synthetic 2 x 2000" : game.getName();
+                for (String policy : new String[] { "uniform", "gated" }) {
+                    measure(name, policy, game, playthroughs, new ForkJoinPool(1), "1 thread");
+                    if (processors > 1)
+                        measure(name, policy, game, playthroughs, new ForkJoinPool(processors),
+                                processors + " threads");
+                }
+            }
+        } finally {
+            for (File file : synthetic.listFiles())
+                file.delete();
+            synthetic.delete();
+        }
+    }
+
+    private static void measure(String name, String policyName, File game, long playthroughs, ForkJoinPool pool,
+            String poolName) throws Exception {
+        Policy policy = policyName.equals("gated") ? Policy.preferGated(4) : Policy.uniform();
+        PlaythroughSimulator simulator = new PlaythroughSimulator(game, pool, policy);
+        long best = Long.MAX_VALUE;
+        Report report = null;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            report = simulator.simulate(playthroughs, run);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        pool.shutdown();
+
+        System.out.printf("%-24s %-8s %-12s %8.2f %14.0f %14.2f%n", name.length() > 24 ? name.substring(0, 24) : name,
+                policyName, poolName, best / 1e9, report.playthroughs() / (best / 1e9), report.meanLength());
+    }
+}
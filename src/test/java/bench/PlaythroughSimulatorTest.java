@@ -0,0 +1,192 @@
+package bench;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import game.PlaythroughSimulator;
+import game.PlaythroughSimulator.Policy;
+import game.PlaythroughSimulator.Report;
+import game.StateExplorer.Ending;
+
+/**
+ * Checks that the PlaythroughSimulator gives the same report for a seed
+ * however many threads play, that a scripted policy plays exactly its script,
+ * and that preferring gated branches takes them as often as their weight says.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class PlaythroughSimulatorTest {
+    private static final String PLAYER = "{\"player\": {\"name\": \"Tester\"}}";
+
+    // From the crossroads the player may fetch a sword and come back, walk on
+    // to the gate, or take a way to a scene the chapter does not have. At the
+    // gate only a player with the sword can fight. Branches are numbered 0 to
+    // 2 at the crossroads and 3 to 5 at the gate.
+    private static final String CROSSROADS = """
+            {
+                "currScene": "1",
+                "scenes": {
+                    "1": {
+                        "lines": "A crossroads",
+                        "sceneType": "node",
+                        "branches": [
+                            {"bScene": "2", "prompt": "To the armoury",
+                             "event": {"type": "getPerk", "arg": "Sword"}},
+                            {"bScene": "3", "prompt": "To the gate"},
+                            {"bScene": "9", "prompt": "Into the fog"}
+                        ]
+                    },
+                    "2": {"lines": "The armoury", "sceneType": "leaf", "nextScene": "1"},
+                    "3": {
+                        "lines": "The gate",
+                        "sceneType": "node",
+                        "branches": [
+                            {"bScene": "4", "prompt": "Fight",
+                             "requirement": {"type": "perk", "req": "Sword"}},
+                            {"bScene": "5", "prompt": "Run"}
+                        ]
+                    },
+                    "4": {"lines": "Victory", "sceneType": "terminus"},
+                    "5": {"lines": "Defeat", "sceneType": "terminus"}
+                }
+            }
+            """;
+
+    // A key is given on entering, and opens one of two doors
+    private static final String DOORS = """
+            {
+                "currScene": "1",
+                "scenes": {
+                    "1": {
+                        "lines": "Two doors",
+                        "sceneType": "node",
+                        "event": {"type": "getPerk", "arg": "Key"},
+                        "branches": [
+                            {"bScene": "2", "prompt": "The locked door",
+                             "requirement": {"type": "perk", "req": "Key"}},
+                            {"bScene": "3", "prompt": "The open door"}
+                        ]
+                    },
+                    "2": {"lines": "Treasure", "sceneType": "terminus"},
+                    "3": {"lines": "A cupboard", "sceneType": "terminus"}
+                }
+            }
+            """;
+
+    @Test
+    public void sameSeedGivesTheSameReportOnAnyNumberOfThreads(@TempDir Path gameDir) throws Exception {
+        SyntheticChapter.writeGame(gameDir.toFile(), 2, 500);
+        for (Policy policy : new Policy[] { Policy.uniform(), Policy.preferGated(4) }) {
+            String single = summary(simulate(gameDir.toFile(), 1, policy, 10_000, 7));
+            String parallel = summary(simulate(gameDir.toFile(), 4, policy, 10_000, 7));
+            assertEquals(single, parallel);
+        }
+    }
+
+    @Test
+    public void scriptedPlayersFollowTheirScript(@TempDir Path gameDir) throws Exception {
+        writeGame(gameDir, CROSSROADS);
+        int n = 3_000;
+
+        // Fetch the sword, go to the gate and fight
+        Report armed = simulate(gameDir.toFile(), 2, Policy.scripted(0, 0, 0), n, 1);
+        assertEquals(Map.of(new Ending("1", "4", true), (long) n), armed.endings());
+        assertEquals(n, armed.playthroughsOfLength(5), "crossroads, armoury, crossroads, gate, victory");
+        assertEquals(Map.of("Sword", (long) n), armed.perks());
+        assertEquals(n, armed.playthroughsWithPerks(1));
+        assertArrayEquals(new long[] { n, n, 0, n, 0 }, armed.branches().get("1"));
+
+        // Go straight to the gate, where the only way is to run
+        Report unarmed = simulate(gameDir.toFile(), 2, Policy.scripted(1, 0), n, 1);
+        assertEquals(Map.of(new Ending("1", "5", true), (long) n), unarmed.endings());
+        assertEquals(n, unarmed.playthroughsOfLength(3));
+        assertEquals(Map.of(), unarmed.perks());
+        assertEquals(n, unarmed.playthroughsWithPerks(0));
+        assertArrayEquals(new long[] { 0, n, 0, 0, n }, unarmed.branches().get("1"));
+
+        // Walk into the fog, which the game refuses
+        Report lost = simulate(gameDir.toFile(), 2, Policy.scripted(2), n, 1);
+        assertEquals(Map.of(), lost.endings());
+        assertEquals(n, lost.dangling());
+        assertEquals(n, lost.playthroughsOfLength(0));
+        assertEquals(0, lost.stuck());
+        assertEquals(0, lost.stopped());
+    }
+
+    @Test
+    public void preferGatedTakesGatedBranchesByTheirWeight(@TempDir Path gameDir) throws Exception {
+        writeGame(gameDir, DOORS);
+        int n = 40_000;
+        Ending treasure = new Ending("1", "2", true);
+        Ending cupboard = new Ending("1", "3", true);
+
+        // Three to one for the locked door, and even without a preference
+        Report gated = simulate(gameDir.toFile(), 2, Policy.preferGated(3), n, 11);
+        assertEquals(n, gated.endings().get(treasure) + gated.endings().get(cupboard));
+        assertNear(0.75 * n, gated.endings().get(treasure), n);
+        assertArrayEquals(new long[] { gated.endings().get(treasure), gated.endings().get(cupboard) },
+                gated.branches().get("1"));
+        assertEquals(Map.of("Key", (long) n), gated.perks());
+
+        Report even = simulate(gameDir.toFile(), 2, Policy.preferGated(1), n, 11);
+        assertNear(0.5 * n, even.endings().get(treasure), n);
+    }
+
+    /**
+     * Asserts that a count is within one percent of the playthroughs of what
+     * was expected, which is over ten standard deviations for these counts.
+     */
+    private static void assertNear(double expected, long actual, int playthroughs) {
+        assertTrue(Math.abs(actual - expected) < playthroughs / 100.0,
+                "expected about " + expected + " but was " + actual);
+    }
+
+    private static void writeGame(Path gameDir, String chapter) throws Exception {
+        Files.writeString(gameDir.resolve("playerDefault.json"), PLAYER, StandardCharsets.UTF_8);
+        Files.writeString(gameDir.resolve("chapter1.json"), chapter, StandardCharsets.UTF_8);
+    }
+
+    private static Report simulate(File gameDir, int threads, Policy policy, long playthroughs, long seed)
+            throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return new PlaythroughSimulator(gameDir, pool, policy).simulate(playthroughs, seed);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return Everything a report says, to compare reports by
+     */
+    private static String summary(Report report) {
+        StringBuilder summary = new StringBuilder();
+        summary.append(report.playthroughs()).append(' ').append(report.endings()).append(' ').append(report.stuck())
+                .append(' ').append(report.dangling()).append(' ').append(report.stopped()).append(' ')
+                .append(report.meanLength()).append(' ').append(report.perks()).append('\n');
+        for (int choices = 0; choices <= report.lengthPercentile(1); choices++)
+            summary.append(report.playthroughsOfLength(choices)).append(',');
+        summary.append('\n');
+        for (int perks = 0; perks <= report.mostPerks(); perks++)
+            summary.append(report.playthroughsWithPerks(perks)).append(',');
+        summary.append('\n');
+        report.branches().forEach((chapter, taken) -> {
+            summary.append(chapter).append(':');
+            for (long count : taken)
+                summary.append(count).append(',');
+            summary.append('\n');
+        });
+        return summary.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.Function;
+
+import game.GameSession;
+import scenes.Branch;
+import scenes.LeafScene;
+import scenes.NodeScene;
+import scenes.Scene;
+
+/**
+ * Plays a session without a terminal, making the same changes to it that the
+ * scenes make when a player picks a random branch.
+ *
+ * @author Ahmed El-Sayed
+ */
+class RandomMoves {
+
+    /**
+     * Plays one move: runs the event of the current scene, then takes a random
+     * eligible branch or follows a leaf. A node scene with nothing left the
+     * player can take moves them on to one of its branch scenes anyway, and
+     * terminus scenes, leaves that end the chapter and scenes missing from
+     * the chapter start it over.
+     *
+     * @param session The session to play
+     * @param random  Chooses the branches
+     */
+    static void move(GameSession session, Random random) {
+        move(session, random, session::eligibleBranches);
+    }
+
+    /**
+     * Plays one move, finding the eligible branches of node scenes the given
+     * way.
+     *
+     * @param session  The session to play
+     * @param random   Chooses the branches
+     * @param eligible Finds the branches the player can take in a node scene
+     */
+    static void move(GameSession session, Random random, Function<NodeScene, ArrayList<Branch>> eligible) {
+        Scene scene = session.currentScene();
+        if (scene == null) {
+            // The last move left the chapter, through a branch to a scene it does not have
+            session.startChapter(session.chapterId(), session.chapter());
+            return;
+        }
+        scene.event().ifPresent(event -> session.runSceneEvent(scene));
+
+        if (scene instanceof NodeScene node) {
+            ArrayList<Branch> branches = eligible.apply(node);
+            if (!branches.isEmpty()) {
+                Branch branch = branches.get(random.nextInt(branches.size()));
+                session.takeBranch(branch);
+                session.setCurrScene(branch.nextSceneId());
+                return;
+            }
+            if (!node.branches().isEmpty()) {
+                // Wander on without taking a branch, so a locked scene does not end the run
+                session.setCurrScene(node.branches().get(random.nextInt(node.branches().size())).nextSceneId());
+                return;
+            }
+        } else if (scene instanceof LeafScene leaf && leaf.nextSceneId() != Scene.NO_SCENE) {
+            session.setCurrScene(leaf.nextSceneId());
+            return;
+        }
+        session.startChapter(session.chapterId(), session.chapter());
+    }
+}
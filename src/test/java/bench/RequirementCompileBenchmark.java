@@ -0,0 +1,119 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import game.Attributes;
+import game.Player;
+import requirements.CompiledRequirement;
+import requirements.Requirement;
+import requirements.RequirementFactory;
+
+/**
+ * Compares evaluating requirement trees as they are built by the
+ * RequirementFactory against the same trees compiled into flat programs, for
+ * deep, wide and mixed nesting of and/or/not. Reports the time and the bytes
+ * allocated per evaluation, after checking the two agree for many players.
+ *
+ * <p>
+ * JMH is not among the project's dependencies, so this is a plain harness: it
+ * evaluates every tree many times to warm up, then reports the best of a few
+ * timed rounds.
+ * </p>
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.RequirementCompileBenchmark
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class RequirementCompileBenchmark {
+    private static final int ATTRIBUTES = 256;
+    private static final int TREES = 1_000;
+    private static final int PLAYERS = 100;
+    private static final int ROUNDS = 7;
+    private static final int EVALUATIONS = 100;
+
+    // Keeps the JIT from discarding evaluations whose result is unused
+    private static int sink;
+
+    private record Shape(String name, int depth, int width, boolean full) {
+    }
+
+    public static void main(String[] args) {
+        Shape[] shapes = { new Shape("deep", 8, 2, true), new Shape("wide", 1, 32, true),
+                new Shape("mixed", 4, 5, false) };
+
+        System.out.printf("%8s %10s %12s %12s %12s %12s %9s%n", "shape", "ops/tree", "tree ns", "compiled ns",
+                "tree B", "compiled B", "speedup");
+        for (Shape shape : shapes) {
+            Random random = new Random(shape.depth() * 31 + shape.width());
+            Attributes attributes = new Attributes();
+            Requirement[] trees = new Requirement[TREES];
+            CompiledRequirement[] compiled = new CompiledRequirement[TREES];
+            long ops = 0;
+            for (int i = 0; i < TREES; i++) {
+                trees[i] = RequirementTrees.random(random, ATTRIBUTES, shape.depth(), shape.width(), shape.full());
+                compiled[i] = RequirementFactory.compile(trees[i], attributes);
+                ops += compiled[i].size();
+            }
+
+            // The compiled trees must agree with the originals for any player
+            for (int p = 0; p < PLAYERS; p++) {
+                Player player = player(attributes, random);
+                for (int i = 0; i < TREES; i++)
+                    if (trees[i].evaluate(player) != compiled[i].evaluate(player))
+                        throw new IllegalStateException("Compiled requirement disagrees with its tree");
+            }
+
+            Player player = player(attributes, random);
+            long[] tree = measure(trees, player);
+            long[] flat = measure(compiled, player);
+            double evaluations = (double) EVALUATIONS * TREES;
+            System.out.printf("%8s %10.1f %12.1f %12.1f %12.1f %12.1f %8.1fx%n", shape.name(), (double) ops / TREES,
+                    tree[0] / evaluations, flat[0] / evaluations, tree[1] / evaluations, flat[1] / evaluations,
+                    (double) tree[0] / flat[0]);
+        }
+    }
+
+    /**
+     * @return A player holding a random half of every kind of attribute
+     */
+    private static Player player(Attributes attributes, Random random) {
+        ArrayList<String> perks = new ArrayList<>();
+        ArrayList<String> items = new ArrayList<>();
+        ArrayList<String> statuses = new ArrayList<>();
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            if (random.nextBoolean())
+                perks.add(RequirementTrees.name("perk", i));
+            if (random.nextBoolean())
+                items.add(RequirementTrees.name("item", i));
+            if (random.nextBoolean())
+                statuses.add(RequirementTrees.name("status", i));
+        }
+        return new Player("Bench", attributes, perks, items, statuses);
+    }
+
+    /**
+     * @return The best time over a few rounds to evaluate every tree
+     *         {@code EVALUATIONS} times, and the bytes allocated in that round
+     */
+    private static long[] measure(Requirement[] trees, Player player) {
+        long best = Long.MAX_VALUE;
+        long allocated = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long allocBefore = Bench.allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < EVALUATIONS; i++)
+                for (Requirement tree : trees)
+                    if (tree.evaluate(player))
+                        sink++;
+            long elapsed = System.nanoTime() - start;
+            if (elapsed < best) {
+                best = elapsed;
+                allocated = Bench.allocatedBytes() - allocBefore;
+            }
+        }
+        return new long[] { best, allocated };
+    }
+}
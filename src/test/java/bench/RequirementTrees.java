@@ -0,0 +1,75 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import requirements.AndRequirement;
+import requirements.ItemRequirement;
+import requirements.NotRequirement;
+import requirements.OrRequirement;
+import requirements.PerkRequirement;
+import requirements.Requirement;
+import requirements.StatusRequirement;
+
+/**
+ * Builds random requirement trees over a space of attribute names, for
+ * benchmarks to evaluate.
+ *
+ * @author Ahmed El-Sayed
+ */
+class RequirementTrees {
+
+    /**
+     * @param kind  {@code "perk"}, {@code "item"} or {@code "status"}
+     * @param index The number of the attribute
+     * @return The name of an attribute, long enough that comparing names is
+     *         not free
+     */
+    static String name(String kind, int index) {
+        return String.format("%s_of_the_realm_%05d", kind, index);
+    }
+
+    /**
+     * Builds a random requirement tree.
+     *
+     * @param random     Chooses the shape and attributes of the tree
+     * @param attributes The number of attributes of each kind to choose from
+     * @param depth      The most levels of and/or/not above the leaves
+     * @param width      The most children of an and/or
+     * @return The requirement
+     */
+    static Requirement random(Random random, int attributes, int depth, int width) {
+        return random(random, attributes, depth, width, false);
+    }
+
+    /**
+     * Builds a random requirement tree.
+     *
+     * @param random     Chooses the shape and attributes of the tree
+     * @param attributes The number of attributes of each kind to choose from
+     * @param depth      The most levels of and/or/not above the leaves
+     * @param width      The most children of an and/or
+     * @param full       Whether every leaf is {@code depth} levels down, rather
+     *                   than anywhere up to it
+     * @return The requirement
+     */
+    static Requirement random(Random random, int attributes, int depth, int width, boolean full) {
+        int kind = depth == 0 ? random.nextInt(3) : full ? 3 + random.nextInt(3) : random.nextInt(6);
+        switch (kind) {
+            case 0:
+                return new PerkRequirement(name("perk", random.nextInt(attributes)));
+            case 1:
+                return new ItemRequirement(name("item", random.nextInt(attributes)));
+            case 2:
+                return new StatusRequirement(name("status", random.nextInt(attributes)));
+            case 3:
+                return new NotRequirement(random(random, attributes, depth - 1, width, full));
+            default:
+                ArrayList<Requirement> children = new ArrayList<>();
+                int count = 2 + random.nextInt(Math.max(1, width - 1));
+                for (int i = 0; i < count; i++)
+                    children.add(random(random, attributes, depth - 1, width, full));
+                return kind == 4 ? new OrRequirement(children) : new AndRequirement(children);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.json.JSONObject;
+
+import game.ChapterCache;
+import game.GameSession;
+import game.GameWriter;
+import scenes.NodeScene;
+
+/**
+ * Compares full saves, which carry every scene of the chapter, against delta
+ * saves, which only name the chapter and hold what the player changed. Both
+ * the size of the save file and the time to load it are reported. Delta saves
+ * are loaded with the chapter already in the ChapterCache, as they would be on
+ * a server where other sessions are playing the same chapter.
+ *
+ * <p>
+ * Delta saves are resolved against {@code data/<gameName>}, so the generated
+ * games are written under {@code data} and deleted afterwards.
+ * </p>
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.SaveFormatBenchmark -Dexec.args="1000 10000 100000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class SaveFormatBenchmark {
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = { 1_000, 10_000, 100_000 };
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.printf("%10s %12s %12s %12s %12s%n", "scenes", "full bytes", "delta bytes", "full ms",
+                "delta ms");
+        for (int size : sizes) {
+            File gameDir = new File("data", "Synthetic_Save_Bench");
+            gameDir.mkdirs();
+            SyntheticChapter.writeGame(gameDir, size);
+            File full = File.createTempFile("save", ".json");
+            File delta = File.createTempFile("save", ".json");
+            try {
+                GameSession session = new GameSession();
+                session.newGame(gameDir.getPath());
+                session.consumeBranch(((NodeScene) session.currentScene()).branches().get(0));
+                write(GameWriter.writeFullSave(session), full);
+                write(GameWriter.writeDeltaSave(session), delta);
+
+                double fullMs = measure(full);
+                double deltaMs = measure(delta);
+                System.out.printf("%10d %12d %12d %12.1f %12.2f%n", size, full.length(), delta.length(), fullMs,
+                        deltaMs);
+            } finally {
+                full.delete();
+                delta.delete();
+                for (File file : gameDir.listFiles())
+                    file.delete();
+                gameDir.delete();
+                ChapterCache.shared().clear();
+            }
+        }
+    }
+
+    private static void write(JSONObject save, File file) throws IOException {
+        Files.writeString(file.toPath(), save.toString(4));
+    }
+
+    /**
+     * Loads a save a few times to warm up, then reports the best time.
+     */
+    private static double measure(File save) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            new GameSession().loadSave(save);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return Bench.millis(best);
+    }
+}
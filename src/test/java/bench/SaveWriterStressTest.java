@@ -0,0 +1,101 @@
+package bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import game.GameParser;
+import game.GameSession;
+import game.SaveWriter;
+
+/**
+ * Hammers a SaveWriter from many sessions at once, each on its own thread and
+ * saving after every move, as autosave would. Once everything is flushed,
+ * every save file must hold the last move of its session, no save may have
+ * failed, and no temporary files may be left behind. A save that cannot be
+ * written must be counted as a failure without stopping the writer.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class SaveWriterStressTest {
+    private static final String GAME = "data/The_Curse_Of_Sigfried";
+    private static final int SESSIONS = 64;
+    private static final int MOVES = 500;
+
+    @Test
+    public void everySaveHoldsTheLastMoveOfItsSession(@TempDir Path saves) throws Exception {
+        File dir = saves.toFile();
+        SaveWriter writer = new SaveWriter();
+        ArrayList<Thread> threads = new ArrayList<>();
+        ArrayList<Throwable> errors = new ArrayList<>();
+
+        for (int s = 0; s < SESSIONS; s++) {
+            int id = s;
+            Thread thread = new Thread(() -> {
+                try {
+                    GameSession session = new GameSession();
+                    session.newGame(GAME);
+                    File save = new File(dir, "session" + id + ".json");
+                    for (int move = 0; move < MOVES; move++) {
+                        session.player().gainStatus("move" + move);
+                        writer.save(session, save);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            thread.setUncaughtExceptionHandler((t, e) -> {
+                synchronized (errors) {
+                    errors.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        writer.flush();
+        writer.close();
+
+        assertTrue(errors.isEmpty(), () -> "Sessions failed: " + errors);
+        assertEquals(0, writer.failures(), "failed writes");
+        assertEquals(writer.requests(), writer.writes() + writer.coalesced(),
+                "every request is either written or coalesced");
+        for (int s = 0; s < SESSIONS; s++) {
+            File save = new File(dir, "session" + s + ".json");
+            assertTrue(new GameParser(save).parsePlayer().hasStatus("move" + (MOVES - 1)), save + " is stale");
+        }
+        try (var files = Files.list(saves)) {
+            assertEquals(SESSIONS, files.count(), "temporary files left behind");
+        }
+    }
+
+    @Test
+    public void aSaveThatCannotBeWrittenDoesNotStopTheWriter(@TempDir Path saves) throws Exception {
+        SaveWriter writer = new SaveWriter();
+        GameSession session = new GameSession();
+        session.newGame(GAME);
+
+        // A NUL in the name is refused with an InvalidPathException, not an IOException
+        writer.save(session, new File(saves.toFile(), "bad\0name.json"));
+        File good = new File(saves.toFile(), "good.json");
+        writer.save(session, good);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> writer.flush(good));
+        writer.close();
+
+        assertEquals(1, writer.failures(), "failed writes");
+        assertTrue(writer.lastFailure() != null);
+        assertTrue(good.isFile(), "later saves are still written");
+    }
+}
@@ -0,0 +1,102 @@
+package bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+import game.ChapterCache;
+import game.Player;
+import game.TerminalFrame;
+import scenes.Scene;
+import scenes.SceneText;
+
+/**
+ * Renders the lines of every scene in a game over and over, three ways: with
+ * {@code String.format} as scenes used to be shown, with each scene's
+ * SceneText into a reused StringBuilder, and with the SceneText straight into
+ * a TerminalFrame. Reports the time and bytes allocated per render.
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.SceneRenderBenchmark -Dexec.args="data/The_Curse_Of_Sigfried 2000000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class SceneRenderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        File game = new File(args.length > 0 ? args[0] : "data/The_Curse_Of_Sigfried");
+        int renders = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+
+        ArrayList<Scene> scenes = new ArrayList<>(ChapterCache.shared().get(game, "1").scenes().values());
+        Player player = new Player("Sigfried", new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        TerminalFrame frame = new TerminalFrame(new PrintStream(OutputStream.nullOutputStream()));
+        StringBuilder buffer = new StringBuilder();
+
+        // Warm up each, then measure
+        for (int round = 0; round < 3; round++) {
+            format(scenes, player, renders / 4);
+            template(scenes, player, buffer, renders / 4);
+            frame(scenes, player, frame, renders / 4);
+        }
+        System.out.printf("%d scenes of %s%n", scenes.size(), game.getName());
+
+        long allocated = Bench.allocatedBytes();
+        long start = System.nanoTime();
+        long sink = format(scenes, player, renders);
+        report("String.format", start, allocated, renders, sink);
+
+        allocated = Bench.allocatedBytes();
+        start = System.nanoTime();
+        sink = template(scenes, player, buffer, renders);
+        report("SceneText", start, allocated, renders, sink);
+
+        allocated = Bench.allocatedBytes();
+        start = System.nanoTime();
+        sink = frame(scenes, player, frame, renders);
+        report("TerminalFrame", start, allocated, renders, sink);
+    }
+
+    private static void report(String name, long start, long allocated, int renders, long sink) {
+        long elapsed = System.nanoTime() - start;
+        allocated = Bench.allocatedBytes() - allocated;
+        System.out.printf("%-15s %7.1f ns/render, %7.1f bytes/render (%d)%n", name, (double) elapsed / renders,
+                (double) allocated / renders, sink);
+    }
+
+    /**
+     * Renders as GameMenu.printScene used to.
+     *
+     * @return The length of everything rendered, so none of it is skipped
+     */
+    private static long format(ArrayList<Scene> scenes, Player player, int renders) {
+        long sink = 0;
+        for (int i = 0; i < renders; i++)
+            sink += String.format(scenes.get(i % scenes.size()).lines() + "\n", player.name()).length();
+        return sink;
+    }
+
+    private static long template(ArrayList<Scene> scenes, Player player, StringBuilder buffer, int renders) {
+        long sink = 0;
+        for (int i = 0; i < renders; i++) {
+            buffer.setLength(0);
+            SceneText text = scenes.get(i % scenes.size()).text();
+            text.render(buffer, player);
+            buffer.append('\n');
+            sink += buffer.length();
+        }
+        return sink;
+    }
+
+    private static long frame(ArrayList<Scene> scenes, Player player, TerminalFrame frame, int renders) {
+        long sink = 0;
+        for (int i = 0; i < renders; i++) {
+            frame.clear();
+            int mark = frame.mark();
+            frame.append(scenes.get(i % scenes.size()).text(), player).append("\n");
+            sink += frame.mark() - mark;
+        }
+        return sink;
+    }
+}
@@ -0,0 +1,99 @@
+package bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import game.ChapterCache;
+import game.Player;
+import game.TerminalFrame;
+import scenes.Scene;
+import scenes.SceneText;
+import scenes.TerminusScene;
+
+/**
+ * Checks that scene text renders as it did with {@code printf}, and that a
+ * {@code %} that is not a placeholder is shown as it is rather than breaking
+ * the scene. Every scene of the games under {@code data} is also rendered both
+ * ways, and must match.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class SceneTextTest {
+    private final Player player = new Player("Sigfried", new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+
+    @Test
+    public void placeholdersAreFilledIn() {
+        check("Hello %s.", "Hello Sigfried.");
+        check("%s, %s!", "Sigfried, Sigfried!");
+    }
+
+    @Test
+    public void percentSignsThatAreNotPlaceholdersSurvive() {
+        check("A 50% chance to win", "A 50% chance to win");
+        check("Loaded 100%", "Loaded 100%");
+        check("%d %x %", "%d %x %");
+    }
+
+    @Test
+    public void escapesAreFormattedAsPrintfWould() {
+        check("100%% sure, %s", "100% sure, Sigfried");
+        check("%%s", "%s");
+        check("one%ntwo", "one\ntwo");
+    }
+
+    @Test
+    public void textIsKeptAsItIs() {
+        check("Caf\u00e9 \u2615", "Caf\u00e9 \u2615");
+    }
+
+    @Test
+    public void sceneWithPercentRenders() {
+        Scene scene = new TerminusScene("1", "Only 5% of heroes return, %s.");
+        assertEquals("Only 5% of heroes return, Sigfried.", scene.text().render(player));
+    }
+
+    @Test
+    public void everyGameSceneMatchesPrintf() throws Exception {
+        int scenes = 0;
+        File[] games = new File("data").listFiles(File::isDirectory);
+        if (games != null)
+            for (File game : games)
+                for (int chapter = 1; ChapterCache.chapterFile(game, Integer.toString(chapter)).isFile(); chapter++)
+                    for (Scene each : ChapterCache.shared().get(game, Integer.toString(chapter)).scenes()
+                            .values()) {
+                        String printf = String.format(each.lines(), player.name());
+                        assertEquals(printf, each.text().render(player), game + " scene " + each.index());
+                        assertEquals(printf, frame(each.text()), game + " scene " + each.index() + " framed");
+                        scenes++;
+                    }
+        assertTrue(scenes > 0, "no scenes under data");
+    }
+
+    /**
+     * Checks the text renders as expected, both to a String and to a
+     * TerminalFrame.
+     */
+    private void check(String lines, String expected) {
+        SceneText text = SceneText.compile(lines);
+        assertEquals(expected, text.render(player), "rendered \"" + lines + "\"");
+        assertEquals(expected, frame(text), "framed \"" + lines + "\"");
+    }
+
+    /**
+     * @return The text as a TerminalFrame writes it
+     */
+    private String frame(SceneText text) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TerminalFrame frame = new TerminalFrame(new PrintStream(bytes, false, StandardCharsets.UTF_8));
+        frame.append(text, player).flush();
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+}
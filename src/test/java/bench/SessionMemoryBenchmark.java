@@ -0,0 +1,53 @@
+package bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import game.ChapterCache;
+import game.GameSession;
+
+/**
+ * Measures how much heap a single GameSession costs, and from that how many
+ * concurrent sessions fit in the heap this JVM was given. Every session plays
+ * the same Chapter from the ChapterCache, so the figure is the player and the
+ * session's overlay of taken branches.
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.SessionMemoryBenchmark -Dexec.args="data/The_Curse_Of_Sigfried 10000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class SessionMemoryBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String game = args.length > 0 ? args[0] : "data/The_Curse_Of_Sigfried";
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+        // Warm up class loading and the parser before measuring
+        new GameSession().newGame(game);
+
+        long before = Bench.usedHeap();
+        long start = System.nanoTime();
+        ArrayList<GameSession> sessions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            GameSession session = new GameSession();
+            session.newGame(game);
+            sessions.add(session);
+        }
+        long elapsed = System.nanoTime() - start;
+        long after = Bench.usedHeap();
+
+        long perSession = Math.max(1, (after - before) / count);
+        long maxHeap = Runtime.getRuntime().maxMemory();
+
+        System.out.printf("game:               %s%n", game);
+        System.out.printf("sessions:           %d%n", sessions.size());
+        System.out.printf("start time:         %.1f us/session%n", elapsed / 1000.0 / count);
+        System.out.printf("heap per session:   %d bytes%n", perSession);
+        System.out.printf("max heap:           %d MiB%n", maxHeap >> 20);
+        System.out.printf("sessions that fit:  %d%n", maxHeap / perSession);
+        System.out.printf("chapter cache:      %d hits, %d misses%n", ChapterCache.shared().hits(),
+                ChapterCache.shared().misses());
+    }
+}
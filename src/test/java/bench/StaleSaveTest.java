@@ -0,0 +1,56 @@
+package bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import game.GameSession;
+import game.GameWriter;
+
+/**
+ * Checks that a save whose chapter has changed since it was saved is refused,
+ * and that the session it was loaded into carries on as it was, rather than
+ * playing one game as the player of another.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class StaleSaveTest {
+    private static final String GAME = "data/The_Curse_Of_Sigfried";
+
+    @Test
+    public void staleSaveLeavesTheSessionAsItWas(@TempDir Path saves) throws Exception {
+        GameSession other = new GameSession();
+        other.newGame(GAME);
+        other.player().gainPerk("Saved");
+        JSONObject json = GameWriter.writeSave(other);
+        json.put("chapterHash", "stale");
+        File save = saves.resolve("stale.json").toFile();
+        Files.writeString(save.toPath(), json.toString(), StandardCharsets.UTF_8);
+
+        GameSession session = new GameSession();
+        session.newGame(GAME);
+        session.view();
+        session.choose(0);
+        String before = GameWriter.writeSave(session).toString();
+
+        assertThrows(IOException.class, () -> session.loadSave(save));
+        assertEquals(before, GameWriter.writeSave(session).toString(), "session is unchanged");
+        assertFalse(session.player().hasPerk("Saved"), "player is not replaced");
+
+        json.put("chapterHash", other.chapter().hash());
+        Files.writeString(save.toPath(), json.toString(), StandardCharsets.UTF_8);
+        session.loadSave(save);
+        assertTrue(session.player().hasPerk("Saved"), "a current save still loads");
+    }
+}
@@ -0,0 +1,62 @@
+package bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import game.StateExplorer;
+import game.StateExplorer.Result;
+
+/**
+ * Explores a generated game to a limited number of choices, on a pool of one
+ * thread and, if there is more than one processor, on a pool with a thread for
+ * every processor. Reports how many states each explored a second.
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.StateExplorerBenchmark -Dexec.args="2 2000 18"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class StateExplorerBenchmark {
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int chapters = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int scenes = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 18;
+
+        File gameDir = Files.createTempDirectory("Synthetic_Game").toFile();
+        try {
+            SyntheticChapter.writeGame(gameDir, chapters, scenes);
+            System.out.printf("%d chapters of %d scenes, at most %d choices%n", chapters, scenes, depth);
+
+            int processors = Runtime.getRuntime().availableProcessors();
+            measure("1 thread", gameDir, depth, new ForkJoinPool(1));
+            if (processors > 1)
+                measure(processors + " threads", gameDir, depth, new ForkJoinPool(processors));
+        } finally {
+            for (File file : gameDir.listFiles())
+                file.delete();
+            gameDir.delete();
+        }
+    }
+
+    private static void measure(String name, File gameDir, int depth, ForkJoinPool pool) throws Exception {
+        long best = Long.MAX_VALUE;
+        Result result = null;
+        for (int run = 0; run < RUNS; run++) {
+            result = null;
+            Bench.usedHeap();
+            long start = System.nanoTime();
+            result = new StateExplorer(gameDir, pool, depth, 512L << 20).explore(null);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        pool.shutdown();
+
+        System.out.printf("%-12s %8.2f s, %8d states, %6.0f K states/s, %d endings%s%s%n", name, best / 1e9,
+                result.states(), result.states() / (best / 1e6), result.endings().size(),
+                result.isDepthLimited() ? ", stopped at the limit on choices" : "",
+                result.isMemoryLimited() ? ", stopped at the limit on memory" : "");
+    }
+}
@@ -0,0 +1,168 @@
+package bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import game.StateExplorer;
+import game.StateExplorer.AttributeSet;
+import game.StateExplorer.Dangling;
+import game.StateExplorer.Ending;
+import game.StateExplorer.Result;
+
+/**
+ * Checks the StateExplorer against a game small enough to play out by hand.
+ * From the crossroads the player may fetch a sword and come back, walk on to
+ * the gate, or take a way to a scene the chapter does not have. At the gate
+ * only a player with the sword can win; anyone can lose, or walk out of the
+ * last chapter. Every state, as the fewest choices it takes to reach it:
+ *
+ * <ol start="0">
+ * <li>the crossroads</li>
+ * <li>the armoury with the sword; the gate without it</li>
+ * <li>the crossroads with the sword; lost or walking out without it</li>
+ * <li>the gate with the sword</li>
+ * <li>won, lost or walking out with the sword</li>
+ * </ol>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class StateExplorerTest {
+    private static final long MEMORY = 1 << 20;
+
+    @TempDir
+    Path gameDir;
+
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    public void writeGame() throws Exception {
+        Files.writeString(gameDir.resolve("playerDefault.json"), "{\"player\": {\"name\": \"Tester\"}}",
+                StandardCharsets.UTF_8);
+        Files.writeString(gameDir.resolve("chapter1.json"), """
+                {
+                    "currScene": "1",
+                    "scenes": {
+                        "1": {
+                            "lines": "A crossroads",
+                            "sceneType": "node",
+                            "branches": [
+                                {"bScene": "2", "prompt": "To the armoury",
+                                 "event": {"type": "getPerk", "arg": "Sword"}},
+                                {"bScene": "3", "prompt": "To the gate"},
+                                {"bScene": "9", "prompt": "Into the fog"}
+                            ]
+                        },
+                        "2": {"lines": "The armoury", "sceneType": "leaf", "nextScene": "1"},
+                        "3": {
+                            "lines": "The gate",
+                            "sceneType": "node",
+                            "branches": [
+                                {"bScene": "4", "prompt": "Fight",
+                                 "requirement": {"type": "perk", "req": "Sword"}},
+                                {"bScene": "5", "prompt": "Run"},
+                                {"bScene": "6", "prompt": "Walk away"}
+                            ]
+                        },
+                        "4": {"lines": "Victory", "sceneType": "terminus"},
+                        "5": {"lines": "Defeat", "sceneType": "terminus"},
+                        "6": {"lines": "The road goes on", "sceneType": "leaf"}
+                    }
+                }
+                """, StandardCharsets.UTF_8);
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterEach
+    public void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void findsEveryEndingWithWhatThePlayerHasThere() throws Exception {
+        Result result = explorer(100, MEMORY).explore(null);
+
+        assertEquals(10, result.states());
+        assertEquals(4, result.depth());
+        assertFalse(result.isDepthLimited());
+        assertFalse(result.isMemoryLimited());
+        assertEquals(0, result.deadEnds());
+        assertEquals(-1, result.goalDepth());
+
+        Map<Ending, Set<AttributeSet>> endings = result.endings();
+        assertEquals(List.of(new Ending("1", "4", true), new Ending("1", "5", true), new Ending("1", "6", false)),
+                List.copyOf(endings.keySet()));
+        assertEquals(Set.of(List.of("Sword")), perks(endings.get(new Ending("1", "4", true))));
+        assertEquals(Set.of(List.of(), List.of("Sword")), perks(endings.get(new Ending("1", "5", true))));
+        assertEquals(Set.of(List.of(), List.of("Sword")), perks(endings.get(new Ending("1", "6", false))));
+    }
+
+    @Test
+    public void countsTheStatesTryingEachDanglingTarget() throws Exception {
+        Result result = explorer(100, MEMORY).explore(null);
+
+        // From the crossroads, with and without the sword
+        assertEquals(Map.of(new Dangling("1", "1", "9"), 2L), result.dangling());
+    }
+
+    @Test
+    public void findsTheFewestChoicesToAGoal() throws Exception {
+        Result armed = explorer(100, MEMORY)
+                .explore((chapterId, view) -> view.sceneIndex().equals("3") && view.player().hasPerk("Sword"));
+        assertEquals(3, armed.goalDepth());
+        assertEquals(1, armed.goalStates());
+
+        Result gate = explorer(100, MEMORY).explore((chapterId, view) -> view.sceneIndex().equals("3"));
+        assertEquals(1, gate.goalDepth());
+        assertEquals(2, gate.goalStates());
+    }
+
+    @Test
+    public void stopsAtTheLimitOnChoices() throws Exception {
+        Result result = explorer(2, MEMORY).explore(null);
+
+        assertTrue(result.isDepthLimited());
+        assertFalse(result.isMemoryLimited());
+        assertEquals(2, result.depth());
+        assertEquals(6, result.states());
+        assertTrue(result.endings().isEmpty(), "no ending is two choices from the start");
+    }
+
+    @Test
+    public void stopsAtTheLimitOnMemory() throws Exception {
+        // Less than the smallest table of fingerprints, so only the first level is explored
+        Result result = explorer(100, 1).explore(null);
+
+        assertTrue(result.isMemoryLimited());
+        assertFalse(result.isDepthLimited());
+        assertEquals(1, result.depth());
+        assertEquals(3, result.states());
+    }
+
+    private StateExplorer explorer(int maxDepth, long maxBytes) {
+        return new StateExplorer(gameDir.toFile(), pool, maxDepth, maxBytes);
+    }
+
+    /**
+     * @return The perks of each set, sorted
+     */
+    private static Set<List<String>> perks(Set<AttributeSet> sets) {
+        return sets.stream().map(set -> List.copyOf(new TreeSet<>(set.perks()))).collect(Collectors.toSet());
+    }
+}
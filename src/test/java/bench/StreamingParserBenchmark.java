@@ -0,0 +1,73 @@
+package bench;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import game.GameParser;
+import scenes.Scene;
+
+/**
+ * Compares parsing a large chapter through a full JSONObject DOM, as the
+ * GameParser used to, against the streaming GameParser, by parse time and by
+ * peak heap.
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.StreamingParserBenchmark -Dexec.args="200000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class StreamingParserBenchmark {
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        File json = File.createTempFile("chapter", ".json");
+        SyntheticChapter.write(json, size, 42);
+        System.out.printf("scenes: %d, file size: %d MiB%n", size, json.length() >> 20);
+
+        for (int run = 0; run < RUNS; run++) {
+            Bench.resetPeakHeap();
+            long base = Bench.usedHeap();
+            long start = System.nanoTime();
+            HashMap<String, Scene> domScenes = parseWithDom(json);
+            long domTime = System.nanoTime() - start;
+            long domPeak = Bench.peakHeap() - base;
+            domScenes = null;
+
+            Bench.resetPeakHeap();
+            base = Bench.usedHeap();
+            start = System.nanoTime();
+            HashMap<String, Scene> streamScenes = new GameParser(json).parseScenes();
+            long streamTime = System.nanoTime() - start;
+            long streamPeak = Bench.peakHeap() - base;
+
+            System.out.printf("run %d: dom %8.1f ms, peak %5d MiB | stream %8.1f ms, peak %5d MiB (%d scenes)%n",
+                    run + 1, Bench.millis(domTime), domPeak >> 20, Bench.millis(streamTime), streamPeak >> 20,
+                    streamScenes.size());
+        }
+        json.delete();
+    }
+
+    /**
+     * Parses a chapter the way the GameParser did before it streamed: the
+     * whole file into one JSONObject, then each scene out of that.
+     */
+    private static HashMap<String, Scene> parseWithDom(File json) throws IOException {
+        try (FileReader reader = new FileReader(json)) {
+            JSONObject jFile = new JSONObject(new JSONTokener(reader));
+            JSONObject jScenes = jFile.getJSONObject("scenes");
+            // The JSONObject methods do not use the file the parser was made from
+            GameParser parser = new GameParser(new File("data/Debug/chapter2.json"));
+            HashMap<String, Scene> scenes = new HashMap<>();
+            for (String key : jScenes.keySet())
+                scenes.put(key, parser.parseScene(key, jScenes.getJSONObject(key)));
+            return scenes;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.json.JSONObject;
+
+/**
+ * Writes large, randomly generated chapters in the same JSON format as the
+ * chapters under {@code data}, for benchmarks to load.
+ *
+ * <p>
+ * Scene {@code 0} is a node scene, and every node scene has four branches to
+ * random scenes, some of which grant perks or statuses and some of which have
+ * nested and/or/not requirements. Roughly a third of scenes are leaves that
+ * return to scene {@code 0}, and one in twenty is a terminus. In a game of
+ * several chapters, one in twenty scenes is instead a leaf that goes on to the
+ * next chapter, and the branches of scene {@code 0} have no requirements, so
+ * that every chapter can be played past its first scene.
+ * </p>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class SyntheticChapter {
+    private static final int ATTRIBUTES = 64;
+
+    /**
+     * Writes a chapter with the given number of scenes.
+     *
+     * @param file   The JSON chapter file to write
+     * @param scenes The number of scenes in the chapter
+     * @param seed   Seed for the random layout, so runs are comparable
+     * @throws IOException
+     */
+    public static void write(File file, int scenes, long seed) throws IOException {
+        write(file, scenes, seed, null);
+    }
+
+    /**
+     * Writes a chapter with the given number of scenes, which goes on to
+     * another chapter.
+     *
+     * @param file        The JSON chapter file to write
+     * @param scenes      The number of scenes in the chapter
+     * @param seed        Seed for the random layout, so runs are comparable
+     * @param nextChapter The chapter after this one, or {@code null} if this
+     *                    is the last
+     * @throws IOException
+     */
+    public static void write(File file, int scenes, long seed, String nextChapter) throws IOException {
+        Random random = new Random(seed);
+        try (Writer out = new BufferedWriter(new FileWriter(file))) {
+            out.write("{\n\"currScene\": \"0\",\n");
+            if (nextChapter != null)
+                out.write("\"nextChapter\": " + JSONObject.quote(nextChapter) + ",\n");
+            out.write("\"scenes\": {\n");
+            for (int i = 0; i < scenes; i++) {
+                if (i > 0)
+                    out.write(",\n");
+                out.write(JSONObject.quote(Integer.toString(i)));
+                out.write(": ");
+                writeScene(out, i, scenes, random, nextChapter != null);
+            }
+            out.write("\n}\n}\n");
+        }
+    }
+
+    /**
+     * Writes a chapter into a temporary directory laid out like a game under
+     * {@code data}, with a default player.
+     *
+     * @param scenes The number of scenes in the chapter
+     * @return The game directory
+     * @throws IOException
+     */
+    public static File writeGame(int scenes) throws IOException {
+        return writeGame(Files.createTempDirectory("Synthetic_Game").toFile(), scenes);
+    }
+
+    /**
+     * Writes a chapter and a default player into the given game directory.
+     *
+     * @param gameDir The game directory, which must already exist
+     * @param scenes  The number of scenes in the chapter
+     * @return The game directory
+     * @throws IOException
+     */
+    public static File writeGame(File gameDir, int scenes) throws IOException {
+        return writeGame(gameDir, 1, scenes);
+    }
+
+    /**
+     * Writes a game of several chapters, one after another, and a default
+     * player into the given game directory.
+     *
+     * @param gameDir  The game directory, which must already exist
+     * @param chapters The number of chapters
+     * @param scenes   The number of scenes in each chapter
+     * @return The game directory
+     * @throws IOException
+     */
+    public static File writeGame(File gameDir, int chapters, int scenes) throws IOException {
+        for (int chapter = 1; chapter <= chapters; chapter++)
+            write(new File(gameDir, "chapter" + chapter + ".json"), scenes, 41 + chapter,
+                    chapter < chapters ? Integer.toString(chapter + 1) : null);
+        try (Writer out = new FileWriter(new File(gameDir, "playerDefault.json"))) {
+            out.write("{\"player\": {\"name\": \"Bench\", \"perks\": [\"p0\"], \"items\": [\"i0\"]}}");
+        }
+        return gameDir;
+    }
+
+    private static void writeScene(Writer out, int index, int scenes, Random random, boolean next)
+            throws IOException {
+        int kind = index == 0 ? 0 : random.nextInt(20);
+        String lines = JSONObject.quote("Scene " + index + ", %s. " + "Lorem ipsum dolor sit amet. ".repeat(4));
+
+        if (kind == 19) {
+            out.write("{\"lines\": " + lines + ", \"sceneType\": \"terminus\"}");
+            return;
+        }
+        if (kind >= 13) {
+            String nextScene = next && kind == 13 ? "" : "0";
+            out.write("{\"lines\": " + lines + ", \"sceneType\": \"leaf\", \"nextScene\": "
+                    + JSONObject.quote(nextScene));
+            if (random.nextBoolean())
+                out.write(", \"event\": " + event(random));
+            out.write("}");
+            return;
+        }
+
+        out.write("{\"lines\": " + lines + ", \"sceneType\": \"node\", \"branches\": [");
+        for (int b = 0; b < 4; b++) {
+            if (b > 0)
+                out.write(", ");
+            out.write("{\"bScene\": \"" + random.nextInt(scenes) + "\", \"prompt\": \"Option " + b + "\"");
+            if (random.nextInt(3) == 0)
+                out.write(", \"event\": " + event(random));
+            if (random.nextInt(2) == 0) {
+                String requirement = requirement(random, 3);
+                if (!next || index != 0)
+                    out.write(", \"requirement\": " + requirement);
+            }
+            out.write("}");
+        }
+        out.write("]}");
+    }
+
+    private static String event(Random random) {
+        String type = random.nextBoolean() ? "getPerk" : "getStatus";
+        String arg = (type.equals("getPerk") ? "p" : "s") + random.nextInt(ATTRIBUTES);
+        return "{\"type\": \"" + type + "\", \"arg\": \"" + arg + "\"}";
+    }
+
+    /**
+     * @return A random requirement, nested at most {@code depth} levels deep
+     */
+    static String requirement(Random random, int depth) {
+        int kind = depth == 0 ? random.nextInt(3) : random.nextInt(6);
+        switch (kind) {
+            case 0:
+                return "{\"type\": \"perk\", \"req\": \"p" + random.nextInt(ATTRIBUTES) + "\"}";
+            case 1:
+                return "{\"type\": \"item\", \"req\": \"i" + random.nextInt(ATTRIBUTES) + "\"}";
+            case 2:
+                return "{\"type\": \"status\", \"req\": \"s" + random.nextInt(ATTRIBUTES) + "\"}";
+            case 3:
+                return "{\"type\": \"not\", \"req\": " + requirement(random, depth - 1) + "}";
+            default:
+                StringBuilder req = new StringBuilder("{\"type\": \"" + (kind == 4 ? "or" : "and") + "\", \"req\": [");
+                int children = 2 + random.nextInt(3);
+                for (int i = 0; i < children; i++) {
+                    if (i > 0)
+                        req.append(", ");
+                    req.append(requirement(random, depth - 1));
+                }
+                return req.append("]}").toString();
+        }
+    }
+}
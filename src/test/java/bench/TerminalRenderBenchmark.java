@@ -0,0 +1,100 @@
+package bench;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+
+import game.Game;
+
+/**
+ * Plays the terminal game from a script of random input, and counts what it
+ * writes to the terminal. The output goes through a PrintStream set up like
+ * {@code System.out}, buffered and flushing on every new line, so each write
+ * reaching the stream below it is a write to the terminal, and a system call.
+ *
+ * <p>
+ * The script mixes choices with the commands a player types between them:
+ * blank lines, {@code help}, {@code player}, {@code back} and input that is
+ * not a command at all. Each line of the script is a move, and the report is
+ * per move.
+ * </p>
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.TerminalRenderBenchmark -Dexec.args="20000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class TerminalRenderBenchmark {
+    // Never 3 or q, so the script plays until it runs out
+    private static final String[] INPUTS = { "1", "1", "2", "2", "", "", "h", "p", "x", "b" };
+
+    /**
+     * Counts the writes and bytes that reach it, and throws them away.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        long writes;
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            writes++;
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes++;
+            bytes += len;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int moves = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        StringBuilder script = new StringBuilder();
+        SplittableRandom random = new SplittableRandom(29);
+        for (int i = 0; i < moves; i++)
+            script.append(INPUTS[random.nextInt(INPUTS.length)]).append('\n');
+        byte[] input = script.toString().getBytes(StandardCharsets.UTF_8);
+
+        // Warm up, then measure
+        play(input);
+        CountingOutputStream terminal = new CountingOutputStream();
+        long start = System.nanoTime();
+        PrintStream out = play(input, terminal);
+        long elapsed = System.nanoTime() - start;
+        out.flush();
+
+        System.out.printf("moves:            %d%n", moves);
+        System.out.printf("bytes written:    %d (%.0f per move)%n", terminal.bytes, (double) terminal.bytes / moves);
+        System.out.printf("writes:           %d (%.2f per move)%n", terminal.writes,
+                (double) terminal.writes / moves);
+        System.out.printf("time:             %.2f us per move%n", elapsed / 1000.0 / moves);
+    }
+
+    private static void play(byte[] input) throws IOException {
+        play(input, new CountingOutputStream());
+    }
+
+    private static PrintStream play(byte[] input, OutputStream terminal) throws IOException {
+        // Like System.out: buffered, and flushed at the end of every line
+        PrintStream out = new PrintStream(new BufferedOutputStream(terminal, 8192), true, StandardCharsets.UTF_8);
+        Scanner in = new Scanner(new ByteArrayInputStream(input), StandardCharsets.UTF_8);
+        // A game whose next chapter is missing ends the Game, so play on with a new one
+        while (in.hasNextLine()) {
+            try {
+                new Game(in, out).play();
+            } catch (FileNotFoundException e) {
+                // Back to the main menu
+            }
+        }
+        return out;
+    }
+}
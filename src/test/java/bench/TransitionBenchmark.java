@@ -0,0 +1,148 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import game.Chapter;
+import game.GameParser;
+import game.GameSession;
+import scenes.Branch;
+import scenes.LeafScene;
+import scenes.NodeScene;
+import scenes.Scene;
+
+/**
+ * Measures how many scene transitions a second a random walk through a large
+ * generated chapter makes, moving to each next scene by its index, as the game
+ * used to, and by the id its branch or leaf is linked to. Both walks are also
+ * run through a GameSession, which is what the game does on every move.
+ *
+ * <pre>
+ * mvn test-compile exec:java -q -Dexec.classpathScope=test -Dexec.mainClass=bench.TransitionBenchmark -Dexec.args="200000 20000000"
+ * </pre>
+ *
+ * @author Ahmed El-Sayed
+ */
+public class TransitionBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int moves = args.length > 1 ? Integer.parseInt(args[1]) : 20_000_000;
+
+        File json = File.createTempFile("chapter", ".json");
+        SyntheticChapter.write(json, size, 42);
+        long start = System.nanoTime();
+        Chapter chapter = new GameParser(json).parseChapter();
+        long loaded = System.nanoTime() - start;
+        json.delete();
+        System.out.printf("scenes: %d, loaded in %.1f ms, dangling references: %d%n", size, Bench.millis(loaded),
+                chapter.danglingReferences().size());
+
+        GameSession session = new GameSession();
+        session.startChapter(chapter);
+
+        System.out.printf("%-22s %14s %14s%n", "walk", "moves/s", "ns/move");
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean last = round == ROUNDS - 1;
+            report("by index", last, moves, () -> walkByIndex(chapter, moves));
+            report("by id", last, moves, () -> walkById(chapter, moves));
+            report("session by index", last, moves, () -> sessionByIndex(session, moves));
+            report("session by id", last, moves, () -> sessionById(session, moves));
+        }
+    }
+
+    private interface Walk {
+        long run();
+    }
+
+    private static void report(String name, boolean print, int moves, Walk walk) {
+        long start = System.nanoTime();
+        long checksum = walk.run();
+        long elapsed = System.nanoTime() - start;
+        if (print)
+            System.out.printf("%-22s %14.0f %14.1f   (checksum %d)%n", name, moves / (elapsed / 1e9),
+                    (double) elapsed / moves, checksum);
+    }
+
+    /**
+     * Walks the chapter looking up each next scene by its index.
+     */
+    private static long walkByIndex(Chapter chapter, int moves) {
+        SplittableRandom random = new SplittableRandom(7);
+        Scene scene = chapter.scene(chapter.firstScene());
+        long checksum = 0;
+        for (int i = 0; i < moves; i++) {
+            String next = nextIndex(scene, random);
+            scene = next.isBlank() ? null : chapter.scene(next);
+            if (scene == null)
+                scene = chapter.scene(chapter.firstScene());
+            checksum += scene.lines().length();
+        }
+        return checksum;
+    }
+
+    /**
+     * Walks the chapter following the ids each branch and leaf is linked to.
+     */
+    private static long walkById(Chapter chapter, int moves) {
+        SplittableRandom random = new SplittableRandom(7);
+        Scene scene = chapter.scene(chapter.firstSceneId());
+        long checksum = 0;
+        for (int i = 0; i < moves; i++) {
+            scene = chapter.scene(nextId(scene, random));
+            if (scene == null)
+                scene = chapter.scene(chapter.firstSceneId());
+            checksum += scene.lines().length();
+        }
+        return checksum;
+    }
+
+    private static long sessionByIndex(GameSession session, int moves) {
+        SplittableRandom random = new SplittableRandom(7);
+        long checksum = 0;
+        session.setCurrScene(session.chapter().firstScene());
+        for (int i = 0; i < moves; i++) {
+            session.setCurrScene(nextIndex(session.currentScene(), random));
+            if (!session.inScene())
+                session.setCurrScene(session.chapter().firstScene());
+            checksum += session.currentScene().lines().length();
+        }
+        return checksum;
+    }
+
+    private static long sessionById(GameSession session, int moves) {
+        SplittableRandom random = new SplittableRandom(7);
+        long checksum = 0;
+        session.setCurrScene(session.chapter().firstSceneId());
+        for (int i = 0; i < moves; i++) {
+            session.setCurrScene(nextId(session.currentScene(), random));
+            if (!session.inScene())
+                session.setCurrScene(session.chapter().firstSceneId());
+            checksum += session.currentScene().lines().length();
+        }
+        return checksum;
+    }
+
+    private static String nextIndex(Scene scene, SplittableRandom random) {
+        if (scene instanceof NodeScene node) {
+            List<Branch> branches = node.branches();
+            return branches.get(random.nextInt(branches.size())).nextScene();
+        }
+        if (scene instanceof LeafScene leaf)
+            return leaf.nextScene();
+        return "";
+    }
+
+    private static int nextId(Scene scene, SplittableRandom random) {
+        if (scene instanceof NodeScene node) {
+            List<Branch> branches = node.branches();
+            return branches.get(random.nextInt(branches.size())).nextSceneId();
+        }
+        if (scene instanceof LeafScene leaf)
+            return leaf.nextSceneId();
+        return Scene.NO_SCENE;
+    }
+}
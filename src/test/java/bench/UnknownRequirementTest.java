@@ -0,0 +1,95 @@
+package bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import game.Attributes;
+import game.GameSession;
+import game.Player;
+import game.SceneView;
+import requirements.AndRequirement;
+import requirements.CompiledRequirement;
+import requirements.OrRequirement;
+import requirements.PerkRequirement;
+import requirements.Requirement;
+import requirements.RequirementFactory;
+
+/**
+ * Checks that a requirement nested under an AND, OR or NOT with a type that is
+ * not known, which is parsed as {@code null}, neither stops its chapter from
+ * loading nor changes the result of an AND or OR decided before it is reached.
+ *
+ * @author Ahmed El-Sayed
+ */
+public class UnknownRequirementTest {
+
+    @Test
+    public void chapterWithUnknownNestedRequirementLoads(@TempDir Path gameDir) throws Exception {
+        Files.writeString(gameDir.resolve("playerDefault.json"), "{\"player\": {\"name\": \"Tester\"}}",
+                StandardCharsets.UTF_8);
+        Files.writeString(gameDir.resolve("chapter1.json"), """
+                {
+                    "currScene": "1",
+                    "scenes": {
+                        "1": {
+                            "lines": "A locked door",
+                            "sceneType": "node",
+                            "branches": [
+                                {"bScene": "2", "prompt": "Open it",
+                                 "requirement": {"type": "and", "req": [
+                                     {"type": "perk", "req": "A"}, {"type": "level", "req": "3"}]}},
+                                {"bScene": "2", "prompt": "Walk away"}
+                            ]
+                        },
+                        "2": {"lines": "The end", "sceneType": "terminus"}
+                    }
+                }
+                """, StandardCharsets.UTF_8);
+
+        GameSession session = new GameSession();
+        session.newGame(gameDir.toString());
+        SceneView view = session.view();
+        assertEquals(List.of("Walk away"), view.prompts());
+        assertEquals(List.of("Branch of scene 1 to scene 2 has unknown requirement type level"),
+                session.chapter().unknownTypes());
+    }
+
+    @Test
+    public void unknownRequirementOnlyFailsIfReached(@TempDir Path gameDir) {
+        Attributes attributes = Attributes.forGame(new File(gameDir.toFile(), "Game"));
+        Player without = new Player("Without", attributes, List.of(), List.of(), List.of());
+        Player with = new Player("With", attributes, List.of("A"), List.of(), List.of());
+
+        CompiledRequirement and = RequirementFactory.compile(new AndRequirement(children(new PerkRequirement("A"))),
+                attributes);
+        assertFalse(and.evaluate(without));
+        assertThrows(IllegalStateException.class, () -> and.evaluate(with));
+
+        CompiledRequirement or = RequirementFactory.compile(new OrRequirement(children(new PerkRequirement("A"))),
+                attributes);
+        assertTrue(or.evaluate(with));
+        assertThrows(IllegalStateException.class, () -> or.evaluate(without));
+    }
+
+    /**
+     * @return The requirement followed by one of a type that is not known
+     */
+    private static ArrayList<Requirement> children(Requirement first) {
+        ArrayList<Requirement> children = new ArrayList<>();
+        children.add(first);
+        children.add(null);
+        return children;
+    }
+}